@@ -0,0 +1,220 @@
+package ct.Benchmarks;
+
+import DAO.EsquemaEmisiones;
+import DAO.GestorBD;
+import DAO.migraciones.MigradorEsquema;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bases de datos de prueba de un tamaño fijo para los benchmarks.
+ * <p>
+ * Cada tamaño se genera una sola vez en el directorio temporal del sistema ({@code carbontracker-benchmarks})
+ * y se reutiliza en las ejecuciones siguientes. El nombre del fichero lleva la versión del esquema,
+ * así que tras una migración nueva se vuelve a generar. Los datos salen de una semilla fija:
+ * dos ejecuciones miden siempre el mismo contenido.
+ * <p>
+ * Contenido para {@code filas} emisiones:
+ * <ul>
+ * <li>Una empresa por cada {@value #EMISIONES_POR_EMPRESA} emisiones (entre {@value #EMPRESAS_MIN}
+ * y {@value #EMPRESAS_MAX}), con dos sedes cada una.</li>
+ * <li>Emisiones repartidas al azar entre empresas, tipos del diccionario y los últimos {@value #DIAS} días.</li>
+ * <li>El administrador por defecto del esquema ({@value #USUARIO} / {@value #CONTRASENA}), para medir el login.</li>
+ * </ul>
+ * Las emisiones se insertan por lotes sin los triggers de alta de registro_emisiones (los mismos que quita
+ * {@link DAO.GeneradorDatos}, ver {@link EsquemaEmisiones#TRIGGERS_GENERACION}); después se vuelven a crear
+ * y se reconstruyen los totales por empresa y el resumen mensual, como en la carga masiva del importador.
+ */
+public final class BaseDatosBenchmark {
+
+    /** Usuario y contraseña del administrador que crea el esquema inicial. */
+    public static final String USUARIO = "admin";
+    public static final String CONTRASENA = "admin";
+
+    /** Término que coincide con el nombre de una parte de las empresas ("Empresa Energía ..."). */
+    public static final String TERMINO_EMPRESA = "energia";
+
+    static final int EMISIONES_POR_EMPRESA = 1000;
+    static final int EMPRESAS_MIN = 10;
+    static final int EMPRESAS_MAX = 10_000;
+    static final int DIAS = 5 * 365;
+
+    /** Filas por transacción al insertar las emisiones. */
+    private static final int FILAS_POR_TRANSACCION = 100_000;
+
+    /** Cambia si cambia el contenido generado, para no reutilizar bases antiguas. */
+    private static final int VERSION_DATOS = 1;
+
+    private static final String[] SECTORES = {"Energía", "Transporte", "Industria", "Agricultura", "Construcción", "Servicios"};
+
+    private static final String[] CIUDADES = {"Madrid", "Barcelona", "Valencia", "Sevilla", "Bilbao", "Zaragoza"};
+
+    private BaseDatosBenchmark() {
+    }
+
+    /**
+     * Devuelve la base de datos de prueba de un tamaño, generándola si aún no existe.
+     *
+     * @param filas Número de emisiones.
+     * @return Fichero SQLite (no debe modificarse: para escribir, usar {@link #copia}).
+     */
+    public static synchronized Path preparar(long filas) throws IOException, SQLException {
+        Path directorio = Files.createDirectories(Path.of(System.getProperty("java.io.tmpdir"), "carbontracker-benchmarks"));
+        int version = new MigradorEsquema().getUltimaVersion();
+        Path fichero = directorio.resolve("emisiones-" + filas + "-v" + version + "-d" + VERSION_DATOS + ".db");
+        if (Files.exists(fichero)) return fichero;
+
+        Path temporal = directorio.resolve(fichero.getFileName() + ".generando");
+        Files.deleteIfExists(temporal);
+        long inicio = System.nanoTime();
+        generar(temporal, filas);
+        Files.move(temporal, fichero, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.printf("Base de prueba de %,d emisiones generada en %.1f s: %s%n",
+                filas, (System.nanoTime() - inicio) / 1e9, fichero);
+        return fichero;
+    }
+
+    /**
+     * Copia de trabajo de una base de prueba, para los benchmarks que escriben.
+     *
+     * @param original Base generada con {@link #preparar}.
+     * @return Fichero nuevo en un directorio temporal propio.
+     */
+    public static Path copia(Path original) throws IOException {
+        Path directorio = Files.createTempDirectory("carbontracker-benchmark-");
+        return Files.copy(original, directorio.resolve("copia.db"));
+    }
+
+    /**
+     * @return Cadena de conexión JDBC de un fichero.
+     */
+    public static String url(Path fichero) {
+        return "jdbc:sqlite:" + fichero.toAbsolutePath();
+    }
+
+    /**
+     * @return Número de empresas de la base de prueba de un tamaño.
+     */
+    public static int empresas(long filas) {
+        return (int) Math.max(EMPRESAS_MIN, Math.min(EMPRESAS_MAX, filas / EMISIONES_POR_EMPRESA));
+    }
+
+    /**
+     * Genera una base de prueba completa en un fichero nuevo.
+     */
+    private static void generar(Path fichero, long filas) throws SQLException {
+        String url = url(fichero);
+
+        // Esquema completo (migraciones, tipos y administrador por defecto) con el propio gestor,
+        // configurado como en las mediciones: sin registro de consultas lentas que escriba en la base
+        EstadoBaseDatos.abrirGestor(fichero).cerrar();
+
+        Random aleatorio = new Random(filas);
+        try (Connection conexion = DriverManager.getConnection(url);
+             Statement st = conexion.createStatement()) {
+            st.execute("PRAGMA synchronous = OFF");
+            conexion.setAutoCommit(false);
+            int empresas = empresas(filas);
+            insertarEmpresas(conexion, empresas);
+            conexion.commit();
+
+            List<String> triggers = EsquemaEmisiones.quitar(conexion, false, EsquemaEmisiones.TRIGGERS_GENERACION);
+            insertarEmisiones(conexion, filas, empresas, tiposEmision(conexion), aleatorio);
+            EsquemaEmisiones.restaurar(conexion, triggers);
+            conexion.commit();
+            conexion.setAutoCommit(true);
+        }
+
+        GestorBD gestor = EstadoBaseDatos.abrirGestor(fichero);
+        try {
+            if (!gestor.reconstruirTotalesEmpresa() || !gestor.reconstruirResumenMensual()) {
+                throw new SQLException("No se han podido reconstruir los agregados de la base de prueba");
+            }
+        } finally {
+            gestor.cerrar();
+        }
+        try (Connection conexion = DriverManager.getConnection(url);
+             Statement st = conexion.createStatement()) {
+            st.execute("ANALYZE");
+            // Un solo fichero: sin -wal ni -shm al lado
+            st.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+        }
+    }
+
+    /**
+     * Empresas "Empresa [sector] 00001"... con dos sedes cada una.
+     */
+    private static void insertarEmpresas(Connection conexion, int empresas) throws SQLException {
+        try (PreparedStatement psEmpresa = conexion.prepareStatement("INSERT INTO empresa (id, nombre, sector) VALUES (?, ?, ?)");
+             PreparedStatement psSede = conexion.prepareStatement(
+                     "INSERT INTO sede (ciudad, pais, direccion, id_empresa) VALUES (?, 'España', ?, ?)")) {
+            for (int id = 1; id <= empresas; id++) {
+                String sector = SECTORES[id % SECTORES.length];
+                psEmpresa.setLong(1, id);
+                psEmpresa.setString(2, String.format("Empresa %s %05d", sector, id));
+                psEmpresa.setString(3, sector);
+                psEmpresa.addBatch();
+                for (int s = 0; s < 2; s++) {
+                    psSede.setString(1, CIUDADES[(id + s) % CIUDADES.length]);
+                    psSede.setString(2, "Calle " + (s + 1) + ", " + id);
+                    psSede.setLong(3, id);
+                    psSede.addBatch();
+                }
+            }
+            psEmpresa.executeBatch();
+            psSede.executeBatch();
+        }
+    }
+
+    /**
+     * IDs de los tipos de emisión del diccionario.
+     */
+    private static int[] tiposEmision(Connection conexion) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Statement st = conexion.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id FROM emision_tipo ORDER BY id")) {
+            while (rs.next()) ids.add(rs.getInt(1));
+        }
+        if (ids.isEmpty()) throw new SQLException("El diccionario de tipos está vacío");
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Emisiones al azar (semilla fija) en transacciones de {@value #FILAS_POR_TRANSACCION} filas.
+     */
+    private static void insertarEmisiones(Connection conexion, long filas, int empresas, int[] tipos, Random aleatorio)
+            throws SQLException {
+        long hoy = LocalDate.now().toEpochDay();
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "INSERT INTO registro_emisiones (id_tipo, cantidad, co2e, fecha, dia, id_empresa, co2e_calculado) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, 0)")) {
+            for (long fila = 1; fila <= filas; fila++) {
+                long dia = hoy - aleatorio.nextInt(DIAS);
+                double cantidad = Math.round(aleatorio.nextDouble() * 10_000) / 10.0;
+                ps.setInt(1, tipos[aleatorio.nextInt(tipos.length)]);
+                ps.setDouble(2, cantidad);
+                ps.setDouble(3, Math.round(cantidad * (0.1 + aleatorio.nextDouble() * 2) * 100) / 100.0);
+                ps.setString(4, LocalDate.ofEpochDay(dia).toString());
+                ps.setLong(5, dia);
+                ps.setLong(6, 1 + aleatorio.nextInt(empresas));
+                ps.addBatch();
+                if (fila % 10_000 == 0) ps.executeBatch();
+                if (fila % FILAS_POR_TRANSACCION == 0) conexion.commit();
+            }
+            ps.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ct.Benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compara los resultados JSON de JMH ({@code -rf json}) con una línea base guardada.
+ * <p>
+ * Uso: {@code CompararResultados base.json resultados.json [umbral %]} (umbral por defecto: 10).
+ * Muestra, para cada benchmark y tamaño, la puntuación de las dos ejecuciones y la variación.
+ * Una variación solo cuenta como empeoramiento si supera el umbral y además el margen de error
+ * de las dos medidas. Sale con código 1 si hay algún empeoramiento y con 2 si los argumentos no son válidos.
+ */
+public final class CompararResultados {
+
+    /** Puntuación de un benchmark con unos parámetros concretos. */
+    private record Medida(double puntuacion, double error, String unidad, boolean menorEsMejor) { }
+
+    private CompararResultados() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Uso: CompararResultados base.json resultados.json [umbral %]");
+            System.exit(2);
+        }
+        double umbral = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, Medida> base = leer(Path.of(args[0]));
+        Map<String, Medida> actual = leer(Path.of(args[1]));
+
+        int empeoramientos = 0;
+        System.out.printf("%-70s %14s %14s %9s%n", "Benchmark", "Base", "Actual", "Cambio");
+        for (Map.Entry<String, Medida> entrada : actual.entrySet()) {
+            Medida nueva = entrada.getValue();
+            Medida anterior = base.get(entrada.getKey());
+            if (anterior == null) {
+                System.out.printf("%-70s %14s %14s %9s%n", entrada.getKey(), "-", formato(nueva), "nuevo");
+                continue;
+            }
+            double cambio = (nueva.puntuacion() - anterior.puntuacion()) / anterior.puntuacion() * 100;
+            double empeora = nueva.menorEsMejor() ? cambio : -cambio;
+            boolean fueraDeError = Math.abs(nueva.puntuacion() - anterior.puntuacion()) > nueva.error() + anterior.error();
+            String marca = "";
+            if (empeora > umbral && fueraDeError) {
+                marca = "  PEOR";
+                empeoramientos++;
+            } else if (empeora < -umbral && fueraDeError) {
+                marca = "  MEJOR";
+            }
+            System.out.printf("%-70s %14s %14s %+8.1f%%%s%n",
+                    entrada.getKey(), formato(anterior), formato(nueva), cambio, marca);
+        }
+        for (String desaparecido : base.keySet()) {
+            if (!actual.containsKey(desaparecido)) {
+                System.out.printf("%-70s %14s %14s %9s%n", desaparecido, formato(base.get(desaparecido)), "-", "falta");
+            }
+        }
+
+        System.out.println();
+        System.out.println(empeoramientos == 0
+                ? "Sin empeoramientos por encima del " + umbral + " %."
+                : empeoramientos + " benchmark(s) empeoran más del " + umbral + " %.");
+        System.exit(empeoramientos == 0 ? 0 : 1);
+    }
+
+    /**
+     * Lee un fichero de resultados de JMH, con una entrada por benchmark y combinación de parámetros.
+     */
+    private static Map<String, Medida> leer(Path fichero) throws IOException {
+        Map<String, Medida> medidas = new TreeMap<>();
+        try (Reader lector = Files.newBufferedReader(fichero)) {
+            JsonArray resultados = JsonParser.parseReader(lector).getAsJsonArray();
+            for (JsonElement elemento : resultados) {
+                JsonObject resultado = elemento.getAsJsonObject();
+                JsonObject metrica = resultado.getAsJsonObject("primaryMetric");
+                double error = metrica.get("scoreError").isJsonPrimitive()
+                        && metrica.get("scoreError").getAsJsonPrimitive().isNumber()
+                        ? metrica.get("scoreError").getAsDouble() : 0;
+                boolean menorEsMejor = !"thrpt".equals(resultado.get("mode").getAsString());
+                medidas.put(clave(resultado), new Medida(metrica.get("score").getAsDouble(),
+                        Double.isNaN(error) ? 0 : error, metrica.get("scoreUnit").getAsString(), menorEsMejor));
+            }
+        }
+        return medidas;
+    }
+
+    /**
+     * Nombre corto del benchmark (clase.método) más sus parámetros, p. ej. {@code LecturasBenchmark.login [filas=10000]}.
+     */
+    private static String clave(JsonObject resultado) {
+        String benchmark = resultado.get("benchmark").getAsString();
+        int metodo = benchmark.lastIndexOf('.');
+        int clase = benchmark.lastIndexOf('.', metodo - 1);
+        StringBuilder clave = new StringBuilder(benchmark.substring(clase + 1));
+        if (resultado.has("params")) {
+            Map<String, String> parametros = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> parametro : resultado.getAsJsonObject("params").entrySet()) {
+                parametros.put(parametro.getKey(), parametro.getValue().getAsString());
+            }
+            clave.append(' ').append(parametros);
+        }
+        return clave.toString();
+    }
+
+    private static String formato(Medida medida) {
+        return String.format("%.3f %s", medida.puntuacion(), medida.unidad());
+    }
+}
@@ -0,0 +1,107 @@
+package ct.Benchmarks;
+
+import DAO.FiltroEmisiones;
+import DAO.GestorBD;
+import Modelos.Emisiones;
+import Modelos.Empresa;
+import Modelos.Usuario;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiempo medio de las escrituras de {@link GestorBD}: alta, alta encolada y modificación de emisiones,
+ * y alta de empresas.
+ * <p>
+ * Cada prueba trabaja sobre una copia de la base de prueba, que se borra al terminar: las filas añadidas
+ * no afectan a las demás pruebas ni a ejecuciones posteriores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EscriturasBenchmark {
+
+    /**
+     * Gestor sobre una copia de la base de prueba de cada tamaño.
+     */
+    @State(Scope.Benchmark)
+    public static class Copia {
+
+        @Param({"10000", "1000000", "10000000"})
+        public long filas;
+
+        GestorBD gestor;
+        Path fichero;
+        Usuario autor;
+        long idEmpresa;
+        String tipo;
+
+        /** Emisión existente que se modifica una y otra vez. */
+        Emisiones modificada;
+
+        /** Sufijo de los nombres de empresa (cada alta debe ser distinta). */
+        long siguienteEmpresa;
+
+        @Setup(Level.Trial)
+        public void abrir() throws Exception {
+            fichero = BaseDatosBenchmark.copia(BaseDatosBenchmark.preparar(filas));
+            gestor = EstadoBaseDatos.abrirGestor(fichero);
+            autor = gestor.login(BaseDatosBenchmark.USUARIO, BaseDatosBenchmark.CONTRASENA);
+            idEmpresa = BaseDatosBenchmark.empresas(filas) / 2;
+            tipo = gestor.getTiposEmision().get(0).getNombre();
+            modificada = gestor.getPaginaEmisiones(new FiltroEmisiones(idEmpresa, "", false), null, 1).get(0);
+        }
+
+        @TearDown(Level.Trial)
+        public void cerrar() throws IOException {
+            gestor.cerrar();
+            Path directorio = fichero.getParent();
+            for (String sufijo : new String[]{"", "-wal", "-shm"}) {
+                Files.deleteIfExists(directorio.resolve(fichero.getFileName() + sufijo));
+            }
+            Files.deleteIfExists(directorio);
+        }
+    }
+
+    @Benchmark
+    public Emisiones nuevaEmision(Copia copia) {
+        return copia.gestor.nuevaEmision(new Emisiones(copia.tipo, 125.5, 30.2, copia.idEmpresa));
+    }
+
+    @Benchmark
+    public Long encolarEmision(Copia copia) {
+        return copia.gestor.encolarEmision(new Emisiones(copia.tipo, 125.5, 30.2, copia.idEmpresa)).join();
+    }
+
+    @Benchmark
+    public boolean actualizarEmision(Copia copia) {
+        Emisiones actual = copia.modificada;
+        Emisiones nueva = new Emisiones(actual.getId(), actual.getTipoEmision(), actual.getCantidadEmision() + 1,
+                actual.getCo2e(), LocalDate.now(), actual.getIdEmpresa());
+        copia.modificada = nueva;
+        return copia.gestor.actualizarEmision(nueva, copia.autor);
+    }
+
+    @Benchmark
+    public Empresa agregarEmpresa(Copia copia) {
+        return copia.gestor.agregarEmpresa(new Empresa("Empresa benchmark " + copia.siguienteEmpresa++, "Servicios"));
+    }
+}
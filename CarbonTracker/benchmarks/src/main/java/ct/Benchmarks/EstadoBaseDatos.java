@@ -0,0 +1,62 @@
+package ct.Benchmarks;
+
+import DAO.ConfiguracionBD;
+import DAO.GestorBD;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Path;
+
+/**
+ * Gestor abierto sobre la base de prueba de cada tamaño, compartido por los hilos de un benchmark.
+ * <p>
+ * La caché de consultas y la copia columnar se desactivan: se mide siempre el acceso a SQLite,
+ * no lo que se haya quedado en memoria de la iteración anterior. También la instrumentación del pool,
+ * para no sumar sus proxies a cada lectura, y con ella el registro de consultas lentas, que escribiría
+ * en la base de prueba.
+ */
+@State(Scope.Benchmark)
+public class EstadoBaseDatos {
+
+    /** Número de emisiones de la base de prueba. */
+    @Param({"10000", "1000000", "10000000"})
+    public long filas;
+
+    /** Base de prueba del tamaño actual. */
+    public Path fichero;
+
+    public GestorBD gestor;
+
+    /** Empresa de la mitad del rango de IDs (las emisiones están repartidas por igual). */
+    public long idEmpresa;
+
+    @Setup(Level.Trial)
+    public void abrir() throws Exception {
+        fichero = BaseDatosBenchmark.preparar(filas);
+        gestor = abrirGestor(fichero);
+        idEmpresa = BaseDatosBenchmark.empresas(filas) / 2;
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        gestor.cerrar();
+    }
+
+    /**
+     * Gestor sin caché de consultas, copia columnar, instrumentación ni registro de consultas lentas.
+     */
+    static GestorBD abrirGestor(Path fichero) {
+        ConfiguracionBD configuracion = new ConfiguracionBD(BaseDatosBenchmark.url(fichero));
+        configuracion.setEntradasCacheConsultas(0);
+        configuracion.setMemoriaAlmacenColumnarMB(0);
+        configuracion.setInstrumentacion(false);
+        configuracion.setUmbralConsultaLentaMs(-1);
+        GestorBD gestor = new GestorBD(configuracion);
+        gestor.arrancarBD();
+        return gestor;
+    }
+}
@@ -0,0 +1,97 @@
+package ct.Benchmarks;
+
+import DAO.ControlCSV;
+import DAO.ExportadorCSV;
+import DAO.FiltroEmisiones;
+import Modelos.Emisiones;
+import Modelos.Empresa;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiempo de cada exportación a CSV de la tabla de emisiones completa y del listado de empresas.
+ * <p>
+ * Cada exportación es una sola medida ({@link Mode#SingleShotTime}): con 10 millones de filas dura segundos.
+ * {@link ControlCSV} escribe una lista ya cargada (como hace la interfaz tras listar las emisiones),
+ * así que su tiempo no incluye la consulta; {@link DAO.GestorBD#exportarEmisionesCSV} lee y escribe en streaming.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ExportacionBenchmark {
+
+    /**
+     * Listados ya cargados para {@link ControlCSV}.
+     */
+    @State(Scope.Benchmark)
+    public static class Listados {
+
+        List<Emisiones> emisiones;
+        List<Empresa> empresas;
+
+        @Setup(Level.Trial)
+        public void cargar(EstadoBaseDatos estado) {
+            emisiones = estado.gestor.getTodasEmisiones("");
+            empresas = estado.gestor.getTodasEmpresas();
+        }
+    }
+
+    /**
+     * Fichero de destino, que se vacía tras cada exportación y se borra al terminar.
+     */
+    @State(Scope.Benchmark)
+    public static class Destino {
+
+        File fichero;
+
+        @Setup(Level.Trial)
+        public void crear() throws IOException {
+            fichero = Files.createTempFile("carbontracker-benchmark-", ".csv").toFile();
+        }
+
+        @TearDown(Level.Invocation)
+        public void vaciar() throws IOException {
+            Files.write(fichero.toPath(), new byte[0]);
+        }
+
+        @TearDown(Level.Trial)
+        public void borrar() throws IOException {
+            Files.deleteIfExists(fichero.toPath());
+        }
+    }
+
+    @Benchmark
+    public File controlCsvEmisiones(Listados listados, Destino destino) throws IOException {
+        ControlCSV.exportarEmisiones(listados.emisiones, destino.fichero);
+        return destino.fichero;
+    }
+
+    @Benchmark
+    public File controlCsvEmpresas(Listados listados, Destino destino) throws IOException {
+        ControlCSV.exportarEmpresas(listados.empresas, destino.fichero);
+        return destino.fichero;
+    }
+
+    @Benchmark
+    public ExportadorCSV.Resultado exportadorEmisiones(EstadoBaseDatos estado, Destino destino) throws IOException {
+        return estado.gestor.exportarEmisionesCSV(new FiltroEmisiones(), destino.fichero, null);
+    }
+}
@@ -0,0 +1,103 @@
+package ct.Benchmarks;
+
+import DAO.FiltroEmisiones;
+import Modelos.Emisiones;
+import Modelos.Empresa;
+import Modelos.ResumenAnual;
+import Modelos.Usuario;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Year;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiempo medio de las lecturas de {@link DAO.GestorBD} que usa la interfaz: login, listados y búsquedas
+ * de empresas y emisiones, paginación, recuentos e informes.
+ * <p>
+ * Los listados completos de emisiones cargan la tabla entera en memoria: con 10 millones de filas
+ * necesitan un heap grande (de ahí {@code -Xmx8g}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LecturasBenchmark {
+
+    /** Tamaño de página de la tabla de emisiones de la interfaz. */
+    private static final int TAMANO_PAGINA = 200;
+
+    @Benchmark
+    public Usuario login(EstadoBaseDatos estado) {
+        return estado.gestor.login(BaseDatosBenchmark.USUARIO, BaseDatosBenchmark.CONTRASENA);
+    }
+
+    @Benchmark
+    public List<Empresa> empresasTodas(EstadoBaseDatos estado) {
+        return estado.gestor.getTodasEmpresas();
+    }
+
+    @Benchmark
+    public List<Empresa> empresasBusqueda(EstadoBaseDatos estado) {
+        return estado.gestor.getTodasEmpresas(BaseDatosBenchmark.TERMINO_EMPRESA);
+    }
+
+    @Benchmark
+    public List<Emisiones> emisionesTodas(EstadoBaseDatos estado) {
+        return estado.gestor.getTodasEmisiones("");
+    }
+
+    @Benchmark
+    public List<Emisiones> emisionesBusquedaTexto(EstadoBaseDatos estado) {
+        return estado.gestor.getTodasEmisiones(BaseDatosBenchmark.TERMINO_EMPRESA);
+    }
+
+    @Benchmark
+    public List<Emisiones> emisionesBusquedaFecha(EstadoBaseDatos estado) {
+        return estado.gestor.getTodasEmisiones(Year.now() + "-01");
+    }
+
+    @Benchmark
+    public List<Emisiones> emisionesEmpresa(EstadoBaseDatos estado) {
+        return estado.gestor.getEmissionsByCompanyId(estado.idEmpresa, "");
+    }
+
+    @Benchmark
+    public List<Emisiones> paginaEmisiones(EstadoBaseDatos estado) {
+        return estado.gestor.getPaginaEmisiones(new FiltroEmisiones(), null, TAMANO_PAGINA);
+    }
+
+    @Benchmark
+    public List<Emisiones> paginaEmisionesBusqueda(EstadoBaseDatos estado) {
+        return estado.gestor.getPaginaEmisiones(
+                new FiltroEmisiones(null, BaseDatosBenchmark.TERMINO_EMPRESA, true), null, TAMANO_PAGINA);
+    }
+
+    @Benchmark
+    public int contarEmisiones(EstadoBaseDatos estado) {
+        return estado.gestor.contarEmisiones(new FiltroEmisiones());
+    }
+
+    @Benchmark
+    public int contarEmisionesBusqueda(EstadoBaseDatos estado) {
+        return estado.gestor.contarEmisiones(new FiltroEmisiones(null, BaseDatosBenchmark.TERMINO_EMPRESA, false));
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, Double>> reporteEmpresa(EstadoBaseDatos estado) {
+        return estado.gestor.getReporteEmisionesPorEmpresa(estado.idEmpresa);
+    }
+
+    @Benchmark
+    public List<ResumenAnual> resumenAnual(EstadoBaseDatos estado) {
+        return estado.gestor.getResumenAnual(null);
+    }
+}
@@ -0,0 +1,736 @@
+package DAO;
+
+import Modelos.Emisiones;
+
+import java.time.YearMonth;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Copia en memoria, por columnas, de {@code registro_emisiones} para responder a los agregados
+ * del dashboard y de las recomendaciones sin volver a SQLite.
+ * <p>
+ * Estructura:
+ * <ul>
+ * <li><b>Columnas:</b> arrays paralelos de primitivos (ID, CO2e, cantidad, día) más la empresa y el tipo
+ * codificados como posición en un diccionario. Unos 40 bytes por fila.</li>
+ * <li><b>Índice por empresa:</b> para cada empresa, las posiciones de sus filas ordenadas por día,
+ * con lo que el total de un intervalo de fechas es una búsqueda binaria más un recorrido corto.</li>
+ * <li><b>Agregados:</b> totales por empresa, por empresa y tipo, y por empresa y mes, calculados al cargar
+ * y mantenidos con cada cambio. Las agrupaciones por tipo, por mes y por empresa cuestan lo que
+ * el número de grupos, no el de filas.</li>
+ * </ul>
+ * Se carga bajo demanda ({@link #cargar}) y se mantiene al día desde las vías de escritura de {@link GestorBD}
+ * (altas, modificaciones, bajas). Las operaciones masivas (importaciones) la invalidan y se vuelve a cargar
+ * en segundo plano. Los cambios hechos en la base de datos por otro proceso no se ven.
+ * <p>
+ * Tiene un presupuesto de memoria: si los datos no caben, la copia no se carga (o se descarta al crecer)
+ * y cada consulta devuelve null para que {@link GestorBD} la resuelva con SQL. Lo mismo ocurre mientras se carga.
+ * <p>
+ * Es segura entre hilos: las consultas comparten un cerrojo de lectura y los cambios toman el de escritura.
+ */
+public class AlmacenColumnar {
+
+    /**
+     * Situación de la copia en memoria.
+     */
+    public enum Estado {
+        /** Presupuesto 0: la copia no se usa nunca. */
+        DESACTIVADO,
+        /** Aún no se ha cargado, o se ha invalidado. */
+        SIN_CARGAR,
+        /** Carga en curso (mientras tanto se consulta con SQL). */
+        CARGANDO,
+        /** Disponible para las consultas. */
+        CARGADO,
+        /** Los datos no caben en el presupuesto de memoria. */
+        FUERA_DE_PRESUPUESTO
+    }
+
+    /** Bytes aproximados por fila: columnas, índice por empresa y marca de borrado. */
+    static final int BYTES_POR_FILA = 41;
+
+    /** Capacidad inicial de las columnas. */
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    /** Presupuesto de memoria en bytes (0 = desactivado). */
+    private final long presupuestoBytes;
+
+    private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+    /** Datos cargados (null si no están disponibles). Protegido por el cerrojo. */
+    private Datos datos;
+
+    /** Se incrementa con cada cambio notificado; una carga que no coincide al terminar se descarta. */
+    private long version;
+
+    /** Origen de las filas de la última carga, para recargar tras una invalidación. */
+    private ToLongFunction<Consumer<VistaEmision>> fuente;
+    private LongSupplier contador;
+
+    /** true mientras hay un hilo de recarga en marcha. Protegido por el cerrojo. */
+    private boolean recargando;
+
+    /** Invalidaciones llegadas durante una recarga: el mismo hilo vuelve a cargar al terminar. */
+    private boolean recargaPendiente;
+
+    private volatile Estado estado;
+
+    /**
+     * @param presupuestoMB Memoria máxima en MB (0 para desactivar la copia).
+     */
+    public AlmacenColumnar(int presupuestoMB) {
+        this.presupuestoBytes = Math.max(0, presupuestoMB) * 1024L * 1024L;
+        this.estado = presupuestoMB > 0 ? Estado.SIN_CARGAR : Estado.DESACTIVADO;
+    }
+
+    /**
+     * @return Situación actual de la copia.
+     */
+    public Estado getEstado() {
+        return estado;
+    }
+
+    // ==========================================
+    // CARGA E INVALIDACIÓN
+    // ==========================================
+
+    /**
+     * Carga la copia completa. Es una operación larga (un recorrido de la tabla): debe llamarse
+     * fuera del hilo de la interfaz. Mientras dura, las consultas devuelven null.
+     *
+     * @param fuente Recorre todas las emisiones en orden de ID, pasando cada fila a la acción;
+     *               devuelve las filas recorridas o -1 si hay error.
+     * @param contador Número de emisiones actual, para comprobar el presupuesto antes de leer nada.
+     * @return true si la copia ha quedado cargada.
+     */
+    public boolean cargar(ToLongFunction<Consumer<VistaEmision>> fuente, LongSupplier contador) {
+        long versionInicial;
+        long filasEstimadas = contador.getAsLong();
+        cerrojo.writeLock().lock();
+        try {
+            if (estado == Estado.DESACTIVADO) return false;
+            this.fuente = fuente;
+            this.contador = contador;
+            if (filasEstimadas * BYTES_POR_FILA > presupuestoBytes) {
+                datos = null;
+                estado = Estado.FUERA_DE_PRESUPUESTO;
+                return false;
+            }
+            datos = null;
+            estado = Estado.CARGANDO;
+            versionInicial = version;
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+
+        Datos nuevos = new Datos((int) Math.max(CAPACIDAD_INICIAL, filasEstimadas + filasEstimadas / 8));
+        boolean cabe = true;
+        long leidas;
+        try {
+            leidas = fuente.applyAsLong(nuevos::cargarFila);
+        } catch (PresupuestoSuperado e) {
+            cabe = false;
+            leidas = -1;
+        }
+        if (leidas >= 0) nuevos.terminarCarga();
+
+        cerrojo.writeLock().lock();
+        try {
+            if (!cabe) {
+                estado = Estado.FUERA_DE_PRESUPUESTO;
+                return false;
+            }
+            if (leidas < 0 || version != versionInicial) {
+                // Error de lectura, o escrituras durante la lectura que la copia podría no incluir
+                estado = Estado.SIN_CARGAR;
+                return false;
+            }
+            datos = nuevos;
+            estado = Estado.CARGADO;
+            return true;
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Descarta la copia tras un cambio masivo y, si ya se había cargado antes, la vuelve a cargar
+     * en un hilo en segundo plano.
+     * <p>
+     * Las invalidaciones seguidas (varias operaciones masivas una tras otra, por ejemplo) no lanzan un hilo
+     * cada una: si ya hay una recarga en marcha, solo se anota que hay que repetirla cuando termine.
+     */
+    public void invalidar() {
+        cerrojo.writeLock().lock();
+        try {
+            version++;
+            if (estado == Estado.DESACTIVADO) return;
+            datos = null;
+            estado = Estado.SIN_CARGAR;
+            if (fuente == null) return;
+            if (recargando) {
+                recargaPendiente = true;
+                return;
+            }
+            recargando = true;
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+        Thread hilo = new Thread(this::recargar, "almacen-columnar");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Descarta la copia sin volver a cargarla, para un cambio masivo que aún no ha terminado (tras cada lote
+     * de una importación, por ejemplo): hasta la siguiente {@link #invalidar()} las consultas devuelven null
+     * y una carga que estuviera en curso se descarta al terminar.
+     */
+    public void descartar() {
+        cerrojo.writeLock().lock();
+        try {
+            version++;
+            if (estado == Estado.DESACTIVADO) return;
+            datos = null;
+            if (estado != Estado.CARGANDO) estado = Estado.SIN_CARGAR;
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hilo de recarga: carga la copia y repite mientras lleguen invalidaciones durante la carga
+     * (una carga que coincide con un cambio se descarta, así que la última vuelta es la que queda).
+     */
+    private void recargar() {
+        boolean otraVez = true;
+        while (otraVez) {
+            ToLongFunction<Consumer<VistaEmision>> recarga;
+            LongSupplier recuento;
+            cerrojo.writeLock().lock();
+            try {
+                recargaPendiente = false;
+                recarga = fuente;
+                recuento = contador;
+            } finally {
+                cerrojo.writeLock().unlock();
+            }
+            try {
+                cargar(recarga, recuento);
+            } catch (RuntimeException e) {
+                System.out.println("Error al recargar la copia en memoria de las emisiones: " + e.getMessage());
+            }
+            cerrojo.writeLock().lock();
+            try {
+                otraVez = recargaPendiente;
+                recargando = otraVez;
+            } finally {
+                cerrojo.writeLock().unlock();
+            }
+        }
+    }
+
+    // ==========================================
+    // CAMBIOS DESDE LAS VÍAS DE ESCRITURA
+    // ==========================================
+
+    /**
+     * Añade una emisión recién insertada (con su ID ya asignado).
+     */
+    public void alta(Emisiones emision) {
+        cambiar(d -> d.anadir(emision.getId(), emision.getIdEmpresa(), emision.getTipoEmision(),
+                (int) emision.getFecha().toEpochDay(), emision.getCantidadEmision(), emision.getCo2e()));
+    }
+
+    /**
+     * Sustituye los datos de una emisión modificada.
+     */
+    public void modificacion(Emisiones emision) {
+        cambiar(d -> d.modificar(emision.getId(), emision.getIdEmpresa(), emision.getTipoEmision(),
+                (int) emision.getFecha().toEpochDay(), emision.getCantidadEmision(), emision.getCo2e()));
+    }
+
+    /**
+     * Quita una emisión borrada.
+     */
+    public void baja(long idEmision) {
+        cambiar(d -> d.quitar(idEmision));
+    }
+
+    /**
+     * Quita todas las emisiones de una empresa borrada (el borrado en cascada de la base de datos).
+     */
+    public void bajaEmpresa(long idEmpresa) {
+        cambiar(d -> d.quitarEmpresa(idEmpresa));
+    }
+
+    /**
+     * Aplica un cambio a la copia cargada; si deja de caber en el presupuesto, se descarta.
+     */
+    private void cambiar(Consumer<Datos> cambio) {
+        cerrojo.writeLock().lock();
+        try {
+            version++;
+            if (datos == null) return;
+            cambio.accept(datos);
+            if (datos.bytes() > presupuestoBytes) {
+                datos = null;
+                estado = Estado.FUERA_DE_PRESUPUESTO;
+            }
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    // ==========================================
+    // CONSULTAS (null = no disponible, usar SQL)
+    // ==========================================
+
+    /**
+     * CO2e total por tipo, de mayor a menor (mismo resultado que {@link GestorBD#getReporteEmisionesPorEmpresa}).
+     *
+     * @param idEmpresa Empresa (null para todas).
+     * @return Pares tipo → total, o null si la copia no está disponible.
+     */
+    public List<Map.Entry<String, Double>> totalesPorTipo(Long idEmpresa) {
+        cerrojo.readLock().lock();
+        try {
+            if (datos == null) return null;
+            Datos d = datos;
+            double[] totales = new double[d.tipos.size()];
+            long[] numeros = new long[d.tipos.size()];
+            for (int empresa = 0; empresa < d.numEmpresas; empresa++) {
+                if (idEmpresa != null && d.idsEmpresa[empresa] != idEmpresa) continue;
+                double[] co2eTipo = d.co2ePorEmpresaTipo[empresa];
+                long[] numTipo = d.numPorEmpresaTipo[empresa];
+                for (int tipo = 0; tipo < co2eTipo.length; tipo++) {
+                    totales[tipo] += co2eTipo[tipo];
+                    numeros[tipo] += numTipo[tipo];
+                }
+            }
+            List<Map.Entry<String, Double>> resultado = new ArrayList<>();
+            for (int tipo = 0; tipo < totales.length; tipo++) {
+                if (numeros[tipo] > 0) resultado.add(new AbstractMap.SimpleEntry<>(d.tipos.get(tipo), totales[tipo]));
+            }
+            resultado.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+            return resultado;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * CO2e total por mes, en orden cronológico.
+     *
+     * @param idEmpresa Empresa (null para todas).
+     * @return Mapa mes → total, o null si la copia no está disponible.
+     */
+    public Map<YearMonth, Double> totalesPorMes(Long idEmpresa) {
+        cerrojo.readLock().lock();
+        try {
+            if (datos == null) return null;
+            Datos d = datos;
+            TreeMap<Integer, double[]> suma = new TreeMap<>();
+            for (int empresa = 0; empresa < d.numEmpresas; empresa++) {
+                if (idEmpresa != null && d.idsEmpresa[empresa] != idEmpresa) continue;
+                for (Map.Entry<Integer, double[]> mes : d.co2ePorEmpresaMes.get(empresa).entrySet()) {
+                    double[] acumulado = suma.computeIfAbsent(mes.getKey(), k -> new double[2]);
+                    acumulado[0] += mes.getValue()[0];
+                    acumulado[1] += mes.getValue()[1];
+                }
+            }
+            Map<YearMonth, Double> resultado = new LinkedHashMap<>();
+            for (Map.Entry<Integer, double[]> mes : suma.entrySet()) {
+                if (mes.getValue()[1] > 0) {
+                    resultado.put(YearMonth.of(mes.getKey() / 12, mes.getKey() % 12 + 1), mes.getValue()[0]);
+                }
+            }
+            return resultado;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * CO2e total de cada empresa con emisiones.
+     *
+     * @return Mapa ID de empresa → total, o null si la copia no está disponible.
+     */
+    public Map<Long, Double> totalesPorEmpresa() {
+        cerrojo.readLock().lock();
+        try {
+            if (datos == null) return null;
+            Map<Long, Double> resultado = new HashMap<>();
+            for (int empresa = 0; empresa < datos.numEmpresas; empresa++) {
+                if (datos.numPorEmpresa[empresa] > 0) resultado.put(datos.idsEmpresa[empresa], datos.co2ePorEmpresa[empresa]);
+            }
+            return resultado;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * CO2e entre dos días (ambos incluidos), con el índice por fecha de cada empresa.
+     *
+     * @param idEmpresa Empresa (null para todas).
+     * @param desde Primer día (días desde 1970-01-01).
+     * @param hasta Último día.
+     * @return Total, o null si la copia no está disponible.
+     */
+    public Double co2eEntre(Long idEmpresa, int desde, int hasta) {
+        cerrojo.readLock().lock();
+        try {
+            if (datos == null) return null;
+            if (idEmpresa != null) {
+                Integer empresa = datos.indicePorEmpresa.get(idEmpresa);
+                return empresa == null ? 0.0 : co2eEntre(empresa, desde, hasta);
+            }
+            double total = 0;
+            for (int empresa = 0; empresa < datos.numEmpresas; empresa++) {
+                total += co2eEntre(empresa, desde, hasta);
+            }
+            return total;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Suma el rango de días del índice de una empresa (con el cerrojo de lectura tomado).
+     */
+    private double co2eEntre(int empresa, int desde, int hasta) {
+        int[] posiciones = datos.porEmpresa[empresa];
+        int tamano = datos.tamPorEmpresa[empresa];
+        double total = 0;
+        for (int i = datos.primeraDesde(posiciones, tamano, desde); i < tamano; i++) {
+            int fila = posiciones[i];
+            if (datos.dia[fila] > hasta) break;
+            total += datos.co2e[fila];
+        }
+        return total;
+    }
+
+    // ==========================================
+    // DATOS
+    // ==========================================
+
+    /**
+     * Columnas, diccionarios, índices y agregados. Solo se accede con el cerrojo tomado
+     * (o antes de publicarse, durante la carga).
+     */
+    private final class Datos {
+
+        // Columnas (una posición por fila; las borradas quedan marcadas)
+        int filas;
+        long[] id;
+        double[] co2e;
+        double[] cantidad;
+        int[] dia;
+        int[] empresa;
+        int[] tipo;
+        final BitSet borrado = new BitSet();
+
+        /** false si alguna alta ha llegado con un ID menor que el último (se busca por recorrido). */
+        boolean idsOrdenados = true;
+
+        // Diccionarios
+        int numEmpresas;
+        long[] idsEmpresa = new long[16];
+        final Map<Long, Integer> indicePorEmpresa = new HashMap<>();
+        final List<String> tipos = new ArrayList<>();
+        final Map<String, Integer> indicePorTipo = new HashMap<>();
+
+        // Índice por empresa: posiciones ordenadas por día
+        int[][] porEmpresa = new int[16][];
+        int[] tamPorEmpresa = new int[16];
+
+        // Agregados
+        double[] co2ePorEmpresa = new double[16];
+        long[] numPorEmpresa = new long[16];
+        double[][] co2ePorEmpresaTipo = new double[16][];
+        long[][] numPorEmpresaTipo = new long[16][];
+        /** Por empresa: mes (año * 12 + mes - 1) → {CO2e, número de filas}. */
+        final List<TreeMap<Integer, double[]>> co2ePorEmpresaMes = new ArrayList<>();
+
+        Datos(int capacidad) {
+            id = new long[capacidad];
+            co2e = new double[capacidad];
+            cantidad = new double[capacidad];
+            dia = new int[capacidad];
+            empresa = new int[capacidad];
+            tipo = new int[capacidad];
+        }
+
+        /**
+         * Memoria aproximada ocupada por las columnas y el índice.
+         */
+        long bytes() {
+            return (long) id.length * BYTES_POR_FILA;
+        }
+
+        /**
+         * Fila leída durante la carga: se añade a columnas y agregados; el índice por empresa
+         * se ordena al terminar ({@link #terminarCarga()}).
+         */
+        void cargarFila(VistaEmision vista) {
+            if (filas == id.length && (long) (filas + filas / 2) * BYTES_POR_FILA > presupuestoBytes) {
+                throw new PresupuestoSuperado();
+            }
+            int fila = anadirColumnas(vista.getId(), indiceEmpresa(vista.getIdEmpresa()), indiceTipo(vista.getTipo()),
+                    vista.getDiaEpoca(), vista.getCantidad(), vista.getCo2e());
+            anadirAIndice(fila, false);
+            sumar(fila, 1);
+        }
+
+        /**
+         * Ordena por día el índice de cada empresa y calcula los totales por mes
+         * (recorriendo el índice ya ordenado, cada mes se acumula de una vez).
+         */
+        void terminarCarga() {
+            for (int e = 0; e < numEmpresas; e++) {
+                int tamano = tamPorEmpresa[e];
+                int[] posiciones = porEmpresa[e];
+                long[] claves = new long[tamano];
+                for (int i = 0; i < tamano; i++) claves[i] = ((long) dia[posiciones[i]] << 32) | posiciones[i];
+                Arrays.sort(claves);
+                for (int i = 0; i < tamano; i++) posiciones[i] = (int) claves[i];
+
+                TreeMap<Integer, double[]> meses = co2ePorEmpresaMes.get(e);
+                int mesActual = Integer.MIN_VALUE;
+                double[] acumulado = null;
+                for (int i = 0; i < tamano; i++) {
+                    int fila = posiciones[i];
+                    int mes = mes(dia[fila]);
+                    if (mes != mesActual) {
+                        mesActual = mes;
+                        acumulado = new double[2];
+                        meses.put(mes, acumulado);
+                    }
+                    acumulado[0] += co2e[fila];
+                    acumulado[1]++;
+                }
+            }
+        }
+
+        /**
+         * Alta incremental: columnas, índice (en su posición) y agregados, incluido el mes.
+         */
+        void anadir(long idEmision, long idEmpresa, String nombreTipo, int diaEpoca, double cantidadEmision, double co2eEmision) {
+            if (filas > 0 && idEmision <= id[filas - 1]) idsOrdenados = false;
+            int fila = anadirColumnas(idEmision, indiceEmpresa(idEmpresa), indiceTipo(nombreTipo), diaEpoca,
+                    cantidadEmision, co2eEmision);
+            anadirAIndice(fila, true);
+            sumar(fila, 1);
+            sumarMes(fila, 1);
+        }
+
+        /**
+         * Modificación incremental: la fila conserva su posición y se recoloca en índices y agregados.
+         */
+        void modificar(long idEmision, long idEmpresa, String nombreTipo, int diaEpoca, double cantidadEmision, double co2eEmision) {
+            int fila = posicionDe(idEmision);
+            if (fila < 0) return;
+            quitarDeIndice(fila);
+            sumar(fila, -1);
+            sumarMes(fila, -1);
+            empresa[fila] = indiceEmpresa(idEmpresa);
+            tipo[fila] = indiceTipo(nombreTipo);
+            dia[fila] = diaEpoca;
+            cantidad[fila] = cantidadEmision;
+            co2e[fila] = co2eEmision;
+            anadirAIndice(fila, true);
+            sumar(fila, 1);
+            sumarMes(fila, 1);
+        }
+
+        /**
+         * Baja incremental de una emisión por su ID (si está en la copia).
+         */
+        void quitar(long idEmision) {
+            int fila = posicionDe(idEmision);
+            if (fila < 0) return;
+            quitarDeIndice(fila);
+            sumar(fila, -1);
+            sumarMes(fila, -1);
+            borrado.set(fila);
+        }
+
+        /**
+         * Baja de todas las emisiones de una empresa.
+         */
+        void quitarEmpresa(long idEmpresa) {
+            Integer e = indicePorEmpresa.get(idEmpresa);
+            if (e == null) return;
+            for (int i = 0; i < tamPorEmpresa[e]; i++) {
+                int fila = porEmpresa[e][i];
+                sumar(fila, -1);
+                borrado.set(fila);
+            }
+            tamPorEmpresa[e] = 0;
+            co2ePorEmpresaMes.get(e).clear();
+        }
+
+        private int anadirColumnas(long idEmision, int indiceEmpresa, int indiceTipo, int diaEpoca,
+                                   double cantidadEmision, double co2eEmision) {
+            if (filas == id.length) crecer();
+            int fila = filas++;
+            id[fila] = idEmision;
+            empresa[fila] = indiceEmpresa;
+            tipo[fila] = indiceTipo;
+            dia[fila] = diaEpoca;
+            cantidad[fila] = cantidadEmision;
+            co2e[fila] = co2eEmision;
+            return fila;
+        }
+
+        private void crecer() {
+            int capacidad = id.length + id.length / 2;
+            id = Arrays.copyOf(id, capacidad);
+            co2e = Arrays.copyOf(co2e, capacidad);
+            cantidad = Arrays.copyOf(cantidad, capacidad);
+            dia = Arrays.copyOf(dia, capacidad);
+            empresa = Arrays.copyOf(empresa, capacidad);
+            tipo = Arrays.copyOf(tipo, capacidad);
+        }
+
+        private int indiceEmpresa(long idEmpresa) {
+            Integer indice = indicePorEmpresa.get(idEmpresa);
+            if (indice != null) return indice;
+            int nuevo = numEmpresas++;
+            if (nuevo == idsEmpresa.length) {
+                int capacidad = nuevo * 2;
+                idsEmpresa = Arrays.copyOf(idsEmpresa, capacidad);
+                porEmpresa = Arrays.copyOf(porEmpresa, capacidad);
+                tamPorEmpresa = Arrays.copyOf(tamPorEmpresa, capacidad);
+                co2ePorEmpresa = Arrays.copyOf(co2ePorEmpresa, capacidad);
+                numPorEmpresa = Arrays.copyOf(numPorEmpresa, capacidad);
+                co2ePorEmpresaTipo = Arrays.copyOf(co2ePorEmpresaTipo, capacidad);
+                numPorEmpresaTipo = Arrays.copyOf(numPorEmpresaTipo, capacidad);
+            }
+            idsEmpresa[nuevo] = idEmpresa;
+            porEmpresa[nuevo] = new int[16];
+            co2ePorEmpresaTipo[nuevo] = new double[tipos.size()];
+            numPorEmpresaTipo[nuevo] = new long[tipos.size()];
+            co2ePorEmpresaMes.add(new TreeMap<>());
+            indicePorEmpresa.put(idEmpresa, nuevo);
+            return nuevo;
+        }
+
+        private int indiceTipo(String nombreTipo) {
+            Integer indice = indicePorTipo.get(nombreTipo);
+            if (indice != null) return indice;
+            int nuevo = tipos.size();
+            tipos.add(nombreTipo);
+            indicePorTipo.put(nombreTipo, nuevo);
+            return nuevo;
+        }
+
+        /**
+         * Añade la fila al índice de su empresa: al final (carga, se ordena después) o en su posición por día.
+         */
+        private void anadirAIndice(int fila, boolean ordenado) {
+            int e = empresa[fila];
+            int tamano = tamPorEmpresa[e];
+            if (tamano == porEmpresa[e].length) porEmpresa[e] = Arrays.copyOf(porEmpresa[e], tamano * 2);
+            int posicion = ordenado ? primeraDesde(porEmpresa[e], tamano, dia[fila] + 1) : tamano;
+            System.arraycopy(porEmpresa[e], posicion, porEmpresa[e], posicion + 1, tamano - posicion);
+            porEmpresa[e][posicion] = fila;
+            tamPorEmpresa[e] = tamano + 1;
+        }
+
+        private void quitarDeIndice(int fila) {
+            int e = empresa[fila];
+            int[] posiciones = porEmpresa[e];
+            int tamano = tamPorEmpresa[e];
+            for (int i = primeraDesde(posiciones, tamano, dia[fila]); i < tamano; i++) {
+                if (posiciones[i] == fila) {
+                    System.arraycopy(posiciones, i + 1, posiciones, i, tamano - i - 1);
+                    tamPorEmpresa[e] = tamano - 1;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Primera posición del índice cuyo día es mayor o igual que el dado (búsqueda binaria).
+         */
+        int primeraDesde(int[] posiciones, int tamano, int desde) {
+            int bajo = 0, alto = tamano;
+            while (bajo < alto) {
+                int medio = (bajo + alto) >>> 1;
+                if (dia[posiciones[medio]] < desde) bajo = medio + 1; else alto = medio;
+            }
+            return bajo;
+        }
+
+        private int posicionDe(long idEmision) {
+            if (idsOrdenados) {
+                int posicion = Arrays.binarySearch(id, 0, filas, idEmision);
+                return posicion >= 0 && !borrado.get(posicion) ? posicion : -1;
+            }
+            for (int fila = filas - 1; fila >= 0; fila--) {
+                if (id[fila] == idEmision && !borrado.get(fila)) return fila;
+            }
+            return -1;
+        }
+
+        /** Suma (signo 1) o resta (signo -1) la fila a los totales por empresa y por tipo. */
+        private void sumar(int fila, int signo) {
+            int e = empresa[fila];
+            int t = tipo[fila];
+            if (t >= co2ePorEmpresaTipo[e].length) {
+                co2ePorEmpresaTipo[e] = Arrays.copyOf(co2ePorEmpresaTipo[e], tipos.size());
+                numPorEmpresaTipo[e] = Arrays.copyOf(numPorEmpresaTipo[e], tipos.size());
+            }
+            co2ePorEmpresa[e] += signo * co2e[fila];
+            numPorEmpresa[e] += signo;
+            co2ePorEmpresaTipo[e][t] += signo * co2e[fila];
+            numPorEmpresaTipo[e][t] += signo;
+        }
+
+        private void sumarMes(int fila, int signo) {
+            double[] acumulado = co2ePorEmpresaMes.get(empresa[fila]).computeIfAbsent(mes(dia[fila]), k -> new double[2]);
+            acumulado[0] += signo * co2e[fila];
+            acumulado[1] += signo;
+        }
+    }
+
+    /**
+     * Interrumpe la carga cuando las columnas tendrían que crecer por encima del presupuesto.
+     */
+    private static final class PresupuestoSuperado extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        PresupuestoSuperado() {
+            super("Las emisiones no caben en el presupuesto de memoria", null, false, false);
+        }
+    }
+
+    /**
+     * Mes de un día (año * 12 + mes - 1) sin crear objetos (algoritmo "civil from days" de H. Hinnant).
+     */
+    static int mes(int diaEpoca) {
+        int z = diaEpoca + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int diaEra = z - era * 146097;
+        int anoEra = (diaEra - diaEra / 1460 + diaEra / 36524 - diaEra / 146096) / 365;
+        int diaAno = diaEra - (365 * anoEra + anoEra / 4 - anoEra / 100);
+        int mp = (5 * diaAno + 2) / 153;
+        int mes = mp < 10 ? mp + 3 : mp - 9;
+        int ano = anoEra + era * 400 + (mes <= 2 ? 1 : 0);
+        return ano * 12 + mes - 1;
+    }
+}
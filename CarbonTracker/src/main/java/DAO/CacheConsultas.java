@@ -0,0 +1,181 @@
+package DAO;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Caché en memoria de los resultados de las consultas de lectura de {@link GestorBD}.
+ * <p>
+ * Funcionamiento:
+ * <ul>
+ * <li><b>Clave:</b> nombre de la consulta más sus argumentos (ej. {@code getSedesPorEmpresa} + ID de empresa).</li>
+ * <li><b>Dependencias:</b> cada entrada anota las tablas de las que sale su resultado y, si se limita a una
+ * empresa, su ID. Tras confirmar una escritura, {@link GestorBD} invalida la tabla y la empresa tocadas:
+ * solo se descartan las entradas de esa empresa y las que abarcan todas las empresas.</li>
+ * <li><b>Tamaño:</b> un máximo de entradas; al superarlo se expulsa la usada hace más tiempo (LRU).</li>
+ * </ul>
+ * Una lectura que empieza antes de una invalidación y termina después no se guarda (podría traer datos
+ * anteriores a la escritura). Tampoco se guardan los resultados vacíos: los métodos de {@link GestorBD}
+ * devuelven una lista vacía también cuando fallan, y no se debe recordar un error.
+ * <p>
+ * Los cambios hechos en la base de datos por otro proceso no se ven. Es segura entre hilos.
+ */
+public class CacheConsultas {
+
+    /**
+     * Tablas (o grupos de tablas) de las que dependen las entradas.
+     */
+    public enum Tabla {
+        /** {@code empresa}. */
+        EMPRESA,
+        /** {@code registro_emisiones} y sus agregados ({@code empresa_totales}, {@code emision_mensual}). */
+        EMISIONES,
+        /** {@code sede}. */
+        SEDE,
+        /** {@code factor_emision}. */
+        FACTOR
+    }
+
+    /**
+     * Contadores de uso desde que se creó la caché.
+     *
+     * @param aciertos Lecturas servidas desde memoria.
+     * @param fallos Lecturas que han tenido que ir a la base de datos.
+     * @param invalidadas Entradas descartadas por una escritura.
+     * @param expulsadas Entradas descartadas por falta de sitio.
+     * @param entradas Entradas guardadas ahora mismo.
+     * @param capacidad Máximo de entradas (0 = caché desactivada).
+     */
+    public record Estadisticas(long aciertos, long fallos, long invalidadas, long expulsadas, int entradas, int capacidad) {
+
+        /**
+         * @return Proporción de aciertos (0 a 1), o 0 si aún no hay lecturas.
+         */
+        public double tasaAciertos() {
+            long total = aciertos + fallos;
+            return total == 0 ? 0 : (double) aciertos / total;
+        }
+    }
+
+    /** Consulta y argumentos (la lista admite nulos, como "todas las empresas"). */
+    private record Clave(String consulta, List<Object> argumentos) { }
+
+    /** Resultado guardado y de qué depende. */
+    private record Entrada(Object valor, Set<Tabla> tablas, Long idEmpresa) { }
+
+    /** Máximo de entradas (0 = desactivada). */
+    private final int capacidad;
+
+    /** Entradas en orden de uso (la primera es la usada hace más tiempo). Protegido por {@code this}. */
+    private final LinkedHashMap<Clave, Entrada> entradas;
+
+    /** Se incrementa con cada invalidación; una lectura que no coincide al terminar no se guarda. */
+    private long generacion;
+
+    private long aciertos;
+    private long fallos;
+    private long invalidadas;
+    private long expulsadas;
+
+    /**
+     * @param capacidad Máximo de entradas (0 para desactivar la caché).
+     */
+    public CacheConsultas(int capacidad) {
+        this.capacidad = Math.max(0, capacidad);
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Clave, Entrada> mayor) {
+                if (size() <= CacheConsultas.this.capacidad) return false;
+                expulsadas++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Devuelve el resultado guardado de una consulta o, si no está, lo lee y lo guarda.
+     * <p>
+     * El resultado guardado se devuelve tal cual a cada llamada: quien lo recibe no debe modificarlo
+     * (o debe devolver una copia).
+     *
+     * @param consulta Nombre de la consulta (normalmente el del método).
+     * @param idEmpresa Empresa a la que se limita el resultado (null si abarca todas).
+     * @param tablas Tablas de las que depende el resultado.
+     * @param lectura Lee el resultado de la base de datos.
+     * @param argumentos Resto de argumentos que distinguen el resultado (además de la empresa).
+     * @return Resultado de la consulta.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T obtener(String consulta, Long idEmpresa, Set<Tabla> tablas, Supplier<T> lectura, Object... argumentos) {
+        if (capacidad == 0) return lectura.get();
+
+        Object[] clave = Arrays.copyOf(argumentos, argumentos.length + 1);
+        clave[argumentos.length] = idEmpresa;
+        Clave buscada = new Clave(consulta, Arrays.asList(clave));
+        long generacionInicial;
+        synchronized (this) {
+            Entrada entrada = entradas.get(buscada);
+            if (entrada != null) {
+                aciertos++;
+                return (T) entrada.valor();
+            }
+            fallos++;
+            generacionInicial = generacion;
+        }
+
+        T valor = lectura.get();
+        if (valor == null || vacio(valor)) return valor;
+        synchronized (this) {
+            if (generacion == generacionInicial) {
+                entradas.put(buscada, new Entrada(valor, tablas, idEmpresa));
+            }
+        }
+        return valor;
+    }
+
+    /**
+     * Descarta las entradas que dependen de alguna de las tablas para una empresa:
+     * las de esa empresa y las que abarcan todas las empresas.
+     *
+     * @param idEmpresa Empresa afectada por la escritura (null si puede ser cualquiera).
+     * @param tablas Tablas modificadas.
+     */
+    public synchronized void invalidar(Long idEmpresa, Tabla... tablas) {
+        Set<Tabla> modificadas = EnumSet.noneOf(Tabla.class);
+        modificadas.addAll(Arrays.asList(tablas));
+        generacion++;
+        Iterator<Entrada> it = entradas.values().iterator();
+        while (it.hasNext()) {
+            Entrada entrada = it.next();
+            if (Collections.disjoint(entrada.tablas(), modificadas)) continue;
+            if (idEmpresa == null || entrada.idEmpresa() == null || entrada.idEmpresa().equals(idEmpresa)) {
+                it.remove();
+                invalidadas++;
+            }
+        }
+    }
+
+    /**
+     * @return Contadores de aciertos, fallos y descartes.
+     */
+    public synchronized Estadisticas getEstadisticas() {
+        return new Estadisticas(aciertos, fallos, invalidadas, expulsadas, entradas.size(), capacidad);
+    }
+
+    /**
+     * Indica si un resultado es una colección o un mapa vacío.
+     */
+    private static boolean vacio(Object valor) {
+        if (valor instanceof Collection<?> coleccion) return coleccion.isEmpty();
+        if (valor instanceof Map<?, ?> mapa) return mapa.isEmpty();
+        return false;
+    }
+}
@@ -0,0 +1,104 @@
+package DAO;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Permite cancelar desde otro hilo las consultas que una tarea está ejecutando en {@link GestorBD}.
+ * <p>
+ * La tarea se lanza con {@link #ejecutar(Supplier)}: mientras dura, el pool de conexiones registra aquí
+ * cada sentencia que se abre en ese hilo. {@link #cancelar()} llama a {@link Statement#cancel()} sobre
+ * las que siguen abiertas (en SQLite, {@code sqlite3_interrupt}), de modo que la consulta termina
+ * con un error de interrupción en lugar de llegar hasta el final.
+ * <p>
+ * Las sentencias se retiran antes de devolver su conexión al pool, así que una cancelación tardía
+ * nunca interrumpe la consulta de otro hilo que reutilice esa conexión.
+ */
+public final class Cancelacion {
+
+    /** Cancelación asociada a la tarea que se ejecuta en el hilo actual. */
+    private static final ThreadLocal<Cancelacion> ACTUAL = new ThreadLocal<>();
+
+    /** Sentencias abiertas por la tarea. */
+    private final List<Statement> sentencias = new ArrayList<>();
+
+    /** Indica si se ha solicitado la cancelación. */
+    private volatile boolean cancelada = false;
+
+    /**
+     * Ejecuta la tarea en el hilo actual asociándole esta cancelación.
+     *
+     * @param tarea Operación sobre la base de datos (normalmente una llamada a GestorBD).
+     * @return Resultado de la tarea (si se cancela, lo que devuelva GestorBD ante el error).
+     */
+    public <T> T ejecutar(Supplier<T> tarea) {
+        ACTUAL.set(this);
+        try {
+            return tarea.get();
+        } finally {
+            ACTUAL.remove();
+            synchronized (this) {
+                sentencias.clear();
+            }
+        }
+    }
+
+    /**
+     * Solicita la cancelación e interrumpe las consultas en curso. Se puede llamar desde cualquier hilo.
+     */
+    public synchronized void cancelar() {
+        cancelada = true;
+        for (Statement sentencia : sentencias) {
+            try {
+                sentencia.cancel();
+            } catch (SQLException e) {
+                System.out.println("Error al cancelar la consulta: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return true si se ha solicitado la cancelación.
+     */
+    public boolean isCancelada() {
+        return cancelada;
+    }
+
+    /**
+     * Indica si la tarea que se ejecuta en el hilo actual ha sido cancelada.
+     * Permite a los bucles largos (exportaciones) detenerse entre dos filas sin esperar a un error de SQLite.
+     *
+     * @return true si el hilo ejecuta una tarea cancelada; false si no está cancelada o no hay tarea.
+     */
+    static boolean actualCancelada() {
+        Cancelacion actual = ACTUAL.get();
+        return actual != null && actual.cancelada;
+    }
+
+    /**
+     * Registra una sentencia recién abierta en el hilo actual (lo llama el pool de conexiones).
+     * Si la tarea ya estaba cancelada, la consulta ni siquiera empieza.
+     */
+    static void registrar(Statement sentencia) throws SQLException {
+        Cancelacion actual = ACTUAL.get();
+        if (actual == null) return;
+        synchronized (actual) {
+            if (actual.cancelada) throw new SQLException("Consulta cancelada");
+            actual.sentencias.add(sentencia);
+        }
+    }
+
+    /**
+     * Retira una sentencia antes de devolverla al pool (lo llama el pool de conexiones).
+     */
+    static void retirar(Statement sentencia) {
+        Cancelacion actual = ACTUAL.get();
+        if (actual == null) return;
+        synchronized (actual) {
+            actual.sentencias.remove(sentencia);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package DAO;
+
+/**
+ * Posición de una emisión en el orden de paginación (día, id).
+ * <p>
+ * Se usa como cursor: la página siguiente empieza justo después de esta clave.
+ *
+ * @param dia Fecha de la emisión como días desde 1970-01-01 ({@link java.time.LocalDate#toEpochDay()}).
+ * @param id ID de la emisión (desempata las emisiones de la misma fecha).
+ */
+public record ClaveEmision(long dia, long id) {
+}
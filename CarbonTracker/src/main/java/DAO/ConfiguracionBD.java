@@ -0,0 +1,135 @@
+package DAO;
+
+/**
+ * Parámetros de configuración del almacenamiento SQLite utilizado por {@link GestorBD}.
+ * <p>
+ * Permite elegir el modo de diario de SQLite, el número de conexiones de lectura,
+ * el comportamiento ante bloqueos (tiempo de espera y reintentos), la memoria de la copia
+ * columnar de emisiones ({@link AlmacenColumnar}), el tamaño de la caché de consultas ({@link CacheConsultas})
+ * si se miden los tiempos de las operaciones ({@link MetricasBD}) y a partir de cuándo una consulta se guarda
+ * en el registro de consultas lentas ({@link RegistroConsultasLentas}).
+ */
+public class ConfiguracionBD {
+
+    /**
+     * Modos de almacenamiento disponibles.
+     */
+    public enum ModoAlmacenamiento {
+        /** Diario de rollback clásico de SQLite: los escritores bloquean a los lectores al confirmar. */
+        CLASICO,
+        /** Write-Ahead Logging: los lectores siguen leyendo mientras se escribe. */
+        WAL
+    }
+
+    /** Cadena de conexión JDBC por defecto de la aplicación. */
+    public static final String URL_POR_DEFECTO = "jdbc:sqlite:carbon_tracker.db";
+
+    /** Cadena de conexión JDBC de la base de datos. */
+    private String url;
+
+    /** Modo de diario con el que se abre la base de datos. */
+    private ModoAlmacenamiento modo = ModoAlmacenamiento.WAL;
+
+    /** Número máximo de conexiones de solo lectura. */
+    private int conexionesLectura = 4;
+
+    /** Milisegundos que SQLite espera a que se libere un bloqueo antes de devolver SQLITE_BUSY. */
+    private int esperaBloqueoMs = 5000;
+
+    /** Número de reintentos de una sentencia que falla con SQLITE_BUSY/SQLITE_LOCKED. */
+    private int reintentos = 3;
+
+    /** Pausa base entre reintentos (se multiplica por el número de intento). */
+    private int pausaReintentoMs = 50;
+
+    /** Memoria máxima (MB) de la copia columnar de emisiones en memoria; 0 la desactiva. */
+    private int memoriaAlmacenColumnarMB = 256;
+
+    /** Máximo de resultados de consultas guardados en memoria ({@link CacheConsultas}); 0 la desactiva. */
+    private int entradasCacheConsultas = 512;
+
+    /** Indica si el pool mide las operaciones y consultas ({@link MetricasBD}). */
+    private boolean instrumentacion = true;
+
+    /**
+     * Indica si cada préstamo de conexión se atribuye en {@link MetricasBD} al método que la pidió, lo que
+     * recorre la pila en cada préstamo. Sin ella, los préstamos se agrupan como lectura o escritura.
+     * Requiere la instrumentación.
+     */
+    private boolean atribucionOperaciones = false;
+
+    /**
+     * Milisegundos a partir de los cuales una ejecución se guarda en el registro de consultas lentas
+     * (0 las guarda todas; negativo lo desactiva). Requiere la instrumentación.
+     */
+    private int umbralConsultaLentaMs = 200;
+
+    /** Máximo de entradas del registro de consultas lentas; al superarlo se borran las más antiguas. */
+    private int maxConsultasLentas = 5000;
+
+    /**
+     * Configuración por defecto sobre la base de datos de la aplicación.
+     */
+    public ConfiguracionBD() {
+        this(URL_POR_DEFECTO);
+    }
+
+    /**
+     * Configuración por defecto sobre una base de datos concreta.
+     *
+     * @param url Cadena de conexión JDBC.
+     */
+    public ConfiguracionBD(String url) {
+        this.url = url;
+    }
+
+    // Getters y Setters
+
+    public String getUrl() { return url; }
+
+    public void setUrl(String url) { this.url = url; }
+
+    public ModoAlmacenamiento getModo() { return modo; }
+
+    public void setModo(ModoAlmacenamiento modo) { this.modo = modo; }
+
+    public int getConexionesLectura() { return conexionesLectura; }
+
+    public void setConexionesLectura(int conexionesLectura) { this.conexionesLectura = conexionesLectura; }
+
+    public int getEsperaBloqueoMs() { return esperaBloqueoMs; }
+
+    public void setEsperaBloqueoMs(int esperaBloqueoMs) { this.esperaBloqueoMs = esperaBloqueoMs; }
+
+    public int getReintentos() { return reintentos; }
+
+    public void setReintentos(int reintentos) { this.reintentos = reintentos; }
+
+    public int getPausaReintentoMs() { return pausaReintentoMs; }
+
+    public void setPausaReintentoMs(int pausaReintentoMs) { this.pausaReintentoMs = pausaReintentoMs; }
+
+    public int getMemoriaAlmacenColumnarMB() { return memoriaAlmacenColumnarMB; }
+
+    public void setMemoriaAlmacenColumnarMB(int memoriaAlmacenColumnarMB) { this.memoriaAlmacenColumnarMB = memoriaAlmacenColumnarMB; }
+
+    public int getEntradasCacheConsultas() { return entradasCacheConsultas; }
+
+    public void setEntradasCacheConsultas(int entradasCacheConsultas) { this.entradasCacheConsultas = entradasCacheConsultas; }
+
+    public boolean isInstrumentacion() { return instrumentacion; }
+
+    public void setInstrumentacion(boolean instrumentacion) { this.instrumentacion = instrumentacion; }
+
+    public boolean isAtribucionOperaciones() { return atribucionOperaciones; }
+
+    public void setAtribucionOperaciones(boolean atribucionOperaciones) { this.atribucionOperaciones = atribucionOperaciones; }
+
+    public int getUmbralConsultaLentaMs() { return umbralConsultaLentaMs; }
+
+    public void setUmbralConsultaLentaMs(int umbralConsultaLentaMs) { this.umbralConsultaLentaMs = umbralConsultaLentaMs; }
+
+    public int getMaxConsultasLentas() { return maxConsultasLentas; }
+
+    public void setMaxConsultasLentas(int maxConsultasLentas) { this.maxConsultasLentas = maxConsultasLentas; }
+}
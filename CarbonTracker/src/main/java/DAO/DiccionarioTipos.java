@@ -0,0 +1,311 @@
+package DAO;
+
+import Modelos.TipoEmision;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Diccionario de tipos de emisión en memoria (tablas {@code emision_tipo} y {@code emision_tipo_alias}).
+ * <p>
+ * Las emisiones, el resumen mensual y los factores guardan el ID del tipo; el nombre se obtiene de aquí,
+ * así que cada nombre existe una sola vez en memoria por muchas emisiones que se lean.
+ * <ul>
+ * <li><b>Alias:</b> un texto se reconoce por su clave (sin espacios sobrantes, en minúsculas y sin tildes):
+ * "Consumo Eléctrico", "consumo electrico" y "Electricidad" pueden ser el mismo tipo.</li>
+ * <li><b>Instantánea:</b> el contenido es inmutable y se sustituye entero al cambiar, de modo que las
+ * búsquedas (también desde los hilos de la importación) no necesitan bloqueo.</li>
+ * <li><b>Tipos nuevos:</b> un texto desconocido crea un tipo (categoría {@link TipoEmision.Categoria#OTROS})
+ * dentro de la transacción de escritura que lo usa. No pasa a la instantánea hasta que esa transacción
+ * se confirma ({@link #incorporar}): si se deshace, el diccionario no conserva un ID inexistente.</li>
+ * </ul>
+ */
+public class DiccionarioTipos {
+
+    /** Textos distintos que se recuerdan ya resueltos, para no normalizar en cada fila. */
+    private static final int MAX_TEXTOS_RECORDADOS = 4096;
+
+    /** Marcas diacríticas que quedan tras descomponer un texto (NFD). */
+    private static final Pattern DIACRITICOS = Pattern.compile("\\p{M}+");
+
+    /** Espacios repetidos o de cualquier tipo. */
+    private static final Pattern ESPACIOS = Pattern.compile("\\s+");
+
+    /** Tipos y alias, en el orden de su ID. */
+    private static final String CONSULTA_TIPOS = "SELECT t.id, t.nombre, t.categoria, a.alias, a.clave "
+            + "FROM emision_tipo t LEFT JOIN emision_tipo_alias a ON a.id_tipo = t.id ORDER BY t.id, a.id";
+
+    /**
+     * Contenido del diccionario en un instante.
+     *
+     * @param porId Tipos por ID (posiciones sin tipo a null).
+     * @param porClave Tipos por clave de alias.
+     * @param porTexto Textos ya resueltos tal y como llegaron (se vacía al sustituir la instantánea).
+     */
+    private record Contenido(TipoEmision[] porId, Map<String, TipoEmision> porClave,
+                             Map<String, TipoEmision> porTexto) { }
+
+    /** Pool del que se toman las conexiones para cargar el diccionario. */
+    private final PoolConexiones pool;
+
+    /** Instantánea actual (null hasta la primera carga). */
+    private volatile Contenido contenido;
+
+    /**
+     * @param pool Pool de conexiones de la aplicación.
+     */
+    DiccionarioTipos(PoolConexiones pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Clave con la que se reconoce un texto de tipo: sin espacios en los extremos ni repetidos,
+     * en minúsculas y sin tildes ("  Consumo  Eléctrico" → "consumo electrico").
+     *
+     * @param texto Texto escrito por el usuario o leído de un archivo.
+     * @return Clave del texto.
+     */
+    public static String clave(String texto) {
+        String limpio = nombre(texto).toLowerCase(Locale.ROOT);
+        for (int i = 0; i < limpio.length(); i++) {
+            if (limpio.charAt(i) >= 0x80) {
+                return DIACRITICOS.matcher(Normalizer.normalize(limpio, Normalizer.Form.NFD)).replaceAll("");
+            }
+        }
+        return limpio;
+    }
+
+    /**
+     * Nombre con el que se crea un tipo nuevo: el texto sin espacios en los extremos ni repetidos.
+     *
+     * @param texto Texto escrito.
+     * @return Nombre limpio.
+     */
+    public static String nombre(String texto) {
+        return ESPACIOS.matcher(texto.strip()).replaceAll(" ");
+    }
+
+    // ==========================================
+    // CONSULTA
+    // ==========================================
+
+    /**
+     * Busca el tipo de un texto en el diccionario, sin crearlo.
+     *
+     * @param texto Nombre o alias, escrito de cualquier forma.
+     * @return El tipo, o null si el texto no corresponde a ninguno.
+     */
+    public TipoEmision buscar(String texto) {
+        Contenido actual = contenido();
+        TipoEmision tipo = actual.porTexto().get(texto);
+        if (tipo != null) return tipo;
+        tipo = actual.porClave().get(clave(texto));
+        if (tipo != null && actual.porTexto().size() < MAX_TEXTOS_RECORDADOS) actual.porTexto().put(texto, tipo);
+        return tipo;
+    }
+
+    /**
+     * Tipo con un ID. Si no está en la instantánea (lo ha creado otra instancia de la aplicación),
+     * se vuelve a leer el diccionario.
+     *
+     * @param id ID del tipo.
+     * @return El tipo, o null si no existe.
+     */
+    public TipoEmision tipo(int id) {
+        TipoEmision tipo = enInstantanea(contenido(), id);
+        if (tipo != null) return tipo;
+        try (Connection conexion = pool.obtenerLectura()) {
+            return enInstantanea(recargar(conexion), id);
+        } catch (SQLException e) {
+            System.out.println("Error al leer los tipos de emisión: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Igual que {@link #tipo(int)}, pero si hay que volver a leer el diccionario lo hace sobre una conexión
+     * ya abierta (la de un recorrido, para ver los mismos datos que sus filas).
+     */
+    TipoEmision tipo(int id, Connection conexion) throws SQLException {
+        Contenido actual = contenido;
+        TipoEmision tipo = actual != null ? enInstantanea(actual, id) : null;
+        return tipo != null ? tipo : enInstantanea(recargar(conexion), id);
+    }
+
+    /**
+     * @param id ID del tipo.
+     * @return Nombre canónico (siempre la misma instancia), o null si el tipo no existe.
+     */
+    public String nombre(int id) {
+        TipoEmision tipo = tipo(id);
+        return tipo != null ? tipo.getNombre() : null;
+    }
+
+    /**
+     * @return Todos los tipos, por ID.
+     */
+    public List<TipoEmision> getTipos() {
+        List<TipoEmision> tipos = new ArrayList<>();
+        for (TipoEmision tipo : contenido().porId()) {
+            if (tipo != null) tipos.add(tipo);
+        }
+        return tipos;
+    }
+
+    // ==========================================
+    // ALTA DE TIPOS
+    // ==========================================
+
+    /**
+     * Devuelve el tipo de un texto, creándolo si no existe, dentro de la transacción de la conexión.
+     * <p>
+     * Los tipos creados se anotan en {@code creados} (por clave): así una misma transacción no los vuelve
+     * a buscar, y tras confirmarla se pasan al diccionario con {@link #incorporar}.
+     *
+     * @param conexion Conexión de escritura.
+     * @param texto Nombre o alias escrito.
+     * @param creados Tipos creados en la transacción en curso.
+     * @return El tipo.
+     * @throws SQLException Si el texto está vacío o falla el alta.
+     */
+    TipoEmision resolver(Connection conexion, String texto, Map<String, TipoEmision> creados) throws SQLException {
+        TipoEmision tipo = buscar(texto);
+        if (tipo != null) return tipo;
+        String nombre = nombre(texto);
+        if (nombre.isEmpty()) throw new SQLException("El tipo de emisión está vacío");
+        String clave = clave(nombre);
+        tipo = creados.get(clave);
+        if (tipo != null) return tipo;
+
+        // Puede haberlo creado otra instancia después de la última carga
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "SELECT t.id, t.nombre, t.categoria FROM emision_tipo_alias a JOIN emision_tipo t ON t.id = a.id_tipo WHERE a.clave = ?")) {
+            ps.setString(1, clave);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    tipo = new TipoEmision(rs.getInt(1), rs.getString(2), TipoEmision.Categoria.de(rs.getString(3)), List.of());
+                }
+            }
+        }
+        if (tipo == null) {
+            int id;
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "INSERT INTO emision_tipo (nombre, categoria) VALUES (?, ?) RETURNING id")) {
+                ps.setString(1, nombre);
+                ps.setString(2, TipoEmision.Categoria.OTROS.name());
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    id = rs.getInt(1);
+                }
+            }
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "INSERT INTO emision_tipo_alias (clave, alias, id_tipo) VALUES (?, ?, ?)")) {
+                ps.setString(1, clave);
+                ps.setString(2, nombre);
+                ps.setInt(3, id);
+                ps.executeUpdate();
+            }
+            tipo = new TipoEmision(id, nombre, TipoEmision.Categoria.OTROS, List.of(nombre));
+        }
+        creados.put(clave, tipo);
+        return tipo;
+    }
+
+    /**
+     * Pasa al diccionario los tipos creados en una transacción ya confirmada.
+     *
+     * @param creados Tipos devueltos por {@link #resolver} durante la transacción.
+     */
+    void incorporar(Map<String, TipoEmision> creados) {
+        if (creados.isEmpty()) return;
+        try (Connection conexion = pool.obtenerLectura()) {
+            recargar(conexion);
+        } catch (SQLException e) {
+            // La instantánea sigue sin ellos: se leerán al pedir su ID
+            System.out.println("Error al leer los tipos de emisión: " + e.getMessage());
+        }
+    }
+
+    // ==========================================
+    // CARGA
+    // ==========================================
+
+    /**
+     * Instantánea actual, leyéndola la primera vez.
+     */
+    private Contenido contenido() {
+        Contenido actual = contenido;
+        if (actual != null) return actual;
+        synchronized (this) {
+            if (contenido != null) return contenido;
+            try (Connection conexion = pool.obtenerLectura()) {
+                return recargar(conexion);
+            } catch (SQLException e) {
+                // Sin diccionario ningún texto se reconoce: las altas crearán o buscarán el tipo en la BD
+                System.out.println("Error al leer los tipos de emisión: " + e.getMessage());
+                return new Contenido(new TipoEmision[0], Map.of(), new ConcurrentHashMap<>());
+            }
+        }
+    }
+
+    /**
+     * Lee de nuevo los tipos y sus alias y sustituye la instantánea.
+     */
+    private synchronized Contenido recargar(Connection conexion) throws SQLException {
+        List<TipoEmision> tipos = new ArrayList<>();
+        Map<String, TipoEmision> porClave = new HashMap<>();
+        try (PreparedStatement ps = conexion.prepareStatement(CONSULTA_TIPOS);
+             ResultSet rs = ps.executeQuery()) {
+            List<String> alias = null;
+            List<String> claves = new ArrayList<>();
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                if (tipos.isEmpty() || tipos.get(tipos.size() - 1).getId() != id) {
+                    anotarClaves(tipos, claves, porClave);
+                    alias = new ArrayList<>();
+                    tipos.add(new TipoEmision(id, rs.getString(2), TipoEmision.Categoria.de(rs.getString(3)),
+                            Collections.unmodifiableList(alias)));
+                }
+                String textoAlias = rs.getString(4);
+                if (textoAlias != null) {
+                    alias.add(textoAlias);
+                    claves.add(rs.getString(5));
+                }
+            }
+            anotarClaves(tipos, claves, porClave);
+        }
+        int maximo = tipos.isEmpty() ? 0 : tipos.get(tipos.size() - 1).getId();
+        TipoEmision[] porId = new TipoEmision[maximo + 1];
+        for (TipoEmision tipo : tipos) porId[tipo.getId()] = tipo;
+        Contenido nuevo = new Contenido(porId, porClave, new ConcurrentHashMap<>());
+        contenido = nuevo;
+        return nuevo;
+    }
+
+    /**
+     * Asocia al último tipo leído las claves de sus alias y vacía la lista de claves.
+     */
+    private static void anotarClaves(List<TipoEmision> tipos, List<String> claves, Map<String, TipoEmision> porClave) {
+        if (tipos.isEmpty()) return;
+        TipoEmision tipo = tipos.get(tipos.size() - 1);
+        for (String clave : claves) porClave.put(clave, tipo);
+        claves.clear();
+    }
+
+    private static TipoEmision enInstantanea(Contenido actual, int id) {
+        TipoEmision[] porId = actual.porId();
+        return id >= 0 && id < porId.length ? porId[id] : null;
+    }
+
+}
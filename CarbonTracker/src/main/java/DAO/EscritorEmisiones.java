@@ -0,0 +1,240 @@
+package DAO;
+
+import Modelos.Emisiones;
+import Modelos.TipoEmision;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vía de escritura asíncrona para altas masivas de emisiones (sesiones de carga mensual, lecturas de contadores...).
+ * <p>
+ * Los llamantes encolan registros y reciben un {@link CompletableFuture} con el ID generado.
+ * Un único hilo escritor agrupa los registros pendientes y los inserta en una sola transacción
+ * cada pocos milisegundos o cada N filas ("group commit"), de modo que el coste del fsync
+ * del COMMIT se reparte entre todo el lote.
+ * <p>
+ * Los futuros solo se completan después del COMMIT, por lo que la garantía de durabilidad
+ * es la misma que la de {@link GestorBD#nuevaEmision(Emisiones)}.
+ */
+public class EscritorEmisiones {
+
+    /** Inserción que devuelve directamente el ID generado. */
+    private static final String INSERT_EMISION =
+            "INSERT INTO registro_emisiones(id_tipo, cantidad, co2e, fecha, dia, id_empresa, co2e_calculado) VALUES(?,?,?,?,?,?,?) RETURNING id";
+
+    /** Pool del que se toma la conexión de escritura. */
+    private final PoolConexiones pool;
+
+    /** Diccionario con el que se traduce el tipo de cada emisión a su ID. */
+    private final DiccionarioTipos tipos;
+
+    /** Número máximo de filas por transacción. */
+    private final int maxLote;
+
+    /** Tiempo máximo que se espera a completar un lote desde que llega su primera fila. */
+    private final long esperaLoteMs;
+
+    /** Registros pendientes de escribir. */
+    private final LinkedBlockingQueue<Pendiente> cola = new LinkedBlockingQueue<>();
+
+    /** Hilo escritor (se arranca con el primer registro encolado). */
+    private Thread hilo;
+
+    /** Indica si se ha solicitado el cierre. */
+    private volatile boolean cerrado = false;
+
+    /**
+     * Registro a la espera de ser insertado junto con el futuro de su llamante.
+     */
+    private record Pendiente(Emisiones emision, CompletableFuture<Long> resultado) { }
+
+    /**
+     * @param pool Pool de conexiones de la aplicación.
+     * @param tipos Diccionario de tipos de emisión.
+     * @param maxLote Número máximo de filas por transacción.
+     * @param esperaLoteMs Milisegundos máximos de espera para completar un lote.
+     */
+    EscritorEmisiones(PoolConexiones pool, DiccionarioTipos tipos, int maxLote, long esperaLoteMs) {
+        this.pool = pool;
+        this.tipos = tipos;
+        this.maxLote = maxLote;
+        this.esperaLoteMs = esperaLoteMs;
+    }
+
+    /**
+     * Encola una emisión para su inserción asíncrona.
+     *
+     * @param emision Emisión a insertar.
+     * @return Futuro que se completa con el ID generado tras el COMMIT, o con la excepción si falla.
+     */
+    public CompletableFuture<Long> encolar(Emisiones emision) {
+        CompletableFuture<Long> resultado = new CompletableFuture<>();
+        // Comprobar y encolar a la vez que cerrar(): nada puede entrar en la cola después de que el hilo la vacíe
+        synchronized (this) {
+            if (cerrado) {
+                resultado.completeExceptionally(new IllegalStateException("El escritor de emisiones está cerrado"));
+                return resultado;
+            }
+            arrancarSiHaceFalta();
+            cola.offer(new Pendiente(emision, resultado));
+        }
+        return resultado;
+    }
+
+    /**
+     * Arranca el hilo escritor la primera vez que se necesita (se llama con el monitor tomado).
+     */
+    private void arrancarSiHaceFalta() {
+        if (hilo == null) {
+            hilo = new Thread(this::bucleEscritura, "escritor-emisiones");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+    }
+
+    /**
+     * Detiene el escritor tras vaciar la cola: todo lo encolado antes del cierre queda escrito.
+     */
+    public void cerrar() {
+        Thread actual;
+        synchronized (this) {
+            cerrado = true;
+            actual = hilo;
+        }
+        if (actual == null) return;
+        try {
+            actual.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==========================================
+    // HILO ESCRITOR
+    // ==========================================
+
+    /**
+     * Bucle del hilo escritor: espera el primer registro, completa el lote y lo confirma.
+     */
+    private void bucleEscritura() {
+        List<Pendiente> lote = new ArrayList<>(maxLote);
+        while (true) {
+            try {
+                Pendiente primero = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primero == null) {
+                    if (cerrado && cola.isEmpty()) return;
+                    continue;
+                }
+                lote.add(primero);
+                completarLote(lote);
+                escribirSinPerder(lote);
+            } catch (InterruptedException e) {
+                // Solo se interrumpe al apagar; lo que quede se escribe antes de salir
+                cola.drainTo(lote);
+                if (!lote.isEmpty()) escribirSinPerder(lote);
+                return;
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    /**
+     * Añade al lote los registros que lleguen hasta alcanzar el máximo o agotar el tiempo de espera.
+     */
+    private void completarLote(List<Pendiente> lote) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaLoteMs);
+        while (lote.size() < maxLote) {
+            // Primero lo que ya está en cola, sin esperar
+            if (cola.drainTo(lote, maxLote - lote.size()) > 0) continue;
+            long restante = limite - System.nanoTime();
+            if (restante <= 0 || cerrado) return;
+            Pendiente siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+            if (siguiente == null) return;
+            lote.add(siguiente);
+        }
+    }
+
+    /**
+     * Escribe el lote sin que ningún error pueda matar al hilo escritor: si algo escapa de
+     * {@link #escribirLote}, los futuros que sigan pendientes se completan con ese error.
+     */
+    private void escribirSinPerder(List<Pendiente> lote) {
+        try {
+            escribirLote(lote);
+        } catch (Throwable e) {
+            for (Pendiente pendiente : lote) {
+                pendiente.resultado().completeExceptionally(e);
+            }
+            System.out.println("Error en el escritor de emisiones: " + e);
+        }
+    }
+
+    /**
+     * Inserta el lote en una única transacción. Si falla, se reintenta fila a fila
+     * para que un registro erróneo (un error SQL o un dato incompleto) no haga fallar a los demás.
+     */
+    private void escribirLote(List<Pendiente> lote) {
+        try {
+            long[] ids = insertarEnTransaccion(lote);
+            for (int i = 0; i < lote.size(); i++) {
+                lote.get(i).resultado().complete(ids[i]);
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (lote.size() == 1) {
+                lote.get(0).resultado().completeExceptionally(e);
+                return;
+            }
+            for (Pendiente pendiente : lote) {
+                escribirLote(List.of(pendiente));
+            }
+        }
+    }
+
+    /**
+     * Ejecuta las inserciones del lote dentro de una transacción y devuelve los IDs generados.
+     * Ante cualquier fallo se deshace la transacción antes de volver al modo autocommit
+     * (que, con una transacción abierta, confirmaría lo insertado hasta ese momento).
+     */
+    private long[] insertarEnTransaccion(List<Pendiente> lote) throws SQLException {
+        long[] ids = new long[lote.size()];
+        Map<String, TipoEmision> tiposCreados = new HashMap<>();
+        try (Connection conexion = pool.obtenerEscritura()) {
+            conexion.setAutoCommit(false);
+            try (PreparedStatement ps = conexion.prepareStatement(INSERT_EMISION)) {
+                for (int i = 0; i < lote.size(); i++) {
+                    Emisiones emision = lote.get(i).emision();
+                    ps.setInt(1, tipos.resolver(conexion, emision.getTipoEmision(), tiposCreados).getId());
+                    ps.setDouble(2, emision.getCantidadEmision());
+                    ps.setDouble(3, emision.getCo2e());
+                    ps.setString(4, emision.getFecha().toString());
+                    ps.setLong(5, emision.getFecha().toEpochDay());
+                    ps.setLong(6, emision.getIdEmpresa());
+                    ps.setBoolean(7, emision.isCo2eCalculado());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        ids[i] = rs.getLong(1);
+                    }
+                }
+                conexion.commit();
+                tipos.incorporar(tiposCreados);
+            } catch (SQLException | RuntimeException e) {
+                conexion.rollback();
+                throw e;
+            } finally {
+                conexion.setAutoCommit(true);
+            }
+        }
+        return ids;
+    }
+}
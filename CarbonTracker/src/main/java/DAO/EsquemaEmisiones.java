@@ -0,0 +1,90 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Índices y triggers de registro_emisiones que las operaciones masivas quitan y vuelven a crear
+ * dentro de su transacción.
+ * <p>
+ * La carga masiva de {@link ImportadorCSV}, la de {@link GeneradorDatos} y {@link RecalculoCo2e} sustituyen
+ * el trabajo fila a fila de algunos triggers por una actualización de conjunto. Cuáles son se decide
+ * aquí: cada una pide uno de los grupos de abajo, y las sentencias CREATE se leen de {@code sqlite_master},
+ * así que vuelven a crearse tal como las dejó la última migración. Es pública para que las bases de prueba
+ * de los benchmarks se generen igual.
+ */
+public final class EsquemaEmisiones {
+
+    /** Trigger que suma cada alta a empresa_totales. */
+    static final String TOTALES_ALTA = "trg_totales_emision_alta";
+
+    /** Trigger que suma cada alta a emision_mensual. */
+    static final String MENSUAL_ALTA = "trg_mensual_emision_alta";
+
+    /** Trigger que corrige la columna dia de cada alta. */
+    static final String DIA_ALTA = "trg_emision_dia_alta";
+
+    /** Trigger que aplica a empresa_totales la diferencia de cada modificación. */
+    static final String TOTALES_CAMBIO = "trg_totales_emision_cambio";
+
+    /** Trigger que aplica a emision_mensual la diferencia de cada modificación. */
+    static final String MENSUAL_CAMBIO = "trg_mensual_emision_cambio";
+
+    /** Triggers de alta que mantienen los totales y el resumen mensual. */
+    static final List<String> TRIGGERS_ALTA = List.of(TOTALES_ALTA, MENSUAL_ALTA);
+
+    /** Triggers de modificación que mantienen los totales y el resumen mensual. */
+    static final List<String> TRIGGERS_CAMBIO = List.of(TOTALES_CAMBIO, MENSUAL_CAMBIO);
+
+    /**
+     * Triggers de alta que se quitan al generar emisiones con el día ya calculado: los de los totales y
+     * el resumen mensual (que se rehacen aparte) y el que corrige el día.
+     */
+    public static final List<String> TRIGGERS_GENERACION = List.of(TOTALES_ALTA, MENSUAL_ALTA, DIA_ALTA);
+
+    private EsquemaEmisiones() { }
+
+    /**
+     * Quita, dentro de la transacción abierta, los triggers indicados de registro_emisiones y, si se pide,
+     * todos sus índices secundarios.
+     *
+     * @param conexion Conexión de escritura con la transacción abierta.
+     * @param indices true para quitar también los índices.
+     * @param triggers Nombres de los triggers que se quitan.
+     * @return Sentencias CREATE para volver a crearlos con {@link #restaurar}.
+     */
+    public static List<String> quitar(Connection conexion, boolean indices, List<String> triggers) throws SQLException {
+        String nombres = triggers.stream().map(t -> "'" + t + "'").collect(Collectors.joining(", ", "(", ")"));
+        List<String> esquema = new ArrayList<>();
+        List<String> borrados = new ArrayList<>();
+        try (Statement st = conexion.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT type, name, sql FROM sqlite_master WHERE tbl_name = 'registro_emisiones' "
+                    + "AND sql IS NOT NULL AND (" + (indices ? "type = 'index' OR " : "")
+                    + "(type = 'trigger' AND name IN " + nombres + "))")) {
+                while (rs.next()) {
+                    borrados.add("DROP " + rs.getString(1) + " " + rs.getString(2));
+                    esquema.add(rs.getString(3));
+                }
+            }
+            for (String borrado : borrados) st.execute(borrado);
+        }
+        return esquema;
+    }
+
+    /**
+     * Vuelve a crear lo que quitó {@link #quitar}.
+     *
+     * @param conexion La misma conexión, con la transacción aún abierta.
+     * @param esquema Sentencias CREATE devueltas por {@link #quitar}.
+     */
+    public static void restaurar(Connection conexion, List<String> esquema) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            for (String sentencia : esquema) st.execute(sentencia);
+        }
+    }
+}
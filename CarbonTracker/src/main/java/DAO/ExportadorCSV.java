@@ -0,0 +1,294 @@
+package DAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.DecimalFormatSymbols;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Exportación de emisiones a CSV directamente desde un cursor de la base de datos.
+ * <p>
+ * A diferencia de {@link ControlCSV#exportarEmisiones}, que recibe la lista completa ya cargada en memoria,
+ * aquí las filas se leen de una única consulta y se escriben según llegan:
+ * <ul>
+ * <li><b>Memoria constante:</b> solo existe la fila actual y un búfer de {@value #TAMANO_BUFFER} bytes,
+ * exporte mil filas o cinco millones.</li>
+ * <li><b>Sin objetos intermedios:</b> textos, números y fechas se escriben carácter a carácter en el búfer
+ * (UTF-8), sin {@code String.format} ni volver a interpretar la fecha.</li>
+ * <li><b>Archivo parcial:</b> se escribe en un archivo temporal junto al destino que solo sustituye al
+ * destino al terminar; si la exportación falla o se cancela, el archivo anterior queda intacto.</li>
+ * </ul>
+ * El formato es el mismo que el de {@link ControlCSV}: {@code Empresa;Tipo;Cantidad;CO2e (kg);Fecha},
+ * importes con dos decimales y el separador decimal del sistema, y fechas {@code dd/MM/yyyy}.
+ * <p>
+ * Para cancelar, la exportación se ejecuta dentro de una {@link Cancelacion}: al cancelarla se
+ * interrumpe la consulta y el método devuelve un resultado marcado como cancelado.
+ */
+public class ExportadorCSV {
+
+    /** Tamaño del búfer de escritura. */
+    private static final int TAMANO_BUFFER = 1 << 20;
+
+    /** Filas entre dos avisos de progreso (y comprobaciones de cancelación). */
+    private static final int FILAS_POR_AVISO = 50_000;
+
+    /** Mayor importe que se escribe por el camino rápido (en céntimos cabe de sobra en un long). */
+    private static final double MAXIMO_RAPIDO = 1e15;
+
+    /** Cabecera del archivo de emisiones. */
+    private static final String CABECERA_EMISIONES = "Empresa;Tipo;Cantidad;CO2e (kg);Fecha\n";
+
+    /** Pool del que se toma la conexión de lectura. */
+    private final PoolConexiones pool;
+
+    /**
+     * Avance de una exportación.
+     *
+     * @param filasEscritas Filas escritas hasta el momento.
+     * @param filasTotales Filas que se esperan (estimación previa; 0 si se desconoce).
+     */
+    public record Progreso(long filasEscritas, long filasTotales) {
+        /**
+         * @return Fracción completada entre 0 y 1 (-1 si no se conoce el total).
+         */
+        public double fraccion() {
+            return filasTotales > 0 ? Math.min(1.0, (double) filasEscritas / filasTotales) : -1;
+        }
+    }
+
+    /**
+     * Resumen de una exportación.
+     *
+     * @param filas Filas escritas.
+     * @param bytes Tamaño del archivo generado.
+     * @param cancelada true si se ha cancelado (el archivo de destino no se ha modificado).
+     * @param milisegundos Duración total.
+     */
+    public record Resultado(long filas, long bytes, boolean cancelada, long milisegundos) { }
+
+    /**
+     * @param pool Pool de conexiones de la base de datos.
+     */
+    ExportadorCSV(PoolConexiones pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Escribe en un archivo las emisiones que devuelve una consulta.
+     *
+     * @param consulta SELECT cuyas columnas son, en orden: nombre de la empresa, tipo, cantidad, co2e y fecha.
+     * @param parametros Parámetros de la consulta.
+     * @param filasEstimadas Filas que se esperan, para el progreso (0 si se desconoce).
+     * @param archivo Archivo de destino.
+     * @param progreso Recibe el avance cada {@value #FILAS_POR_AVISO} filas (puede ser null).
+     * @return Resumen de la exportación.
+     * @throws IOException Si no se puede escribir el archivo o falla la lectura de la base de datos.
+     */
+    Resultado exportarEmisiones(String consulta, List<Object> parametros, long filasEstimadas, File archivo,
+                                Consumer<Progreso> progreso) throws IOException {
+        long inicio = System.nanoTime();
+        Path destino = archivo.toPath().toAbsolutePath();
+        Path parcial = destino.resolveSibling(destino.getFileName() + ".parcial");
+        long filas = 0;
+        boolean terminado = false;
+
+        try (FileChannel canal = FileChannel.open(parcial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             Connection conexion = pool.obtenerLectura();
+             PreparedStatement ps = conexion.prepareStatement(consulta)) {
+            for (int i = 0; i < parametros.size(); i++) {
+                ps.setObject(i + 1, parametros.get(i));
+            }
+            EscritorCSV escritor = new EscritorCSV(canal);
+            escritor.ascii(CABECERA_EMISIONES);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    escritor.texto(rs.getString(1));
+                    escritor.separador();
+                    escritor.texto(rs.getString(2));
+                    escritor.separador();
+                    escritor.importe(rs.getDouble(3));
+                    escritor.separador();
+                    escritor.importe(rs.getDouble(4));
+                    escritor.separador();
+                    escritor.fecha(rs.getString(5));
+                    escritor.finLinea();
+                    if (++filas % FILAS_POR_AVISO == 0) {
+                        if (Cancelacion.actualCancelada()) return cancelada(parcial, filas, inicio);
+                        if (progreso != null) progreso.accept(new Progreso(filas, Math.max(filas, filasEstimadas)));
+                    }
+                }
+            }
+            escritor.vaciar();
+            canal.force(false);
+            terminado = true;
+        } catch (SQLException e) {
+            if (Cancelacion.actualCancelada()) return cancelada(parcial, filas, inicio);
+            throw new IOException("Error al leer las emisiones: " + e.getMessage(), e);
+        } finally {
+            if (!terminado) Files.deleteIfExists(parcial);
+        }
+
+        Files.move(parcial, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (progreso != null) progreso.accept(new Progreso(filas, filas));
+        return new Resultado(filas, Files.size(destino), false, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    /**
+     * Descarta el archivo parcial de una exportación cancelada.
+     */
+    private static Resultado cancelada(Path parcial, long filas, long inicio) throws IOException {
+        Files.deleteIfExists(parcial);
+        return new Resultado(filas, 0, true, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    // ==========================================
+    // ESCRITURA SIN OBJETOS INTERMEDIOS
+    // ==========================================
+
+    /**
+     * Escribe campos CSV en un búfer de bytes que se vuelca al canal al llenarse.
+     * Ninguna operación crea objetos (salvo el raro importe a medio céntimo): los textos se codifican
+     * en UTF-8 carácter a carácter y los números se escriben dígito a dígito.
+     */
+    private static final class EscritorCSV {
+
+        /** Separador decimal de {@code %.2f} en la configuración regional del sistema. */
+        private static final byte SEPARADOR_DECIMAL = (byte) DecimalFormatSymbols.getInstance().getDecimalSeparator();
+
+        private final FileChannel canal;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANO_BUFFER);
+
+        /** Dígitos de un número, escritos de derecha a izquierda. */
+        private final byte[] digitos = new byte[20];
+
+        EscritorCSV(FileChannel canal) {
+            this.canal = canal;
+        }
+
+        /** Texto entre comillas, con las comillas internas duplicadas. */
+        void texto(String valor) throws IOException {
+            poner('"');
+            if (valor != null) {
+                for (int i = 0, n = valor.length(); i < n; i++) {
+                    char c = valor.charAt(i);
+                    if (c == '"') {
+                        poner('"');
+                        poner('"');
+                    } else if (c < 0x80) {
+                        poner(c);
+                    } else if (c < 0x800) {
+                        poner(0xC0 | (c >> 6));
+                        poner(0x80 | (c & 0x3F));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(valor.charAt(i + 1))) {
+                        int punto = Character.toCodePoint(c, valor.charAt(++i));
+                        poner(0xF0 | (punto >> 18));
+                        poner(0x80 | ((punto >> 12) & 0x3F));
+                        poner(0x80 | ((punto >> 6) & 0x3F));
+                        poner(0x80 | (punto & 0x3F));
+                    } else if (Character.isSurrogate(c)) {
+                        poner('?');
+                    } else {
+                        poner(0xE0 | (c >> 12));
+                        poner(0x80 | ((c >> 6) & 0x3F));
+                        poner(0x80 | (c & 0x3F));
+                    }
+                }
+            }
+            poner('"');
+        }
+
+        /**
+         * Importe con dos decimales, exactamente como {@code %.2f}: redondeo HALF_UP del decimal más corto
+         * del double ({@link Double#toString}), no de su valor binario; 1.005 se escribe "1.01" y 0.285, "0.29".
+         * Los valores no finitos o enormes (que no aparecen en la práctica) usan {@code String.format}.
+         */
+        void importe(double valor) throws IOException {
+            if (!Double.isFinite(valor) || Math.abs(valor) >= MAXIMO_RAPIDO) {
+                ascii(String.format("%.2f", valor));
+                return;
+            }
+            double cientos = Math.abs(valor) * 100;
+            long centimos = Math.round(cientos);
+            // Cerca de medio céntimo el producto binario puede quedar al otro lado del decimal que redondea %.2f:
+            // solo entonces se redondea ese decimal con BigDecimal (crea objetos, pero es raro)
+            if (Math.abs(cientos - Math.floor(cientos) - 0.5) <= 4 * Math.ulp(cientos)) {
+                centimos = BigDecimal.valueOf(Math.abs(valor)).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+            }
+            // %.2f conserva el signo aunque el importe redondee a cero ("-0.00")
+            if (Math.copySign(1.0, valor) < 0) poner('-');
+            entero(centimos / 100);
+            poner(SEPARADOR_DECIMAL);
+            long decimales = centimos % 100;
+            poner('0' + (int) (decimales / 10));
+            poner('0' + (int) (decimales % 10));
+        }
+
+        /**
+         * Fecha {@code yyyy-MM-dd} (con o sin hora detrás) como {@code "dd/MM/yyyy"}.
+         * Si no tiene ese formato se escribe tal cual, igual que hacía la exportación anterior.
+         */
+        void fecha(String valor) throws IOException {
+            if (valor == null || valor.length() < 10 || valor.charAt(4) != '-' || valor.charAt(7) != '-') {
+                texto(valor);
+                return;
+            }
+            poner('"');
+            poner(valor.charAt(8));
+            poner(valor.charAt(9));
+            poner('/');
+            poner(valor.charAt(5));
+            poner(valor.charAt(6));
+            poner('/');
+            for (int i = 0; i < 4; i++) poner(valor.charAt(i));
+            poner('"');
+        }
+
+        void separador() throws IOException {
+            poner(';');
+        }
+
+        void finLinea() throws IOException {
+            poner('\n');
+        }
+
+        /** Texto ASCII sin comillas (cabecera, números fuera del camino rápido). */
+        void ascii(String valor) throws IOException {
+            for (int i = 0; i < valor.length(); i++) poner(valor.charAt(i));
+        }
+
+        /** Vuelca al canal lo que quede en el búfer. */
+        void vaciar() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) canal.write(buffer);
+            buffer.clear();
+        }
+
+        private void entero(long valor) throws IOException {
+            int posicion = digitos.length;
+            do {
+                digitos[--posicion] = (byte) ('0' + valor % 10);
+                valor /= 10;
+            } while (valor > 0);
+            for (int i = posicion; i < digitos.length; i++) poner(digitos[i]);
+        }
+
+        private void poner(int valor) throws IOException {
+            if (!buffer.hasRemaining()) vaciar();
+            buffer.put((byte) valor);
+        }
+    }
+}
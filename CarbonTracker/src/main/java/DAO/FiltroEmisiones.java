@@ -0,0 +1,106 @@
+package DAO;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Criterios de consulta de la lista paginada de emisiones.
+ * <p>
+ * Agrupa la empresa (opcional), el texto de búsqueda, el intervalo de fechas (opcional) y el sentido
+ * de la ordenación por fecha, que es la clave de paginación por cursor ("keyset") junto con el ID.
+ */
+public class FiltroEmisiones {
+
+    /** ID de la empresa a la que se limita la consulta (null = todas). */
+    private Long idEmpresa;
+
+    /** Texto de búsqueda por empresa, tipo o fecha (vacío = sin filtro). */
+    private String termino;
+
+    /** Ordenación por fecha descendente (las más recientes primero). */
+    private boolean descendente;
+
+    /** Primera y última fecha incluidas (null = sin límite por ese lado). */
+    private LocalDate desde;
+    private LocalDate hasta;
+
+    /**
+     * Filtro sin restricciones: todas las emisiones, las más recientes primero.
+     */
+    public FiltroEmisiones() {
+        this(null, "", true);
+    }
+
+    /**
+     * @param idEmpresa ID de la empresa (null para todas).
+     * @param termino Texto de búsqueda.
+     * @param descendente true para ordenar de la fecha más reciente a la más antigua.
+     */
+    public FiltroEmisiones(Long idEmpresa, String termino, boolean descendente) {
+        this.idEmpresa = idEmpresa;
+        this.termino = termino == null ? "" : termino;
+        this.descendente = descendente;
+    }
+
+    /**
+     * Filtro por intervalo de fechas, sin texto de búsqueda.
+     *
+     * @param idEmpresa ID de la empresa (null para todas).
+     * @param desde Primera fecha incluida (null = sin límite).
+     * @param hasta Última fecha incluida (null = sin límite).
+     */
+    public FiltroEmisiones(Long idEmpresa, LocalDate desde, LocalDate hasta) {
+        this(idEmpresa, "", true);
+        this.desde = desde;
+        this.hasta = hasta;
+    }
+
+    /**
+     * @return true si el filtro limita las fechas por algún lado.
+     */
+    public boolean tieneIntervalo() {
+        return desde != null || hasta != null;
+    }
+
+    // Getters y Setters
+
+    public Long getIdEmpresa() { return idEmpresa; }
+
+    public void setIdEmpresa(Long idEmpresa) { this.idEmpresa = idEmpresa; }
+
+    public String getTermino() { return termino; }
+
+    public void setTermino(String termino) { this.termino = termino == null ? "" : termino; }
+
+    public boolean isDescendente() { return descendente; }
+
+    public void setDescendente(boolean descendente) { this.descendente = descendente; }
+
+    public LocalDate getDesde() { return desde; }
+
+    public void setDesde(LocalDate desde) { this.desde = desde; }
+
+    public LocalDate getHasta() { return hasta; }
+
+    public void setHasta(LocalDate hasta) { this.hasta = hasta; }
+
+    /**
+     * Dos filtros son iguales si seleccionan las mismas emisiones en el mismo orden
+     * (la lista paginada lo usa para distinguir un refresco de un filtro nuevo).
+     */
+    @Override
+    public boolean equals(Object otro) {
+        if (this == otro) return true;
+        if (!(otro instanceof FiltroEmisiones filtro)) return false;
+        return descendente == filtro.descendente
+                && Objects.equals(idEmpresa, filtro.idEmpresa)
+                && termino.equals(filtro.termino)
+                && Objects.equals(desde, filtro.desde)
+                && Objects.equals(hasta, filtro.hasta);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(idEmpresa, termino, descendente, desde, hasta);
+    }
+}
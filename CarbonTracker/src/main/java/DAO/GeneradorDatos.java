@@ -0,0 +1,728 @@
+package DAO;
+
+import Modelos.TipoEmision;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Generador de datos sintéticos (empresas, sedes y emisiones) para demostraciones y pruebas de carga.
+ * <p>
+ * Es determinista: con los mismos {@link Parametros} (incluida la semilla) produce siempre las mismas filas.
+ * <ul>
+ * <li><b>Empresas:</b> nombres y sectores realistas ("Solaria Energía S.L."...). Las que ya existen con el
+ * mismo nombre se conservan sin añadirles nada, así que repetir una generación no duplica datos.</li>
+ * <li><b>Sedes:</b> en ciudades distintas de una lista de capitales españolas.</li>
+ * <li><b>Emisiones:</b> para cada día del intervalo y cada empresa, un número de filas según la
+ * {@link Distribucion}; el tipo se elige con pesos que dependen del sector, la cantidad varía alrededor
+ * de un valor típico del tipo (la calefacción, además, según la estación) y el CO2e es cantidad × factor.</li>
+ * </ul>
+ * Todo se escribe en una única transacción, con las emisiones en INSERT de {@value #FILAS_POR_SENTENCIA} filas.
+ * Si se generan al menos {@value ImportadorCSV#MIN_FILAS_CARGA_MASIVA} emisiones, se hace como la carga masiva
+ * de {@link ImportadorCSV}: sin índices secundarios ni triggers de alta mientras se insertan, y además sin
+ * comprobar claves ajenas (todas salen de la propia transacción). A diferencia del importador, los totales por
+ * empresa y el resumen mensual no se calculan después con una consulta agrupada: el generador ya conoce cada fila,
+ * así que los va sumando en memoria y al final solo escribe las filas de esas dos tablas (con 10 millones de
+ * emisiones, dos recorridos completos menos). Mientras dura, el resto de la aplicación espera para escribir
+ * (la lectura sigue disponible).
+ * <p>
+ * También se puede lanzar desde la línea de comandos ({@link #main}).
+ */
+public class GeneradorDatos {
+
+    /** Filas de cada INSERT de emisiones. */
+    private static final int FILAS_POR_SENTENCIA = 100;
+
+    /** Emisiones generadas entre dos avisos de progreso. */
+    private static final long FILAS_POR_AVISO = 500_000;
+
+    /** Caché de páginas (KiB) de la conexión de escritura durante una carga masiva, para crear los índices. */
+    private static final int CACHE_CARGA_MASIVA_KIB = 256 * 1024;
+
+    /** Máximo de empresas que elige {@link Parametros#paraFilas}. */
+    private static final int MAX_EMPRESAS_AUTOMATICAS = 1000;
+
+    private static final String INSERT_EMPRESA = "INSERT INTO empresa(nombre, sector) VALUES(?,?) RETURNING id";
+
+    private static final String INSERT_SEDE = "INSERT INTO sede (ciudad, pais, direccion, id_empresa) VALUES (?, 'España', ?, ?)";
+
+    private static final String INSERT_EMISION =
+            "INSERT INTO registro_emisiones(id_tipo, cantidad, co2e, fecha, dia, id_empresa) VALUES(?,?,?,?,?,?)";
+
+    /** Equivalente de trg_totales_emision_alta para los totales de una empresa sumados en memoria. */
+    private static final String TOTALES_EMPRESA =
+            "INSERT INTO empresa_totales (id_empresa, total_co2e, num_emisiones, ultima_fecha) VALUES (?, ?, ?, ?)\n"
+            + " ON CONFLICT (id_empresa) DO UPDATE SET\n"
+            + "  total_co2e = total_co2e + excluded.total_co2e,\n"
+            + "  num_emisiones = num_emisiones + excluded.num_emisiones,\n"
+            + "  ultima_fecha = CASE WHEN ultima_fecha IS NULL OR excluded.ultima_fecha > ultima_fecha\n"
+            + "                      THEN excluded.ultima_fecha ELSE ultima_fecha END";
+
+    /** Equivalente de trg_mensual_emision_alta para un mes y tipo de una empresa sumados en memoria. */
+    private static final String MENSUAL_EMPRESA =
+            "INSERT INTO emision_mensual (id_empresa, mes, id_tipo, total_co2e, total_cantidad, num_emisiones) VALUES (?, ?, ?, ?, ?, ?)\n"
+            + " ON CONFLICT (id_empresa, mes, id_tipo) DO UPDATE SET\n"
+            + "  total_co2e = total_co2e + excluded.total_co2e,\n"
+            + "  total_cantidad = total_cantidad + excluded.total_cantidad,\n"
+            + "  num_emisiones = num_emisiones + excluded.num_emisiones";
+
+    private static final String[] PREFIJOS = {
+            "Solaria", "Iberia", "Atlántica", "Norte", "Mediterránea", "Castellana", "Cantábrica", "Andaluza",
+            "Levante", "Pirenaica", "Meseta", "Bética", "Galaica", "Balear", "Tajo", "Ebro", "Duero", "Sierra",
+            "Costa", "Vega"
+    };
+
+    private static final String[] FORMAS_JURIDICAS = {"S.L.", "S.A.", "S.Coop."};
+
+    private static final String[] CIUDADES = {
+            "Madrid", "Barcelona", "Valencia", "Sevilla", "Zaragoza", "Málaga", "Murcia", "Palma", "Bilbao",
+            "Alicante", "Córdoba", "Valladolid", "Vigo", "Gijón", "Vitoria", "A Coruña", "Granada", "Oviedo",
+            "Pamplona", "Santander"
+    };
+
+    private static final String[] CALLES = {
+            "C/ Mayor", "Av. de la Constitución", "C/ Real", "Polígono Industrial Sur", "Av. de Europa",
+            "C/ del Carmen", "Parque Empresarial Norte", "Av. de Andalucía"
+    };
+
+    /**
+     * Sector de una empresa: nombre, actividad que aparece en el nombre de la empresa y multiplicador
+     * del peso de cada tipo de emisión (en el orden de {@link #TIPOS}).
+     */
+    private record Sector(String nombre, String actividad, double[] pesos) { }
+
+    private static final Sector[] SECTORES = {
+            new Sector("Energía", "Energía", new double[]{2.0, 0.6, 1.5, 0.8, 0.5}),
+            new Sector("Transporte", "Logística", new double[]{0.6, 4.0, 1.5, 0.5, 0.5}),
+            new Sector("Industria", "Industrial", new double[]{1.5, 1.0, 2.0, 1.2, 2.0}),
+            new Sector("Agricultura", "Agro", new double[]{0.8, 1.5, 1.5, 0.4, 1.5}),
+            new Sector("Construcción", "Construcciones", new double[]{0.8, 1.5, 2.0, 0.3, 2.5}),
+            new Sector("Servicios", "Servicios", new double[]{2.0, 1.0, 0.2, 1.5, 0.6})
+    };
+
+    /**
+     * Tipo de emisión generado: nombre en el diccionario, peso relativo, cantidad típica y
+     * kg de CO2e por unidad (valores de referencia habituales: kWh, km, litros de gasóleo, kWh de gas y kg).
+     */
+    private record PerfilTipo(String nombre, double peso, double cantidadMedia, double factor) { }
+
+    private static final PerfilTipo[] TIPOS = {
+            new PerfilTipo("Electricidad", 35, 850, 0.25),
+            new PerfilTipo("Transporte", 25, 400, 0.17),
+            new PerfilTipo("Combustión", 15, 120, 2.68),
+            new PerfilTipo("Calefacción", 15, 600, 0.20),
+            new PerfilTipo("Residuos", 10, 300, 0.45)
+    };
+
+    /** Posición de la calefacción en {@link #TIPOS}, cuya cantidad depende de la estación. */
+    private static final int CALEFACCION = 3;
+
+    /**
+     * Reparto del número de emisiones de cada empresa y día alrededor de la media.
+     */
+    public enum Distribucion {
+        /** La media todos los días (la parte decimal decide al azar si hay una fila más). */
+        CONSTANTE,
+        /** Número de Poisson con la media: unos días sin emisiones, otros con varias. */
+        POISSON,
+        /** Poisson con menos actividad los fines de semana (30 % de un laborable); la media semanal se mantiene. */
+        LABORABLES;
+
+        /**
+         * Número de emisiones de una empresa en un día.
+         */
+        int emisiones(double media, DayOfWeek dia, SplittableRandom aleatorio) {
+            return switch (this) {
+                case CONSTANTE -> (int) media + (aleatorio.nextDouble() < media - (int) media ? 1 : 0);
+                case POISSON -> poisson(media, aleatorio);
+                case LABORABLES -> poisson(media * (dia.getValue() >= 6 ? 0.3 : 1.0) * 7 / 5.6, aleatorio);
+            };
+        }
+    }
+
+    /**
+     * Parámetros de una generación.
+     *
+     * @param semilla Semilla del generador aleatorio.
+     * @param empresas Número de empresas.
+     * @param sedesPorEmpresa Sedes de cada empresa (como mucho, una por ciudad de la lista: 20).
+     * @param desde Primer día con emisiones.
+     * @param hasta Último día con emisiones.
+     * @param emisionesPorDia Media de emisiones de cada empresa por día.
+     * @param distribucion Reparto de las emisiones entre los días.
+     */
+    public record Parametros(long semilla, int empresas, int sedesPorEmpresa, LocalDate desde, LocalDate hasta,
+                             double emisionesPorDia, Distribucion distribucion) {
+
+        public Parametros {
+            if (empresas < 1) throw new IllegalArgumentException("Debe generarse al menos una empresa");
+            if (sedesPorEmpresa < 0 || sedesPorEmpresa > CIUDADES.length) {
+                throw new IllegalArgumentException("Las sedes por empresa deben estar entre 0 y " + CIUDADES.length);
+            }
+            if (hasta.isBefore(desde)) throw new IllegalArgumentException("La fecha final es anterior a la inicial");
+            if (emisionesPorDia < 0) throw new IllegalArgumentException("La media de emisiones por día es negativa");
+        }
+
+        /**
+         * Datos del enlace "Cargar Datos de Prueba": una docena de empresas con dos años de emisiones.
+         */
+        public static Parametros demo() {
+            LocalDate hoy = LocalDate.now();
+            return new Parametros(2024, 12, 2, hoy.minusYears(2).plusDays(1), hoy, 1.0, Distribucion.LABORABLES);
+        }
+
+        /**
+         * Parámetros para unas emisiones totales aproximadas: una empresa por cada 10.000 emisiones
+         * (entre 1 y {@value #MAX_EMPRESAS_AUTOMATICAS}), dos sedes cada una y cinco años hasta hoy.
+         *
+         * @param filas Emisiones que se quieren generar.
+         * @param semilla Semilla del generador aleatorio.
+         */
+        public static Parametros paraFilas(long filas, long semilla) {
+            int empresas = (int) Math.max(1, Math.min(MAX_EMPRESAS_AUTOMATICAS, filas / 10_000));
+            LocalDate hasta = LocalDate.now();
+            LocalDate desde = hasta.minusYears(5).plusDays(1);
+            long dias = hasta.toEpochDay() - desde.toEpochDay() + 1;
+            return new Parametros(semilla, empresas, 2, desde, hasta, (double) filas / empresas / dias, Distribucion.POISSON);
+        }
+
+        /**
+         * @return Número de días del intervalo.
+         */
+        public long dias() {
+            return hasta.toEpochDay() - desde.toEpochDay() + 1;
+        }
+
+        /**
+         * @return Número de emisiones esperado (el real varía un poco según la distribución).
+         */
+        public long emisionesEstimadas() {
+            return Math.round(empresas * dias() * emisionesPorDia);
+        }
+    }
+
+    /**
+     * Avance de una generación.
+     *
+     * @param emisiones Emisiones insertadas hasta ahora (aún sin confirmar).
+     * @param estimadas Emisiones esperadas en total.
+     */
+    public record Progreso(long emisiones, long estimadas) {
+
+        /**
+         * @return Fracción generada (de 0 a 1).
+         */
+        public double fraccion() {
+            return estimadas <= 0 ? 1 : Math.min(1.0, (double) emisiones / estimadas);
+        }
+    }
+
+    /**
+     * Resultado de una generación confirmada.
+     *
+     * @param empresas Empresas nuevas.
+     * @param sedes Sedes nuevas.
+     * @param emisiones Emisiones nuevas.
+     * @param cargaMasiva true si se ha hecho como carga masiva (sin índices durante la inserción).
+     * @param milisegundos Duración total.
+     */
+    public record Resultado(int empresas, int sedes, long emisiones, boolean cargaMasiva, long milisegundos) {
+
+        /**
+         * @return Emisiones generadas por segundo.
+         */
+        public double filasPorSegundo() {
+            return milisegundos == 0 ? emisiones : emisiones * 1000.0 / milisegundos;
+        }
+    }
+
+    /** Pool del que se toma la conexión de escritura. */
+    private final PoolConexiones pool;
+
+    /** Diccionario de tipos de emisión. */
+    private final DiccionarioTipos tipos;
+
+    /**
+     * @param pool Pool de conexiones de la aplicación.
+     * @param tipos Diccionario de tipos de emisión.
+     */
+    GeneradorDatos(PoolConexiones pool, DiccionarioTipos tipos) {
+        this.pool = pool;
+        this.tipos = tipos;
+    }
+
+    /**
+     * Genera y guarda los datos de unos parámetros. Si algo falla no se guarda nada.
+     *
+     * @param parametros Qué y cuánto generar.
+     * @param progreso Recibe el avance cada {@value #FILAS_POR_AVISO} emisiones (puede ser null).
+     * @return Resumen de lo generado, o null si ha habido un error.
+     */
+    public Resultado generar(Parametros parametros, Consumer<Progreso> progreso) {
+        long inicio = System.nanoTime();
+        Map<String, TipoEmision> tiposCreados = new HashMap<>();
+        boolean cargaMasiva = parametros.emisionesEstimadas() >= ImportadorCSV.MIN_FILAS_CARGA_MASIVA;
+        try (Connection conexion = pool.obtenerEscritura()) {
+            // Las claves ajenas salen de la propia transacción: comprobarlas fila a fila es casi la mitad del tiempo
+            // (el pragma no tiene efecto dentro de una transacción, por eso va antes)
+            if (cargaMasiva) clavesAjenas(conexion, false);
+            conexion.setAutoCommit(false);
+            try {
+                Map<String, Long> existentes = empresasExistentes(conexion);
+                long[] idsEmpresa = new long[parametros.empresas()];
+                int[] sectores = new int[parametros.empresas()];
+                int sedes = insertarEmpresas(conexion, parametros, existentes, idsEmpresa, sectores);
+                int empresasNuevas = 0;
+                for (long id : idsEmpresa) if (id > 0) empresasNuevas++;
+
+                int[] idsTipo = new int[TIPOS.length];
+                for (int t = 0; t < TIPOS.length; t++) idsTipo[t] = tipos.resolver(conexion, TIPOS[t].nombre(), tiposCreados).getId();
+
+                List<String> esquema = List.of();
+                Agregados agregados = null;
+                if (cargaMasiva) {
+                    esquema = EsquemaEmisiones.quitar(conexion, true, EsquemaEmisiones.TRIGGERS_GENERACION);
+                    agregados = new Agregados(parametros);
+                }
+                long emisiones = insertarEmisiones(conexion, parametros, idsEmpresa, sectores, idsTipo, agregados, progreso);
+                if (cargaMasiva) {
+                    restaurarIndices(conexion, esquema);
+                    agregados.guardar(conexion, idsEmpresa, idsTipo);
+                }
+
+                conexion.commit();
+                tipos.incorporar(tiposCreados);
+                return new Resultado(empresasNuevas, sedes, emisiones, cargaMasiva, (System.nanoTime() - inicio) / 1_000_000);
+            } catch (SQLException e) {
+                conexion.rollback();
+                throw e;
+            } finally {
+                conexion.setAutoCommit(true);
+                if (cargaMasiva) clavesAjenas(conexion, true);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error al generar los datos de prueba: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // ==========================================
+    // EMPRESAS Y SEDES
+    // ==========================================
+
+    /**
+     * Nombre de la empresa {@code n} (desde 0): prefijo, actividad del sector, número de vuelta si los
+     * prefijos ya se han usado todos, y forma jurídica. Dos posiciones distintas nunca dan el mismo nombre.
+     */
+    static String nombreEmpresa(int n, int sector) {
+        int vuelta = n / PREFIJOS.length;
+        return PREFIJOS[n % PREFIJOS.length] + " " + SECTORES[sector].actividad()
+                + (vuelta == 0 ? "" : " " + (vuelta + 1)) + " " + FORMAS_JURIDICAS[n % FORMAS_JURIDICAS.length];
+    }
+
+    /**
+     * Mapa nombre → ID de las empresas que ya hay en la base de datos.
+     */
+    private static Map<String, Long> empresasExistentes(Connection conexion) throws SQLException {
+        Map<String, Long> empresas = new HashMap<>();
+        try (PreparedStatement ps = conexion.prepareStatement("SELECT id, nombre FROM empresa");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) empresas.putIfAbsent(rs.getString(2), rs.getLong(1));
+        }
+        return empresas;
+    }
+
+    /**
+     * Inserta las empresas que aún no existen, con sus sedes.
+     *
+     * @param idsEmpresa Se rellena con el ID de cada empresa nueva (0 si ya existía: no recibe emisiones).
+     * @param sectores Se rellena con la posición en {@link #SECTORES} del sector de cada empresa.
+     * @return Número de sedes insertadas.
+     */
+    private static int insertarEmpresas(Connection conexion, Parametros parametros, Map<String, Long> existentes,
+                                        long[] idsEmpresa, int[] sectores) throws SQLException {
+        // Generador propio: el número de empresas no altera las emisiones de cada una
+        SplittableRandom aleatorio = new SplittableRandom(parametros.semilla());
+        int sedes = 0;
+        try (PreparedStatement psEmpresa = conexion.prepareStatement(INSERT_EMPRESA);
+             PreparedStatement psSede = conexion.prepareStatement(INSERT_SEDE)) {
+            for (int n = 0; n < parametros.empresas(); n++) {
+                int sector = aleatorio.nextInt(SECTORES.length);
+                int primeraCiudad = aleatorio.nextInt(CIUDADES.length);
+                sectores[n] = sector;
+                String nombre = nombreEmpresa(n, sector);
+                if (existentes.containsKey(nombre)) continue;
+
+                psEmpresa.setString(1, nombre);
+                psEmpresa.setString(2, SECTORES[sector].nombre());
+                try (ResultSet rs = psEmpresa.executeQuery()) {
+                    rs.next();
+                    idsEmpresa[n] = rs.getLong(1);
+                }
+                for (int s = 0; s < parametros.sedesPorEmpresa(); s++) {
+                    psSede.setString(1, CIUDADES[(primeraCiudad + s) % CIUDADES.length]);
+                    psSede.setString(2, CALLES[(n + s) % CALLES.length] + ", " + (1 + (n * 7 + s * 13) % 150));
+                    psSede.setLong(3, idsEmpresa[n]);
+                    psSede.addBatch();
+                    sedes++;
+                }
+            }
+            psSede.executeBatch();
+        }
+        return sedes;
+    }
+
+    // ==========================================
+    // EMISIONES
+    // ==========================================
+
+    /**
+     * Inserta las emisiones día a día (en cada día, empresa a empresa), en el orden del índice de días.
+     *
+     * @param agregados Totales que se van sumando (null si los mantienen los triggers).
+     * @return Número de emisiones insertadas.
+     */
+    private static long insertarEmisiones(Connection conexion, Parametros parametros, long[] idsEmpresa, int[] sectores,
+                                          int[] idsTipo, Agregados agregados, Consumer<Progreso> progreso) throws SQLException {
+        double[][] acumulados = pesosAcumulados();
+        SplittableRandom aleatorio = new SplittableRandom(parametros.semilla() ^ 0x5DEECE66DL);
+        long estimadas = parametros.emisionesEstimadas();
+        long insertadas = 0;
+        try (LoteEmisiones lote = new LoteEmisiones(conexion)) {
+            for (long dia = parametros.desde().toEpochDay(); dia <= parametros.hasta().toEpochDay(); dia++) {
+                LocalDate fecha = LocalDate.ofEpochDay(dia);
+                String textoFecha = fecha.toString();
+                double estacion = estacionCalefaccion(fecha.getMonth());
+                int mes = (int) ChronoUnit.MONTHS.between(parametros.desde().withDayOfMonth(1), fecha.withDayOfMonth(1));
+                for (int n = 0; n < idsEmpresa.length; n++) {
+                    int filas = parametros.distribucion().emisiones(parametros.emisionesPorDia(), fecha.getDayOfWeek(), aleatorio);
+                    for (int f = 0; f < filas; f++) {
+                        // Los números se sacan también para las empresas que ya existían: así las demás
+                        // reciben las mismas emisiones que si se generasen todas
+                        int tipo = elegir(acumulados[sectores[n]], aleatorio.nextDouble());
+                        PerfilTipo perfil = TIPOS[tipo];
+                        double variacion = Math.exp(0.5 * aleatorio.nextGaussian() - 0.125);
+                        if (idsEmpresa[n] == 0) continue;
+
+                        double cantidad = redondear(perfil.cantidadMedia() * variacion * (tipo == CALEFACCION ? estacion : 1));
+                        double co2e = redondear(cantidad * perfil.factor());
+                        lote.anadir(idsTipo[tipo], cantidad, co2e, textoFecha, dia, idsEmpresa[n]);
+                        if (agregados != null) agregados.sumar(n, mes, tipo, dia, cantidad, co2e);
+                        insertadas++;
+                        if (progreso != null && insertadas % FILAS_POR_AVISO == 0) {
+                            progreso.accept(new Progreso(insertadas, estimadas));
+                        }
+                    }
+                }
+            }
+        }
+        if (progreso != null) progreso.accept(new Progreso(insertadas, Math.max(insertadas, estimadas)));
+        return insertadas;
+    }
+
+    /**
+     * Inserción de emisiones de {@value #FILAS_POR_SENTENCIA} en {@value #FILAS_POR_SENTENCIA}
+     * con un único INSERT de varias filas: SQLite ejecuta una sentencia por cada grupo, no por cada fila.
+     * Las que sobran al final (menos de un grupo) se insertan una a una al cerrar.
+     */
+    private static final class LoteEmisiones implements AutoCloseable {
+
+        private static final int COLUMNAS = 6;
+
+        private final PreparedStatement varias;
+        private final PreparedStatement una;
+        private final Object[] pendientes = new Object[FILAS_POR_SENTENCIA * COLUMNAS];
+        private int filas;
+
+        LoteEmisiones(Connection conexion) throws SQLException {
+            StringBuilder sql = new StringBuilder(INSERT_EMISION);
+            for (int i = 1; i < FILAS_POR_SENTENCIA; i++) sql.append(",(?,?,?,?,?,?)");
+            una = conexion.prepareStatement(INSERT_EMISION);
+            varias = conexion.prepareStatement(sql.toString());
+        }
+
+        void anadir(int idTipo, double cantidad, double co2e, String fecha, long dia, long idEmpresa) throws SQLException {
+            int base = filas * COLUMNAS;
+            varias.setInt(base + 1, idTipo);
+            varias.setDouble(base + 2, cantidad);
+            varias.setDouble(base + 3, co2e);
+            varias.setString(base + 4, fecha);
+            varias.setLong(base + 5, dia);
+            varias.setLong(base + 6, idEmpresa);
+            pendientes[base] = idTipo;
+            pendientes[base + 1] = cantidad;
+            pendientes[base + 2] = co2e;
+            pendientes[base + 3] = fecha;
+            pendientes[base + 4] = dia;
+            pendientes[base + 5] = idEmpresa;
+            if (++filas == FILAS_POR_SENTENCIA) {
+                varias.executeUpdate();
+                filas = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                for (int fila = 0; fila < filas; fila++) {
+                    for (int c = 0; c < COLUMNAS; c++) una.setObject(c + 1, pendientes[fila * COLUMNAS + c]);
+                    una.executeUpdate();
+                }
+            } finally {
+                varias.close();
+                una.close();
+            }
+        }
+    }
+
+    /**
+     * Pesos acumulados de los tipos para cada sector (para elegir un tipo con un único número aleatorio).
+     */
+    private static double[][] pesosAcumulados() {
+        double[][] acumulados = new double[SECTORES.length][TIPOS.length];
+        for (int s = 0; s < SECTORES.length; s++) {
+            double total = 0;
+            for (int t = 0; t < TIPOS.length; t++) total += TIPOS[t].peso() * SECTORES[s].pesos()[t];
+            double acumulado = 0;
+            for (int t = 0; t < TIPOS.length; t++) {
+                acumulado += TIPOS[t].peso() * SECTORES[s].pesos()[t] / total;
+                acumulados[s][t] = acumulado;
+            }
+        }
+        return acumulados;
+    }
+
+    /**
+     * Posición del primer peso acumulado que supera {@code valor} (entre 0 y 1).
+     */
+    private static int elegir(double[] acumulados, double valor) {
+        for (int i = 0; i < acumulados.length - 1; i++) {
+            if (valor < acumulados[i]) return i;
+        }
+        return acumulados.length - 1;
+    }
+
+    /**
+     * Multiplicador del consumo de calefacción según el mes.
+     */
+    private static double estacionCalefaccion(Month mes) {
+        return switch (mes) {
+            case DECEMBER, JANUARY, FEBRUARY -> 1.8;
+            case MARCH, NOVEMBER -> 1.2;
+            case APRIL, OCTOBER -> 0.7;
+            default -> 0.3;
+        };
+    }
+
+    /**
+     * Número de Poisson de una media: por el método de Knuth si es pequeña y con la aproximación normal si no.
+     */
+    private static int poisson(double media, SplittableRandom aleatorio) {
+        if (media <= 0) return 0;
+        if (media > 30) return (int) Math.max(0, Math.round(media + Math.sqrt(media) * aleatorio.nextGaussian()));
+        double limite = Math.exp(-media);
+        double producto = aleatorio.nextDouble();
+        int n = 0;
+        while (producto > limite) {
+            producto *= aleatorio.nextDouble();
+            n++;
+        }
+        return n;
+    }
+
+    private static double redondear(double valor) {
+        return Math.round(valor * 100) / 100.0;
+    }
+
+    // ==========================================
+    // CARGA MASIVA
+    // ==========================================
+
+    /**
+     * Activa o desactiva la comprobación de claves ajenas de la conexión (fuera de una transacción).
+     */
+    private static void clavesAjenas(Connection conexion, boolean activas) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("PRAGMA foreign_keys = " + (activas ? "ON" : "OFF"));
+        }
+    }
+
+    /**
+     * Vuelve a crear índices y triggers. Mientras se crean, la conexión usa una caché de páginas mayor:
+     * ordenar millones de entradas con la caché por defecto (2 MB) cuesta el doble.
+     */
+    private static void restaurarIndices(Connection conexion, List<String> esquema) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            long cacheAnterior;
+            try (ResultSet rs = st.executeQuery("PRAGMA cache_size")) {
+                cacheAnterior = rs.next() ? rs.getLong(1) : -2000;
+            }
+            st.execute("PRAGMA cache_size = -" + CACHE_CARGA_MASIVA_KIB);
+            try {
+                EsquemaEmisiones.restaurar(conexion, esquema);
+            } finally {
+                st.execute("PRAGMA cache_size = " + cacheAnterior);
+            }
+        }
+    }
+
+    /**
+     * Totales por empresa y resumen mensual de las emisiones generadas, sumados en memoria durante una carga masiva
+     * (lo mismo que harían trg_totales_emision_alta y trg_mensual_emision_alta fila a fila).
+     * Las empresas se identifican por su posición en la generación y los meses desde el primero del intervalo.
+     */
+    private static final class Agregados {
+
+        private final LocalDate primerMes;
+        private final int meses;
+
+        private final double[] co2eEmpresa;
+        private final long[] numEmpresa;
+        private final long[] ultimoDia;
+
+        /** Por empresa, mes y tipo: posición {@code (empresa * meses + mes) * TIPOS.length + tipo}. */
+        private final double[] co2eMes;
+        private final double[] cantidadMes;
+        private final int[] numMes;
+
+        Agregados(Parametros parametros) {
+            primerMes = parametros.desde().withDayOfMonth(1);
+            meses = (int) ChronoUnit.MONTHS.between(primerMes, parametros.hasta().withDayOfMonth(1)) + 1;
+            co2eEmpresa = new double[parametros.empresas()];
+            numEmpresa = new long[parametros.empresas()];
+            ultimoDia = new long[parametros.empresas()];
+            int celdas = Math.multiplyExact(parametros.empresas() * meses, TIPOS.length);
+            co2eMes = new double[celdas];
+            cantidadMes = new double[celdas];
+            numMes = new int[celdas];
+        }
+
+        void sumar(int empresa, int mes, int tipo, long dia, double cantidad, double co2e) {
+            co2eEmpresa[empresa] += co2e;
+            numEmpresa[empresa]++;
+            ultimoDia[empresa] = Math.max(ultimoDia[empresa], dia);
+            int celda = (empresa * meses + mes) * TIPOS.length + tipo;
+            co2eMes[celda] += co2e;
+            cantidadMes[celda] += cantidad;
+            numMes[celda]++;
+        }
+
+        /**
+         * Suma los agregados a empresa_totales y emision_mensual.
+         */
+        void guardar(Connection conexion, long[] idsEmpresa, int[] idsTipo) throws SQLException {
+            try (PreparedStatement psTotales = conexion.prepareStatement(TOTALES_EMPRESA);
+                 PreparedStatement psMensual = conexion.prepareStatement(MENSUAL_EMPRESA)) {
+                for (int n = 0; n < idsEmpresa.length; n++) {
+                    if (numEmpresa[n] == 0) continue;
+                    psTotales.setLong(1, idsEmpresa[n]);
+                    psTotales.setDouble(2, co2eEmpresa[n]);
+                    psTotales.setLong(3, numEmpresa[n]);
+                    psTotales.setString(4, LocalDate.ofEpochDay(ultimoDia[n]).toString());
+                    psTotales.addBatch();
+                    for (int mes = 0; mes < meses; mes++) {
+                        LocalDate inicioMes = primerMes.plusMonths(mes);
+                        for (int tipo = 0; tipo < TIPOS.length; tipo++) {
+                            int celda = (n * meses + mes) * TIPOS.length + tipo;
+                            if (numMes[celda] == 0) continue;
+                            psMensual.setLong(1, idsEmpresa[n]);
+                            psMensual.setInt(2, inicioMes.getYear() * 100 + inicioMes.getMonthValue());
+                            psMensual.setInt(3, idsTipo[tipo]);
+                            psMensual.setDouble(4, co2eMes[celda]);
+                            psMensual.setDouble(5, cantidadMes[celda]);
+                            psMensual.setInt(6, numMes[celda]);
+                            psMensual.addBatch();
+                        }
+                    }
+                }
+                psTotales.executeBatch();
+                psMensual.executeBatch();
+            }
+        }
+    }
+
+    // ==========================================
+    // LÍNEA DE COMANDOS
+    // ==========================================
+
+    /**
+     * Genera datos en una base de datos desde la línea de comandos (también con {@code Launcher generar ...}).
+     * <pre>
+     * --bd ruta.db            Base de datos (por defecto, carbon_tracker.db; se crea si no existe)
+     * --filas N               Emisiones aproximadas; elige empresas, sedes, intervalo y media (por defecto 100000)
+     * --empresas N            Número de empresas
+     * --sedes N               Sedes por empresa
+     * --desde AAAA-MM-DD      Primer día
+     * --hasta AAAA-MM-DD      Último día
+     * --por-dia X             Media de emisiones de cada empresa por día
+     * --distribucion D        CONSTANTE, POISSON o LABORABLES
+     * --semilla N             Semilla (por defecto 42)
+     * </pre>
+     * Las opciones explícitas sustituyen a las que deduce {@code --filas}.
+     *
+     * @param args Opciones.
+     */
+    public static void main(String[] args) {
+        Parametros parametros;
+        String url = ConfiguracionBD.URL_POR_DEFECTO;
+        try {
+            Map<String, String> opciones = new HashMap<>();
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("--") || i + 1 == args.length) {
+                    throw new IllegalArgumentException("Opción incompleta: " + args[i]);
+                }
+                opciones.put(args[i].substring(2), args[++i]);
+            }
+            if (opciones.containsKey("bd")) url = "jdbc:sqlite:" + opciones.remove("bd");
+            long semilla = Long.parseLong(opciones.getOrDefault("semilla", "42"));
+            Parametros base = Parametros.paraFilas(Long.parseLong(opciones.getOrDefault("filas", "100000")), semilla);
+            opciones.remove("semilla");
+            opciones.remove("filas");
+            parametros = new Parametros(semilla,
+                    opciones.containsKey("empresas") ? Integer.parseInt(opciones.remove("empresas")) : base.empresas(),
+                    opciones.containsKey("sedes") ? Integer.parseInt(opciones.remove("sedes")) : base.sedesPorEmpresa(),
+                    opciones.containsKey("desde") ? LocalDate.parse(opciones.remove("desde")) : base.desde(),
+                    opciones.containsKey("hasta") ? LocalDate.parse(opciones.remove("hasta")) : base.hasta(),
+                    opciones.containsKey("por-dia") ? Double.parseDouble(opciones.remove("por-dia")) : base.emisionesPorDia(),
+                    opciones.containsKey("distribucion")
+                            ? Distribucion.valueOf(opciones.remove("distribucion").toUpperCase(Locale.ROOT)) : base.distribucion());
+            if (!opciones.isEmpty()) throw new IllegalArgumentException("Opciones desconocidas: " + opciones.keySet());
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            System.out.println("Parámetros no válidos: " + e.getMessage());
+            System.out.println("Uso: GeneradorDatos [--bd ruta.db] [--filas N] [--empresas N] [--sedes N] "
+                    + "[--desde AAAA-MM-DD] [--hasta AAAA-MM-DD] [--por-dia X] [--distribucion CONSTANTE|POISSON|LABORABLES] [--semilla N]");
+            System.exit(2);
+            return;
+        }
+
+        System.out.printf("Generando ~%,d emisiones (%d empresas, %d sedes cada una, %s a %s, %.2f por empresa y día, %s)%n",
+                parametros.emisionesEstimadas(), parametros.empresas(), parametros.sedesPorEmpresa(),
+                parametros.desde(), parametros.hasta(), parametros.emisionesPorDia(), parametros.distribucion());
+        GestorBD gestor = new GestorBD(url);
+        try {
+            gestor.arrancarBD();
+            Resultado resultado = gestor.generarDatos(parametros, p ->
+                    System.out.printf("  %,d emisiones (%.0f %%)%n", p.emisiones(), p.fraccion() * 100));
+            if (resultado == null) System.exit(1);
+            System.out.printf("Generadas %d empresas, %d sedes y %,d emisiones en %.1f s (%,.0f filas/s)%n",
+                    resultado.empresas(), resultado.sedes(), resultado.emisiones(),
+                    resultado.milisegundos() / 1000.0, resultado.filasPorSegundo());
+        } finally {
+            gestor.cerrar();
+        }
+    }
+}
@@ -1,17 +1,30 @@
 package DAO;
 
+import DAO.CacheConsultas.Tabla;
+import DAO.migraciones.MigradorEsquema;
 import Modelos.*;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.DateTimeException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -31,138 +44,203 @@ public class GestorBD {
     // ==========================================
 
     /**
-     * Cadena de conexión JDBC para la base de datos SQLite local.
+     * Pool de conexiones de larga duración con caché de sentencias preparadas.
+     * Separa las conexiones de lectura de la única conexión de escritura.
      */
-    private static final String URL_BASEDATOS = "jdbc:sqlite:carbon_tracker.db";
+    private final PoolConexiones pool;
 
     /**
-     * Establece y configura la conexión con la base de datos.
+     * Filas máximas por transacción en la vía de escritura asíncrona de emisiones.
+     */
+    private static final int LOTE_MAXIMO_EMISIONES = 1000;
+
+    /**
+     * Milisegundos máximos que el escritor asíncrono espera para completar un lote.
+     */
+    private static final long ESPERA_LOTE_EMISIONES_MS = 5;
+
+    /**
+     * Diccionario de tipos de emisión (ID, nombre canónico, categoría y alias).
+     */
+    private final DiccionarioTipos tipos;
+
+    /**
+     * Escritor asíncrono con "group commit" para altas masivas de emisiones.
+     */
+    private final EscritorEmisiones escritorEmisiones;
+
+    /**
+     * Importador masivo de archivos CSV (emisiones, empresas y sedes).
+     */
+    private final ImportadorCSV importadorCSV;
+
+    /**
+     * Exportación de emisiones a CSV por cursor.
+     */
+    private final ExportadorCSV exportadorCSV;
+
+    /**
+     * Copia columnar en memoria de las emisiones para los agregados (se carga bajo demanda).
+     */
+    private final AlmacenColumnar almacenColumnar;
+
+    /**
+     * Recálculo del CO2e de las emisiones con el catálogo de factores.
+     */
+    private final RecalculoCo2e recalculoCo2e;
+
+    /**
+     * Generador de datos sintéticos (datos de prueba y pruebas de carga).
+     */
+    private final GeneradorDatos generadorDatos;
+
+    /**
+     * Resultados en memoria de las lecturas repetidas (empresas, informes, sedes, factores);
+     * cada escritura invalida las entradas de su tabla y su empresa al confirmarse.
+     */
+    private final CacheConsultas cache;
+
+    /**
+     * Columnas de las consultas que devuelven listas de emisiones: las de {@link VistaEmision}
+     * más el nombre de la empresa (alias {@code c}).
+     */
+    private static final String COLUMNAS_LISTA = VistaEmision.COLUMNAS + ", c.nombre";
+
+    /** Relleno de un prefijo de fecha ISO hasta la menor y la mayor fecha posibles. */
+    private static final String FORMATO_FECHA_MIN = "0000-00-00";
+    private static final String FORMATO_FECHA_MAX = "9999-99-99";
+
+    /**
+     * Crea el gestor sobre la base de datos por defecto de la aplicación (modo WAL).
+     */
+    public GestorBD() {
+        this(new ConfiguracionBD());
+    }
+
+    /**
+     * Crea el gestor sobre una base de datos concreta (útil para pruebas o ficheros alternativos).
+     *
+     * @param urlBaseDatos Cadena de conexión JDBC (ej. "jdbc:sqlite:/tmp/prueba.db").
+     */
+    public GestorBD(String urlBaseDatos) {
+        this(new ConfiguracionBD(urlBaseDatos));
+    }
+
+    /**
+     * Crea el gestor con una configuración de almacenamiento explícita
+     * (modo de diario, número de lectores, espera y reintentos ante bloqueos).
+     *
+     * @param configuracion Configuración del almacenamiento.
+     */
+    public GestorBD(ConfiguracionBD configuracion) {
+        this.pool = new PoolConexiones(configuracion);
+        this.tipos = new DiccionarioTipos(pool);
+        this.escritorEmisiones = new EscritorEmisiones(pool, tipos, LOTE_MAXIMO_EMISIONES, ESPERA_LOTE_EMISIONES_MS);
+        this.importadorCSV = new ImportadorCSV(pool, tipos);
+        this.exportadorCSV = new ExportadorCSV(pool);
+        this.almacenColumnar = new AlmacenColumnar(configuracion.getMemoriaAlmacenColumnarMB());
+        this.recalculoCo2e = new RecalculoCo2e(pool, tipos);
+        this.generadorDatos = new GeneradorDatos(pool, tipos);
+        this.cache = new CacheConsultas(configuracion.getEntradasCacheConsultas());
+    }
+
+    /**
+     * Obtiene una conexión de solo lectura del pool para consultas.
      * <p>
-     * Es importante activar explícitamente las claves foráneas (Foreign Keys)
-     * en SQLite mediante el "PRAGMA foreign_keys = ON" para asegurar
-     * la integridad.
+     * Las conexiones ya vienen configuradas con el "PRAGMA foreign_keys = ON" activado
+     * para asegurar la integridad. Al cerrarla con {@code close()} vuelve al pool.
      *
-     * @return Objeto Connection activo o null si falla la conexión.
+     * @return Objeto Connection activo.
+     * @throws SQLException Si no se puede obtener ninguna conexión.
      */
-    private Connection establecerConexion() {
-        Connection conexion = null;
-        try {
-            conexion = DriverManager.getConnection(URL_BASEDATOS);
-            try (Statement st = conexion.createStatement()) {
-                st.execute("PRAGMA foreign_keys = ON;");
-            }
-        } catch (SQLException e) {
-            System.out.println("Error conectando BD: " + e.getMessage());
-        }
-        return conexion;
+    private Connection conexionLectura() throws SQLException {
+        return pool.obtenerLectura();
     }
 
-    // ==========================================
-    // 2. INICIALIZACIÓN Y ESQUEMA
-    // ==========================================
+    /**
+     * Obtiene la conexión de escritura del pool. Todas las modificaciones (y las
+     * lecturas que forman parte de una transacción de escritura) deben usar esta.
+     *
+     * @return Objeto Connection activo.
+     * @throws SQLException Si no se puede obtener la conexión.
+     */
+    private Connection conexionEscritura() throws SQLException {
+        return pool.obtenerEscritura();
+    }
 
     /**
-     * Método auxiliar para actualizar la estructura de la tabla usuarios
-     * si la base de datos ya existía previamente sin el campo 'activo' (Base de datos vacía por defecto).
+     * Cierra las conexiones del pool. Se invoca al apagar la aplicación.
+     * Antes se vacía la cola del escritor asíncrono de emisiones.
      */
-    private void actualizarEsquemaUsuarios(Statement stmt) {
-        try {
-            // Intentamos añadir la columna. Si ya existe, SQLite lanzará una excepción .
-            stmt.execute("ALTER TABLE usuario ADD COLUMN activo INTEGER DEFAULT 1;");
-            System.out.println("Esquema actualizado: Columna 'activo' añadida.");
-        } catch (SQLException e) {
-            // La columna  ya existe
-        }
+    public void cerrar() {
+        escritorEmisiones.cerrar();
+        pool.cerrar();
+    }
+
+    /**
+     * Devuelve el SQL de todas las sentencias preparadas que se han ejecutado hasta ahora.
+     * Uso de diagnóstico: permite revisar el plan de ejecución (EXPLAIN QUERY PLAN) de cada consulta.
+     *
+     * @return Conjunto de cadenas SQL.
+     */
+    public Set<String> getSentenciasPreparadas() {
+        return pool.getSentenciasPreparadas();
+    }
+
+    /**
+     * Devuelve los aciertos y fallos de la caché de consultas. Uso de diagnóstico.
+     *
+     * @return Contadores de la caché.
+     */
+    public CacheConsultas.Estadisticas getEstadisticasCache() {
+        return cache.getEstadisticas();
+    }
+
+    /**
+     * Devuelve las métricas de rendimiento de la base de datos (latencias por método y por consulta,
+     * filas, esperas por conexión y errores). Uso de diagnóstico: vista "Rendimiento" del administrador.
+     *
+     * @return Métricas del pool, o null si la instrumentación está desactivada en la configuración.
+     */
+    public MetricasBD getMetricas() {
+        return pool.getMetricas();
+    }
+
+    /**
+     * Envuelve el aviso de progreso de una operación por lotes para invalidar la caché tras cada lote
+     * confirmado (las lecturas no deben ver datos anteriores a lo ya importado o recalculado).
+     * <p>
+     * Si cambian las emisiones, antes se descarta la copia en memoria: si siguiera respondiendo con los
+     * datos anteriores a la operación, la caché recién vaciada se volvería a llenar con ellos.
+     *
+     * @param progreso Aviso original (puede ser null).
+     * @param tablas Tablas que modifica la operación.
+     * @return Aviso que primero invalida y después avisa.
+     */
+    private <P> Consumer<P> invalidarTrasCadaLote(Consumer<P> progreso, Tabla... tablas) {
+        boolean emisiones = List.of(tablas).contains(Tabla.EMISIONES);
+        return avance -> {
+            if (emisiones) almacenColumnar.descartar();
+            cache.invalidar(null, tablas);
+            if (progreso != null) progreso.accept(avance);
+        };
     }
 
+    // ==========================================
+    // 2. INICIALIZACIÓN Y ESQUEMA
+    // ==========================================
+
     /**
      * Inicializa la estructura de la base de datos (Tablas y datos por defecto).
      * <p>
-     * Crea las tablas 'empresa', 'registro_emisiones', 'rol' y 'usuario' si no existen.
-     * Inserta los roles básicos (ADMINISTRADOR, USUARIO, CLIENTE) y un usuario
-     * administrador por defecto (admin/admin).
+     * Delega en {@link MigradorEsquema}, que lee {@code PRAGMA user_version} y aplica solo
+     * las migraciones pendientes. La primera migración crea las tablas base, los roles
+     * (ADMINISTRADOR, USUARIO, CLIENTE) y el administrador por defecto (admin/admin);
+     * sobre una base de datos ya actualizada el arranque es una única lectura del pragma.
      */
     public void arrancarBD() {
-        String filtro = "CREATE TABLE IF NOT EXISTS filtro (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "criterio_busqueda TEXT, " +
-                "ordenamiento TEXT, " + // AÑADIDO: Para guardar "Nombre Ascendente"
-                "contexto TEXT, " +
-                "fecha_hora TEXT DEFAULT (datetime('now', 'localtime')), " +
-                "id_usuario INTEGER NOT NULL, " +
-                "FOREIGN KEY (id_usuario) REFERENCES usuario(id));";
-        // Tabla Empresa
-        String empresa = "CREATE TABLE IF NOT EXISTS empresa (\n"
-                + " id INTEGER PRIMARY KEY AUTOINCREMENT,\n"
-                + " nombre TEXT NOT NULL,\n"
-                + " sector TEXT NOT NULL\n"
-                + ");";
-
-        // Tabla Emisiones
-        String emision = "CREATE TABLE IF NOT EXISTS registro_emisiones (\n"
-                + " id INTEGER PRIMARY KEY AUTOINCREMENT,\n"
-                + " tipo TEXT NOT NULL,\n"
-                + " cantidad REAL NOT NULL,\n"
-                + " co2e REAL NOT NULL,\n"
-                + " fecha TEXT NOT NULL,\n"
-                + " id_empresa INTEGER NOT NULL,\n"
-                + " FOREIGN KEY (id_empresa) REFERENCES empresa (id) ON DELETE CASCADE\n"
-                + ");";
-
-        // Tabla Rol
-        String rol = "CREATE TABLE IF NOT EXISTS rol (\n"
-                + " id INTEGER PRIMARY KEY AUTOINCREMENT,\n"
-                + " nombre_rol TEXT NOT NULL UNIQUE\n"
-                + ");";
-
-        // Tabla Usuario
-        String usuario = "CREATE TABLE IF NOT EXISTS usuario (\n"
-                + " id INTEGER PRIMARY KEY AUTOINCREMENT,\n"
-                + " nombre_usuario TEXT NOT NULL UNIQUE,\n"
-                + " hash_contrasena TEXT NOT NULL,\n"
-                + " nombre_completo TEXT NOT NULL,\n"
-                + " id_rol INTEGER NOT NULL,\n"
-                + " FOREIGN KEY (id_rol) REFERENCES rol (id)\n"
-                + ");";
-        String sede = "CREATE TABLE IF NOT EXISTS sede (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "ciudad TEXT NOT NULL, " +
-                "pais TEXT DEFAULT 'España', " +
-                "direccion TEXT, " +
-                "id_empresa INTEGER NOT NULL, " +
-                "FOREIGN KEY (id_empresa) REFERENCES empresa(id) ON DELETE CASCADE, " +
-                "UNIQUE(ciudad, id_empresa));";
-
-        String auditoria = "CREATE TABLE IF NOT EXISTS auditoria (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "accion TEXT NOT NULL, " +
-                "fecha_hora TEXT NOT NULL, " +
-                "id_usuario INTEGER NOT NULL, " +
-                "FOREIGN KEY (id_usuario) REFERENCES usuario(id));";
-
-        //Conexion y lanzamientos
-        try (Connection conexion = establecerConexion();
-             Statement st = conexion.createStatement()) {
-            st.execute(filtro);
-            st.execute(empresa);
-            st.execute(emision);
-            st.execute(rol);
-            st.execute(usuario);
-            st.execute(sede);
-            st.execute(auditoria);
-            actualizarEsquemaUsuarios(st);
-            // Se rellenan los roles
-            st.execute("INSERT OR IGNORE INTO rol(id, nombre_rol) VALUES (1, 'ADMINISTRADOR');");
-            st.execute("INSERT OR IGNORE INTO rol(id, nombre_rol) VALUES (2, 'USUARIO');");
-            st.execute("INSERT OR IGNORE INTO rol(id, nombre_rol) VALUES (3, 'CLIENTE');");
-
-            // Se crea el usuario admin por defecto para poder testear los valores genéricos.
-            //Este usuario se puede sacar y/o cambiar de credenciales para que sea más seguro
-            String loginAdmin = truncarPass("admin");
-            String insertCredencialesAdmin = "INSERT OR IGNORE INTO usuario(id, nombre_usuario, hash_contrasena, nombre_completo, id_rol) "
-                    + "VALUES (1, 'admin', '" + loginAdmin + "', 'Administrador', 1);";
-            st.execute(insertCredencialesAdmin);
-
+        try (Connection conexion = conexionEscritura()) {
+            new MigradorEsquema().migrar(conexion);
         } catch (SQLException e) {
             System.out.println("Error inicializando BD: " + e.getMessage());
         }
@@ -211,7 +289,7 @@ public class GestorBD {
                 + "JOIN rol r ON u.id_rol = r.id "
                 + "WHERE u.nombre_usuario = ? AND u.hash_contrasena = ?";
 
-        try (Connection conexion = establecerConexion();
+        try (Connection conexion = conexionLectura();
              PreparedStatement pstmt = conexion.prepareStatement(consultaLogin)) {
 
             pstmt.setString(1, nomUsuario);
@@ -265,7 +343,7 @@ public class GestorBD {
 
         Connection conn = null;
         try {
-            conn = establecerConexion();
+            conn = conexionEscritura();
             conn.setAutoCommit(false); // Inicio transacción
 
             try (PreparedStatement ps = conn.prepareStatement(insertUsuario)) {
@@ -307,9 +385,9 @@ public class GestorBD {
         List<Rol> roles = new ArrayList<>();
         String sql = "SELECT * FROM rol WHERE nombre_rol != 'ADMINISTRADOR'";
 
-        try (Connection conn = establecerConexion();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = conexionLectura();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 roles.add(new Rol(rs.getLong("id"), rs.getString("nombre_rol")));
@@ -328,9 +406,9 @@ public class GestorBD {
         List<Usuario> lista = new ArrayList<>();
         String listaUsuarios = "SELECT u.*, r.nombre_rol FROM usuario u JOIN rol r ON u.id_rol = r.id";
 
-        try (Connection conexion = establecerConexion();
-             Statement st = conexion.createStatement();
-             ResultSet rs = st.executeQuery(listaUsuarios)) {
+        try (Connection conexion = conexionLectura();
+             PreparedStatement st = conexion.prepareStatement(listaUsuarios);
+             ResultSet rs = st.executeQuery()) {
 
             while (rs.next()) {
                 // Traducimos el estado boolean para 1-0 que es lo que entiende SQLite
@@ -344,6 +422,7 @@ public class GestorBD {
                         isActivo
                 ));
             }
+            PoolConexiones.anotarFilas(st, lista.size());
         } catch (SQLException e) {
             System.out.println("Error recopilando usuarios: " + e.getMessage());
         }
@@ -367,7 +446,7 @@ public class GestorBD {
 
         Connection conexion = null;
         try {
-            conexion = establecerConexion();
+            conexion = conexionEscritura();
             conexion.setAutoCommit(false);
 
             try (PreparedStatement ps = conexion.prepareStatement(modUsuario)) {
@@ -408,7 +487,7 @@ public class GestorBD {
      */
     public void bloqueoUsuario(Long idUsuario, boolean nuevoEstado) {
         String actBloqueo = "UPDATE usuario SET activo = ? WHERE id = ?";
-        try (Connection conexion = establecerConexion();
+        try (Connection conexion = conexionEscritura();
              PreparedStatement ps = conexion.prepareStatement(actBloqueo)) {
             ps.setInt(1, nuevoEstado ? 1 : 0);
             ps.setLong(2, idUsuario);
@@ -427,9 +506,9 @@ public class GestorBD {
         List<Rol> roles = new ArrayList<>();
         String consultaRol = "SELECT * FROM rol";
 
-        try (Connection conexion = establecerConexion();
-             Statement st = conexion.createStatement();
-             ResultSet rs = st.executeQuery(consultaRol)) {
+        try (Connection conexion = conexionLectura();
+             PreparedStatement st = conexion.prepareStatement(consultaRol);
+             ResultSet rs = st.executeQuery()) {
             while (rs.next()) {
                 roles.add(new Rol(rs.getLong("id"), rs.getString("nombre_rol")));
             }
@@ -451,7 +530,7 @@ public class GestorBD {
 
         Connection conexion = null;
         try {
-            conexion = establecerConexion();
+            conexion = conexionEscritura();
             conexion.setAutoCommit(false);
 
             // Guardamos el nombre
@@ -504,7 +583,7 @@ public class GestorBD {
         String yaExiste = "SELECT id FROM empresa WHERE LOWER(nombre) = LOWER(?)";
         String insertEmpresa = "INSERT INTO empresa(nombre, sector) VALUES(?,?)";
 
-        try (Connection conexion = establecerConexion()) {
+        try (Connection conexion = conexionEscritura()) {
 
             // Comprobamos si existe la empresa que se intenta añadir
             try (PreparedStatement psCheck = conexion.prepareStatement(yaExiste)) {
@@ -524,12 +603,13 @@ public class GestorBD {
             }
 
 
-            try (Statement st = conexion.createStatement();
-                 ResultSet rs = st.executeQuery("SELECT last_insert_rowid()")) {
+            try (PreparedStatement psId = conexion.prepareStatement("SELECT last_insert_rowid()");
+                 ResultSet rs = psId.executeQuery()) {
                 if (rs.next()) {
                     empresa.setId(rs.getLong(1));
                 }
             }
+            cache.invalidar(empresa.getId(), Tabla.EMPRESA);
             return empresa;
 
         } catch (SQLException e) {
@@ -545,12 +625,13 @@ public class GestorBD {
      */
     public void logActualizarEmpresa(Empresa empresa) {
         String updateInfoEmpresa = "UPDATE empresa SET nombre = ?, sector = ? WHERE id = ?";
-        try (Connection conexion = establecerConexion();
+        try (Connection conexion = conexionEscritura();
              PreparedStatement ps = conexion.prepareStatement(updateInfoEmpresa)) {
             ps.setString(1, empresa.getNombreEmpresa());
             ps.setString(2, empresa.getSector());
             ps.setLong(3, empresa.getId());
             ps.executeUpdate();
+            cache.invalidar(empresa.getId(), Tabla.EMPRESA);
         } catch (SQLException e) {
             System.out.println(e.getMessage());
         }
@@ -573,13 +654,14 @@ public class GestorBD {
         String updateEmpresa = "UPDATE empresa SET nombre = ?, sector = ? WHERE id = ?";
         String insertAuditoriaEmpresa = "INSERT INTO auditoria (accion, fecha_hora, id_usuario) VALUES (?, datetime('now', 'localtime'), ?)";
 
-        try (Connection conexion = establecerConexion()) {
+        try (Connection conexion = conexionEscritura()) {
             try (PreparedStatement pstmt = conexion.prepareStatement(updateEmpresa)) {
                 pstmt.setString(1, empresa.getNombreEmpresa());
                 pstmt.setString(2, empresa.getSector());
                 pstmt.setLong(3, empresa.getId());
                 pstmt.executeUpdate();
             }
+            cache.invalidar(empresa.getId(), Tabla.EMPRESA);
 
             if (usuarioActivo != null) {
                 try (PreparedStatement ps = conexion.prepareStatement(insertAuditoriaEmpresa)) {
@@ -603,34 +685,55 @@ public class GestorBD {
      */
     public void borrarEmpresa(Long idEmpresa) {
         String borradoEmpresa = "DELETE FROM empresa WHERE id = ?";
-        try (Connection conexion = establecerConexion();
+        try (Connection conexion = conexionEscritura();
              PreparedStatement pstmt = conexion.prepareStatement(borradoEmpresa)) {
             pstmt.setLong(1, idEmpresa);
-            pstmt.executeUpdate();
+            // Sus emisiones y sedes se borran en cascada: también se quitan de la copia en memoria y de la caché
+            if (pstmt.executeUpdate() > 0) {
+                almacenColumnar.bajaEmpresa(idEmpresa);
+                cache.invalidar(idEmpresa, Tabla.values());
+            }
         } catch (SQLException e) {
             System.out.println(e.getMessage());
         }
     }
 
     /**
-     * Recupera empresas filtradas por nombre o sector y calcula su huella total de CO2.
+     * Recupera empresas filtradas por nombre o sector junto con su huella total de CO2.
+     * <p>
+     * La búsqueda usa el índice de texto completo {@code empresa_fts}: cada palabra se busca como
+     * prefijo, sin distinguir mayúsculas ni tildes, y los resultados se ordenan por relevancia
+     * (el nombre pesa más que el sector). Con el término vacío se devuelven todas las empresas.
+     * <p>
+     * El total se lee de la tabla materializada {@code empresa_totales}, que mantienen los triggers
+     * de registro_emisiones, por lo que el coste depende del número de empresas y no de emisiones.
+     * No pasa por la caché de consultas: es la tabla de empresas que el usuario refresca para ver el estado actual.
      *
      * @param terminoBusqueda Texto para filtrar por nombre o sector.
      * @return Lista de empresas con el campo auxiliar de CO2 calculado.
      */
     public List<Empresa> getTodasEmpresas(String terminoBusqueda) {
-        String consultaEmpresas = "SELECT c.id, c.nombre, c.sector, COALESCE(SUM(e.co2e), 0) as total_co2e "
-                + "FROM empresa c "
-                + "LEFT JOIN registro_emisiones e ON c.id = e.id_empresa "
-                + "WHERE (c.nombre LIKE ? OR c.sector LIKE ?) "
-                + "GROUP BY c.id, c.nombre, c.sector";
+        String consultaTexto = consultaTextoCompleto(terminoBusqueda);
+        String consultaEmpresas;
+        if (consultaTexto == null) {
+            consultaEmpresas = "SELECT c.id, c.nombre, c.sector, COALESCE(t.total_co2e, 0) as total_co2e "
+                    + "FROM empresa c "
+                    + "LEFT JOIN empresa_totales t ON t.id_empresa = c.id";
+        } else {
+            consultaEmpresas = "SELECT c.id, c.nombre, c.sector, COALESCE(t.total_co2e, 0) as total_co2e "
+                    + "FROM empresa_fts f "
+                    + "JOIN empresa c ON c.id = f.rowid "
+                    + "LEFT JOIN empresa_totales t ON t.id_empresa = c.id "
+                    + "WHERE empresa_fts MATCH ? "
+                    + "ORDER BY bm25(empresa_fts, 2.0, 1.0)";
+        }
 
         List<Empresa> empresas = new ArrayList<>();
-        try (Connection conexion = establecerConexion();
+        try (Connection conexion = conexionLectura();
              PreparedStatement pstmt = conexion.prepareStatement(consultaEmpresas)) {
-            String patronBusqueda = "%" + terminoBusqueda + "%";
-            pstmt.setString(1, patronBusqueda);
-            pstmt.setString(2, patronBusqueda);
+            if (consultaTexto != null) {
+                pstmt.setString(1, consultaTexto);
+            }
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 Empresa empresa = new Empresa(
@@ -641,6 +744,7 @@ public class GestorBD {
                 empresa.setAuxiliarAlmacenC02(rs.getDouble("total_co2e"));
                 empresas.add(empresa);
             }
+            PoolConexiones.anotarFilas(pstmt, empresas.size());
         } catch (SQLException e) {
             System.out.println(e.getMessage());
         }
@@ -649,16 +753,23 @@ public class GestorBD {
 
     /**
      * Recupera todas las empresas ordenadas por nombre, sin calcular las emisiones.
-     * Diseñado para listados simples o combos.
+     * Diseñado para listados simples o combos (se guarda en la caché de consultas hasta que cambian las empresas).
      *
      * @return Lista de todas las empresas.
      */
     public List<Empresa> getTodasEmpresas() {
+        return copiarEmpresas(cache.obtener("getTodasEmpresas", null, Set.of(Tabla.EMPRESA), this::leerEmpresas));
+    }
+
+    /**
+     * Lee de la base de datos todas las empresas ordenadas por nombre.
+     */
+    private List<Empresa> leerEmpresas() {
         String consulta = "SELECT id, nombre, sector FROM empresa ORDER BY nombre ASC";
         List<Empresa> empresas = new ArrayList<>();
-        try (Connection conexion = establecerConexion();
-             Statement stmt = conexion.createStatement();
-             ResultSet rs = stmt.executeQuery(consulta)) {
+        try (Connection conexion = conexionLectura();
+             PreparedStatement stmt = conexion.prepareStatement(consulta);
+             ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 empresas.add(new Empresa(
                         rs.getLong("id"),
@@ -666,49 +777,169 @@ public class GestorBD {
                         rs.getString("sector")
                 ));
             }
+            PoolConexiones.anotarFilas(stmt, empresas.size());
         } catch (SQLException e) {
             System.out.println(e.getMessage());
         }
         return empresas;
     }
 
+    /**
+     * Copia una lista de empresas de la caché: quien la recibe puede modificar las empresas
+     * (por ejemplo, al editarlas) sin alterar la entrada guardada.
+     */
+    private static List<Empresa> copiarEmpresas(List<Empresa> empresas) {
+        List<Empresa> copia = new ArrayList<>(empresas.size());
+        for (Empresa empresa : empresas) {
+            Empresa nueva = new Empresa(empresa.getId(), empresa.getNombreEmpresa(), empresa.getSector());
+            nueva.setAuxiliarAlmacenC02(empresa.getAuxiliarAlmacenC02());
+            copia.add(nueva);
+        }
+        return copia;
+    }
+
+    /**
+     * Comprueba que la tabla materializada {@code empresa_totales} coincide con la suma real
+     * de registro_emisiones (total, número de emisiones y última fecha).
+     *
+     * @return IDs de las empresas cuyos totales no coinciden (lista vacía si todo es coherente).
+     */
+    public List<Long> comprobarTotalesEmpresa() {
+        String consulta = "SELECT c.id FROM empresa c "
+                + "LEFT JOIN empresa_totales t ON t.id_empresa = c.id "
+                + "LEFT JOIN (SELECT id_empresa, SUM(co2e) AS total, COUNT(*) AS num, MAX(fecha) AS ultima "
+                + "           FROM registro_emisiones GROUP BY id_empresa) r ON r.id_empresa = c.id "
+                + "WHERE ABS(COALESCE(t.total_co2e, 0) - COALESCE(r.total, 0)) > 1e-6 * MAX(1, ABS(COALESCE(r.total, 0))) "
+                + "   OR COALESCE(t.num_emisiones, 0) <> COALESCE(r.num, 0) "
+                + "   OR t.ultima_fecha IS NOT r.ultima";
+        List<Long> descuadradas = new ArrayList<>();
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(consulta);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                descuadradas.add(rs.getLong(1));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error comprobando totales de empresa: " + e.getMessage());
+        }
+        return descuadradas;
+    }
+
+    /**
+     * Reconstruye por completo la tabla {@code empresa_totales} a partir de registro_emisiones.
+     * Se usa si {@link #comprobarTotalesEmpresa()} detecta diferencias o tras cargas que desactivan los triggers.
+     *
+     * @return true si la reconstrucción se completó.
+     */
+    public boolean reconstruirTotalesEmpresa() {
+        Connection conexion = null;
+        try {
+            conexion = conexionEscritura();
+            conexion.setAutoCommit(false);
+            try (PreparedStatement psBorrar = conexion.prepareStatement("DELETE FROM empresa_totales");
+                 PreparedStatement psCalcular = conexion.prepareStatement(
+                         "INSERT INTO empresa_totales (id_empresa, total_co2e, num_emisiones, ultima_fecha) "
+                                 + "SELECT id_empresa, SUM(co2e), COUNT(*), MAX(fecha) FROM registro_emisiones GROUP BY id_empresa")) {
+                psBorrar.executeUpdate();
+                psCalcular.executeUpdate();
+            }
+            conexion.commit();
+            cache.invalidar(null, Tabla.EMISIONES);
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Error reconstruyendo totales de empresa: " + e.getMessage());
+            if (conexion != null) {
+                try { conexion.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+            }
+            return false;
+        } finally {
+            if (conexion != null) {
+                try { conexion.setAutoCommit(true); conexion.close(); } catch (SQLException ex) { ex.printStackTrace(); }
+            }
+        }
+    }
+
     // ==========================================
     // 6. GESTIÓN DE EMISIONES
     // ==========================================
 
     /**
      * Registra una nueva emisión para una empresa.
+     * <p>
+     * El tipo escrito se guarda como el ID de su tipo en el diccionario (creándolo si es nuevo);
+     * la emisión devuelta lleva el nombre canónico del tipo.
      *
      * @param emisiones Objeto con los datos de la emisión.
      * @return El objeto creado con su ID, o el original si falla la recuperación.
      */
     public Emisiones nuevaEmision(Emisiones emisiones) {
 
-        String insertEmision = "INSERT INTO registro_emisiones(tipo, cantidad, co2e, fecha, id_empresa) VALUES(?,?,?,?,?)";
+        String insertEmision = "INSERT INTO registro_emisiones(id_tipo, cantidad, co2e, fecha, dia, id_empresa, co2e_calculado) VALUES(?,?,?,?,?,?,?)";
 
-        try (Connection conexion = establecerConexion();
+        Map<String, TipoEmision> tiposCreados = new HashMap<>();
+        try (Connection conexion = conexionEscritura();
              PreparedStatement ps = conexion.prepareStatement(insertEmision)) {
 
-            ps.setString(1, emisiones.getTipoEmision());
+            TipoEmision tipo = tipos.resolver(conexion, emisiones.getTipoEmision(), tiposCreados);
+            ps.setInt(1, tipo.getId());
             ps.setDouble(2, emisiones.getCantidadEmision());
             ps.setDouble(3, emisiones.getCo2e());
             ps.setString(4, emisiones.getFecha().toString());
-            ps.setLong(5, emisiones.getIdEmpresa());
+            ps.setLong(5, emisiones.getFecha().toEpochDay());
+            ps.setLong(6, emisiones.getIdEmpresa());
+            ps.setBoolean(7, emisiones.isCo2eCalculado());
             ps.executeUpdate();
 
-            try (Statement stmt = conexion.createStatement();
-                 ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            // Construimos el registro con el ID generado sin volver a leerlo de la BD.
+            // La copia en memoria se actualiza antes de invalidar la caché: una lectura entre medias
+            // guardaría en la caché los totales sin la emisión nueva
+            Emisiones creada = emisiones;
+            try (PreparedStatement psId = conexion.prepareStatement("SELECT last_insert_rowid()");
+                 ResultSet rs = psId.executeQuery()) {
                 if (rs.next()) {
-                    return getEmisionesPorId(rs.getLong(1));
+                    creada = new Emisiones(
+                            rs.getLong(1),
+                            tipo.getNombre(),
+                            emisiones.getCantidadEmision(),
+                            emisiones.getCo2e(),
+                            emisiones.getFecha(),
+                            emisiones.getIdEmpresa()
+                    );
+                    creada.setCo2eCalculado(emisiones.isCo2eCalculado());
+                    almacenColumnar.alta(creada);
+                } else {
+                    almacenColumnar.invalidar();
                 }
             }
-            return emisiones;
+            cache.invalidar(emisiones.getIdEmpresa(), Tabla.EMISIONES);
+            return creada;
         } catch (SQLException e) {
             System.out.println(e.getMessage());
             return null;
+        } finally {
+            tipos.incorporar(tiposCreados);
         }
     }
 
+    /**
+     * Encola una emisión para insertarla de forma asíncrona junto con otras en una misma transacción.
+     * <p>
+     * Pensado para cargas masivas: el hilo llamante no espera al disco y el coste del COMMIT
+     * se reparte entre todo el lote. El futuro se completa con el ID tras confirmar el lote.
+     *
+     * @param emisiones Objeto con los datos de la emisión.
+     * @return Futuro con el ID generado (o completado con la excepción si la inserción falla).
+     */
+    public CompletableFuture<Long> encolarEmision(Emisiones emisiones) {
+        return escritorEmisiones.encolar(emisiones).thenApply(id -> {
+            TipoEmision tipo = tipos.buscar(emisiones.getTipoEmision());
+            almacenColumnar.alta(new Emisiones(id, tipo != null ? tipo.getNombre() : emisiones.getTipoEmision(), emisiones.getCantidadEmision(),
+                    emisiones.getCo2e(), emisiones.getFecha(), emisiones.getIdEmpresa()));
+            cache.invalidar(emisiones.getIdEmpresa(), Tabla.EMISIONES);
+            return id;
+        });
+    }
+
     /**
      * Actualiza una emisión existente y guarda un registro en la auditoría.
      * Utiliza una -transacción- para asegurar la integridad de los datos.
@@ -719,21 +950,36 @@ public class GestorBD {
      */
     public boolean actualizarEmision(Emisiones emision, Usuario usuarioActual) {
         //Se actualizan los datos de la emisión y se plasma en el control de auditoria
-        String updateEmision = "UPDATE registro_emisiones SET tipo = ?, cantidad = ?, co2e = ?, fecha = ?, id_empresa = ? WHERE id = ?";
+        String empresaAnterior = "SELECT id_empresa FROM registro_emisiones WHERE id = ?";
+        String updateEmision = "UPDATE registro_emisiones SET id_tipo = ?, cantidad = ?, co2e = ?, fecha = ?, dia = ?, id_empresa = ?, co2e_calculado = ? WHERE id = ?";
         String insertAuditoria = "INSERT INTO auditoria (accion, fecha_hora, id_usuario) VALUES (?, datetime('now', 'localtime'), ?)";
         //Conexión
         Connection conexion = null;
+        Map<String, TipoEmision> tiposCreados = new HashMap<>();
+        TipoEmision tipo;
+        Long idEmpresaAnterior = null;
         try {
-            conexion = establecerConexion();
+            conexion = conexionEscritura();
             conexion.setAutoCommit(false);
 
+            // La emisión puede cambiar de empresa: la caché de las dos queda desfasada
+            try (PreparedStatement ps = conexion.prepareStatement(empresaAnterior)) {
+                ps.setLong(1, emision.getId());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) idEmpresaAnterior = rs.getLong(1);
+                }
+            }
+
             try (PreparedStatement ps = conexion.prepareStatement(updateEmision)) {
-                ps.setString(1, emision.getTipoEmision());
+                tipo = tipos.resolver(conexion, emision.getTipoEmision(), tiposCreados);
+                ps.setInt(1, tipo.getId());
                 ps.setDouble(2, emision.getCantidadEmision());
                 ps.setDouble(3, emision.getCo2e());
                 ps.setString(4, emision.getFecha().toString());
-                ps.setLong(5, emision.getIdEmpresa());
-                ps.setLong(6, emision.getId()); // ID actual
+                ps.setLong(5, emision.getFecha().toEpochDay());
+                ps.setLong(6, emision.getIdEmpresa());
+                ps.setBoolean(7, emision.isCo2eCalculado());
+                ps.setLong(8, emision.getId()); // ID actual
 
                 int filasModi = ps.executeUpdate();
                 if(filasModi == 0) {
@@ -754,6 +1000,14 @@ public class GestorBD {
             }
 
             conexion.commit();
+            tipos.incorporar(tiposCreados);
+            // Primero la copia en memoria y después la caché (ver nuevaEmision)
+            almacenColumnar.modificacion(new Emisiones(emision.getId(), tipo.getNombre(), emision.getCantidadEmision(),
+                    emision.getCo2e(), emision.getFecha(), emision.getIdEmpresa()));
+            cache.invalidar(emision.getIdEmpresa(), Tabla.EMISIONES);
+            if (idEmpresaAnterior != null && !idEmpresaAnterior.equals(emision.getIdEmpresa())) {
+                cache.invalidar(idEmpresaAnterior, Tabla.EMISIONES);
+            }
             return true;
 
         } catch (SQLException e) {
@@ -771,11 +1025,22 @@ public class GestorBD {
      * @param idEmision ID de la emisión a borrar.
      */
     public void borrarEmision(Long idEmision) {
+        String empresaEmision = "SELECT id_empresa FROM registro_emisiones WHERE id = ?";
         String eliminarEmision = "DELETE FROM registro_emisiones WHERE id = ?";
-        try (Connection conexion = establecerConexion();
+        try (Connection conexion = conexionEscritura();
+             PreparedStatement psEmpresa = conexion.prepareStatement(empresaEmision);
              PreparedStatement ps = conexion.prepareStatement(eliminarEmision)) {
+            // La empresa se lee antes de borrar para invalidar solo su parte de la caché
+            Long idEmpresa = null;
+            psEmpresa.setLong(1, idEmision);
+            try (ResultSet rs = psEmpresa.executeQuery()) {
+                if (rs.next()) idEmpresa = rs.getLong(1);
+            }
             ps.setLong(1, idEmision);
-            ps.executeUpdate();
+            if (ps.executeUpdate() > 0) {
+                almacenColumnar.baja(idEmision);
+                cache.invalidar(idEmpresa, Tabla.EMISIONES);
+            }
         } catch (SQLException e) {
             System.out.println(e.getMessage());
         }
@@ -783,164 +1048,575 @@ public class GestorBD {
 
     /**
      * Muestra todas las emisiones registradas, filtrando por nombre de empresa, tipo o fecha.
+     * <p>
+     * El nombre de empresa y el tipo se buscan en los índices de texto completo (prefijo, sin tildes)
+     * y la fecha como prefijo ISO ("2024", "2024-03"...) mediante su índice. Los resultados se
+     * ordenan por relevancia; las coincidencias solo por fecha quedan al final.
      *
      * @param terminoBusqueda Término para filtrar.
      * @return Lista de emisiones coincidentes.
      */
     public List<Emisiones> getTodasEmisiones(String terminoBusqueda) {
-        String consulta = "SELECT e.*, c.nombre as nombreEmpresa "
-                + "FROM registro_emisiones e "
-                + "JOIN empresa c ON e.id_empresa = c.id "
-                + "WHERE (c.nombre LIKE ? OR e.tipo LIKE ? OR e.fecha LIKE ?) ";
-        return getEmisionConsulta(consulta, terminoBusqueda);
+        String consultaTexto = consultaTextoCompleto(terminoBusqueda);
+        if (consultaTexto == null) {
+            String consulta = "SELECT " + COLUMNAS_LISTA
+                    + " FROM registro_emisiones e "
+                    + "JOIN empresa c ON e.id_empresa = c.id";
+            return getEmisionConsulta(consulta);
+        }
+        long[] dias = rangoFecha(terminoBusqueda);
+        String consulta = consultaBusquedaEmisiones(false, dias != null);
+        return dias == null
+                ? getEmisionConsulta(consulta, consultaTexto, consultaTexto)
+                : getEmisionConsulta(consulta, consultaTexto, consultaTexto, dias[0], dias[1]);
     }
 
     /**
      * Muestra las emisiones asociadas a una empresa específica.
+     * <p>
+     * Si el término coincide con el nombre o sector de la propia empresa se devuelven todas sus
+     * emisiones; si no, se filtra por tipo (texto completo) o por prefijo de fecha.
      *
      * @param idEmpresa ID de la empresa.
      * @param terminoBusqueda Filtro extra por tipo o fecha.
      * @return Lista de emisiones de esa empresa.
      */
     public List<Emisiones> getEmissionsByCompanyId(Long idEmpresa, String terminoBusqueda) {
-        String consulta = "SELECT e.*, c.nombre as nombreEmpresa "
-                + "FROM registro_emisiones e "
-                + "JOIN empresa c ON e.id_empresa = c.id "
-                + "WHERE e.id_empresa = ? "
-                + "AND (c.nombre LIKE ? OR e.tipo LIKE ? OR e.fecha LIKE ?)";
-        return getEmisionConsulta(consulta, terminoBusqueda, idEmpresa);
+        String consultaTexto = consultaTextoCompleto(terminoBusqueda);
+        if (consultaTexto == null) {
+            String consulta = "SELECT " + COLUMNAS_LISTA
+                    + " FROM registro_emisiones e "
+                    + "JOIN empresa c ON e.id_empresa = c.id "
+                    + "WHERE e.id_empresa = ?";
+            return getEmisionConsulta(consulta, idEmpresa);
+        }
+        long[] dias = rangoFecha(terminoBusqueda);
+        String consulta = consultaBusquedaEmisiones(true, dias != null);
+        return dias == null
+                ? getEmisionConsulta(consulta, consultaTexto, idEmpresa, consultaTexto, idEmpresa)
+                : getEmisionConsulta(consulta, consultaTexto, idEmpresa, consultaTexto, idEmpresa, idEmpresa, dias[0], dias[1]);
     }
 
     /**
-     * Muestra una emisión específica filtrado por su ID.
+     * Construye la consulta de búsqueda de emisiones por texto completo.
+     * <p>
+     * Une tres fuentes de coincidencias y se queda con la mejor relevancia de cada emisión:
+     * <ol>
+     * <li>Tipos con algún alias que coincide en {@code emision_tipo_fts} (pocos), resueltos después con el
+     * índice por tipo.</li>
+     * <li>Empresas que coinciden en {@code empresa_fts}, resueltas con el índice por empresa.</li>
+     * <li>Opcionalmente, prefijo de fecha mediante el índice de fechas (relevancia 0, al final).</li>
+     * </ol>
+     * Los CROSS JOIN obligan a SQLite a evaluar primero el índice de texto (una sola vez) y
+     * recorrer después registro_emisiones por índice, en lugar de lanzar una búsqueda FTS por fila.
+     * <p>
+     * Parámetros: consulta FTS, [idEmpresa], consulta FTS, [idEmpresa], [[idEmpresa], primer y último día].
      *
-     * @param id El ID de la emisión.
-     * @return El objeto de tipo Emision que se haya encontrado o bien null.
+     * @param porEmpresa Si se limita a una empresa.
+     * @param conFecha Si se incluye la rama de búsqueda por fecha.
+     * @return SQL de la consulta.
      */
-    private Emisiones getEmisionesPorId(long id) {
-        String consultaEmisionId = "SELECT * FROM registro_emisiones WHERE id = ?";
-        try (Connection conexion = establecerConexion();
-             PreparedStatement ps = conexion.prepareStatement(consultaEmisionId)) {
-            ps.setLong(1, id);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                return new Emisiones(
-                        rs.getLong("id"),
-                        rs.getString("tipo"),
-                        rs.getDouble("cantidad"),
-                        rs.getDouble("co2e"),
-                        rs.getString("fecha"),
-                        rs.getLong("id_empresa")
-                );
-            }
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
+    private static String consultaBusquedaEmisiones(boolean porEmpresa, boolean conFecha) {
+        StringBuilder consulta = new StringBuilder()
+                .append("WITH tipos(id_tipo, relevancia) AS (")
+                .append(" SELECT a.id_tipo, MIN(f.rank) FROM emision_tipo_fts f JOIN emision_tipo_alias a ON a.id = f.rowid")
+                .append("  WHERE emision_tipo_fts MATCH ? GROUP BY a.id_tipo), ")
+                .append("coincidencias(id, relevancia) AS (")
+                .append(" SELECT e.id, tipos.relevancia FROM tipos CROSS JOIN registro_emisiones e ON e.id_tipo = tipos.id_tipo")
+                .append(porEmpresa ? " AND e.id_empresa = ?" : "")
+                .append(" UNION ALL")
+                .append(" SELECT e.id, f.rank FROM empresa_fts f CROSS JOIN registro_emisiones e ON e.id_empresa = f.rowid")
+                .append("  WHERE empresa_fts MATCH ?")
+                .append(porEmpresa ? " AND f.rowid = ?" : "");
+        if (conFecha) {
+            consulta.append(" UNION ALL")
+                    .append(" SELECT id, 0 FROM registro_emisiones WHERE ")
+                    .append(porEmpresa ? "id_empresa = ? AND " : "")
+                    .append("dia BETWEEN ? AND ?");
         }
-        return null;
+        return consulta.append(") ")
+                .append("SELECT ").append(COLUMNAS_LISTA)
+                .append(" FROM (SELECT id, MIN(relevancia) AS relevancia FROM coincidencias GROUP BY id) m ")
+                .append("JOIN registro_emisiones e ON e.id = m.id ")
+                .append("JOIN empresa c ON e.id_empresa = c.id ")
+                .append("ORDER BY m.relevancia, e.id")
+                .toString();
     }
 
     /**
-     * Mapea un registro de emisiones cruzas por búsqueda de empresa
-     * @param idEmpresa El ID de la empresa
-     * @return el report de emision filtrado de la empresa seleccionada.
+     * Convierte el texto tecleado por el usuario en una consulta FTS5 de prefijos.
+     * <p>
+     * Cada palabra se entrecomilla (para neutralizar la sintaxis de FTS5) y se marca como prefijo:
+     * "log rap" se convierte en {@code "log"* "rap"*}, que exige ambas palabras.
+     *
+     * @param terminoBusqueda Texto de búsqueda.
+     * @return Consulta MATCH, o null si el texto no contiene ninguna palabra.
      */
-    public List<Map.Entry<String, Double>> getReporteEmisionesPorEmpresa(Long idEmpresa) {
-        String consultaEmisionEmpresa = "SELECT tipo, SUM(co2e) AS total_co2e " +
-                "FROM registro_emisiones " +
-                "WHERE id_empresa = ? " +
-                "GROUP BY tipo " +
-                "ORDER BY total_co2e DESC";
+    private static String consultaTextoCompleto(String terminoBusqueda) {
+        if (terminoBusqueda == null) return null;
+        StringBuilder consulta = new StringBuilder();
+        for (String palabra : terminoBusqueda.split("[^\\p{L}\\p{N}]+")) {
+            if (palabra.isEmpty()) continue;
+            if (consulta.length() > 0) consulta.append(' ');
+            consulta.append('"').append(palabra).append("\"*");
+        }
+        return consulta.length() == 0 ? null : consulta.toString();
+    }
 
-        List<Map.Entry<String, Double>> reporte = new ArrayList<>();
+    /**
+     * Intervalo de días de un prefijo de fecha ISO ("2024", "2024-03", "2024-03-1"...).
+     * <p>
+     * Las fechas válidas que empiezan por un prefijo son consecutivas, así que la búsqueda se
+     * resuelve como un rango del índice de días: de la primera fecha válida que lo completa
+     * ("2024-1" → 2024-10-01) a la última (2024-12-31).
+     *
+     * @param terminoBusqueda Texto de búsqueda.
+     * @return Primer y último día (días desde 1970-01-01), o null si el texto no tiene forma de
+     * fecha o ninguna fecha válida empieza por él.
+     */
+    private static long[] rangoFecha(String terminoBusqueda) {
+        String termino = terminoBusqueda.trim();
+        if (termino.isEmpty() || termino.length() > FORMATO_FECHA_MIN.length()) return null;
+        for (int i = 0; i < termino.length(); i++) {
+            char c = termino.charAt(i);
+            if (FORMATO_FECHA_MIN.charAt(i) == '-' ? c != '-' : !Character.isDigit(c)) return null;
+        }
+        String menor = termino + FORMATO_FECHA_MIN.substring(termino.length());
+        String mayor = termino + FORMATO_FECHA_MAX.substring(termino.length());
+
+        int anio = Integer.parseInt(menor, 0, 4, 10);
+        int mes = Integer.parseInt(menor, 5, 7, 10);
+        int dia = Integer.parseInt(menor, 8, 10, 10);
+        if (mes > 12) return null;
+        YearMonth primerMes = YearMonth.of(anio, Math.max(mes, 1));
+        if (dia > primerMes.lengthOfMonth()) return null;
+
+        YearMonth ultimoMes = YearMonth.of(Integer.parseInt(mayor, 0, 4, 10),
+                Math.max(1, Math.min(Integer.parseInt(mayor, 5, 7, 10), 12)));
+        LocalDate primera = primerMes.atDay(Math.max(dia, 1));
+        LocalDate ultima = ultimoMes.atDay(Math.min(Integer.parseInt(mayor, 8, 10, 10), ultimoMes.lengthOfMonth()));
+        // Mes o día 00 ("2024-00"): ninguna fecha válida lleva ese prefijo
+        if (!primera.toString().startsWith(termino) || !ultima.toString().startsWith(termino)) return null;
+        return new long[]{primera.toEpochDay(), ultima.toEpochDay()};
+    }
 
-        try (Connection conexion = establecerConexion();
-             PreparedStatement ps = conexion.prepareStatement(consultaEmisionEmpresa)) {
-            // El ID de la empresa
-            ps.setLong(1, idEmpresa);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    String tipo = rs.getString("tipo");
-                    double totalCo2e = rs.getDouble("total_co2e");
-                    reporte.add(new AbstractMap.SimpleEntry<>(tipo, totalCo2e));
-                }
+    // ------------------------------------------
+    // Paginación por cursor (keyset) para la tabla de emisiones
+    // ------------------------------------------
+
+    /**
+     * Cuenta las emisiones que cumplen el filtro.
+     * <p>
+     * Sin término de búsqueda ni intervalo de fechas el total sale de {@code empresa_totales}
+     * (una fila por empresa), sin recorrer registro_emisiones; en otro caso se cuentan solo las
+     * entradas de los índices que coinciden (ver {@link #consultaRecuento}).
+     *
+     * @param filtro Empresa, término y orden de la consulta.
+     * @return Número de emisiones, o 0 si hay error.
+     */
+    public int contarEmisiones(FiltroEmisiones filtro) {
+        List<Object> parametros = new ArrayList<>();
+        String consulta;
+        if (consultaTextoCompleto(filtro.getTermino()) == null && !filtro.tieneIntervalo()) {
+            consulta = "SELECT COALESCE(SUM(num_emisiones), 0) FROM empresa_totales";
+            if (filtro.getIdEmpresa() != null) {
+                consulta += " WHERE id_empresa = ?";
+                parametros.add(filtro.getIdEmpresa());
+            }
+        } else {
+            consulta = consultaRecuento(filtro, parametros);
+        }
+
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(consulta)) {
+            for (int i = 0; i < parametros.size(); i++) {
+                ps.setObject(i + 1, parametros.get(i));
             }
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
         } catch (SQLException e) {
-            System.err.println("Error al generar el reporte de emisiones: " + e.getMessage());
+            System.out.println("Error al contar emisiones: " + e.getMessage());
+            return 0;
         }
+    }
 
-        return reporte;
+    /**
+     * Devuelve una página de emisiones ordenada por (día, id) a partir de un cursor.
+     * <p>
+     * En lugar de OFFSET se usa la clave de la última fila de la página anterior, de modo que
+     * SQLite salta directamente a esa posición del índice de días y solo lee las filas de la página,
+     * sea cual sea la profundidad del desplazamiento.
+     *
+     * @param filtro Empresa, término y orden de la consulta.
+     * @param despuesDe Clave de la última fila ya mostrada (null para la primera página).
+     * @param tamanoPagina Número máximo de filas.
+     * @return Emisiones de la página (vacía si no hay más o hay error).
+     */
+    public List<Emisiones> getPaginaEmisiones(FiltroEmisiones filtro, ClaveEmision despuesDe, int tamanoPagina) {
+        List<Object> parametros = new ArrayList<>();
+        StringBuilder consulta = new StringBuilder("SELECT ").append(COLUMNAS_LISTA)
+                .append(" FROM registro_emisiones e ")
+                .append("JOIN empresa c ON c.id = e.id_empresa")
+                .append(condicionesFiltro(filtro, parametros));
+        if (despuesDe != null) {
+            consulta.append(" AND (e.dia, e.id) ").append(filtro.isDescendente() ? "<" : ">").append(" (?, ?)");
+            parametros.add(despuesDe.dia());
+            parametros.add(despuesDe.id());
+        }
+        consulta.append(ordenPaginacion(filtro)).append(" LIMIT ?");
+        parametros.add(tamanoPagina);
+        return getEmisionConsulta(consulta.toString(), parametros.toArray());
     }
 
     /**
-     * Método auxiliar  para ejecutar consultas de emisiones y mapear los resultados que muestre.
+     * Clave de la emisión que ocupa una posición dada en el orden de paginación.
+     * <p>
+     * Sirve para saltar a una zona lejana de la lista (arrastrar la barra de desplazamiento):
+     * el OFFSET se resuelve solo sobre el índice (dia, id), sin leer las filas,
+     * y a partir de la clave obtenida se pagina por cursor.
      *
+     * @param filtro Empresa, término y orden de la consulta.
+     * @param posicion Posición (desde 0) en la lista filtrada.
+     * @return Clave de esa emisión, o null si la posición no existe o hay error.
      */
-    private List<Emisiones> getEmisionConsulta(String consulta, String terminoBusqueda, Object... parametro) {
-        List<Emisiones> emisiones = new ArrayList<>();
-        try (Connection conexion = establecerConexion();
+    public ClaveEmision getClaveEnPosicion(FiltroEmisiones filtro, int posicion) {
+        List<Object> parametros = new ArrayList<>();
+        String consulta = "SELECT e.dia, e.id FROM registro_emisiones e"
+                + condicionesFiltro(filtro, parametros)
+                + ordenPaginacion(filtro) + " LIMIT 1 OFFSET ?";
+        parametros.add(posicion);
+
+        try (Connection conexion = conexionLectura();
              PreparedStatement ps = conexion.prepareStatement(consulta)) {
-            int indice = 1;
-            for (Object parametros : parametro) {
-                ps.setObject(indice++, parametros);
+            for (int i = 0; i < parametros.size(); i++) {
+                ps.setObject(i + 1, parametros.get(i));
             }
-            String patronBusqueda = "%" + terminoBusqueda + "%";
-            ps.setString(indice++, patronBusqueda);
-            ps.setString(indice++, patronBusqueda);
-            ps.setString(indice++, patronBusqueda);
             ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                Emisiones emision = new Emisiones(
-                        rs.getLong("id"),
-                        rs.getString("tipo"),
-                        rs.getDouble("cantidad"),
-                        rs.getDouble("co2e"),
-                        rs.getString("fecha"),
-                        rs.getLong("id_empresa")
-                );
-                emision.setNombreEmpresa(rs.getString("nombreEmpresa"));
-                emisiones.add(emision);
-            }
+            return rs.next() ? new ClaveEmision(rs.getLong(1), rs.getLong(2)) : null;
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            System.out.println("Error al posicionar la lista de emisiones: " + e.getMessage());
+            return null;
         }
-        return emisiones;
     }
 
-    // ==========================================
-    // 7. GESTIÓN DE SEDES Y AUDITORÍA
-    // ==========================================
-
     /**
-     * Registra una nueva sede en el sistema y genera automáticamente una entrada detallada en el registro de auditoría.
-     *
-     * Este método implementa una <b>transacción</b> para garantizar la integridad de los datos.
-     * El flujo de ejecución es:
-     * <ol>
-     * <li><b>INSERT Sede:</b> Se guarda la nueva sede en la base de datos (estableciendo 'España' como país por defecto).</li>
-     * <li><b>INSERT Auditoría:</b> Se registra la acción asociándola al usuario activo, incluyendo el nombre de la empresa y la ubicación en el mensaje.</li>
-     * <li><b>COMMIT:</b> Si ambas operaciones tienen éxito, se confirman los cambios permanentemente.</li>
-     * </ol>
-     * En caso de cualquier error SQL durante el proceso, se ejecuta un <b>rollback</b> para deshacer cualquier cambio parcial.
+     * Devuelve todas las emisiones de un filtro en el mismo orden que la tabla paginada.
+     * <p>
+     * Crea un objeto por fila: para informes y agregados es preferible {@link #forEachEmision}.
      *
+     * @param filtro Empresa, término y orden de la consulta.
+     * @return Lista completa de emisiones del filtro.
+     */
+    public List<Emisiones> getEmisionesFiltradas(FiltroEmisiones filtro) {
+        List<Emisiones> emisiones = new ArrayList<>();
+        forEachEmision(filtro, vista -> emisiones.add(vista.aEmisiones()));
+        return emisiones;
+    }
+
+    /**
+     * Recorre las emisiones de un filtro, en el orden de la tabla paginada, sin crear objetos por fila.
+     * <p>
+     * La acción recibe siempre la misma {@link VistaEmision}, colocada en cada fila: sus datos son primitivos
+     * (ID, día, CO2e, posición de la empresa, ID del tipo...) y el nombre del tipo sale del diccionario de tipos. Así una pasada por la
+     * tabla completa para un informe o un agregado apenas reserva memoria.
+     * <p>
+     * El diccionario de empresas y el cursor se leen en la misma transacción, de modo que toda empresa
+     * de una fila está en el diccionario. Es una operación larga: debe llamarse fuera del hilo de la interfaz.
      *
-     * @param sede          Objeto {@link Sede} que contiene los datos de ubicación (ciudad, dirección) y el ID de la empresa asociada.
-     * @param usuarioActivo El objeto {@link Usuario} que ejecuta la operación (requerido para el registro de auditoría).
-     * @param nombreEmpresa El nombre de la empresa a la que se asocia la sede (utilizado para construir el mensaje descriptivo del log).
-     * @return {@code true} si la transacción se completó exitosamente; {@code false} si ocurrió un error y se realizó un rollback.
+     * @param filtro Empresa, término y orden de la consulta.
+     * @param accion Acción para cada fila; la vista no debe guardarse fuera de la llamada.
+     * @return Filas recorridas, o -1 si hay error.
      */
-    public boolean registrarSedeConAuditoria(Sede sede, Usuario usuarioActivo, String nombreEmpresa) {
-        String insertSede = "INSERT INTO sede (ciudad, pais, direccion, id_empresa) VALUES (?, 'España', ?, ?)";
-        String insertLogAuditoria = "INSERT INTO auditoria (accion, fecha_hora, id_usuario) VALUES (?, datetime('now', 'localtime'), ?)";
+    public long forEachEmision(FiltroEmisiones filtro, Consumer<VistaEmision> accion) {
+        List<Object> parametros = new ArrayList<>();
+        String consulta = "SELECT " + VistaEmision.COLUMNAS + " FROM registro_emisiones e"
+                + condicionesFiltro(filtro, parametros)
+                + ordenPaginacion(filtro);
 
-        Connection conexion = null;
-        try {
-            conexion = establecerConexion();
-            conexion.setAutoCommit(false);
+        return recorrerConDiccionario(consulta, parametros.toArray(), accion);
+    }
 
-            // Insercción de la sede
-            try (PreparedStatement pstSede = conexion.prepareStatement(insertSede)) {
-                pstSede.setString(1, sede.getCiudad());
-                pstSede.setString(2, sede.getDireccion());
+    /**
+     * Recorre todas las emisiones en orden de ID (el de la tabla, sin índice): carga de la copia en memoria.
+     *
+     * @return Filas recorridas, o -1 si hay error.
+     */
+    private long recorrerPorId(Consumer<VistaEmision> accion) {
+        return recorrerConDiccionario("SELECT " + VistaEmision.COLUMNAS + " FROM registro_emisiones e ORDER BY e.id",
+                new Object[0], accion);
+    }
+
+    /**
+     * Lee el diccionario de empresas y recorre la consulta en la misma transacción de lectura.
+     *
+     * @return Filas recorridas, o -1 si hay error.
+     */
+    private long recorrerConDiccionario(String consulta, Object[] parametros, Consumer<VistaEmision> accion) {
+        try (Connection conexion = conexionLectura()) {
+            // Una transacción de lectura fija la instantánea para el diccionario y el cursor
+            conexion.setAutoCommit(false);
+            try {
+                List<Long> ids = new ArrayList<>();
+                List<String> nombres = new ArrayList<>();
+                try (PreparedStatement ps = conexion.prepareStatement(VistaEmision.CONSULTA_EMPRESAS);
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(1));
+                        nombres.add(rs.getString(2));
+                    }
+                }
+                long[] idsEmpresa = new long[ids.size()];
+                for (int i = 0; i < idsEmpresa.length; i++) idsEmpresa[i] = ids.get(i);
+                return recorrer(conexion, consulta, parametros, idsEmpresa,
+                        nombres.toArray(new String[0]), accion);
+            } finally {
+                conexion.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error al recorrer las emisiones: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Ejecuta una consulta de emisiones y pasa cada fila a la acción sobre una única vista reutilizada.
+     *
+     * @param consulta SQL con las {@link VistaEmision#COLUMNAS} (y el nombre de la empresa si no hay diccionario).
+     * @param parametros Parámetros de la consulta, en orden.
+     * @param idsEmpresa Diccionario de empresas (null si la consulta trae el nombre).
+     * @param nombresEmpresa Nombres del diccionario.
+     * @return Filas recorridas.
+     */
+    private long recorrer(Connection conexion, String consulta, Object[] parametros, long[] idsEmpresa,
+                          String[] nombresEmpresa, Consumer<VistaEmision> accion) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(consulta)) {
+            for (int i = 0; i < parametros.length; i++) {
+                ps.setObject(i + 1, parametros[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                VistaEmision vista = new VistaEmision(rs, idsEmpresa, nombresEmpresa, tipos, conexion);
+                long filas = 0;
+                while (vista.avanzar()) {
+                    accion.accept(vista);
+                    filas++;
+                }
+                PoolConexiones.anotarFilas(ps, filas);
+                return filas;
+            }
+        }
+    }
+
+    /**
+     * Cláusula WHERE común de la paginación (siempre empieza por " WHERE", para poder añadir el cursor con AND).
+     * <p>
+     * Las columnas de la búsqueda llevan '+' delante para que SQLite no use sus índices y
+     * recorra en su lugar el índice de días en el orden pedido, deteniéndose al completar la página.
+     * El intervalo de fechas del filtro, en cambio, acota ese mismo recorrido (empieza y termina
+     * en los días pedidos).
+     *
+     * @param filtro Filtro de la consulta.
+     * @param parametros Lista a la que se añaden los parámetros, en orden.
+     * @return Texto de la cláusula.
+     */
+    private static String condicionesFiltro(FiltroEmisiones filtro, List<Object> parametros) {
+        StringBuilder where = new StringBuilder(" WHERE ");
+        if (filtro.getIdEmpresa() != null) {
+            where.append("e.id_empresa = ?");
+            parametros.add(filtro.getIdEmpresa());
+        } else {
+            where.append("1 = 1");
+        }
+
+        String consultaTexto = consultaTextoCompleto(filtro.getTermino());
+        if (consultaTexto != null) {
+            where.append(" AND (+e.id_tipo IN (SELECT a.id_tipo FROM emision_tipo_fts f")
+                    .append(" JOIN emision_tipo_alias a ON a.id = f.rowid WHERE emision_tipo_fts MATCH ?)")
+                    .append(" OR +e.id_empresa IN (SELECT rowid FROM empresa_fts WHERE empresa_fts MATCH ?)");
+            parametros.add(consultaTexto);
+            parametros.add(consultaTexto);
+            long[] dias = rangoFecha(filtro.getTermino());
+            if (dias != null) {
+                where.append(" OR +e.dia BETWEEN ? AND ?");
+                parametros.add(dias[0]);
+                parametros.add(dias[1]);
+            }
+            where.append(")");
+        }
+
+        // Intervalo de fechas: rango sobre el mismo índice que da el orden de la página
+        if (filtro.getDesde() != null) {
+            where.append(" AND e.dia >= ?");
+            parametros.add(filtro.getDesde().toEpochDay());
+        }
+        if (filtro.getHasta() != null) {
+            where.append(" AND e.dia <= ?");
+            parametros.add(filtro.getHasta().toEpochDay());
+        }
+        return where.toString();
+    }
+
+    /**
+     * Consulta de {@link #contarEmisiones} cuando hay término de búsqueda o intervalo de fechas.
+     * <p>
+     * Al contar no hay orden que respetar, así que no se usan los '+' de {@link #condicionesFiltro}:
+     * cada alternativa del término (tipo, empresa o fecha) se busca en su propio índice
+     * ({@code id_tipo}, {@code id_empresa} o días) y se cuenta la unión de los IDs. El coste depende
+     * de las filas que coinciden, no del tamaño de la tabla.
+     *
+     * @param filtro Filtro de la consulta (con término o intervalo).
+     * @param parametros Lista a la que se añaden los parámetros, en orden.
+     * @return Texto de la consulta.
+     */
+    private static String consultaRecuento(FiltroEmisiones filtro, List<Object> parametros) {
+        String consultaTexto = consultaTextoCompleto(filtro.getTermino());
+        if (consultaTexto == null) {
+            return "SELECT COUNT(*) FROM registro_emisiones e WHERE 1 = 1" + acotarRecuento(filtro, parametros);
+        }
+
+        StringBuilder consulta = new StringBuilder("SELECT COUNT(*) FROM (");
+        consulta.append("SELECT e.id FROM registro_emisiones e WHERE e.id_tipo IN (SELECT a.id_tipo FROM emision_tipo_fts f")
+                .append(" JOIN emision_tipo_alias a ON a.id = f.rowid WHERE emision_tipo_fts MATCH ?)");
+        parametros.add(consultaTexto);
+        consulta.append(acotarRecuento(filtro, parametros));
+        consulta.append(" UNION SELECT e.id FROM registro_emisiones e")
+                .append(" WHERE e.id_empresa IN (SELECT rowid FROM empresa_fts WHERE empresa_fts MATCH ?)");
+        parametros.add(consultaTexto);
+        consulta.append(acotarRecuento(filtro, parametros));
+        long[] dias = rangoFecha(filtro.getTermino());
+        if (dias != null) {
+            consulta.append(" UNION SELECT e.id FROM registro_emisiones e WHERE e.dia BETWEEN ? AND ?");
+            parametros.add(dias[0]);
+            parametros.add(dias[1]);
+            consulta.append(acotarRecuento(filtro, parametros));
+        }
+        return consulta.append(")").toString();
+    }
+
+    /**
+     * Condiciones de empresa e intervalo de fechas que se añaden a cada parte de {@link #consultaRecuento}
+     * (empiezan por " AND").
+     */
+    private static String acotarRecuento(FiltroEmisiones filtro, List<Object> parametros) {
+        StringBuilder condiciones = new StringBuilder();
+        if (filtro.getIdEmpresa() != null) {
+            condiciones.append(" AND e.id_empresa = ?");
+            parametros.add(filtro.getIdEmpresa());
+        }
+        if (filtro.getDesde() != null) {
+            condiciones.append(" AND e.dia >= ?");
+            parametros.add(filtro.getDesde().toEpochDay());
+        }
+        if (filtro.getHasta() != null) {
+            condiciones.append(" AND e.dia <= ?");
+            parametros.add(filtro.getHasta().toEpochDay());
+        }
+        return condiciones.toString();
+    }
+
+    /**
+     * Cláusula ORDER BY de la paginación, coherente con la comparación del cursor.
+     */
+    private static String ordenPaginacion(FiltroEmisiones filtro) {
+        return filtro.isDescendente() ? " ORDER BY e.dia DESC, e.id DESC" : " ORDER BY e.dia, e.id";
+    }
+
+    /**
+     * Mapea un registro de emisiones cruzas por búsqueda de empresa
+     * @param idEmpresa El ID de la empresa
+     * @return el report de emision filtrado de la empresa seleccionada.
+     */
+    public List<Map.Entry<String, Double>> getReporteEmisionesPorEmpresa(Long idEmpresa) {
+        return new ArrayList<>(cache.obtener("getReporteEmisionesPorEmpresa", idEmpresa, Set.of(Tabla.EMISIONES),
+                () -> leerReporteEmisionesPorEmpresa(idEmpresa)));
+    }
+
+    /**
+     * Lee el reporte de una empresa de la copia en memoria o del resumen mensual
+     * (ver {@link #getReporteEmisionesPorEmpresa(Long)}).
+     */
+    private List<Map.Entry<String, Double>> leerReporteEmisionesPorEmpresa(Long idEmpresa) {
+        List<Map.Entry<String, Double>> enMemoria = almacenColumnar.totalesPorTipo(idEmpresa);
+        if (enMemoria != null) return enMemoria;
+
+        // Resumen mensual: unas pocas filas por tipo y mes en lugar de todas las emisiones
+        String consultaEmisionEmpresa = "SELECT id_tipo, SUM(total_co2e) AS total_co2e " +
+                "FROM emision_mensual " +
+                "WHERE id_empresa = ? " +
+                "GROUP BY id_tipo " +
+                "ORDER BY total_co2e DESC";
+
+        List<Map.Entry<String, Double>> reporte = new ArrayList<>();
+
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(consultaEmisionEmpresa)) {
+            // El ID de la empresa
+            ps.setLong(1, idEmpresa);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String tipo = tipos.nombre(rs.getInt("id_tipo"));
+                    double totalCo2e = rs.getDouble("total_co2e");
+                    reporte.add(new AbstractMap.SimpleEntry<>(tipo, totalCo2e));
+                }
+                PoolConexiones.anotarFilas(ps, reporte.size());
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al generar el reporte de emisiones: " + e.getMessage());
+        }
+
+        return reporte;
+    }
+
+    /**
+     * Método auxiliar  para ejecutar consultas de emisiones y mapear los resultados que muestre.
+     *
+     * @param consulta SQL que devuelve las columnas {@link #COLUMNAS_LISTA}.
+     * @param parametro Parámetros de la consulta, en orden.
+     */
+    private List<Emisiones> getEmisionConsulta(String consulta, Object... parametro) {
+        List<Emisiones> emisiones = new ArrayList<>();
+        try (Connection conexion = conexionLectura()) {
+            recorrer(conexion, consulta, parametro, null, null, vista -> emisiones.add(vista.aEmisiones()));
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        return emisiones;
+    }
+
+    // ==========================================
+    // 7. GESTIÓN DE SEDES Y AUDITORÍA
+    // ==========================================
+
+    /**
+     * Registra una nueva sede en el sistema y genera automáticamente una entrada detallada en el registro de auditoría.
+     *
+     * Este método implementa una <b>transacción</b> para garantizar la integridad de los datos.
+     * El flujo de ejecución es:
+     * <ol>
+     * <li><b>INSERT Sede:</b> Se guarda la nueva sede en la base de datos (estableciendo 'España' como país por defecto).</li>
+     * <li><b>INSERT Auditoría:</b> Se registra la acción asociándola al usuario activo, incluyendo el nombre de la empresa y la ubicación en el mensaje.</li>
+     * <li><b>COMMIT:</b> Si ambas operaciones tienen éxito, se confirman los cambios permanentemente.</li>
+     * </ol>
+     * En caso de cualquier error SQL durante el proceso, se ejecuta un <b>rollback</b> para deshacer cualquier cambio parcial.
+     *
+     *
+     * @param sede          Objeto {@link Sede} que contiene los datos de ubicación (ciudad, dirección) y el ID de la empresa asociada.
+     * @param usuarioActivo El objeto {@link Usuario} que ejecuta la operación (requerido para el registro de auditoría).
+     * @param nombreEmpresa El nombre de la empresa a la que se asocia la sede (utilizado para construir el mensaje descriptivo del log).
+     * @return {@code true} si la transacción se completó exitosamente; {@code false} si ocurrió un error y se realizó un rollback.
+     */
+    public boolean registrarSedeConAuditoria(Sede sede, Usuario usuarioActivo, String nombreEmpresa) {
+        String insertSede = "INSERT INTO sede (ciudad, pais, direccion, id_empresa) VALUES (?, 'España', ?, ?)";
+        String insertLogAuditoria = "INSERT INTO auditoria (accion, fecha_hora, id_usuario) VALUES (?, datetime('now', 'localtime'), ?)";
+
+        Connection conexion = null;
+        try {
+            conexion = conexionEscritura();
+            conexion.setAutoCommit(false);
+
+            // Insercción de la sede
+            try (PreparedStatement pstSede = conexion.prepareStatement(insertSede)) {
+                pstSede.setString(1, sede.getCiudad());
+                pstSede.setString(2, sede.getDireccion());
                 pstSede.setLong(3, sede.getIdEmpresa());
                 pstSede.executeUpdate();
             }
@@ -955,6 +1631,7 @@ public class GestorBD {
             }
             //Se guarda
             conexion.commit();
+            cache.invalidar(sede.getIdEmpresa(), Tabla.SEDE);
             return true;
 
         } catch (SQLException e) {
@@ -987,7 +1664,7 @@ public class GestorBD {
         String insertLogAudtioria = "INSERT INTO auditoria (accion, fecha_hora, id_usuario) VALUES (?, datetime('now', 'localtime'), ?)";
         Connection conexion = null;
         try {
-            conexion = establecerConexion();
+            conexion = conexionEscritura();
             conexion.setAutoCommit(false);
 
             try (PreparedStatement psActualizar = conexion.prepareStatement(updateSede)) {
@@ -1005,6 +1682,7 @@ public class GestorBD {
             }
 
             conexion.commit();
+            cache.invalidar(sede.getIdEmpresa(), Tabla.SEDE);
             return true;
         } catch (SQLException e) {
             if (conexion != null) try { conexion.rollback(); } catch (SQLException ex) {}
@@ -1036,7 +1714,7 @@ public class GestorBD {
 
         Connection conexion = null;
         try {
-            conexion = establecerConexion();
+            conexion = conexionEscritura();
             conexion.setAutoCommit(false);
 
             try (PreparedStatement ps = conexion.prepareStatement(borrarSede)) {
@@ -1052,6 +1730,8 @@ public class GestorBD {
             }
 
             conexion.commit();
+            // Solo se conoce el ID de la sede: se descartan las sedes guardadas de todas las empresas
+            cache.invalidar(null, Tabla.SEDE);
             return true;
         } catch (SQLException e) {
             if (conexion != null) try { conexion.rollback(); } catch (SQLException ex) {}
@@ -1072,10 +1752,18 @@ public class GestorBD {
      * @return Una lista de objetos {@link Sede}. Retorna una lista vacía si no se encuentran resultados o si ocurre un error.
      */
     public List<Sede> getSedesPorEmpresa(Long idEmpresa) {
+        return new ArrayList<>(cache.obtener("getSedesPorEmpresa", idEmpresa, Set.of(Tabla.SEDE),
+                () -> leerSedesPorEmpresa(idEmpresa)));
+    }
+
+    /**
+     * Lee de la base de datos las sedes de una empresa (ver {@link #getSedesPorEmpresa(Long)}).
+     */
+    private List<Sede> leerSedesPorEmpresa(Long idEmpresa) {
         List<Sede> lista = new ArrayList<>();
         String consultaSedeEmpresa = "SELECT * FROM sede WHERE id_empresa = ?";
 
-        try (Connection conexion = establecerConexion();
+        try (Connection conexion = conexionLectura();
              PreparedStatement pstmt = conexion.prepareStatement(consultaSedeEmpresa)) {
             pstmt.setLong(1, idEmpresa);
             ResultSet rs = pstmt.executeQuery();
@@ -1087,6 +1775,7 @@ public class GestorBD {
                         rs.getLong("id_empresa")
                 ));
             }
+            PoolConexiones.anotarFilas(pstmt, lista.size());
         } catch (SQLException e) {
             System.out.println("Error al listar sedes: " + e.getMessage());
         }
@@ -1114,9 +1803,9 @@ public class GestorBD {
 
         List<AuditoriaLog> infoAccion = new ArrayList<>();
 
-        try (Connection conexion = establecerConexion();
-             Statement stmt = conexion.createStatement();
-             ResultSet rs = stmt.executeQuery(consultaLog)) {
+        try (Connection conexion = conexionLectura();
+             PreparedStatement stmt = conexion.prepareStatement(consultaLog);
+             ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 infoAccion.add(new AuditoriaLog(
@@ -1126,19 +1815,93 @@ public class GestorBD {
                         rs.getString("nombre_usuario")
                 ));
             }
+            PoolConexiones.anotarFilas(stmt, infoAccion.size());
         } catch (SQLException e) {
             System.out.println("Error recuperando auditoría: " + e.getMessage());
         }
         return infoAccion;
     }
 
+    /**
+     * Devuelve el registro de consultas lentas agrupado por forma de consulta ({@link RegistroConsultasLentas#forma}):
+     * veces, duración media y máxima, filas y última aparición de cada una, de la más lenta a la más rápida.
+     * <p>
+     * El registro se guarda en segundo plano, así que las ejecuciones de los últimos milisegundos pueden no aparecer aún.
+     *
+     * @return Lista de formas. Si ocurre un error SQL, devuelve una lista vacía.
+     */
+    public List<RegistroConsultasLentas.Forma> getConsultasLentasPorForma() {
+        String sql = "SELECT forma, GROUP_CONCAT(DISTINCT operacion) AS operaciones, COUNT(*) AS veces, "
+                + "AVG(duracion_ms) AS media, MAX(duracion_ms) AS maximo, MAX(filas) AS filas, MAX(fecha) AS ultima "
+                + "FROM consulta_lenta GROUP BY forma ORDER BY maximo DESC";
+        List<RegistroConsultasLentas.Forma> formas = new ArrayList<>();
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                formas.add(new RegistroConsultasLentas.Forma(rs.getString("forma"), rs.getString("operaciones"),
+                        rs.getLong("veces"), rs.getDouble("media"), rs.getDouble("maximo"), rs.getLong("filas"),
+                        rs.getString("ultima")));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error recuperando consultas lentas: " + e.getMessage());
+        }
+        return formas;
+    }
+
+    /**
+     * Devuelve las ejecuciones lentas de una forma de consulta, de la más reciente a la más antigua,
+     * con sus parámetros (los hashes de contraseña aparecen ocultos) y su plan de ejecución.
+     *
+     * @param forma Forma de consulta (de {@link #getConsultasLentasPorForma()}).
+     * @param maximo Número máximo de entradas.
+     * @return Lista de entradas. Si ocurre un error SQL, devuelve una lista vacía.
+     */
+    public List<RegistroConsultasLentas.Entrada> getConsultasLentas(String forma, int maximo) {
+        String sql = "SELECT id, fecha, operacion, sql, parametros, filas, duracion_ms, plan "
+                + "FROM consulta_lenta WHERE forma = ? ORDER BY id DESC LIMIT ?";
+        List<RegistroConsultasLentas.Entrada> entradas = new ArrayList<>();
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(sql)) {
+            ps.setString(1, forma);
+            ps.setInt(2, maximo);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    entradas.add(new RegistroConsultasLentas.Entrada(rs.getLong("id"), rs.getString("fecha"),
+                            rs.getString("operacion"), rs.getString("sql"), rs.getString("parametros"),
+                            rs.getLong("filas"), rs.getDouble("duracion_ms"), rs.getString("plan")));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error recuperando consultas lentas: " + e.getMessage());
+        }
+        return entradas;
+    }
+
+    /**
+     * Vacía el registro de consultas lentas (por ejemplo, tras corregir un índice).
+     *
+     * @return true si se ha vaciado, false en caso de error.
+     */
+    public boolean borrarConsultasLentas() {
+        try (Connection conexion = conexionEscritura();
+             PreparedStatement ps = conexion.prepareStatement("DELETE FROM consulta_lenta")) {
+            ps.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Error vaciando consultas lentas: " + e.getMessage());
+            return false;
+        }
+    }
+
     // ==========================================
     // 8. DATOS DE PRUEBA
     // ==========================================
 
     /**
      * Inserta datos de prueba para facilitar la corrección y el testeo.
-     * Crea: Usuarios de cada rol, 4 empresas, emisiones y sedes.
+     * Crea: Usuarios de cada rol y, con {@link GeneradorDatos.Parametros#demo()}, una docena de empresas
+     * con sus sedes y dos años de emisiones (siempre las mismas; si ya están, no se duplican).
      */
     public void cargarDatosDemo() {
         System.out.println("--- Iniciando Carga de Datos Demo ---");
@@ -1151,28 +1914,29 @@ public class GestorBD {
         if(rolUsuario != null) crearUsuario("empleado", "1234", "Empleado Test", rolUsuario, null);
         if(rolCliente != null) crearUsuario("cliente", "1234", "Cliente Visita", rolCliente, null);
 
-        String[][] datosEmpresas = {{"TechSolar Solutions", "Energía"}, {"Logística Rápida S.L.", "Transporte"}, {"AgroCultivos Bio", "Agricultura"}, {"Construcciones Norte", "Construcción"}};
-        for (String[] datos : datosEmpresas) {
-            String nombre = datos[0];
-            if (getTodasEmpresas(nombre).isEmpty()) {
-                Empresa nuevaEmp = new Empresa(nombre, datos[1]);
-                agregarEmpresa(nuevaEmp);
-                List<Empresa> recuperada = getTodasEmpresas(nombre);
-                if (!recuperada.isEmpty()) {
-                    Empresa empConId = recuperada.get(0);
-                    Long id = empConId.getId();
-                    nuevaEmision(new Emisiones("Consumo Eléctrico", 500.0, 120.5, id));
-                    nuevaEmision(new Emisiones("Flota Vehículos", 1000.0, 2500.0, id));
-                    nuevaEmision(new Emisiones("Generadores Diesel", 200.0, 800.0, id));
-                    nuevaEmision(new Emisiones("Residuos Industriales", 50.0, 100.0, id));
-                    registrarSedeConAuditoria(new Sede("Madrid", "C/ Principal 1", id), new Usuario(1L, "admin", "admin", rolAdmin), nombre);
-                    registrarSedeConAuditoria(new Sede("Barcelona", "Av. Diagonal 200", id), new Usuario(1L, "admin", "admin", rolAdmin), nombre);
-                }
-            }
-        }
+        generarDatos(GeneradorDatos.Parametros.demo(), null);
         System.out.println("--- Datos Demo Cargados ---");
     }
 
+    /**
+     * Genera empresas, sedes y emisiones sintéticas (deterministas por semilla) en una única transacción.
+     * <p>
+     * Pensado para pruebas de carga: millones de filas se insertan por lotes y, si son muchas, sin índices
+     * mientras tanto (ver {@link GeneradorDatos}). Es una operación larga: debe llamarse fuera del hilo de la interfaz.
+     *
+     * @param parametros Empresas, sedes, intervalo de fechas, media diaria, distribución y semilla.
+     * @param progreso Recibe el avance periódicamente (puede ser null).
+     * @return Resumen de lo generado, o null si ha fallado (no se guarda nada).
+     */
+    public GeneradorDatos.Resultado generarDatos(GeneradorDatos.Parametros parametros, Consumer<GeneradorDatos.Progreso> progreso) {
+        GeneradorDatos.Resultado resultado = generadorDatos.generar(parametros, progreso);
+        if (resultado != null) {
+            if (resultado.emisiones() > 0) almacenColumnar.invalidar();
+            cache.invalidar(null, Tabla.EMPRESA, Tabla.SEDE, Tabla.EMISIONES);
+        }
+        return resultado;
+    }
+
 
     // ----------------------------------------
     // Método auxiliar de filtro para crear el registro en la BD
@@ -1180,7 +1944,7 @@ public class GestorBD {
 
     public void registrarFiltro(String criterio, String orden, String contexto, Usuario usuario) {
         String sql = "INSERT INTO filtro (criterio_busqueda, ordenamiento, contexto, id_usuario) VALUES (?, ?, ?, ?)";
-        try (Connection conexion = establecerConexion();
+        try (Connection conexion = conexionEscritura();
              PreparedStatement ps = conexion.prepareStatement(sql)) {
             ps.setString(1, (criterio == null || criterio.isBlank()) ? "Todo" : criterio);
             ps.setString(2, orden);
@@ -1205,9 +1969,9 @@ public class GestorBD {
                 "JOIN usuario u ON f.id_usuario = u.id " +
                 "ORDER BY f.id DESC";
 
-        try (Connection conexion = establecerConexion();
-             Statement st = conexion.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
+        try (Connection conexion = conexionLectura();
+             PreparedStatement st = conexion.prepareStatement(sql);
+             ResultSet rs = st.executeQuery()) {
 
             while (rs.next()) {
                 String fecha = rs.getString("fecha_hora");
@@ -1221,8 +1985,564 @@ public class GestorBD {
                 String detalle = String.format("[%s] Buscó: '%s' | Orden: %s", contexto, criterio, orden);
                 lista.add(new Modelos.AuditoriaLog(0L, detalle, fecha, usuario));
             }
+            PoolConexiones.anotarFilas(st, lista.size());
         } catch (SQLException e) {
             System.out.println("Error leyendo filtros: " + e.getMessage());
         }
         return lista;
-    }}
\ No newline at end of file
+    }
+
+    // ==========================================
+    // 9. IMPORTACIÓN MASIVA (CSV)
+    // ==========================================
+
+    /**
+     * Importa un archivo CSV de emisiones con el formato de exportación
+     * ({@code Empresa;Tipo;Cantidad;CO2e (kg);Fecha}).
+     * <p>
+     * Las líneas se interpretan en paralelo y se insertan en transacciones de {@code tamanoLote} filas;
+     * las líneas erróneas se anotan en el resultado sin detener la importación. Es una operación larga:
+     * debe llamarse fuera del hilo de la interfaz.
+     *
+     * @param archivo Archivo CSV.
+     * @param tamanoLote Filas por transacción (ej. {@link ImportadorCSV#TAMANO_LOTE_POR_DEFECTO}).
+     * @param autor Usuario que importa, para la auditoría (null para no registrarla).
+     * @param progreso Recibe el avance tras cada lote (puede ser null).
+     * @return Resumen con filas importadas y errores por línea.
+     */
+    public ImportadorCSV.Resultado importarEmisionesCSV(File archivo, int tamanoLote, Usuario autor,
+                                                        Consumer<ImportadorCSV.Progreso> progreso) {
+        ImportadorCSV.Resultado resultado = importadorCSV.importarEmisiones(archivo, tamanoLote, autor,
+                invalidarTrasCadaLote(progreso, Tabla.EMISIONES));
+        // Demasiadas filas para aplicarlas una a una: la copia en memoria se vuelve a cargar. La caché se vacía
+        // otra vez porque la carga masiva rehace los totales después del último lote
+        if (resultado.filasImportadas() > 0) {
+            almacenColumnar.invalidar();
+            cache.invalidar(null, Tabla.EMISIONES);
+        }
+        return resultado;
+    }
+
+    /**
+     * Importa un archivo CSV de empresas ({@code Nombre;Sector}). Los nombres ya registrados se descartan.
+     *
+     * @see #importarEmisionesCSV(File, int, Usuario, Consumer)
+     */
+    public ImportadorCSV.Resultado importarEmpresasCSV(File archivo, int tamanoLote, Usuario autor,
+                                                       Consumer<ImportadorCSV.Progreso> progreso) {
+        return importadorCSV.importarEmpresas(archivo, tamanoLote, autor, invalidarTrasCadaLote(progreso, Tabla.EMPRESA));
+    }
+
+    /**
+     * Importa un archivo CSV de sedes ({@code Empresa;Ciudad;Dirección}).
+     *
+     * @see #importarEmisionesCSV(File, int, Usuario, Consumer)
+     */
+    public ImportadorCSV.Resultado importarSedesCSV(File archivo, int tamanoLote, Usuario autor,
+                                                    Consumer<ImportadorCSV.Progreso> progreso) {
+        return importadorCSV.importarSedes(archivo, tamanoLote, autor, invalidarTrasCadaLote(progreso, Tabla.SEDE));
+    }
+
+    /**
+     * Exporta a CSV las emisiones de un filtro, en el mismo orden que la tabla paginada,
+     * leyéndolas de un único cursor (sin cargar la lista en memoria).
+     * <p>
+     * Es una operación larga: debe llamarse fuera del hilo de la interfaz. Para poder cancelarla,
+     * se ejecuta dentro de {@link Cancelacion#ejecutar}.
+     *
+     * @param filtro Empresa, término y orden de la consulta.
+     * @param archivo Archivo de destino.
+     * @param progreso Recibe el avance periódicamente (puede ser null).
+     * @return Resumen con las filas escritas, o marcado como cancelado.
+     * @throws IOException Si no se puede escribir el archivo o falla la consulta.
+     */
+    public ExportadorCSV.Resultado exportarEmisionesCSV(FiltroEmisiones filtro, File archivo,
+                                                        Consumer<ExportadorCSV.Progreso> progreso) throws IOException {
+        List<Object> parametros = new ArrayList<>();
+        String consulta = "SELECT c.nombre, t.nombre, e.cantidad, e.co2e, e.fecha "
+                + "FROM registro_emisiones e "
+                + "JOIN empresa c ON c.id = e.id_empresa "
+                + "JOIN emision_tipo t ON t.id = e.id_tipo"
+                + condicionesFiltro(filtro, parametros)
+                + ordenPaginacion(filtro);
+        // Sin término el recuento sale de empresa_totales: no cuesta recorrer la tabla
+        long estimadas = progreso != null ? contarEmisiones(filtro) : 0;
+        return exportadorCSV.exportarEmisiones(consulta, parametros, estimadas, archivo, progreso);
+    }
+
+    // ==========================================
+    // 10. AGREGADOS (COPIA COLUMNAR EN MEMORIA)
+    // ==========================================
+
+    /**
+     * Carga la copia columnar de las emisiones, que a partir de entonces responde a los agregados
+     * sin consultar SQLite y se mantiene al día con las altas, modificaciones y bajas de este gestor.
+     * <p>
+     * Es un recorrido completo de la tabla: debe llamarse fuera del hilo de la interfaz. Si las emisiones
+     * no caben en {@link ConfiguracionBD#getMemoriaAlmacenColumnarMB()}, no se carga y los agregados
+     * se siguen calculando con SQL.
+     *
+     * @return true si la copia ha quedado cargada.
+     */
+    public boolean cargarAlmacenColumnar() {
+        return almacenColumnar.cargar(this::recorrerPorId, () -> contarEmisiones(new FiltroEmisiones()));
+    }
+
+    /**
+     * @return Situación de la copia columnar (cargada, cargando, fuera de presupuesto...).
+     */
+    public AlmacenColumnar.Estado getEstadoAlmacenColumnar() {
+        return almacenColumnar.getEstado();
+    }
+
+    /**
+     * CO2e total por mes con emisiones, en orden cronológico (de la copia en memoria si está
+     * cargada, o del resumen mensual).
+     *
+     * @param idEmpresa Empresa (null para todas).
+     * @return Mapa mes → total de kg de CO2e (vacío si hay error).
+     */
+    public Map<YearMonth, Double> getTotalesPorMes(Long idEmpresa) {
+        return new LinkedHashMap<>(cache.obtener("getTotalesPorMes", idEmpresa, Set.of(Tabla.EMISIONES),
+                () -> leerTotalesPorMes(idEmpresa)));
+    }
+
+    /**
+     * Lee el CO2e por mes de la copia en memoria o del resumen mensual (ver {@link #getTotalesPorMes(Long)}).
+     */
+    private Map<YearMonth, Double> leerTotalesPorMes(Long idEmpresa) {
+        Map<YearMonth, Double> enMemoria = almacenColumnar.totalesPorMes(idEmpresa);
+        if (enMemoria != null) return enMemoria;
+        Map<YearMonth, Double> leidos = leerSerieMensual(idEmpresa, null, null);
+        return leidos != null ? leidos : new LinkedHashMap<>();
+    }
+
+    /**
+     * CO2e total de cada empresa con emisiones (de la copia en memoria, o de {@code empresa_totales}).
+     *
+     * @return Mapa ID de empresa → total de kg de CO2e (vacío si hay error).
+     */
+    public Map<Long, Double> getTotalesPorEmpresa() {
+        return new HashMap<>(cache.obtener("getTotalesPorEmpresa", null, Set.of(Tabla.EMISIONES), this::leerTotalesPorEmpresa));
+    }
+
+    /**
+     * Lee el CO2e de cada empresa de la copia en memoria o de {@code empresa_totales}.
+     */
+    private Map<Long, Double> leerTotalesPorEmpresa() {
+        Map<Long, Double> enMemoria = almacenColumnar.totalesPorEmpresa();
+        if (enMemoria != null) return enMemoria;
+
+        Map<Long, Double> totales = new HashMap<>();
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(
+                     "SELECT id_empresa, total_co2e FROM empresa_totales WHERE num_emisiones > 0");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                totales.put(rs.getLong(1), rs.getDouble(2));
+            }
+            PoolConexiones.anotarFilas(ps, totales.size());
+        } catch (SQLException e) {
+            System.out.println("Error al leer los totales por empresa: " + e.getMessage());
+        }
+        return totales;
+    }
+
+    /**
+     * CO2e entre dos fechas, ambas incluidas.
+     * <p>
+     * Sin la copia en memoria se suma el rango del índice de días ((id_empresa, dia) o (dia)).
+     *
+     * @param idEmpresa Empresa (null para todas).
+     * @param desde Primera fecha.
+     * @param hasta Última fecha.
+     * @return Total de kg de CO2e (0 si hay error).
+     */
+    public double getCo2eEmpresaEntre(Long idEmpresa, LocalDate desde, LocalDate hasta) {
+        Double enMemoria = almacenColumnar.co2eEntre(idEmpresa, (int) desde.toEpochDay(), (int) hasta.toEpochDay());
+        if (enMemoria != null) return enMemoria;
+
+        List<Object> parametros = new ArrayList<>();
+        String consulta = "SELECT COALESCE(SUM(e.co2e), 0) FROM registro_emisiones e"
+                + condicionesFiltro(new FiltroEmisiones(idEmpresa, desde, hasta), parametros);
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(consulta)) {
+            for (int i = 0; i < parametros.size(); i++) {
+                ps.setObject(i + 1, parametros.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getDouble(1) : 0;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error al sumar las emisiones del periodo: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // ==========================================
+    // 11. RESUMEN MENSUAL Y ANUAL (emision_mensual)
+    // ==========================================
+
+    /**
+     * CO2e por mes entre dos meses, ambos incluidos, leído del resumen mensual.
+     * Los meses sin emisiones aparecen con total 0, para poder dibujar la serie directamente.
+     *
+     * @param idEmpresa Empresa (null para todas).
+     * @param desde Primer mes.
+     * @param hasta Último mes.
+     * @return Mapa mes → total de kg de CO2e en orden cronológico (vacío si hay error).
+     */
+    public Map<YearMonth, Double> getSerieMensual(Long idEmpresa, YearMonth desde, YearMonth hasta) {
+        Map<YearMonth, Double> leidos = cache.obtener("getSerieMensual", idEmpresa, Set.of(Tabla.EMISIONES),
+                () -> leerSerieMensual(idEmpresa, desde, hasta), desde, hasta);
+        Map<YearMonth, Double> serie = new LinkedHashMap<>();
+        if (leidos == null) return serie;
+        for (YearMonth mes = desde; !mes.isAfter(hasta); mes = mes.plusMonths(1)) {
+            serie.put(mes, leidos.getOrDefault(mes, 0.0));
+        }
+        return serie;
+    }
+
+    /**
+     * CO2e de los últimos meses hasta el actual incluido (por ejemplo, 24 para la tendencia de dos años).
+     *
+     * @param idEmpresa Empresa (null para todas).
+     * @param meses Número de meses.
+     * @return Mapa mes → total de kg de CO2e en orden cronológico, con 0 en los meses sin emisiones.
+     */
+    public Map<YearMonth, Double> getUltimosMeses(Long idEmpresa, int meses) {
+        YearMonth actual = YearMonth.now();
+        return getSerieMensual(idEmpresa, actual.minusMonths(meses - 1L), actual);
+    }
+
+    /**
+     * Lee del resumen mensual el CO2e de cada mes con emisiones.
+     *
+     * @param idEmpresa Empresa (null para todas).
+     * @param desde Primer mes (null = desde el principio; si se indica, también {@code hasta}).
+     * @param hasta Último mes.
+     * @return Mapa mes → total en orden cronológico, o null si hay error.
+     */
+    private Map<YearMonth, Double> leerSerieMensual(Long idEmpresa, YearMonth desde, YearMonth hasta) {
+        List<Object> parametros = new ArrayList<>();
+        StringBuilder consulta = new StringBuilder("SELECT mes, SUM(total_co2e) FROM emision_mensual");
+        String union = " WHERE ";
+        if (idEmpresa != null) {
+            consulta.append(union).append("id_empresa = ?");
+            parametros.add(idEmpresa);
+            union = " AND ";
+        }
+        if (desde != null) {
+            consulta.append(union).append("mes BETWEEN ? AND ?");
+            parametros.add(desde.getYear() * 100 + desde.getMonthValue());
+            parametros.add(hasta.getYear() * 100 + hasta.getMonthValue());
+        }
+        consulta.append(" GROUP BY mes ORDER BY mes");
+
+        Map<YearMonth, Double> totales = new LinkedHashMap<>();
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(consulta.toString())) {
+            for (int i = 0; i < parametros.size(); i++) {
+                ps.setObject(i + 1, parametros.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int mes = rs.getInt(1);
+                    totales.put(YearMonth.of(mes / 100, mes % 100), rs.getDouble(2));
+                }
+                PoolConexiones.anotarFilas(ps, totales.size());
+            }
+            return totales;
+        } catch (SQLException | DateTimeException e) {
+            System.out.println("Error al leer el resumen mensual: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Total de CO2e de cada año con emisiones y su variación respecto al año anterior.
+     *
+     * @param idEmpresa Empresa (null para todas).
+     * @return Resúmenes en orden cronológico (vacío si hay error).
+     */
+    public List<ResumenAnual> getResumenAnual(Long idEmpresa) {
+        return new ArrayList<>(cache.obtener("getResumenAnual", idEmpresa, Set.of(Tabla.EMISIONES),
+                () -> leerResumenAnual(idEmpresa)));
+    }
+
+    /**
+     * Lee del resumen mensual el total de cada año (ver {@link #getResumenAnual(Long)}).
+     */
+    private List<ResumenAnual> leerResumenAnual(Long idEmpresa) {
+        String consulta = idEmpresa != null
+                ? "SELECT mes / 100 AS anio, SUM(total_co2e), SUM(num_emisiones) FROM emision_mensual "
+                        + "WHERE id_empresa = ? GROUP BY anio ORDER BY anio"
+                : "SELECT mes / 100 AS anio, SUM(total_co2e), SUM(num_emisiones) FROM emision_mensual "
+                        + "GROUP BY anio ORDER BY anio";
+        List<ResumenAnual> resumen = new ArrayList<>();
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(consulta)) {
+            if (idEmpresa != null) ps.setLong(1, idEmpresa);
+            try (ResultSet rs = ps.executeQuery()) {
+                Integer anioAnterior = null;
+                double co2eAnterior = 0;
+                while (rs.next()) {
+                    int anio = rs.getInt(1);
+                    double co2e = rs.getDouble(2);
+                    // Un año sin emisiones entre medias cuenta como 0, no como "sin datos"
+                    Double anterior = anioAnterior == null ? null : (anioAnterior == anio - 1 ? co2eAnterior : 0.0);
+                    resumen.add(new ResumenAnual(anio, co2e, anterior, rs.getLong(3)));
+                    anioAnterior = anio;
+                    co2eAnterior = co2e;
+                }
+                PoolConexiones.anotarFilas(ps, resumen.size());
+            }
+        } catch (SQLException e) {
+            System.out.println("Error al leer el resumen anual: " + e.getMessage());
+        }
+        return resumen;
+    }
+
+    /**
+     * CO2e por tipo de emisión en un año, de mayor a menor (informe anual).
+     *
+     * @param idEmpresa Empresa (null para todas).
+     * @param anio Año del informe.
+     * @return Pares tipo → total de kg de CO2e (vacío si hay error).
+     */
+    public List<Map.Entry<String, Double>> getTotalesPorTipoAnio(Long idEmpresa, int anio) {
+        return new ArrayList<>(cache.obtener("getTotalesPorTipoAnio", idEmpresa, Set.of(Tabla.EMISIONES),
+                () -> leerTotalesPorTipoAnio(idEmpresa, anio), anio));
+    }
+
+    /**
+     * Lee del resumen mensual el CO2e por tipo de un año (ver {@link #getTotalesPorTipoAnio(Long, int)}).
+     */
+    private List<Map.Entry<String, Double>> leerTotalesPorTipoAnio(Long idEmpresa, int anio) {
+        String consulta = "SELECT id_tipo, SUM(total_co2e) AS total FROM emision_mensual WHERE "
+                + (idEmpresa != null ? "id_empresa = ? AND " : "")
+                + "mes BETWEEN ? AND ? GROUP BY id_tipo ORDER BY total DESC";
+        List<Map.Entry<String, Double>> totales = new ArrayList<>();
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(consulta)) {
+            int indice = 1;
+            if (idEmpresa != null) ps.setLong(indice++, idEmpresa);
+            ps.setInt(indice++, anio * 100 + 1);
+            ps.setInt(indice, anio * 100 + 12);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    totales.add(new AbstractMap.SimpleEntry<>(tipos.nombre(rs.getInt(1)), rs.getDouble(2)));
+                }
+                PoolConexiones.anotarFilas(ps, totales.size());
+            }
+        } catch (SQLException e) {
+            System.out.println("Error al leer los totales anuales por tipo: " + e.getMessage());
+        }
+        return totales;
+    }
+
+    /**
+     * Comprueba que el resumen mensual coincide con las emisiones (CO2e, cantidad y número).
+     *
+     * @return IDs de las empresas con algún mes descuadrado (lista vacía si todo es coherente).
+     */
+    public List<Long> comprobarResumenMensual() {
+        String consulta = "WITH r AS MATERIALIZED (SELECT id_empresa, CAST(strftime('%Y%m', fecha) AS INTEGER) AS mes, id_tipo, "
+                + "  SUM(co2e) AS co2e, SUM(cantidad) AS cantidad, COUNT(*) AS num FROM registro_emisiones GROUP BY 1, 2, 3) "
+                + "SELECT r.id_empresa FROM r "
+                + "LEFT JOIN emision_mensual m ON m.id_empresa = r.id_empresa AND m.mes = r.mes AND m.id_tipo = r.id_tipo "
+                + "WHERE m.num_emisiones IS NOT r.num "
+                + "   OR ABS(m.total_co2e - r.co2e) > 1e-6 * MAX(1, ABS(r.co2e)) "
+                + "   OR ABS(m.total_cantidad - r.cantidad) > 1e-6 * MAX(1, ABS(r.cantidad)) "
+                + "UNION "
+                // Meses del resumen que ya no tienen ninguna emisión
+                + "SELECT m.id_empresa FROM emision_mensual m "
+                + "WHERE NOT EXISTS (SELECT 1 FROM r WHERE r.id_empresa = m.id_empresa AND r.mes = m.mes AND r.id_tipo = m.id_tipo)";
+        List<Long> descuadradas = new ArrayList<>();
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(consulta);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                descuadradas.add(rs.getLong(1));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error comprobando el resumen mensual: " + e.getMessage());
+        }
+        return descuadradas;
+    }
+
+    /**
+     * Reconstruye por completo el resumen mensual a partir de registro_emisiones.
+     * Se usa si {@link #comprobarResumenMensual()} detecta diferencias o tras modificar las emisiones
+     * con los triggers desactivados.
+     *
+     * @return true si la reconstrucción se completó.
+     */
+    public boolean reconstruirResumenMensual() {
+        Connection conexion = null;
+        try {
+            conexion = conexionEscritura();
+            conexion.setAutoCommit(false);
+            try (PreparedStatement psBorrar = conexion.prepareStatement("DELETE FROM emision_mensual");
+                 PreparedStatement psCalcular = conexion.prepareStatement(
+                         "INSERT INTO emision_mensual (id_empresa, mes, id_tipo, total_co2e, total_cantidad, num_emisiones) "
+                                 + "SELECT id_empresa, CAST(strftime('%Y%m', fecha) AS INTEGER), id_tipo, SUM(co2e), SUM(cantidad), COUNT(*) "
+                                 + "FROM registro_emisiones GROUP BY 1, 2, 3")) {
+                psBorrar.executeUpdate();
+                psCalcular.executeUpdate();
+            }
+            conexion.commit();
+            cache.invalidar(null, Tabla.EMISIONES);
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Error reconstruyendo el resumen mensual: " + e.getMessage());
+            if (conexion != null) {
+                try { conexion.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+            }
+            return false;
+        } finally {
+            if (conexion != null) {
+                try { conexion.setAutoCommit(true); conexion.close(); } catch (SQLException ex) { ex.printStackTrace(); }
+            }
+        }
+    }
+
+    // ==========================================
+    // 12. FACTORES DE EMISIÓN
+    // ==========================================
+
+    /**
+     * Consulta de un factor del catálogo: las columnas que lee {@link #leerFactor(ResultSet)}.
+     */
+    private static final String COLUMNAS_FACTOR = "SELECT id, id_tipo, unidad, factor, desde, hasta FROM factor_emision";
+
+    /**
+     * Devuelve los tipos de emisión del diccionario (nombre canónico, categoría y alias), por ID.
+     *
+     * @return Lista de tipos (vacía si no se han podido leer).
+     */
+    public List<TipoEmision> getTiposEmision() {
+        return tipos.getTipos();
+    }
+
+    /**
+     * Devuelve el catálogo completo de factores de emisión, por tipo y fecha de inicio.
+     *
+     * @return Lista de factores (vacía si hay error).
+     */
+    public List<FactorEmision> getFactoresEmision() {
+        return new ArrayList<>(cache.obtener("getFactoresEmision", null, Set.of(Tabla.FACTOR), this::leerFactoresEmision));
+    }
+
+    /**
+     * Lee de la base de datos el catálogo de factores (ver {@link #getFactoresEmision()}).
+     */
+    private List<FactorEmision> leerFactoresEmision() {
+        List<FactorEmision> factores = new ArrayList<>();
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(COLUMNAS_FACTOR + " ORDER BY id_tipo, desde, id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                factores.add(leerFactor(rs));
+            }
+            PoolConexiones.anotarFilas(ps, factores.size());
+        } catch (SQLException e) {
+            System.out.println("Error al leer los factores de emisión: " + e.getMessage());
+        }
+        // Por nombre de tipo (la ordenación es estable: dentro de cada tipo sigue el orden de fechas)
+        factores.sort(Comparator.comparing(FactorEmision::getTipo));
+        return factores;
+    }
+
+    /**
+     * Factor vigente para un tipo de emisión en una fecha. Si hay varios, el que empieza más tarde
+     * (y, si empiezan el mismo día, el último dado de alta).
+     *
+     * @param tipo Tipo de emisión (nombre o cualquiera de sus alias).
+     * @param fecha Fecha de la emisión.
+     * @return El factor, o null si el tipo no existe o no tiene ninguno vigente en esa fecha (o hay error).
+     */
+    public FactorEmision getFactorEmision(String tipo, LocalDate fecha) {
+        TipoEmision tipoEmision = tipos.buscar(tipo);
+        if (tipoEmision == null) return null;
+        String consulta = COLUMNAS_FACTOR + " WHERE id_tipo = ? AND desde <= ? AND (hasta IS NULL OR hasta >= ?) "
+                + "ORDER BY desde DESC, id DESC LIMIT 1";
+        try (Connection conexion = conexionLectura();
+             PreparedStatement ps = conexion.prepareStatement(consulta)) {
+            ps.setInt(1, tipoEmision.getId());
+            ps.setLong(2, fecha.toEpochDay());
+            ps.setLong(3, fecha.toEpochDay());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? leerFactor(rs) : null;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error al buscar el factor de emisión: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Importa factores de emisión desde un CSV ({@code Tipo;Unidad;Factor (kgCO2e/unidad);Desde;Hasta}).
+     * Un factor con el mismo tipo, unidad y fecha de inicio que otro ya existente lo revisa.
+     * Las emisiones no cambian hasta llamar a {@link #recalcularCo2e}.
+     *
+     * @see #importarEmisionesCSV(File, int, Usuario, Consumer)
+     */
+    public ImportadorCSV.Resultado importarFactoresCSV(File archivo, Usuario autor, Consumer<ImportadorCSV.Progreso> progreso) {
+        return importadorCSV.importarFactores(archivo, ImportadorCSV.TAMANO_LOTE_POR_DEFECTO, autor,
+                invalidarTrasCadaLote(progreso, Tabla.FACTOR));
+    }
+
+    /**
+     * Recalcula el CO2e de las emisiones (cantidad × factor vigente en su fecha) tras revisar el catálogo,
+     * en transacciones de {@value RecalculoCo2e#IDS_POR_TRANSACCION} IDs y sin dejar de atender otras escrituras.
+     * <p>
+     * Es una operación larga: debe llamarse fuera del hilo de la interfaz. Para poder cancelarla,
+     * se ejecuta dentro de {@link Cancelacion#ejecutar}; lo recalculado hasta entonces se conserva.
+     *
+     * @param tipo Tipo de emisión (null para todos los tipos del catálogo).
+     * @param incluirManuales true para recalcular también las emisiones con el CO2e escrito a mano o importado.
+     * @param autor Usuario que lo lanza, para la auditoría (null para no registrarlo).
+     * @param progreso Recibe el avance tras cada transacción (puede ser null).
+     * @return Resumen del recálculo, o null si no se ha podido empezar.
+     */
+    public RecalculoCo2e.Resultado recalcularCo2e(String tipo, boolean incluirManuales, Usuario autor,
+                                                  Consumer<RecalculoCo2e.Progreso> progreso) {
+        RecalculoCo2e.Resultado resultado;
+        try {
+            resultado = recalculoCo2e.recalcular(tipo, incluirManuales, invalidarTrasCadaLote(progreso, Tabla.EMISIONES));
+        } catch (SQLException e) {
+            System.out.println("Error al preparar el recálculo de CO2e: " + e.getMessage());
+            return null;
+        }
+        // Los agregados en memoria no siguen las actualizaciones de conjunto: se vuelven a cargar, y después
+        // se vacía la caché por si se llenó entre el último lote y la recarga
+        if (resultado.filasRecalculadas() > 0) {
+            almacenColumnar.invalidar();
+            cache.invalidar(null, Tabla.EMISIONES);
+        }
+        if (autor != null && resultado.filasRecalculadas() > 0) {
+            try (Connection conexion = conexionEscritura();
+                 PreparedStatement ps = conexion.prepareStatement(
+                         "INSERT INTO auditoria (accion, fecha_hora, id_usuario) VALUES (?, datetime('now', 'localtime'), ?)")) {
+                ps.setString(1, "RECÁLCULO CO2e | Tipo: " + (tipo != null ? tipo : "Todos")
+                        + " | Filas: " + resultado.filasRecalculadas() + (resultado.cancelado() ? " | Cancelado" : ""));
+                ps.setLong(2, autor.getId());
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                System.out.println("Error al registrar el recálculo en la auditoría: " + e.getMessage());
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Crea un factor a partir de la fila actual de {@link #COLUMNAS_FACTOR}.
+     */
+    private FactorEmision leerFactor(ResultSet rs) throws SQLException {
+        long hasta = rs.getLong(6);
+        boolean sinFin = rs.wasNull();
+        return new FactorEmision(rs.getLong(1), tipos.nombre(rs.getInt(2)), rs.getString(3), rs.getDouble(4),
+                LocalDate.ofEpochDay(rs.getLong(5)), sinFin ? null : LocalDate.ofEpochDay(hasta));
+    }
+}
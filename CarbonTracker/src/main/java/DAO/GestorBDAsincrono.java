@@ -0,0 +1,157 @@
+package DAO;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Fachada asíncrona de {@link GestorBD} para la interfaz gráfica.
+ * <p>
+ * Cada operación se ejecuta en un hilo virtual y devuelve un {@link CompletableFuture}; así el hilo de
+ * JavaFX nunca espera a la base de datos (disco lento, bloqueo de escritura, consulta pesada...).
+ * Las variantes con callback entregan el resultado, o el error, en el hilo de la interfaz
+ * (normalmente {@code Platform::runLater}).
+ * <p>
+ * El número de consultas simultáneas lo sigue limitando el pool de conexiones: los hilos virtuales
+ * que no encuentran conexión libre simplemente esperan, sin ocupar un hilo del sistema.
+ */
+public class GestorBDAsincrono {
+
+    /** Tiempo máximo de espera a las operaciones en curso al cerrar. */
+    private static final long ESPERA_CIERRE_SEGUNDOS = 10;
+
+    /** Gestor síncrono al que se delegan las operaciones. */
+    private final GestorBD gestorBD;
+
+    /** Un hilo virtual por operación. */
+    private final ExecutorService ejecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("bd-", 0).factory());
+
+    /** Ejecutor del hilo de la interfaz, donde se entregan los callbacks. */
+    private final Executor hiloInterfaz;
+
+    /** Tratamiento por defecto de los errores inesperados (se ejecuta en el hilo de la interfaz). */
+    private volatile Consumer<Throwable> manejadorErrores =
+            error -> System.out.println("Error en la base de datos: " + error.getMessage());
+
+    /**
+     * @param gestorBD Gestor de base de datos ya arrancado.
+     * @param hiloInterfaz Ejecutor del hilo de la interfaz (en JavaFX, {@code Platform::runLater}).
+     */
+    public GestorBDAsincrono(GestorBD gestorBD, Executor hiloInterfaz) {
+        this.gestorBD = gestorBD;
+        this.hiloInterfaz = hiloInterfaz;
+    }
+
+    /**
+     * Ejecuta una operación del gestor en segundo plano.
+     *
+     * @param operacion Operación sobre el gestor (por ejemplo {@code GestorBD::getLogsAuditoria}).
+     * @return Futuro con el resultado de la operación.
+     */
+    public <T> CompletableFuture<T> llamar(Function<GestorBD, T> operacion) {
+        return CompletableFuture.supplyAsync(() -> operacion.apply(gestorBD), ejecutor);
+    }
+
+    /**
+     * Ejecuta una operación en segundo plano y entrega su resultado en el hilo de la interfaz.
+     * Los errores se envían al manejador por defecto.
+     *
+     * @param operacion Operación sobre el gestor.
+     * @param alTerminar Acción con el resultado, en el hilo de la interfaz.
+     * @return Futuro con el resultado de la operación.
+     */
+    public <T> CompletableFuture<T> llamar(Function<GestorBD, T> operacion, Consumer<T> alTerminar) {
+        return llamar(operacion, alTerminar, manejadorErrores);
+    }
+
+    /**
+     * Ejecuta una operación en segundo plano y entrega su resultado o su error en el hilo de la interfaz.
+     *
+     * @param operacion Operación sobre el gestor.
+     * @param alTerminar Acción con el resultado, en el hilo de la interfaz.
+     * @param alFallar Acción con la excepción lanzada por la operación, en el hilo de la interfaz.
+     * @return Futuro con el resultado de la operación.
+     */
+    public <T> CompletableFuture<T> llamar(Function<GestorBD, T> operacion, Consumer<T> alTerminar,
+                                           Consumer<Throwable> alFallar) {
+        CompletableFuture<T> resultado = llamar(operacion);
+        resultado.whenCompleteAsync((valor, error) -> {
+            if (error == null) {
+                alTerminar.accept(valor);
+            } else {
+                alFallar.accept(causaReal(error));
+            }
+        }, hiloInterfaz);
+        return resultado;
+    }
+
+    /**
+     * Ejecuta una operación sin resultado en segundo plano. Los errores se envían al manejador por defecto.
+     *
+     * @param operacion Operación sobre el gestor.
+     * @return Futuro que se completa al terminar la operación.
+     */
+    public CompletableFuture<Void> ejecutar(Consumer<GestorBD> operacion) {
+        return ejecutar(operacion, () -> { });
+    }
+
+    /**
+     * Ejecuta una operación sin resultado y avisa en el hilo de la interfaz al terminar.
+     *
+     * @param operacion Operación sobre el gestor.
+     * @param alTerminar Acción posterior, en el hilo de la interfaz.
+     * @return Futuro que se completa al terminar la operación.
+     */
+    public CompletableFuture<Void> ejecutar(Consumer<GestorBD> operacion, Runnable alTerminar) {
+        return llamar(gestor -> {
+            operacion.accept(gestor);
+            return null;
+        }, sinResultado -> alTerminar.run());
+    }
+
+    /**
+     * Cambia el tratamiento por defecto de los errores (por ejemplo, un aviso en pantalla).
+     *
+     * @param manejadorErrores Acción con la excepción, en el hilo de la interfaz.
+     */
+    public void setManejadorErrores(Consumer<Throwable> manejadorErrores) {
+        this.manejadorErrores = manejadorErrores;
+    }
+
+    /**
+     * @return Gestor síncrono, para código que ya se ejecuta fuera del hilo de la interfaz.
+     */
+    public GestorBD getGestorBD() {
+        return gestorBD;
+    }
+
+    /**
+     * Espera a las operaciones en curso y cierra el gestor.
+     */
+    public void cerrar() {
+        ejecutor.shutdown();
+        try {
+            ejecutor.awaitTermination(ESPERA_CIERRE_SEGUNDOS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        gestorBD.cerrar();
+    }
+
+    /**
+     * Extrae la excepción original del envoltorio de CompletableFuture.
+     */
+    private static Throwable causaReal(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
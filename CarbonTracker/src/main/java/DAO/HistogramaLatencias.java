@@ -0,0 +1,127 @@
+package DAO;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias sin bloqueos, al estilo de HdrHistogram.
+ * <p>
+ * Las cubetas son log-lineales: por debajo de {@value #SUBCUBETAS} ns cada nanosegundo tiene la suya y, a partir de ahí,
+ * cada potencia de dos se divide en {@value #MITAD} cubetas iguales. El error relativo de un percentil es, por tanto,
+ * menor que 1/{@value #MITAD} (≈3 %) en todo el rango, hasta {@value #BITS_MAXIMO} bits de nanosegundos (unos
+ * 18 minutos; los valores mayores se cuentan en la última cubeta). Ocupa un {@code long} por cubeta, unos 9 KB.
+ * <p>
+ * Registrar un valor son dos incrementos atómicos y una comparación del máximo, así que se puede llamar desde
+ * cualquier hilo sin sincronización. Una lectura mientras se registra puede ver el contador total y las cubetas
+ * ligeramente desfasados, nunca un valor inventado.
+ */
+public class HistogramaLatencias {
+
+    /** Bits de precisión de cada potencia de dos. */
+    private static final int BITS_SUBCUBETA = 6;
+
+    /** Cubetas con resolución de 1 ns (las del primer tramo). */
+    private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;
+
+    /** Cubetas de cada potencia de dos a partir del primer tramo. */
+    private static final int MITAD = SUBCUBETAS / 2;
+
+    /** Bits del mayor valor que se distingue. */
+    private static final int BITS_MAXIMO = 40;
+
+    /** Mayor valor registrable (los mayores se recortan a este). */
+    private static final long VALOR_MAXIMO = (1L << BITS_MAXIMO) - 1;
+
+    /** Contadores de cada cubeta. */
+    private final AtomicLongArray cubetas = new AtomicLongArray(indice(VALOR_MAXIMO) + 1);
+
+    /** Número de valores registrados. */
+    private final LongAdder total = new LongAdder();
+
+    /** Suma de los valores registrados (para la media). */
+    private final LongAdder suma = new LongAdder();
+
+    /** Mayor valor registrado (exacto, sin redondear a su cubeta). */
+    private final AtomicLong maximo = new AtomicLong();
+
+    /**
+     * Registra una medida.
+     *
+     * @param nanos Duración en nanosegundos (las negativas cuentan como 0).
+     */
+    public void registrar(long nanos) {
+        long valor = Math.min(Math.max(nanos, 0), VALOR_MAXIMO);
+        cubetas.incrementAndGet(indice(valor));
+        total.increment();
+        suma.add(valor);
+        long actual;
+        while (valor > (actual = maximo.get()) && !maximo.compareAndSet(actual, valor)) {
+            // otro hilo ha subido el máximo a la vez: se vuelve a comparar
+        }
+    }
+
+    /**
+     * @return Número de medidas registradas.
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * @return Mayor medida registrada (ns), o 0 si no hay ninguna.
+     */
+    public long getMaximo() {
+        return maximo.get();
+    }
+
+    /**
+     * @return Media de las medidas (ns), o 0 si no hay ninguna.
+     */
+    public double getMedia() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) suma.sum() / n;
+    }
+
+    /**
+     * Valor por debajo del cual (o igual) queda una proporción de las medidas.
+     * Devuelve el límite superior de la cubeta correspondiente, sin pasar del máximo registrado.
+     *
+     * @param proporcion Entre 0 y 1 (0,5 para la mediana, 0,99 para el p99).
+     * @return Percentil en nanosegundos, o 0 si no hay medidas.
+     */
+    public long getPercentil(double proporcion) {
+        long[] copia = new long[cubetas.length()];
+        long n = 0;
+        for (int i = 0; i < copia.length; i++) {
+            copia[i] = cubetas.get(i);
+            n += copia[i];
+        }
+        if (n == 0) return 0;
+        long objetivo = Math.max(1, (long) Math.ceil(Math.min(Math.max(proporcion, 0), 1) * n));
+        long acumulado = 0;
+        for (int i = 0; i < copia.length; i++) {
+            acumulado += copia[i];
+            if (acumulado >= objetivo) return Math.min(limiteSuperior(i), getMaximo());
+        }
+        return getMaximo();
+    }
+
+    /**
+     * Cubeta de un valor.
+     */
+    static int indice(long valor) {
+        int desplazamiento = Math.max(0, (64 - Long.numberOfLeadingZeros(valor)) - BITS_SUBCUBETA);
+        return desplazamiento * MITAD + (int) (valor >>> desplazamiento);
+    }
+
+    /**
+     * Mayor valor que cae en una cubeta.
+     */
+    static long limiteSuperior(int indice) {
+        if (indice < SUBCUBETAS) return indice;
+        int desplazamiento = indice / MITAD - 1;
+        long base = indice - (long) desplazamiento * MITAD;
+        return ((base + 1) << desplazamiento) - 1;
+    }
+}
@@ -0,0 +1,994 @@
+package DAO;
+
+import Modelos.TipoEmision;
+import Modelos.Usuario;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Importación masiva de emisiones, empresas, sedes y factores de emisión desde archivos CSV.
+ * <p>
+ * Lee el mismo formato que escribe {@link ControlCSV}: campos separados por {@code ;},
+ * texto entre comillas dobles (con {@code ""} para una comilla literal), números con coma
+ * o punto decimal y fechas {@code dd/MM/yyyy} (también se acepta {@code yyyy-MM-dd}).
+ * <p>
+ * La importación funciona como una cadena de tres etapas:
+ * <ul>
+ * <li><b>Lectura:</b> un hilo lee el archivo en streaming y lo corta en bloques de líneas.</li>
+ * <li><b>Interpretación:</b> varios hilos convierten cada bloque en filas (separar campos, números,
+ * fechas, nombre de empresa a ID con un mapa en memoria y tipo a ID con el {@link DiccionarioTipos}).</li>
+ * <li><b>Escritura:</b> el hilo que llama inserta las filas en orden, en transacciones de
+ * {@code tamanoLote} filas, sobre la conexión de escritura del pool. Entre lote y lote la conexión
+ * se devuelve, así que el resto de la aplicación puede seguir guardando cambios.</li>
+ * </ul>
+ * <b>Carga masiva:</b> si un archivo de emisiones es grande respecto a la tabla (al menos
+ * {@value #MIN_FILAS_CARGA_MASIVA} filas estimadas y una décima parte de las existentes), todo se hace
+ * en una única transacción: se quitan los índices secundarios y los triggers de alta, se insertan las
+ * filas, se vuelven a crear y los totales por empresa y el resumen mensual se actualizan con una
+ * sola consulta cada uno. Es varias veces más rápido que mantenerlos fila a fila, pero mientras dura
+ * el resto de la aplicación espera para escribir (la lectura sigue disponible) y, si la confirmación
+ * falla, no se guarda nada.
+ * <p>
+ * Una línea errónea no detiene la importación: se anota con su número y se sigue con la siguiente.
+ * Como mucho se conservan {@value #MAX_ERRORES_GUARDADOS} errores; el resto solo se cuentan.
+ */
+public class ImportadorCSV {
+
+    /** Filas por transacción si no se indica otro tamaño. */
+    public static final int TAMANO_LOTE_POR_DEFECTO = 5000;
+
+    /** Errores de línea que se conservan con su mensaje. */
+    public static final int MAX_ERRORES_GUARDADOS = 1000;
+
+    /** Líneas que se envían juntas a un hilo de interpretación. */
+    private static final int LINEAS_POR_BLOQUE = 2048;
+
+    /** Tamaño del búfer de lectura del archivo. */
+    private static final int BUFFER_LECTURA = 1 << 16;
+
+    /** Tamaño medio de una línea de emisiones exportada, para estimar las filas de un archivo. */
+    private static final int BYTES_POR_LINEA_ESTIMADOS = 48;
+
+    /** Filas estimadas a partir de las que se considera la carga masiva. */
+    static final long MIN_FILAS_CARGA_MASIVA = 50_000;
+
+    /** La carga masiva se usa si el archivo trae al menos 1/N de las emisiones existentes. */
+    private static final int PROPORCION_CARGA_MASIVA = 10;
+
+    /** Equivalente de trg_totales_emision_alta para todas las filas cargadas. */
+    private static final String TOTALES_CARGA_MASIVA =
+            "INSERT INTO empresa_totales (id_empresa, total_co2e, num_emisiones, ultima_fecha)\n"
+            + " SELECT id_empresa, SUM(co2e), COUNT(*), MAX(fecha) FROM registro_emisiones WHERE id > ? GROUP BY id_empresa\n"
+            + " ON CONFLICT (id_empresa) DO UPDATE SET\n"
+            + "  total_co2e = total_co2e + excluded.total_co2e,\n"
+            + "  num_emisiones = num_emisiones + excluded.num_emisiones,\n"
+            + "  ultima_fecha = CASE WHEN ultima_fecha IS NULL OR excluded.ultima_fecha > ultima_fecha\n"
+            + "                      THEN excluded.ultima_fecha ELSE ultima_fecha END";
+
+    /** Equivalente de trg_mensual_emision_alta para todas las filas cargadas. */
+    private static final String MENSUAL_CARGA_MASIVA =
+            "INSERT INTO emision_mensual (id_empresa, mes, id_tipo, total_co2e, total_cantidad, num_emisiones)\n"
+            + " SELECT id_empresa, CAST(strftime('%Y%m', fecha) AS INTEGER), id_tipo, SUM(co2e), SUM(cantidad), COUNT(*)\n"
+            + " FROM registro_emisiones WHERE id > ? GROUP BY 1, 2, 3\n"
+            + " ON CONFLICT (id_empresa, mes, id_tipo) DO UPDATE SET\n"
+            + "  total_co2e = total_co2e + excluded.total_co2e,\n"
+            + "  total_cantidad = total_cantidad + excluded.total_cantidad,\n"
+            + "  num_emisiones = num_emisiones + excluded.num_emisiones";
+
+    /** Inserción de emisiones. */
+    private static final String INSERT_EMISION =
+            "INSERT INTO registro_emisiones(id_tipo, cantidad, co2e, fecha, dia, id_empresa) VALUES(?,?,?,?,?,?)";
+
+    /** Inserción de empresas (devuelve el ID para añadirla al mapa de nombres). */
+    private static final String INSERT_EMPRESA = "INSERT INTO empresa(nombre, sector) VALUES(?,?) RETURNING id";
+
+    /**
+     * Alta o revisión de un factor de emisión: un factor con el mismo tipo, unidad y fecha de inicio
+     * se sustituye (nuevo valor y fecha de fin).
+     */
+    private static final String INSERT_FACTOR =
+            "INSERT INTO factor_emision (id_tipo, unidad, factor, desde, hasta) VALUES (?, ?, ?, ?, ?)\n"
+            + " ON CONFLICT (id_tipo, desde, unidad) DO UPDATE SET factor = excluded.factor, hasta = excluded.hasta";
+
+    /** Inserción de sedes (mismo país por defecto que el alta desde la aplicación). */
+    private static final String INSERT_SEDE = "INSERT INTO sede (ciudad, pais, direccion, id_empresa) VALUES (?, 'España', ?, ?)";
+
+    /** Registro de la importación en la auditoría. */
+    private static final String INSERT_AUDITORIA =
+            "INSERT INTO auditoria (accion, fecha_hora, id_usuario) VALUES (?, datetime('now', 'localtime'), ?)";
+
+    /** Pool del que se toman las conexiones. */
+    private final PoolConexiones pool;
+
+    /** Diccionario de tipos de emisión. */
+    private final DiccionarioTipos tipos;
+
+    /**
+     * Avance de una importación, notificado tras cada lote confirmado.
+     *
+     * @param bytesLeidos Bytes del archivo leídos hasta el último lote confirmado.
+     * @param bytesTotales Tamaño del archivo.
+     * @param filasImportadas Filas ya guardadas.
+     * @param errores Líneas descartadas hasta ahora.
+     */
+    public record Progreso(long bytesLeidos, long bytesTotales, long filasImportadas, long errores) {
+
+        /**
+         * @return Fracción del archivo procesada (de 0 a 1).
+         */
+        public double fraccion() {
+            return bytesTotales <= 0 ? 1 : Math.min(1.0, (double) bytesLeidos / bytesTotales);
+        }
+    }
+
+    /**
+     * Línea que no se ha podido importar.
+     *
+     * @param linea Número de línea en el archivo (la cabecera es la 1).
+     * @param mensaje Motivo.
+     */
+    public record ErrorLinea(long linea, String mensaje) { }
+
+    /**
+     * Resultado final de una importación.
+     *
+     * @param lineas Líneas de datos procesadas (sin la cabecera).
+     * @param filasImportadas Filas guardadas.
+     * @param totalErrores Líneas descartadas.
+     * @param errores Detalle de las primeras {@value #MAX_ERRORES_GUARDADOS} líneas descartadas.
+     * @param cargaMasiva true si se ha importado como carga masiva (una sola transacción).
+     * @param milisegundos Duración total.
+     */
+    public record Resultado(long lineas, long filasImportadas, long totalErrores, List<ErrorLinea> errores,
+                            boolean cargaMasiva, long milisegundos) {
+
+        /**
+         * @return Filas guardadas por segundo.
+         */
+        public double filasPorSegundo() {
+            return milisegundos == 0 ? filasImportadas : filasImportadas * 1000.0 / milisegundos;
+        }
+    }
+
+    /**
+     * @param pool Pool de conexiones de la aplicación.
+     * @param tipos Diccionario de tipos de emisión.
+     */
+    ImportadorCSV(PoolConexiones pool, DiccionarioTipos tipos) {
+        this.pool = pool;
+        this.tipos = tipos;
+    }
+
+    // ==========================================
+    // FORMATOS
+    // ==========================================
+
+    /**
+     * Datos compartidos por las etapas de una importación.
+     *
+     * @param empresas Mapa nombre de empresa (en minúsculas) → ID.
+     * @param tipos Diccionario de tipos de emisión.
+     * @param tiposCreados Tipos creados en la transacción en curso (solo los usa el hilo escritor).
+     */
+    private record Contexto(Map<String, Long> empresas, DiccionarioTipos tipos, Map<String, TipoEmision> tiposCreados) {
+
+        /**
+         * ID del tipo de una fila: el ya resuelto al interpretarla o, si el texto era nuevo, el que
+         * le da el diccionario dentro de la transacción del escritor (creándolo).
+         */
+        int idTipo(PreparedStatement ps, int idTipo, String texto) throws SQLException {
+            return idTipo >= 0 ? idTipo : tipos.resolver(ps.getConnection(), texto, tiposCreados).getId();
+        }
+    }
+
+    /**
+     * Describe un tipo de archivo: cómo se interpretan sus líneas y cómo se guarda cada fila.
+     *
+     * @param <R> Fila ya interpretada.
+     */
+    private interface Formato<R> {
+
+        /** Nombre del contenido, para la auditoría. */
+        String nombre();
+
+        /** Número de columnas de cada línea. */
+        int columnas();
+
+        /** Primera columna de la cabecera: si la primera línea empieza así, se salta. */
+        String primeraColumna();
+
+        /** Convierte los campos de una línea en una fila (en los hilos de interpretación). */
+        R interpretar(String[] campos, Contexto contexto);
+
+        /** Sentencia de inserción. */
+        String insercion();
+
+        /**
+         * Guarda una fila (en el hilo escritor).
+         *
+         * @return null si se ha guardado, o el motivo por el que se descarta.
+         */
+        String insertar(PreparedStatement ps, R fila, Contexto contexto) throws SQLException;
+
+        /** Orden en que conviene insertar las filas de un lote (null si da igual). */
+        default Comparator<R> orden() {
+            return null;
+        }
+    }
+
+    /** Fila de emisión interpretada ({@code idTipo} -1 si el tipo aún no existe). */
+    private record FilaEmision(String tipo, int idTipo, double cantidad, double co2e, LocalDate fecha, long idEmpresa) { }
+
+    /** Fila de empresa interpretada. */
+    private record FilaEmpresa(String nombre, String sector) { }
+
+    /** Fila de sede interpretada. */
+    private record FilaSede(String ciudad, String direccion, long idEmpresa) { }
+
+    /** Fila de factor de emisión interpretada ({@code hasta} null = sin fecha de fin, {@code idTipo} como en las emisiones). */
+    private record FilaFactor(String tipo, int idTipo, String unidad, double factor, LocalDate desde, LocalDate hasta) { }
+
+    /** Orden del índice (id_empresa, dia) y del resumen mensual (id_empresa, mes, id_tipo). */
+    private static final Comparator<FilaEmision> ORDEN_EMISIONES =
+            Comparator.comparingLong(FilaEmision::idEmpresa).thenComparingInt(FilaEmision::idTipo);
+
+    /** {@code Empresa;Tipo;Cantidad;CO2e (kg);Fecha}, como en {@link ControlCSV#exportarEmisiones}. */
+    private static final Formato<FilaEmision> EMISIONES = new Formato<>() {
+        public String nombre() { return "Emisiones"; }
+        public int columnas() { return 5; }
+        public String primeraColumna() { return "Empresa"; }
+        public String insercion() { return INSERT_EMISION; }
+        public Comparator<FilaEmision> orden() { return ORDEN_EMISIONES; }
+
+        public FilaEmision interpretar(String[] campos, Contexto contexto) {
+            long idEmpresa = idEmpresa(campos[0], contexto.empresas());
+            String tipo = obligatorio(campos[1], "Tipo");
+            return new FilaEmision(tipo, idTipo(tipo, contexto), numero(campos[2], "Cantidad"), numero(campos[3], "CO2e"),
+                    fecha(campos[4]), idEmpresa);
+        }
+
+        public String insertar(PreparedStatement ps, FilaEmision fila, Contexto contexto) throws SQLException {
+            ps.setInt(1, contexto.idTipo(ps, fila.idTipo(), fila.tipo()));
+            ps.setDouble(2, fila.cantidad());
+            ps.setDouble(3, fila.co2e());
+            ps.setString(4, fila.fecha().toString());
+            ps.setLong(5, fila.fecha().toEpochDay());
+            ps.setLong(6, fila.idEmpresa());
+            ps.executeUpdate();
+            return null;
+        }
+    };
+
+    /** {@code Nombre;Sector}, como en {@link ControlCSV#exportarEmpresas}. */
+    private static final Formato<FilaEmpresa> EMPRESAS = new Formato<>() {
+        public String nombre() { return "Empresas"; }
+        public int columnas() { return 2; }
+        public String primeraColumna() { return "Nombre"; }
+        public String insercion() { return INSERT_EMPRESA; }
+
+        public FilaEmpresa interpretar(String[] campos, Contexto contexto) {
+            return new FilaEmpresa(obligatorio(campos[0], "Nombre"), obligatorio(campos[1], "Sector"));
+        }
+
+        public String insertar(PreparedStatement ps, FilaEmpresa fila, Contexto contexto) throws SQLException {
+            // Misma regla que el alta manual: no se repiten nombres (sin distinguir mayúsculas)
+            Map<String, Long> empresas = contexto.empresas();
+            String clave = claveEmpresa(fila.nombre());
+            if (empresas.containsKey(clave)) return "Empresa ya existente: " + fila.nombre();
+            ps.setString(1, fila.nombre());
+            ps.setString(2, fila.sector());
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                empresas.put(clave, rs.getLong(1));
+            }
+            return null;
+        }
+    };
+
+    /** {@code Empresa;Ciudad;Dirección}. */
+    private static final Formato<FilaSede> SEDES = new Formato<>() {
+        public String nombre() { return "Sedes"; }
+        public int columnas() { return 3; }
+        public String primeraColumna() { return "Empresa"; }
+        public String insercion() { return INSERT_SEDE; }
+
+        public FilaSede interpretar(String[] campos, Contexto contexto) {
+            long idEmpresa = idEmpresa(campos[0], contexto.empresas());
+            return new FilaSede(obligatorio(campos[1], "Ciudad"), campos[2], idEmpresa);
+        }
+
+        public String insertar(PreparedStatement ps, FilaSede fila, Contexto contexto) throws SQLException {
+            ps.setString(1, fila.ciudad());
+            ps.setString(2, fila.direccion());
+            ps.setLong(3, fila.idEmpresa());
+            ps.executeUpdate();
+            return null;
+        }
+    };
+
+    /** {@code Tipo;Unidad;Factor (kgCO2e/unidad);Desde;Hasta}, con Hasta vacío si el factor sigue vigente. */
+    private static final Formato<FilaFactor> FACTORES = new Formato<>() {
+        public String nombre() { return "Factores de emisión"; }
+        public int columnas() { return 5; }
+        public String primeraColumna() { return "Tipo"; }
+        public String insercion() { return INSERT_FACTOR; }
+
+        public FilaFactor interpretar(String[] campos, Contexto contexto) {
+            double factor = numero(campos[2], "Factor");
+            if (factor < 0) throw new IllegalArgumentException("Factor negativo: '" + campos[2] + "'");
+            LocalDate desde = fecha(campos[3]);
+            LocalDate hasta = campos[4].isEmpty() ? null : fecha(campos[4]);
+            if (hasta != null && hasta.isBefore(desde)) {
+                throw new IllegalArgumentException("La fecha de fin es anterior a la de inicio");
+            }
+            String tipo = obligatorio(campos[0], "Tipo");
+            return new FilaFactor(tipo, idTipo(tipo, contexto), obligatorio(campos[1], "Unidad"), factor, desde, hasta);
+        }
+
+        public String insertar(PreparedStatement ps, FilaFactor fila, Contexto contexto) throws SQLException {
+            ps.setInt(1, contexto.idTipo(ps, fila.idTipo(), fila.tipo()));
+            ps.setString(2, fila.unidad());
+            ps.setDouble(3, fila.factor());
+            ps.setLong(4, fila.desde().toEpochDay());
+            if (fila.hasta() != null) {
+                ps.setLong(5, fila.hasta().toEpochDay());
+            } else {
+                ps.setNull(5, Types.INTEGER);
+            }
+            ps.executeUpdate();
+            return null;
+        }
+    };
+
+    // ==========================================
+    // OPERACIONES PÚBLICAS
+    // ==========================================
+
+    /**
+     * Importa emisiones ({@code Empresa;Tipo;Cantidad;CO2e (kg);Fecha}).
+     * Las empresas se buscan por nombre, sin distinguir mayúsculas; si no existen, la línea se descarta.
+     *
+     * @param archivo Archivo CSV.
+     * @param tamanoLote Filas por transacción.
+     * @param autor Usuario al que se atribuye la importación en la auditoría (null para no registrarla).
+     * @param progreso Recibe el avance tras cada lote, en el hilo que importa (puede ser null).
+     * @return Resumen de la importación.
+     */
+    public Resultado importarEmisiones(File archivo, int tamanoLote, Usuario autor, Consumer<Progreso> progreso) {
+        return importar(archivo, EMISIONES, tamanoLote, autor, progreso);
+    }
+
+    /**
+     * Importa empresas ({@code Nombre;Sector}). Las que ya existen se descartan como error de línea.
+     *
+     * @see #importarEmisiones(File, int, Usuario, Consumer)
+     */
+    public Resultado importarEmpresas(File archivo, int tamanoLote, Usuario autor, Consumer<Progreso> progreso) {
+        return importar(archivo, EMPRESAS, tamanoLote, autor, progreso);
+    }
+
+    /**
+     * Importa sedes ({@code Empresa;Ciudad;Dirección}). Una ciudad repetida en la misma empresa se descarta.
+     *
+     * @see #importarEmisiones(File, int, Usuario, Consumer)
+     */
+    public Resultado importarSedes(File archivo, int tamanoLote, Usuario autor, Consumer<Progreso> progreso) {
+        return importar(archivo, SEDES, tamanoLote, autor, progreso);
+    }
+
+    /**
+     * Importa factores de emisión ({@code Tipo;Unidad;Factor (kgCO2e/unidad);Desde;Hasta}).
+     * Un factor con el mismo tipo, unidad y fecha de inicio que uno existente lo revisa; el CO2e de las
+     * emisiones afectadas no cambia hasta que se recalcula ({@link RecalculoCo2e}).
+     *
+     * @see #importarEmisiones(File, int, Usuario, Consumer)
+     */
+    public Resultado importarFactores(File archivo, int tamanoLote, Usuario autor, Consumer<Progreso> progreso) {
+        return importar(archivo, FACTORES, tamanoLote, autor, progreso);
+    }
+
+    // ==========================================
+    // CADENA DE IMPORTACIÓN
+    // ==========================================
+
+    /**
+     * Bloque de líneas leídas, pendiente de interpretar.
+     *
+     * @param lineas Texto de cada línea (un campo entrecomillado puede ocupar varias líneas del archivo).
+     * @param numeros Número de línea en el archivo de cada entrada.
+     * @param bytesLeidos Bytes leídos del archivo al cerrar el bloque.
+     */
+    private record BloqueLeido(List<String> lineas, long[] numeros, long bytesLeidos) { }
+
+    /**
+     * Fila interpretada junto con su número de línea (para informar de errores al insertarla).
+     */
+    private record FilaNumerada<R>(long linea, R fila) { }
+
+    /**
+     * Bloque ya interpretado, listo para el escritor.
+     *
+     * @param filas Filas correctas.
+     * @param errores Líneas descartadas al interpretar.
+     * @param lineas Líneas procesadas en el bloque.
+     * @param bytesLeidos Bytes leídos del archivo al cerrar el bloque.
+     */
+    private record BloqueInterpretado<R>(List<FilaNumerada<R>> filas, List<ErrorLinea> errores, int lineas,
+                                         long bytesLeidos) { }
+
+    /**
+     * Estado que comparte el hilo escritor a lo largo de una importación.
+     */
+    private static final class Recuento {
+        long lineas;
+        long importadas;
+        long totalErrores;
+        boolean cargaMasiva;
+        final List<ErrorLinea> errores = new ArrayList<>();
+
+        void error(long linea, String mensaje) {
+            totalErrores++;
+            if (errores.size() < MAX_ERRORES_GUARDADOS) errores.add(new ErrorLinea(linea, mensaje));
+        }
+    }
+
+    /**
+     * Ejecuta la cadena lectura → interpretación → escritura para un formato.
+     */
+    private <R> Resultado importar(File archivo, Formato<R> formato, int tamanoLote, Usuario autor,
+                                   Consumer<Progreso> progreso) {
+        long inicio = System.nanoTime();
+        int lote = Math.max(1, tamanoLote);
+        long bytesTotales = archivo.length();
+        Recuento recuento = new Recuento();
+
+        Map<String, Long> empresas = cargarEmpresas();
+        if (empresas == null) {
+            recuento.error(0, "No se pudieron leer las empresas de la base de datos");
+            return resultado(recuento, inicio);
+        }
+        Contexto contexto = new Contexto(empresas, tipos, new HashMap<>());
+        CargaMasiva cargaMasiva = formato == EMISIONES && convieneCargaMasiva(bytesTotales) ? iniciarCargaMasiva() : null;
+        recuento.cargaMasiva = cargaMasiva != null;
+
+        int hilos = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger contadorHilos = new AtomicInteger();
+        ExecutorService interpretes = Executors.newFixedThreadPool(hilos, tarea -> {
+            Thread hilo = new Thread(tarea, "importador-csv-" + contadorHilos.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        // Cola acotada: si el escritor va por detrás, el lector espera en lugar de llenar la memoria
+        BlockingQueue<Future<BloqueInterpretado<R>>> pendientes = new ArrayBlockingQueue<>(hilos * 4);
+        Future<BloqueInterpretado<R>> fin = CompletableFuture.completedFuture(null);
+
+        Thread lector = new Thread(() -> leer(archivo, formato, contexto, interpretes, pendientes, fin), "importador-csv-lector");
+        lector.setDaemon(true);
+        lector.start();
+
+        List<FilaNumerada<R>> filas = new ArrayList<>(lote);
+        long bytesLeidos = 0;
+        try {
+            while (true) {
+                Future<BloqueInterpretado<R>> siguiente = pendientes.take();
+                if (siguiente == fin) break;
+                BloqueInterpretado<R> bloque;
+                try {
+                    bloque = siguiente.get();
+                } catch (ExecutionException e) {
+                    Throwable causa = e.getCause();
+                    recuento.error(0, "Error de lectura: " + (causa != null ? causa.getMessage() : e.getMessage()));
+                    break;
+                }
+                recuento.lineas += bloque.lineas();
+                for (ErrorLinea error : bloque.errores()) recuento.error(error.linea(), error.mensaje());
+                bytesLeidos = bloque.bytesLeidos();
+
+                for (FilaNumerada<R> fila : bloque.filas()) {
+                    filas.add(fila);
+                    if (filas.size() == lote) {
+                        escribirLote(formato, filas, contexto, recuento, cargaMasiva);
+                        avisar(progreso, bytesLeidos, bytesTotales, recuento);
+                    }
+                }
+            }
+            if (!filas.isEmpty()) escribirLote(formato, filas, contexto, recuento, cargaMasiva);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            recuento.error(0, "Importación interrumpida");
+        } finally {
+            lector.interrupt();
+            interpretes.shutdownNow();
+            // Lo insertado hasta aquí se confirma también si la lectura se ha cortado, como en el modo por lotes
+            if (cargaMasiva != null) terminarCargaMasiva(cargaMasiva, contexto, recuento);
+        }
+        avisar(progreso, bytesTotales, bytesTotales, recuento);
+        if (autor != null) registrarAuditoria(formato, archivo, recuento, autor);
+        return resultado(recuento, inicio);
+    }
+
+    /**
+     * Hilo lector: corta el archivo en bloques, los envía a interpretar y encola sus futuros en orden.
+     */
+    private <R> void leer(File archivo, Formato<R> formato, Contexto contexto, ExecutorService interpretes,
+                          BlockingQueue<Future<BloqueInterpretado<R>>> pendientes, Future<BloqueInterpretado<R>> fin) {
+        try {
+            try (EntradaContada entrada = new EntradaContada(new FileInputStream(archivo));
+                 BufferedReader lectura = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8), BUFFER_LECTURA)) {
+                List<String> lineas = new ArrayList<>(LINEAS_POR_BLOQUE);
+                long[] numeros = new long[LINEAS_POR_BLOQUE];
+                long numeroLinea = 0;
+                boolean primera = true;
+                String linea;
+                while ((linea = lectura.readLine()) != null) {
+                    long numero = ++numeroLinea;
+                    // Un campo entre comillas puede contener saltos de línea: se une hasta cerrar las comillas
+                    while (comillasAbiertas(linea)) {
+                        String continuacion = lectura.readLine();
+                        if (continuacion == null) break;
+                        numeroLinea++;
+                        linea = linea + "\n" + continuacion;
+                    }
+                    if (primera) {
+                        primera = false;
+                        if (!linea.isEmpty() && linea.charAt(0) == '\uFEFF') linea = linea.substring(1);
+                        if (esCabecera(linea, formato)) continue;
+                    }
+                    if (linea.isBlank()) continue;
+                    numeros[lineas.size()] = numero;
+                    lineas.add(linea);
+                    if (lineas.size() == LINEAS_POR_BLOQUE) {
+                        enviar(new BloqueLeido(lineas, numeros, entrada.leidos), formato, contexto, interpretes, pendientes);
+                        lineas = new ArrayList<>(LINEAS_POR_BLOQUE);
+                        numeros = new long[LINEAS_POR_BLOQUE];
+                    }
+                }
+                if (!lineas.isEmpty()) {
+                    enviar(new BloqueLeido(lineas, numeros, entrada.leidos), formato, contexto, interpretes, pendientes);
+                }
+            } catch (IOException e) {
+                pendientes.put(CompletableFuture.failedFuture(e));
+            }
+            pendientes.put(fin);
+        } catch (InterruptedException e) {
+            // El escritor ha terminado antes (error o cierre): no queda nadie esperando bloques
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Envía un bloque a los hilos de interpretación y encola su futuro (espera si la cola está llena).
+     */
+    private static <R> void enviar(BloqueLeido bloque, Formato<R> formato, Contexto contexto,
+                                   ExecutorService interpretes,
+                                   BlockingQueue<Future<BloqueInterpretado<R>>> pendientes) throws InterruptedException {
+        pendientes.put(interpretes.submit(() -> interpretar(bloque, formato, contexto)));
+    }
+
+    /**
+     * Hilos de interpretación: convierte cada línea del bloque en una fila o en un error.
+     */
+    private static <R> BloqueInterpretado<R> interpretar(BloqueLeido bloque, Formato<R> formato, Contexto contexto) {
+        int total = bloque.lineas().size();
+        List<FilaNumerada<R>> filas = new ArrayList<>(total);
+        List<ErrorLinea> errores = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            long numero = bloque.numeros()[i];
+            try {
+                String[] campos = separarCampos(bloque.lineas().get(i), formato.columnas());
+                filas.add(new FilaNumerada<>(numero, formato.interpretar(campos, contexto)));
+            } catch (IllegalArgumentException e) {
+                errores.add(new ErrorLinea(numero, e.getMessage()));
+            }
+        }
+        return new BloqueInterpretado<>(filas, errores, total, bloque.bytesLeidos());
+    }
+
+    /**
+     * Hilo escritor: guarda un lote y vacía la lista.
+     * <p>
+     * En el modo normal cada lote es una transacción; en una carga masiva las filas se añaden
+     * a la transacción única, que se confirma en {@link #terminarCargaMasiva}.
+     */
+    private <R> void escribirLote(Formato<R> formato, List<FilaNumerada<R>> filas, Contexto contexto,
+                                  Recuento recuento, CargaMasiva cargaMasiva) {
+        try {
+            if (cargaMasiva != null) {
+                try {
+                    recuento.importadas += insertarFilas(cargaMasiva.conexion(), formato, filas, contexto, recuento);
+                } catch (SQLException e) {
+                    System.out.println("Error al guardar el lote de importación: " + e.getMessage());
+                    recuento.error(filas.get(0).linea(), "Lote de " + filas.size() + " líneas no guardado: " + e.getMessage());
+                }
+                return;
+            }
+            // Insertar en el orden de los índices compuestos reduce las páginas que toca cada transacción
+            if (formato.orden() != null) filas.sort((a, b) -> formato.orden().compare(a.fila(), b.fila()));
+            try (Connection conexion = pool.obtenerEscritura()) {
+                conexion.setAutoCommit(false);
+                try {
+                    long guardadas = insertarFilas(conexion, formato, filas, contexto, recuento);
+                    conexion.commit();
+                    recuento.importadas += guardadas;
+                    tipos.incorporar(contexto.tiposCreados());
+                } catch (SQLException e) {
+                    conexion.rollback();
+                    throw e;
+                } finally {
+                    contexto.tiposCreados().clear();
+                    conexion.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                System.out.println("Error al guardar el lote de importación: " + e.getMessage());
+                recuento.error(filas.get(0).linea(), "Lote de " + filas.size() + " líneas no guardado: " + e.getMessage());
+                if (formato == EMPRESAS) {
+                    // Las empresas de un lote deshecho no existen: se vuelve a leer el mapa de nombres
+                    Map<String, Long> actuales = cargarEmpresas();
+                    if (actuales != null) {
+                        contexto.empresas().clear();
+                        contexto.empresas().putAll(actuales);
+                    }
+                }
+            }
+        } finally {
+            filas.clear();
+        }
+    }
+
+    /**
+     * Inserta las filas sobre una conexión con una transacción abierta.
+     * Las filas que SQLite rechaza (restricciones) se anotan como error sin deshacer las demás.
+     *
+     * @return Filas insertadas.
+     */
+    private <R> long insertarFilas(Connection conexion, Formato<R> formato, List<FilaNumerada<R>> filas,
+                                   Contexto contexto, Recuento recuento) throws SQLException {
+        long guardadas = 0;
+        try (PreparedStatement ps = conexion.prepareStatement(formato.insercion())) {
+            for (FilaNumerada<R> fila : filas) {
+                try {
+                    String rechazo = formato.insertar(ps, fila.fila(), contexto);
+                    if (rechazo == null) {
+                        guardadas++;
+                    } else {
+                        recuento.error(fila.linea(), rechazo);
+                    }
+                } catch (SQLException e) {
+                    recuento.error(fila.linea(), e.getMessage());
+                }
+            }
+        }
+        return guardadas;
+    }
+
+    // ==========================================
+    // CARGA MASIVA DE EMISIONES
+    // ==========================================
+
+    /**
+     * Transacción única de una carga masiva: los índices secundarios y los triggers de alta de
+     * {@code registro_emisiones} se quitan al empezar y se vuelven a crear al terminar.
+     *
+     * @param conexion Conexión de escritura, retenida durante toda la carga.
+     * @param ultimoIdPrevio Mayor ID antes de la carga: las filas nuevas son las de ID superior.
+     * @param esquema Sentencias CREATE de los índices y triggers quitados.
+     */
+    private record CargaMasiva(Connection conexion, long ultimoIdPrevio, List<String> esquema) { }
+
+    /**
+     * Decide si una importación de emisiones es lo bastante grande para hacerla como carga masiva.
+     * <p>
+     * Mantener cuatro índices y dos triggers fila a fila cuesta mucho más que reconstruirlos de una vez,
+     * pero la reconstrucción recorre la tabla entera: solo compensa si el archivo añade al menos
+     * una fracción apreciable de las filas existentes.
+     */
+    private boolean convieneCargaMasiva(long bytesTotales) {
+        long filasEstimadas = bytesTotales / BYTES_POR_LINEA_ESTIMADOS;
+        if (filasEstimadas < MIN_FILAS_CARGA_MASIVA) return false;
+        try (Connection conexion = pool.obtenerLectura();
+             PreparedStatement ps = conexion.prepareStatement("SELECT COALESCE(SUM(num_emisiones), 0) FROM empresa_totales");
+             ResultSet rs = ps.executeQuery()) {
+            long existentes = rs.next() ? rs.getLong(1) : 0;
+            return filasEstimadas * PROPORCION_CARGA_MASIVA >= existentes;
+        } catch (SQLException e) {
+            System.out.println("Error al estimar el tamaño de la importación: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Abre la transacción de la carga masiva y quita los índices y los triggers de alta
+     * ({@link EsquemaEmisiones#TRIGGERS_ALTA}: {@link #TOTALES_CARGA_MASIVA} y {@link #MENSUAL_CARGA_MASIVA}
+     * hacen lo mismo que ellos). Los demás triggers siguen activos fila a fila.
+     *
+     * @return La carga iniciada, o null si no se ha podido preparar (se importa por lotes).
+     */
+    private CargaMasiva iniciarCargaMasiva() {
+        Connection conexion = null;
+        try {
+            conexion = pool.obtenerEscritura();
+            conexion.setAutoCommit(false);
+            long ultimoId;
+            try (Statement st = conexion.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) FROM registro_emisiones")) {
+                ultimoId = rs.next() ? rs.getLong(1) : 0;
+            }
+            List<String> esquema = EsquemaEmisiones.quitar(conexion, true, EsquemaEmisiones.TRIGGERS_ALTA);
+            return new CargaMasiva(conexion, ultimoId, esquema);
+        } catch (SQLException e) {
+            System.out.println("No se pudo preparar la carga masiva, se importa por lotes: " + e.getMessage());
+            if (conexion != null) {
+                try { conexion.rollback(); conexion.setAutoCommit(true); conexion.close(); } catch (SQLException ex) {}
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Vuelve a crear índices y triggers, actualiza de una vez lo que mantenían los triggers
+     * (totales por empresa y resumen mensual) y confirma la carga.
+     * Si algo falla se deshace toda la carga, incluido el cambio de esquema y los tipos nuevos.
+     */
+    private void terminarCargaMasiva(CargaMasiva carga, Contexto contexto, Recuento recuento) {
+        Connection conexion = carga.conexion();
+        try {
+            EsquemaEmisiones.restaurar(conexion, carga.esquema());
+            try (PreparedStatement ps = conexion.prepareStatement(TOTALES_CARGA_MASIVA)) {
+                ps.setLong(1, carga.ultimoIdPrevio());
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conexion.prepareStatement(MENSUAL_CARGA_MASIVA)) {
+                ps.setLong(1, carga.ultimoIdPrevio());
+                ps.executeUpdate();
+            }
+            conexion.commit();
+            tipos.incorporar(contexto.tiposCreados());
+        } catch (SQLException e) {
+            System.out.println("Error al confirmar la carga masiva: " + e.getMessage());
+            try { conexion.rollback(); } catch (SQLException ex) {}
+            recuento.importadas = 0;
+            recuento.error(0, "Carga masiva deshecha: " + e.getMessage());
+        } finally {
+            contexto.tiposCreados().clear();
+            try { conexion.setAutoCommit(true); conexion.close(); } catch (SQLException ex) {}
+        }
+    }
+
+    /**
+     * Notifica el avance si hay quien lo escuche.
+     */
+    private static void avisar(Consumer<Progreso> progreso, long bytesLeidos, long bytesTotales, Recuento recuento) {
+        if (progreso != null) {
+            progreso.accept(new Progreso(bytesLeidos, bytesTotales, recuento.importadas, recuento.totalErrores));
+        }
+    }
+
+    /**
+     * Deja constancia de la importación en la auditoría.
+     */
+    private void registrarAuditoria(Formato<?> formato, File archivo, Recuento recuento, Usuario autor) {
+        try (Connection conexion = pool.obtenerEscritura();
+             PreparedStatement ps = conexion.prepareStatement(INSERT_AUDITORIA)) {
+            ps.setString(1, "IMPORTACIÓN CSV | " + formato.nombre() + " | Archivo: " + archivo.getName()
+                    + " | Filas: " + recuento.importadas + " | Errores: " + recuento.totalErrores);
+            ps.setLong(2, autor.getId());
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            System.out.println("Error al registrar la importación en la auditoría: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Mapa nombre de empresa (en minúsculas) → ID.
+     *
+     * @return El mapa, o null si no se ha podido leer.
+     */
+    private Map<String, Long> cargarEmpresas() {
+        Map<String, Long> empresas = new ConcurrentHashMap<>();
+        try (Connection conexion = pool.obtenerLectura();
+             PreparedStatement ps = conexion.prepareStatement("SELECT id, nombre FROM empresa");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                empresas.putIfAbsent(claveEmpresa(rs.getString(2)), rs.getLong(1));
+            }
+            return empresas;
+        } catch (SQLException e) {
+            System.out.println("Error al leer las empresas para la importación: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Resultado resultado(Recuento recuento, long inicio) {
+        long milisegundos = (System.nanoTime() - inicio) / 1_000_000;
+        return new Resultado(recuento.lineas, recuento.importadas, recuento.totalErrores,
+                List.copyOf(recuento.errores), recuento.cargaMasiva, milisegundos);
+    }
+
+    // ==========================================
+    // INTERPRETACIÓN DE CAMPOS
+    // ==========================================
+
+    /**
+     * Separa una línea en sus campos. Los campos entre comillas pueden contener {@code ;},
+     * saltos de línea y comillas escritas como {@code ""}.
+     *
+     * @param linea Línea del archivo.
+     * @param columnas Número de campos esperado.
+     * @return Campos sin comillas (los que no van entre comillas, sin espacios en los extremos).
+     * @throws IllegalArgumentException Si la línea no tiene el número de campos esperado o está mal formada.
+     */
+    static String[] separarCampos(String linea, int columnas) {
+        String[] campos = new String[columnas];
+        int largo = linea.length();
+        int posicion = 0;
+        int numero = 0;
+        while (true) {
+            if (numero == columnas) {
+                throw new IllegalArgumentException("Se esperaban " + columnas + " columnas y hay más");
+            }
+            if (posicion < largo && linea.charAt(posicion) == '"') {
+                int desde = posicion + 1;
+                StringBuilder escapado = null;
+                while (true) {
+                    int comilla = linea.indexOf('"', desde);
+                    if (comilla < 0) throw new IllegalArgumentException("Comillas sin cerrar");
+                    if (comilla + 1 < largo && linea.charAt(comilla + 1) == '"') {
+                        if (escapado == null) escapado = new StringBuilder();
+                        escapado.append(linea, desde, comilla + 1);
+                        desde = comilla + 2;
+                        continue;
+                    }
+                    campos[numero++] = escapado == null
+                            ? linea.substring(desde, comilla)
+                            : escapado.append(linea, desde, comilla).toString();
+                    posicion = comilla + 1;
+                    break;
+                }
+            } else {
+                int separador = linea.indexOf(';', posicion);
+                if (separador < 0) separador = largo;
+                campos[numero++] = linea.substring(posicion, separador).trim();
+                posicion = separador;
+            }
+            if (posicion >= largo) break;
+            if (linea.charAt(posicion) != ';') {
+                throw new IllegalArgumentException("Texto inesperado tras unas comillas en la columna " + numero);
+            }
+            posicion++;
+        }
+        if (numero != columnas) {
+            throw new IllegalArgumentException("Se esperaban " + columnas + " columnas y hay " + numero);
+        }
+        return campos;
+    }
+
+    /**
+     * Interpreta una fecha {@code dd/MM/yyyy} (formato exportado) o {@code yyyy-MM-dd}.
+     *
+     * @throws IllegalArgumentException Si no es una fecha válida.
+     */
+    static LocalDate fecha(String texto) {
+        try {
+            if (texto.length() == 10 && texto.charAt(2) == '/' && texto.charAt(5) == '/') {
+                int dia = Integer.parseInt(texto, 0, 2, 10);
+                int mes = Integer.parseInt(texto, 3, 5, 10);
+                int anio = Integer.parseInt(texto, 6, 10, 10);
+                return LocalDate.of(anio, mes, dia); // Valida también 31/02, mes 13...
+            }
+            return LocalDate.parse(texto);
+        } catch (NumberFormatException | DateTimeException e) {
+            throw new IllegalArgumentException("Fecha no válida: '" + texto + "'");
+        }
+    }
+
+    /**
+     * Convierte un número con coma o punto decimal.
+     *
+     * @throws IllegalArgumentException Si no es un número finito.
+     */
+    private static double numero(String texto, String columna) {
+        try {
+            double valor = Double.parseDouble(texto.indexOf(',') >= 0 ? texto.replace(',', '.') : texto);
+            if (Double.isFinite(valor)) return valor;
+        } catch (NumberFormatException e) {
+            // Se informa abajo con el nombre de la columna
+        }
+        throw new IllegalArgumentException(columna + " no es un número: '" + texto + "'");
+    }
+
+    private static String obligatorio(String texto, String columna) {
+        if (texto.isBlank()) throw new IllegalArgumentException(columna + " vacío");
+        return texto;
+    }
+
+    /**
+     * ID del tipo de un texto si ya está en el diccionario, o -1 si se creará al insertar la fila.
+     */
+    private static int idTipo(String texto, Contexto contexto) {
+        TipoEmision tipo = contexto.tipos().buscar(texto);
+        return tipo != null ? tipo.getId() : -1;
+    }
+
+    private static long idEmpresa(String nombre, Map<String, Long> empresas) {
+        Long id = empresas.get(claveEmpresa(nombre));
+        if (id == null) throw new IllegalArgumentException("Empresa no encontrada: '" + nombre + "'");
+        return id;
+    }
+
+    private static String claveEmpresa(String nombre) {
+        return nombre.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean esCabecera(String linea, Formato<?> formato) {
+        String primera = formato.primeraColumna();
+        return linea.regionMatches(true, 0, primera, 0, primera.length())
+                && (linea.length() == primera.length() || linea.charAt(primera.length()) == ';');
+    }
+
+    /**
+     * Indica si la línea termina dentro de un campo entre comillas (número impar de comillas).
+     */
+    private static boolean comillasAbiertas(String linea) {
+        boolean abiertas = false;
+        for (int i = linea.indexOf('"'); i >= 0; i = linea.indexOf('"', i + 1)) {
+            abiertas = !abiertas;
+        }
+        return abiertas;
+    }
+
+    /**
+     * Flujo de entrada que cuenta los bytes leídos del archivo (para el progreso).
+     */
+    private static final class EntradaContada extends FilterInputStream {
+        volatile long leidos;
+
+        EntradaContada(InputStream entrada) {
+            super(entrada);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int valor = super.read();
+            if (valor >= 0) leidos++;
+            return valor;
+        }
+
+        @Override
+        public int read(byte[] destino, int desde, int cantidad) throws IOException {
+            int n = super.read(destino, desde, cantidad);
+            if (n > 0) leidos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package DAO;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas de rendimiento de la base de datos, recogidas por {@link PoolConexiones}.
+ * <p>
+ * Se miden dos cosas:
+ * <ul>
+ * <li><b>Operaciones:</b> cada método del DAO que pide una conexión al pool (ej. {@code GestorBD.getTodasEmpresas}),
+ * desde que la obtiene hasta que la devuelve. Incluye también la espera por una conexión libre, las filas leídas
+ * o modificadas por sus sentencias y si alguna ha fallado.</li>
+ * <li><b>Consultas:</b> cada sentencia preparada de la caché del pool, por texto SQL, desde que se ejecuta hasta que
+ * se cierra (es decir, incluyendo la lectura de sus filas).</li>
+ * </ul>
+ * Todo se guarda en estructuras sin bloqueos ({@link HistogramaLatencias}, {@link LongAdder}), así que medir
+ * no serializa a los hilos que consultan. Las lecturas servidas por {@link CacheConsultas} no llegan al pool
+ * y no cuentan.
+ * <p>
+ * Además, cada operación y cada consulta se emiten como eventos de JFR ({@value #EVENTO_OPERACION} y
+ * {@value #EVENTO_CONSULTA}). Solo cuestan algo cuando hay una grabación activa, por ejemplo:
+ * {@code java -XX:StartFlightRecording:filename=carbontracker.jfr,settings=profile ...} y después
+ * {@code jfr print --events carbontracker.ConsultaBD carbontracker.jfr}.
+ */
+public class MetricasBD {
+
+    /** Nombre del evento JFR de las operaciones. */
+    public static final String EVENTO_OPERACION = "carbontracker.OperacionBD";
+
+    /** Nombre del evento JFR de las consultas. */
+    public static final String EVENTO_CONSULTA = "carbontracker.ConsultaBD";
+
+    /**
+     * Resumen de una operación o consulta.
+     *
+     * @param nombre Método del DAO o texto SQL.
+     * @param llamadas Veces que se ha ejecutado.
+     * @param errores Ejecuciones que han fallado.
+     * @param filas Filas leídas o modificadas en total.
+     * @param totalMs Tiempo total acumulado.
+     * @param p50Ms Mediana de la duración.
+     * @param p99Ms Percentil 99 de la duración.
+     * @param maximoMs Duración máxima.
+     * @param esperaMediaMs Espera media por una conexión libre (0 en las consultas).
+     * @param esperaMaximaMs Espera máxima por una conexión libre (0 en las consultas).
+     */
+    public record Resumen(String nombre, long llamadas, long errores, long filas, double totalMs,
+                          double p50Ms, double p99Ms, double maximoMs, double esperaMediaMs, double esperaMaximaMs) { }
+
+    /**
+     * Contadores de una operación o consulta.
+     */
+    private static final class Metrica {
+        private final HistogramaLatencias duracion = new HistogramaLatencias();
+        private final HistogramaLatencias espera;
+        private final LongAdder errores = new LongAdder();
+        private final LongAdder filas = new LongAdder();
+
+        Metrica(boolean conEspera) {
+            this.espera = conEspera ? new HistogramaLatencias() : null;
+        }
+
+        Resumen resumir(String nombre) {
+            return new Resumen(nombre, duracion.getTotal(), errores.sum(), filas.sum(),
+                    ms(duracion.getMedia() * duracion.getTotal()),
+                    ms(duracion.getPercentil(0.5)), ms(duracion.getPercentil(0.99)), ms(duracion.getMaximo()),
+                    espera == null ? 0 : ms(espera.getMedia()), espera == null ? 0 : ms(espera.getMaximo()));
+        }
+    }
+
+    /** Métricas por método del DAO. */
+    private final Map<String, Metrica> operaciones = new ConcurrentHashMap<>();
+
+    /** Métricas por texto SQL. */
+    private final Map<String, Metrica> consultas = new ConcurrentHashMap<>();
+
+    /** Momento desde el que se cuenta (creación o último reinicio). */
+    private volatile LocalDateTime inicio = LocalDateTime.now();
+
+    /**
+     * Registra un préstamo de conexión terminado.
+     *
+     * @param operacion Método del DAO que la pidió.
+     * @param duracionNanos Tiempo con la conexión prestada.
+     * @param esperaNanos Tiempo esperando una conexión libre.
+     * @param filas Filas leídas o modificadas por sus sentencias.
+     * @param error Si ha fallado alguna llamada a la conexión o a sus sentencias.
+     */
+    void registrarOperacion(String operacion, long duracionNanos, long esperaNanos, long filas, boolean error) {
+        Metrica metrica = operaciones.computeIfAbsent(operacion, o -> new Metrica(true));
+        metrica.duracion.registrar(duracionNanos);
+        metrica.espera.registrar(esperaNanos);
+        metrica.filas.add(filas);
+        if (error) metrica.errores.increment();
+    }
+
+    /**
+     * Registra una ejecución de una sentencia preparada.
+     *
+     * @param sql Texto de la sentencia.
+     * @param duracionNanos Tiempo desde la ejecución hasta el cierre (o la siguiente ejecución).
+     * @param filas Filas leídas o modificadas.
+     * @param error Si la ejecución ha fallado.
+     */
+    void registrarConsulta(String sql, long duracionNanos, long filas, boolean error) {
+        Metrica metrica = consultas.computeIfAbsent(sql, s -> new Metrica(false));
+        metrica.duracion.registrar(duracionNanos);
+        metrica.filas.add(filas);
+        if (error) metrica.errores.increment();
+    }
+
+    /**
+     * @return Resumen de cada método del DAO, de mayor a menor tiempo total.
+     */
+    public List<Resumen> getOperaciones() {
+        return resumir(operaciones);
+    }
+
+    /**
+     * @return Resumen de cada sentencia SQL, de mayor a menor tiempo total.
+     */
+    public List<Resumen> getConsultas() {
+        return resumir(consultas);
+    }
+
+    /**
+     * @return Momento desde el que se cuentan las métricas.
+     */
+    public LocalDateTime getInicio() {
+        return inicio;
+    }
+
+    /**
+     * Pone todos los contadores a cero. Las mediciones en curso se pierden.
+     */
+    public void reiniciar() {
+        operaciones.clear();
+        consultas.clear();
+        inicio = LocalDateTime.now();
+    }
+
+    private static List<Resumen> resumir(Map<String, Metrica> metricas) {
+        List<Resumen> resumenes = new ArrayList<>();
+        metricas.forEach((nombre, metrica) -> resumenes.add(metrica.resumir(nombre)));
+        resumenes.sort(Comparator.comparingDouble(Resumen::totalMs).reversed());
+        return resumenes;
+    }
+
+    private static double ms(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    // ==========================================
+    // EVENTOS JFR
+    // ==========================================
+
+    /**
+     * Préstamo de una conexión a un método del DAO.
+     */
+    @Name(EVENTO_OPERACION)
+    @Label("Operación de base de datos")
+    @Description("Método del DAO con una conexión del pool prestada")
+    @Category({"CarbonTracker", "Base de datos"})
+    @StackTrace(false)
+    static final class EventoOperacion extends Event {
+
+        @Label("Operación")
+        String operacion;
+
+        @Label("Conexión de escritura")
+        boolean escritura;
+
+        @Label("Espera por conexión")
+        @Timespan(Timespan.NANOSECONDS)
+        long espera;
+
+        @Label("Filas")
+        long filas;
+
+        @Label("Error")
+        boolean error;
+    }
+
+    /**
+     * Ejecución de una sentencia preparada, hasta su cierre.
+     */
+    @Name(EVENTO_CONSULTA)
+    @Label("Consulta SQL")
+    @Description("Sentencia preparada desde que se ejecuta hasta que se cierra")
+    @Category({"CarbonTracker", "Base de datos"})
+    @StackTrace(false)
+    static final class EventoConsulta extends Event {
+
+        @Label("Operación")
+        String operacion;
+
+        @Label("SQL")
+        String sql;
+
+        @Label("Filas")
+        long filas;
+
+        @Label("Error")
+        boolean error;
+    }
+}
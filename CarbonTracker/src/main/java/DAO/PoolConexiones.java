@@ -0,0 +1,834 @@
+package DAO;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool de conexiones SQLite de larga duración utilizado por {@link GestorBD}.
+ * <p>
+ * Abrir una conexión JDBC y configurarla (PRAGMA foreign_keys) en cada consulta cuesta
+ * cientos de microsegundos. Este pool mantiene un número reducido de conexiones ya
+ * configuradas que se reutilizan entre llamadas y, además, guarda en caché por conexión
+ * los {@link PreparedStatement} de cada cadena SQL, de modo que la sentencia solo se
+ * compila la primera vez.
+ * <p>
+ * Las conexiones se reparten en dos grupos:
+ * <ul>
+ * <li><b>Lectura:</b> varias conexiones con {@code PRAGMA query_only} para las consultas.</li>
+ * <li><b>Escritura:</b> una única conexión dedicada para todas las modificaciones.</li>
+ * </ul>
+ * En modo WAL los lectores no se bloquean mientras el escritor tiene una transacción abierta.
+ * <p>
+ * Las conexiones se entregan envueltas en un proxy nuevo en cada préstamo: al hacer {@code close()} la conexión
+ * vuelve al pool en lugar de cerrarse y ese proxy deja de servir (cualquier llamada posterior falla), de modo que
+ * una referencia olvidada no puede actuar sobre el préstamo de otro hilo. Al cerrar una sentencia cacheada solo
+ * se limpian sus parámetros y su ResultSet. Así el código de GestorBD sigue usando el patrón
+ * try-with-resources de siempre sin cambios.
+ * <p>
+ * Las sentencias cacheadas que se abren dentro de una {@link Cancelacion} se registran en ella
+ * mientras están en uso, para poder interrumpirlas desde otro hilo.
+ * <p>
+ * Si la configuración lo permite, cada préstamo de conexión y cada ejecución de una sentencia cacheada
+ * se miden en {@link MetricasBD}. Los ResultSet no se envuelven: las filas leídas solo cuentan si quien las
+ * recorre las anota con {@link #anotarFilas}. El método que pidió la conexión (el primero de la pila fuera
+ * del pool) se busca al devolverla, cuando aún está en la pila, y solo si hace falta: con la atribución de
+ * operaciones activada, o para una consulta lenta o un evento JFR que se va a grabar. Las ejecuciones que
+ * superan el umbral de consulta lenta se pasan, con sus parámetros, a {@link RegistroConsultasLentas}.
+ */
+public class PoolConexiones {
+
+    /** Tiempo máximo de espera para obtener una conexión libre antes de fallar. */
+    private static final long ESPERA_MAXIMA_SEGUNDOS = 30;
+
+    /** Códigos primarios de SQLite que indican un bloqueo transitorio. */
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+
+    /** Nombre del hilo de JavaFX (se compara por nombre para no depender del toolkit gráfico). */
+    private static final String HILO_INTERFAZ = "JavaFX Application Thread";
+
+    /** Mensaje de la aserción de desarrollo sobre accesos desde el hilo de JavaFX. */
+    private static final String MENSAJE_HILO_INTERFAZ =
+            "Acceso a la base de datos desde el hilo de JavaFX: use GestorBDAsincrono";
+
+    /** Métodos que solo piden la conexión al pool por cuenta de otro (no dan nombre a la operación). */
+    private static final Set<String> METODOS_INTERMEDIOS = Set.of("conexionLectura", "conexionEscritura");
+
+    /** Operaciones de los préstamos sin atribuir al método que pidió la conexión. */
+    private static final String OPERACION_LECTURA = "lectura";
+    private static final String OPERACION_ESCRITURA = "escritura";
+
+    /** Recorre la pila para saber qué método usa cada conexión (conserva las clases para saltar los proxies). */
+    private static final StackWalker PILA = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    /** Configuración del almacenamiento. */
+    private final ConfiguracionBD configuracion;
+
+    /** Conexiones de solo lectura. */
+    private final GrupoConexiones lectores;
+
+    /** Conexión única de escritura. */
+    private final GrupoConexiones escritor;
+
+    /** Indica si ya se ha abierto la conexión de escritura (que fija el modo de diario). */
+    private volatile boolean inicializado = false;
+
+    /** Indica si el pool ya se ha cerrado. */
+    private volatile boolean cerrado = false;
+
+    /** Métricas de rendimiento, o null si la instrumentación está desactivada. */
+    private final MetricasBD metricas;
+
+    /** Registro de consultas lentas, o null si está desactivado (o no hay instrumentación). */
+    private final RegistroConsultasLentas consultasLentas;
+
+    /**
+     * Crea un pool vacío; las conexiones se abren bajo demanda hasta llegar al máximo.
+     *
+     * @param configuracion Configuración del almacenamiento.
+     */
+    public PoolConexiones(ConfiguracionBD configuracion) {
+        this.configuracion = configuracion;
+        this.lectores = new GrupoConexiones(Math.max(1, configuracion.getConexionesLectura()), true);
+        this.escritor = new GrupoConexiones(1, false);
+        this.metricas = configuracion.isInstrumentacion() ? new MetricasBD() : null;
+        this.consultasLentas = metricas != null && configuracion.getUmbralConsultaLentaMs() >= 0
+                ? new RegistroConsultasLentas(configuracion.getUmbralConsultaLentaMs(), configuracion.getMaxConsultasLentas())
+                : null;
+    }
+
+    /**
+     * Presta una conexión de solo lectura. Debe cerrarse (devolverse) siempre con {@code close()}.
+     *
+     * @return Conexión de lectura.
+     * @throws SQLException Si el pool está cerrado, no se puede abrir la conexión o se agota la espera.
+     */
+    public Connection obtenerLectura() throws SQLException {
+        assert !esHiloInterfaz() : MENSAJE_HILO_INTERFAZ;
+        inicializar();
+        return lectores.obtener();
+    }
+
+    /**
+     * Presta la conexión de escritura. Solo hay una, así que las escrituras quedan serializadas.
+     *
+     * @return Conexión de escritura.
+     * @throws SQLException Si el pool está cerrado, no se puede abrir la conexión o se agota la espera.
+     */
+    public Connection obtenerEscritura() throws SQLException {
+        assert !esHiloInterfaz() : MENSAJE_HILO_INTERFAZ;
+        inicializar();
+        return escritor.obtener();
+    }
+
+    /**
+     * Abre la conexión de escritura antes que cualquier lectora para fijar el modo de diario.
+     */
+    private synchronized void inicializar() throws SQLException {
+        if (inicializado) return;
+        if (cerrado) throw new SQLException("El pool de conexiones está cerrado");
+        ConexionPool conexion = escritor.crearSiHayHueco();
+        String modo = configuracion.getModo() == ConfiguracionBD.ModoAlmacenamiento.WAL ? "WAL" : "DELETE";
+        try (Statement st = conexion.fisica.createStatement()) {
+            st.execute("PRAGMA journal_mode = " + modo + ";");
+        }
+        escritor.libres.offer(conexion);
+        // El registro usa el pool desde su hilo: se le entrega aquí, con el pool ya construido
+        if (consultasLentas != null) consultasLentas.iniciar(this);
+        inicializado = true;
+    }
+
+    /**
+     * Cierra todas las sentencias cacheadas y las conexiones físicas del pool.
+     * Las conexiones que estén prestadas en este momento se cierran al devolverse.
+     * Antes se guardan las consultas lentas pendientes.
+     */
+    public void cerrar() {
+        if (consultasLentas != null) consultasLentas.cerrar();
+        cerrado = true;
+        lectores.cerrar();
+        escritor.cerrar();
+    }
+
+    /**
+     * Devuelve el texto SQL de todas las sentencias preparadas que hay en caché en alguna conexión.
+     * Sirve para diagnóstico (por ejemplo, revisar el plan de ejecución de cada consulta).
+     *
+     * @return Conjunto de cadenas SQL (sin duplicados).
+     */
+    public Set<String> getSentenciasPreparadas() {
+        Set<String> sentencias = new TreeSet<>();
+        for (GrupoConexiones grupo : List.of(lectores, escritor)) {
+            for (ConexionPool conexion : grupo.todas) {
+                synchronized (conexion.cache) {
+                    sentencias.addAll(conexion.cache.keySet());
+                }
+            }
+        }
+        return sentencias;
+    }
+
+    /**
+     * @return Métricas de rendimiento de las operaciones y consultas, o null si la instrumentación está desactivada.
+     */
+    public MetricasBD getMetricas() {
+        return metricas;
+    }
+
+    /**
+     * Prepara una sentencia que no pasa por la caché de sentencias del pool, aunque la conexión sea un préstamo
+     * suyo: la sentencia es de quien la prepara y se finaliza del todo al cerrarla. Sirve para SQL de un solo uso
+     * que no debe quedarse compilado en la conexión (por ejemplo, el de una migración que cambia el esquema).
+     * Con una conexión que no es del pool equivale a {@code prepareStatement(sql)}.
+     *
+     * @param conexion Conexión prestada por el pool (o cualquier otra).
+     * @param sql Sentencia SQL.
+     * @return Sentencia preparada sin cachear.
+     * @throws SQLException Si falla la preparación o el préstamo ya se ha devuelto.
+     */
+    public static PreparedStatement prepararSinCache(Connection conexion, String sql) throws SQLException {
+        if (Proxy.isProxyClass(conexion.getClass())
+                && Proxy.getInvocationHandler(conexion) instanceof ConexionPrestada prestada) {
+            if (prestada.cerrada) throw new SQLException("Conexión cerrada: ya se ha devuelto al pool");
+            return prestada.conexion.fisica.prepareStatement(sql);
+        }
+        return conexion.prepareStatement(sql);
+    }
+
+    /**
+     * Suma a la ejecución en curso de una sentencia cacheada las filas que el llamante ha leído de su ResultSet.
+     * El pool no envuelve los ResultSet (un proxy en cada consulta encarecería cada next y cada get), así que
+     * las filas de una consulta solo constan en las métricas si quien la recorre las anota antes de cerrar la
+     * sentencia. Sin instrumentación, o con una sentencia que no es del pool, no hace nada.
+     *
+     * @param sentencia Sentencia preparada con una conexión del pool.
+     * @param filas Filas leídas.
+     */
+    public static void anotarFilas(Statement sentencia, long filas) {
+        if (Proxy.isProxyClass(sentencia.getClass())
+                && Proxy.getInvocationHandler(sentencia) instanceof PoolConexiones.SentenciaCacheada cacheada) {
+            cacheada.anotarFilas(filas);
+        }
+    }
+
+    /**
+     * Abre una conexión física configurada según su uso.
+     */
+    private Connection abrirFisica(boolean soloLectura) throws SQLException {
+        Connection fisica = DriverManager.getConnection(configuracion.getUrl());
+        try (Statement st = fisica.createStatement()) {
+            st.execute("PRAGMA foreign_keys = ON;");
+            st.execute("PRAGMA busy_timeout = " + configuracion.getEsperaBloqueoMs() + ";");
+            if (soloLectura) {
+                st.execute("PRAGMA query_only = ON;");
+            }
+        } catch (SQLException e) {
+            fisica.close();
+            throw e;
+        }
+        return fisica;
+    }
+
+    /**
+     * Indica si el hilo actual es el de la interfaz JavaFX.
+     * <p>
+     * Se comprueba con una aserción al prestar conexiones: con {@code -ea} (modo desarrollo, {@code mvn javafx:run})
+     * cualquier consulta que bloquee la interfaz falla en el acto en lugar de pasar desapercibida.
+     */
+    private static boolean esHiloInterfaz() {
+        return HILO_INTERFAZ.equals(Thread.currentThread().getName());
+    }
+
+    /**
+     * Indica si el error es un bloqueo transitorio que merece la pena reintentar.
+     */
+    private static boolean esBloqueo(Throwable error) {
+        if (!(error instanceof SQLException e)) return false;
+        int codigo = e.getErrorCode() & 0xff;
+        return codigo == SQLITE_BUSY || codigo == SQLITE_LOCKED;
+    }
+
+    /**
+     * Nombre del método que está usando una conexión ("GestorBD.getTodasEmpresas"): el primero de la pila
+     * fuera del pool, de sus proxies y de los métodos de {@link GestorBD} que solo la obtienen. Las lambdas
+     * (por ejemplo, las de {@link CacheConsultas}) se atribuyen al método donde están escritas.
+     */
+    private static String operacionLlamante() {
+        return PILA.walk(marcos -> marcos
+                .filter(m -> !m.getClassName().startsWith(PoolConexiones.class.getName())
+                        && !Proxy.isProxyClass(m.getDeclaringClass())
+                        && !METODOS_INTERMEDIOS.contains(m.getMethodName()))
+                .findFirst()
+                .map(m -> {
+                    String clase = m.getClassName().substring(m.getClassName().lastIndexOf('.') + 1);
+                    String metodo = m.getMethodName();
+                    if (metodo.startsWith("lambda$")) {
+                        int fin = metodo.indexOf('$', 7);
+                        metodo = metodo.substring(7, fin > 7 ? fin : metodo.length());
+                    }
+                    return clase + "." + metodo;
+                })
+                .orElse("desconocida"));
+    }
+
+    /**
+     * Extrae la causa real de una excepción lanzada a través de reflexión.
+     */
+    private static Throwable causaReal(InvocationTargetException e) {
+        return e.getCause() != null ? e.getCause() : e;
+    }
+
+    // ==========================================
+    // GRUPO DE CONEXIONES
+    // ==========================================
+
+    /**
+     * Conjunto de conexiones físicas del mismo tipo (lectura o escritura).
+     */
+    private final class GrupoConexiones {
+
+        /** Número máximo de conexiones físicas abiertas a la vez. */
+        private final int tamMaximo;
+
+        /** Indica si las conexiones del grupo son de solo lectura. */
+        private final boolean soloLectura;
+
+        /** Conexiones disponibles para ser prestadas. */
+        private final LinkedBlockingQueue<ConexionPool> libres = new LinkedBlockingQueue<>();
+
+        /** Todas las conexiones físicas creadas (para poder cerrarlas al apagar). */
+        private final List<ConexionPool> todas = new CopyOnWriteArrayList<>();
+
+        GrupoConexiones(int tamMaximo, boolean soloLectura) {
+            this.tamMaximo = tamMaximo;
+            this.soloLectura = soloLectura;
+        }
+
+        /**
+         * Presta una conexión libre y, con instrumentación, empieza a medir el préstamo.
+         */
+        Connection obtener() throws SQLException {
+            long solicitud = System.nanoTime();
+            ConexionPool conexion;
+            try {
+                conexion = esperarLibre();
+            } catch (SQLException e) {
+                if (metricas != null) {
+                    long espera = System.nanoTime() - solicitud;
+                    String operacion = configuracion.isAtribucionOperaciones() ? operacionLlamante()
+                            : soloLectura ? OPERACION_LECTURA : OPERACION_ESCRITURA;
+                    metricas.registrarOperacion(operacion, espera, espera, 0, true);
+                }
+                throw e;
+            }
+            conexion.prestada = true;
+            if (metricas != null) {
+                conexion.prestamo = new Prestamo(!soloLectura, solicitud);
+            }
+            return conexion.prestar();
+        }
+
+        /**
+         * Toma una conexión libre, abriendo una nueva si hay hueco o esperando en caso contrario.
+         */
+        private ConexionPool esperarLibre() throws SQLException {
+            if (cerrado) throw new SQLException("El pool de conexiones está cerrado");
+
+            ConexionPool conexion = libres.poll();
+            if (conexion == null) {
+                conexion = crearSiHayHueco();
+            }
+            if (conexion == null) {
+                try {
+                    conexion = libres.poll(ESPERA_MAXIMA_SEGUNDOS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrumpido esperando una conexión libre");
+                }
+                if (conexion == null) {
+                    throw new SQLException("Tiempo de espera agotado esperando una conexión libre");
+                }
+            }
+            return conexion;
+        }
+
+        /**
+         * Abre una nueva conexión física si aún no se ha alcanzado el tamaño máximo.
+         */
+        synchronized ConexionPool crearSiHayHueco() throws SQLException {
+            if (todas.size() >= tamMaximo) return null;
+            ConexionPool nueva = new ConexionPool(this, abrirFisica(soloLectura));
+            todas.add(nueva);
+            return nueva;
+        }
+
+        /**
+         * Devuelve una conexión al grupo dejándola en un estado limpio (autocommit activo).
+         */
+        void devolver(ConexionPool conexion) {
+            if (!conexion.prestada) return;
+            conexion.prestada = false;
+            try {
+                if (!conexion.fisica.getAutoCommit()) {
+                    conexion.fisica.rollback();
+                    conexion.fisica.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                System.out.println("Error limpiando conexión del pool: " + e.getMessage());
+            }
+            conexion.terminarPrestamo();
+            if (cerrado) {
+                conexion.cerrarFisica();
+            } else {
+                libres.offer(conexion);
+            }
+        }
+
+        /**
+         * Cierra las conexiones libres del grupo.
+         */
+        void cerrar() {
+            ConexionPool conexion;
+            while ((conexion = libres.poll()) != null) {
+                conexion.cerrarFisica();
+            }
+        }
+    }
+
+    // ==========================================
+    // CONEXIÓN DEL POOL
+    // ==========================================
+
+    /**
+     * Conexión física del pool junto con su caché de sentencias preparadas.
+     */
+    private final class ConexionPool {
+
+        /** Grupo al que pertenece la conexión. */
+        private final GrupoConexiones grupo;
+
+        /** Conexión JDBC real. */
+        private final Connection fisica;
+
+        /** Sentencias preparadas cacheadas por texto SQL. */
+        private final Map<String, SentenciaCacheada> cache = new HashMap<>();
+
+        /** Indica si la conexión está prestada actualmente. */
+        private volatile boolean prestada = false;
+
+        /** Medición del préstamo actual (null si no está prestada o no hay instrumentación). */
+        private Prestamo prestamo;
+
+        ConexionPool(GrupoConexiones grupo, Connection fisica) {
+            this.grupo = grupo;
+            this.fisica = fisica;
+        }
+
+        /**
+         * Crea el proxy de un nuevo préstamo de esta conexión.
+         */
+        private Connection prestar() {
+            return (Connection) Proxy.newProxyInstance(PoolConexiones.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new ConexionPrestada(this));
+        }
+
+        /**
+         * Ejecuta una llamada del préstamo en curso sobre la conexión física (las sentencias preparadas
+         * con solo el SQL salen de la caché).
+         */
+        private Object invocar(Method metodo, Object[] args) throws Throwable {
+            if ("prepareStatement".equals(metodo.getName()) && args.length == 1) {
+                return prepararCacheada((String) args[0]);
+            }
+            try {
+                return metodo.invoke(fisica, args);
+            } catch (InvocationTargetException e) {
+                if (prestamo != null) prestamo.error = true;
+                throw causaReal(e);
+            }
+        }
+
+        /**
+         * Registra en las métricas el préstamo que acaba de terminar (se llama al devolver la conexión,
+         * con el método que la usaba todavía en la pila).
+         */
+        private void terminarPrestamo() {
+            Prestamo terminado = prestamo;
+            if (terminado == null) return;
+            prestamo = null;
+            String operacion = configuracion.isAtribucionOperaciones() ? terminado.operacion()
+                    : terminado.escritura ? OPERACION_ESCRITURA : OPERACION_LECTURA;
+            metricas.registrarOperacion(operacion, System.nanoTime() - terminado.inicio,
+                    terminado.espera, terminado.filas, terminado.error);
+            MetricasBD.EventoOperacion evento = terminado.evento;
+            evento.end();
+            if (evento.shouldCommit()) {
+                evento.operacion = terminado.operacion();
+                evento.escritura = terminado.escritura;
+                evento.espera = terminado.espera;
+                evento.filas = terminado.filas;
+                evento.error = terminado.error;
+                evento.commit();
+            }
+        }
+
+        /**
+         * Devuelve la sentencia cacheada para el SQL indicado, compilándola si es la primera vez.
+         * Si esa misma sentencia ya está abierta (uso anidado) se prepara una nueva sin cachear.
+         */
+        private PreparedStatement prepararCacheada(String sql) throws SQLException {
+            synchronized (cache) {
+                SentenciaCacheada sentencia = cache.get(sql);
+                if (sentencia == null || sentencia.real.isClosed()) {
+                    sentencia = new SentenciaCacheada(this, sql, fisica.prepareStatement(sql));
+                    cache.put(sql, sentencia);
+                } else if (sentencia.enUso) {
+                    return fisica.prepareStatement(sql);
+                }
+                Cancelacion.registrar(sentencia.real);
+                sentencia.enUso = true;
+                return sentencia.proxy;
+            }
+        }
+
+        /**
+         * Cierra definitivamente las sentencias cacheadas y la conexión física.
+         */
+        private void cerrarFisica() {
+            synchronized (cache) {
+                for (SentenciaCacheada sentencia : cache.values()) {
+                    try { sentencia.real.close(); } catch (SQLException ignorada) { }
+                }
+                cache.clear();
+            }
+            try {
+                fisica.close();
+            } catch (SQLException e) {
+                System.out.println("Error cerrando conexión: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Proxy de un único préstamo. Tras {@code close()} la conexión ya pertenece al pool (o a otro llamante),
+     * así que cerrar de nuevo no hace nada y cualquier otra llamada falla con una SQLException.
+     */
+    private static final class ConexionPrestada implements InvocationHandler {
+
+        /** Conexión del pool prestada. */
+        private final ConexionPool conexion;
+
+        /** Indica si este préstamo ya se ha devuelto. */
+        private volatile boolean cerrada = false;
+
+        ConexionPrestada(ConexionPool conexion) {
+            this.conexion = conexion;
+        }
+
+        @Override
+        public Object invoke(Object o, Method metodo, Object[] args) throws Throwable {
+            switch (metodo.getName()) {
+                case "close":
+                    if (!cerrada) {
+                        cerrada = true;
+                        conexion.grupo.devolver(conexion);
+                    }
+                    return null;
+                case "isClosed":
+                    return cerrada || conexion.fisica.isClosed();
+                case "equals":
+                    return o == args[0];
+                case "hashCode":
+                    return System.identityHashCode(o);
+                case "toString":
+                    return "Préstamo de " + conexion.fisica + (cerrada ? " (cerrado)" : "");
+                default:
+                    break;
+            }
+            if (cerrada) throw new SQLException("Conexión cerrada: ya se ha devuelto al pool");
+            return conexion.invocar(metodo, args);
+        }
+    }
+
+    // ==========================================
+    // MEDICIÓN DE UN PRÉSTAMO
+    // ==========================================
+
+    /**
+     * Datos de un préstamo de conexión en curso, para {@link MetricasBD}.
+     */
+    private static final class Prestamo {
+
+        /** Método que usa la conexión, o null mientras no se ha buscado en la pila. */
+        private String operacion;
+
+        /** Indica si es la conexión de escritura. */
+        private final boolean escritura;
+
+        /** Momento en que se entregó la conexión (System.nanoTime). */
+        private final long inicio;
+
+        /** Tiempo que se esperó por una conexión libre. */
+        private final long espera;
+
+        /** Evento JFR del préstamo (solo se graba si hay una grabación activa). */
+        private final MetricasBD.EventoOperacion evento = new MetricasBD.EventoOperacion();
+
+        /** Filas leídas o modificadas por las sentencias del préstamo. */
+        private long filas;
+
+        /** Indica si ha fallado alguna llamada durante el préstamo. */
+        private boolean error;
+
+        Prestamo(boolean escritura, long solicitud) {
+            this.escritura = escritura;
+            this.inicio = System.nanoTime();
+            this.espera = inicio - solicitud;
+            evento.begin();
+        }
+
+        /**
+         * Método que usa la conexión. Se busca en la pila la primera vez que hace falta, desde el hilo
+         * del préstamo (al terminar una ejecución o devolver la conexión, con ese método aún en la pila).
+         */
+        String operacion() {
+            if (operacion == null) operacion = operacionLlamante();
+            return operacion;
+        }
+    }
+
+    // ==========================================
+    // SENTENCIA CACHEADA
+    // ==========================================
+
+    /**
+     * Envoltorio de un PreparedStatement reutilizable.
+     * <p>
+     * Al cerrarlo desde el código llamante no se finaliza la sentencia: se cierra su ResultSet
+     * (liberando el bloqueo de lectura de SQLite) y se limpian sus parámetros.
+     * Las ejecuciones que fallan por un bloqueo transitorio se reintentan según la configuración; si el hilo
+     * se interrumpe durante la pausa, la ejecución falla con una SQLException y el hilo conserva la interrupción.
+     * Con instrumentación, cada ejecución se mide hasta el cierre o la siguiente ejecución. Las filas modificadas
+     * se toman del resultado y las leídas, de {@link #anotarFilas}. Si hay registro de consultas lentas,
+     * además se guardan los valores enlazados para describir la ejecución si resulta lenta.
+     */
+    private final class SentenciaCacheada implements InvocationHandler {
+
+        /** Conexión del pool a la que pertenece. */
+        private final ConexionPool conexion;
+
+        /** Texto SQL (clave de las métricas). */
+        private final String sql;
+
+        /** Sentencia JDBC real. */
+        private final PreparedStatement real;
+
+        /** Proxy que se entrega al llamante. */
+        private final PreparedStatement proxy;
+
+        /** Último ResultSet abierto con esta sentencia. */
+        private ResultSet resultadoAbierto;
+
+        /** Indica si la sentencia está en uso por un llamante. */
+        private boolean enUso = false;
+
+        /** Inicio de la ejecución que se está midiendo (System.nanoTime), o 0 si no hay ninguna. */
+        private long inicioEjecucion;
+
+        /** Filas leídas o modificadas por la ejecución en curso. */
+        private long filasEjecucion;
+
+        /** Evento JFR de la ejecución en curso. */
+        private MetricasBD.EventoConsulta evento;
+
+        /** Valores enlazados por posición (solo con registro de consultas lentas). */
+        private Object[] parametros = new Object[8];
+
+        /** Mayor posición enlazada desde la última limpieza. */
+        private int numParametros;
+
+        /** Filas añadidas con addBatch desde la última ejecución. */
+        private int filasLote;
+
+        /** Filas del lote de la ejecución en curso (0 si no es un executeBatch). */
+        private int filasLoteEjecucion;
+
+        SentenciaCacheada(ConexionPool conexion, String sql, PreparedStatement real) {
+            this.conexion = conexion;
+            this.sql = sql;
+            this.real = real;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    PoolConexiones.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object o, Method metodo, Object[] args) throws Throwable {
+            String nombre = metodo.getName();
+            switch (nombre) {
+                case "close":
+                    liberar();
+                    return null;
+                case "isClosed":
+                    return !enUso || real.isClosed();
+                default:
+                    break;
+            }
+            boolean medir = metricas != null && nombre.startsWith("execute");
+            if (metricas != null && !medir) {
+                anotarLlamada(nombre, args);
+            }
+            if (medir) {
+                terminarEjecucion(false);
+                filasLoteEjecucion = "executeBatch".equals(nombre) ? filasLote : 0;
+                filasLote = 0;
+                inicioEjecucion = System.nanoTime();
+                evento = new MetricasBD.EventoConsulta();
+                evento.begin();
+            }
+            int intento = 0;
+            while (true) {
+                try {
+                    Object resultado = metodo.invoke(real, args);
+                    if (resultado instanceof ResultSet rs && "executeQuery".equals(nombre)) {
+                        resultadoAbierto = rs;
+                    } else if (medir) {
+                        filasEjecucion += filasModificadas(resultado);
+                    }
+                    return resultado;
+                } catch (InvocationTargetException e) {
+                    Throwable causa = causaReal(e);
+                    if (!nombre.startsWith("execute") || !esBloqueo(causa) || intento >= configuracion.getReintentos()) {
+                        if (medir) terminarEjecucion(true);
+                        throw causa;
+                    }
+                    intento++;
+                    try {
+                        Thread.sleep((long) configuracion.getPausaReintentoMs() * intento);
+                    } catch (InterruptedException interrupcion) {
+                        // Los métodos de PreparedStatement solo declaran SQLException
+                        Thread.currentThread().interrupt();
+                        if (medir) terminarEjecucion(true);
+                        throw new SQLException("Interrumpido esperando para reintentar la sentencia", causa);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Deja la sentencia lista para el siguiente uso.
+         */
+        private void liberar() throws SQLException {
+            if (!enUso) return;
+            enUso = false;
+            terminarEjecucion(false);
+            limpiarParametros();
+            filasLote = 0;
+            Cancelacion.retirar(real);
+            if (resultadoAbierto != null) {
+                resultadoAbierto.close();
+                resultadoAbierto = null;
+            }
+            real.clearParameters();
+        }
+
+        /**
+         * Sigue los parámetros y el lote de la sentencia. Enlazar nuevos valores termina la ejecución anterior
+         * (en SQLite, enlazar reinicia la sentencia y cierra su ResultSet).
+         */
+        private void anotarLlamada(String nombre, Object[] args) {
+            boolean enlazar = nombre.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer;
+            if (enlazar || "addBatch".equals(nombre) || "clearParameters".equals(nombre)) {
+                terminarEjecucion(false);
+            }
+            if (enlazar && consultasLentas != null) {
+                int posicion = (Integer) args[0];
+                if (posicion < 1) return;
+                if (posicion > parametros.length) parametros = Arrays.copyOf(parametros, Math.max(posicion, parametros.length * 2));
+                parametros[posicion - 1] = "setNull".equals(nombre) ? null : args[1];
+                numParametros = Math.max(numParametros, posicion);
+            } else if ("clearParameters".equals(nombre)) {
+                limpiarParametros();
+            } else if ("addBatch".equals(nombre)) {
+                filasLote++;
+            } else if ("clearBatch".equals(nombre)) {
+                filasLote = 0;
+            }
+        }
+
+        private void limpiarParametros() {
+            Arrays.fill(parametros, 0, numParametros, null);
+            numParametros = 0;
+        }
+
+        /**
+         * Suma filas leídas a la ejecución en curso, si se está midiendo.
+         */
+        private void anotarFilas(long filas) {
+            if (inicioEjecucion != 0) filasEjecucion += filas;
+        }
+
+        /**
+         * Registra la ejecución que se estaba midiendo, si la hay, y suma sus filas al préstamo.
+         *
+         * @param error Si la ejecución ha fallado.
+         */
+        private void terminarEjecucion(boolean error) {
+            if (inicioEjecucion == 0) return;
+            long duracion = System.nanoTime() - inicioEjecucion;
+            inicioEjecucion = 0;
+            long filas = filasEjecucion;
+            filasEjecucion = 0;
+            metricas.registrarConsulta(sql, duracion, filas, error);
+            Prestamo prestamo = conexion.prestamo;
+            if (consultasLentas != null && consultasLentas.esLenta(duracion)) {
+                consultasLentas.anotar(prestamo != null ? prestamo.operacion() : null, sql,
+                        RegistroConsultasLentas.describirParametros(parametros, numParametros, filasLoteEjecucion), filas, duracion);
+            }
+            if (prestamo != null) {
+                prestamo.filas += filas;
+                if (error) prestamo.error = true;
+            }
+            evento.end();
+            if (evento.shouldCommit()) {
+                evento.operacion = prestamo != null ? prestamo.operacion() : null;
+                evento.sql = sql;
+                evento.filas = filas;
+                evento.error = error;
+                evento.commit();
+            }
+            evento = null;
+        }
+    }
+
+    /**
+     * Filas modificadas según el resultado de executeUpdate, executeLargeUpdate o executeBatch
+     * (los valores negativos, como SUCCESS_NO_INFO, no cuentan).
+     */
+    private static long filasModificadas(Object resultado) {
+        if (resultado instanceof Number n) return Math.max(0, n.longValue());
+        long filas = 0;
+        if (resultado instanceof int[] lote) {
+            for (int f : lote) filas += Math.max(0, f);
+        } else if (resultado instanceof long[] lote) {
+            for (long f : lote) filas += Math.max(0, f);
+        }
+        return filas;
+    }
+}
@@ -0,0 +1,313 @@
+package DAO;
+
+import Modelos.FactorEmision;
+import Modelos.TipoEmision;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Recálculo del CO2e de las emisiones con el catálogo de factores ({@code co2e = cantidad × factor}).
+ * <p>
+ * Se lanza tras revisar factores y recorre {@code registro_emisiones} por rangos de
+ * {@value #IDS_POR_TRANSACCION} IDs, cada uno en su propia transacción sobre la conexión de escritura:
+ * entre rango y rango la conexión se devuelve, así que el resto de la aplicación sigue guardando cambios,
+ * y lo ya confirmado queda coherente aunque el recálculo se cancele o falle a mitad.
+ * <p>
+ * Dentro de cada rango todo es SQL de conjunto, sin pasar las filas por Java:
+ * <ul>
+ * <li>Los periodos de cada tipo se reducen antes a intervalos de días sin solapes, con un solo factor cada uno,
+ * y se escriben como una única expresión {@code CASE} por tipo y día: cada sentencia recorre el rango de
+ * IDs una sola vez, sea cual sea el número de tipos y periodos del catálogo.</li>
+ * <li>Solo se escriben las filas cuyo CO2e cambia: las que ya tienen el valor no tocan índices ni páginas.</li>
+ * <li>Igual que en la carga masiva de {@link ImportadorCSV}, los triggers de modificación de los totales por
+ * empresa y del resumen mensual se quitan durante el rango y la diferencia se aplica con una consulta
+ * agrupada para cada tabla. Quitarlos y volver a crearlos forma parte de la misma transacción.</li>
+ * </ul>
+ * Por defecto solo se recalculan las emisiones marcadas con {@code co2e_calculado}; las escritas a mano o
+ * importadas con su CO2e se respetan salvo que se pida incluirlas (y entonces pasan a estar calculadas).
+ * <p>
+ * Para cancelar, el recálculo se ejecuta dentro de una {@link Cancelacion}: se detiene entre dos rangos,
+ * o interrumpe el rango en curso, que se deshace.
+ */
+public class RecalculoCo2e {
+
+    /** IDs de emisión que abarca cada transacción. */
+    public static final int IDS_POR_TRANSACCION = 200_000;
+
+    /** Día que representa un periodo sin fecha de fin. */
+    private static final long SIN_FIN = Long.MAX_VALUE;
+
+    /**
+     * Sentencias de un recálculo, con la expresión del factor ya escrita para los tramos del catálogo.
+     * <p>
+     * Los parámetros se numeran ({@code ?N}) para usar la expresión varias veces: primero los de los tramos
+     * ({@link #parametros}) y tras ellos el primer y el último ID del rango y el mínimo de {@code co2e_calculado}
+     * (1 para limitarse a las calculadas, 0 para incluir también las escritas a mano).
+     *
+     * @param totales Equivalente de trg_totales_emision_cambio para las filas del rango (antes de actualizarlas).
+     * @param mensual Equivalente de trg_mensual_emision_cambio para las filas del rango (antes de actualizarlas).
+     * @param actualizar Nuevo CO2e de las filas del rango.
+     * @param parametros Valores de los tramos: ID del tipo, primer día, último día y factor de cada uno.
+     */
+    record Sentencias(String totales, String mensual, String actualizar, List<Object> parametros) {
+
+        /**
+         * Escribe las sentencias para unos tramos.
+         *
+         * @param tramos Tramos de cada tipo, por ID de tipo.
+         */
+        static Sentencias de(Map<Integer, List<Tramo>> tramos) {
+            List<Object> parametros = new ArrayList<>();
+            StringBuilder factor = new StringBuilder("(CASE");
+            for (Map.Entry<Integer, List<Tramo>> entrada : tramos.entrySet()) {
+                for (Tramo tramo : entrada.getValue()) {
+                    int n = parametros.size();
+                    factor.append(" WHEN id_tipo = ?").append(n + 1).append(" AND dia BETWEEN ?").append(n + 2)
+                            .append(" AND ?").append(n + 3).append(" THEN ?").append(n + 4);
+                    parametros.addAll(List.of(entrada.getKey(), tramo.desde(), tramo.hasta(), tramo.factor()));
+                }
+            }
+            factor.append(" END)");
+            int n = parametros.size();
+            // Filas del rango con un factor vigente cuyo CO2e cambia (o que pasan de escrito a mano a calculado)
+            String filas = " WHERE id BETWEEN ?" + (n + 1) + " AND ?" + (n + 2) + " AND co2e_calculado >= ?" + (n + 3)
+                    + " AND (co2e <> cantidad * " + factor + " OR co2e_calculado = 0) AND " + factor + " IS NOT NULL";
+            String diferencia = "SUM(cantidad * " + factor + " - co2e)";
+            return new Sentencias(
+                    "INSERT INTO empresa_totales (id_empresa, total_co2e)\n"
+                            + " SELECT id_empresa, " + diferencia + " FROM registro_emisiones" + filas + " GROUP BY id_empresa\n"
+                            + " ON CONFLICT (id_empresa) DO UPDATE SET total_co2e = total_co2e + excluded.total_co2e",
+                    "INSERT INTO emision_mensual (id_empresa, mes, id_tipo, total_co2e)\n"
+                            + " SELECT id_empresa, CAST(strftime('%Y%m', fecha) AS INTEGER), id_tipo, " + diferencia
+                            + " FROM registro_emisiones" + filas + " GROUP BY 1, 2, 3\n"
+                            + " ON CONFLICT (id_empresa, mes, id_tipo) DO UPDATE SET total_co2e = total_co2e + excluded.total_co2e",
+                    "UPDATE registro_emisiones SET co2e = cantidad * " + factor + ", co2e_calculado = 1" + filas,
+                    parametros);
+        }
+    }
+
+    /** Pool del que se toman las conexiones. */
+    private final PoolConexiones pool;
+
+    /** Diccionario con el que se traduce el tipo pedido a su ID. */
+    private final DiccionarioTipos tipos;
+
+    /**
+     * Avance de un recálculo, notificado tras cada rango de IDs confirmado.
+     *
+     * @param idsRevisados IDs de emisión ya recorridos.
+     * @param idsTotales IDs de emisión que hay que recorrer (del menor al mayor existente).
+     * @param filasRecalculadas Emisiones cuyo CO2e ha cambiado hasta ahora.
+     */
+    public record Progreso(long idsRevisados, long idsTotales, long filasRecalculadas) {
+
+        /**
+         * @return Fracción completada entre 0 y 1.
+         */
+        public double fraccion() {
+            return idsTotales <= 0 ? 1 : Math.min(1.0, (double) idsRevisados / idsTotales);
+        }
+    }
+
+    /**
+     * Resumen de un recálculo.
+     *
+     * @param filasRecalculadas Emisiones cuyo CO2e ha cambiado.
+     * @param cancelado true si se ha cancelado o ha fallado un rango (los anteriores quedan guardados).
+     * @param milisegundos Duración total.
+     */
+    public record Resultado(long filasRecalculadas, boolean cancelado, long milisegundos) { }
+
+    /**
+     * Intervalo de días de un tipo en el que se aplica un único factor.
+     *
+     * @param desde Primer día.
+     * @param hasta Último día ({@link #SIN_FIN} si no tiene fin).
+     * @param factor kg de CO2e por unidad.
+     */
+    record Tramo(long desde, long hasta, double factor) { }
+
+    /**
+     * @param pool Pool de conexiones de la base de datos.
+     * @param tipos Diccionario de tipos de emisión.
+     */
+    RecalculoCo2e(PoolConexiones pool, DiccionarioTipos tipos) {
+        this.pool = pool;
+        this.tipos = tipos;
+    }
+
+    /**
+     * Recalcula el CO2e de las emisiones de un tipo, o de todos los tipos del catálogo.
+     *
+     * @param tipo Tipo de emisión, por su nombre o un alias (null para todos los que tienen factores).
+     * @param incluirManuales true para recalcular también las emisiones con el CO2e escrito a mano o importado.
+     * @param progreso Recibe el avance tras cada rango, en el hilo que recalcula (puede ser null).
+     * @return Resumen del recálculo.
+     * @throws SQLException Si no se puede leer el catálogo o el esquema antes de empezar.
+     */
+    Resultado recalcular(String tipo, boolean incluirManuales, Consumer<Progreso> progreso) throws SQLException {
+        long inicio = System.nanoTime();
+        Map<Integer, List<Tramo>> tramos = new LinkedHashMap<>();
+        long primerId;
+        long ultimoId;
+        // Un tipo que no está en el diccionario no tiene factores: no hay nada que recalcular
+        TipoEmision tipoEmision = tipo != null ? tipos.buscar(tipo) : null;
+        try (Connection conexion = pool.obtenerLectura()) {
+            Map<Integer, List<FactorEmision>> factores = tipo == null || tipoEmision != null
+                    ? leerFactores(conexion, tipoEmision) : Map.of();
+            for (Map.Entry<Integer, List<FactorEmision>> entrada : factores.entrySet()) {
+                tramos.put(entrada.getKey(), tramos(entrada.getValue()));
+            }
+            // Dos subconsultas: con MIN y MAX en la misma SELECT, SQLite recorre un índice entero
+            // en lugar de leer los dos extremos de la clave primaria
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "SELECT (SELECT MIN(id) FROM registro_emisiones), (SELECT MAX(id) FROM registro_emisiones)");
+                 ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                primerId = rs.getLong(1);
+                ultimoId = rs.getLong(2);
+            }
+        }
+        long idsTotales = ultimoId - primerId + 1;
+        long recalculadas = 0;
+        if (tramos.isEmpty() || ultimoId == 0) {
+            if (progreso != null) progreso.accept(new Progreso(0, 0, 0));
+            return new Resultado(0, false, (System.nanoTime() - inicio) / 1_000_000);
+        }
+
+        Sentencias sentencias = Sentencias.de(tramos);
+        int soloCalculadas = incluirManuales ? 0 : 1;
+        for (long desdeId = primerId; desdeId <= ultimoId; desdeId += IDS_POR_TRANSACCION) {
+            long hastaId = Math.min(ultimoId, desdeId + IDS_POR_TRANSACCION - 1);
+            if (Cancelacion.actualCancelada()) return cancelado(recalculadas, inicio);
+            try {
+                recalculadas += recalcularRango(sentencias, desdeId, hastaId, soloCalculadas);
+            } catch (SQLException e) {
+                if (!Cancelacion.actualCancelada()) {
+                    System.out.println("Error al recalcular el CO2e (IDs " + desdeId + "-" + hastaId + "): " + e.getMessage());
+                }
+                return cancelado(recalculadas, inicio);
+            }
+            if (progreso != null) progreso.accept(new Progreso(hastaId - primerId + 1, idsTotales, recalculadas));
+        }
+        return new Resultado(recalculadas, false, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    /**
+     * Recalcula un rango de IDs en una transacción: quita los triggers de modificación
+     * ({@link EsquemaEmisiones#TRIGGERS_CAMBIO}; {@link Sentencias#totales()} y {@link Sentencias#mensual()}
+     * hacen lo mismo que ellos), aplica la diferencia a los totales y al resumen mensual, actualiza las filas
+     * y vuelve a crear los triggers.
+     *
+     * @return Filas actualizadas.
+     */
+    private long recalcularRango(Sentencias sentencias, long desdeId, long hastaId,
+                                 int soloCalculadas) throws SQLException {
+        try (Connection conexion = pool.obtenerEscritura()) {
+            conexion.setAutoCommit(false);
+            try {
+                List<String> triggers = EsquemaEmisiones.quitar(conexion, false, EsquemaEmisiones.TRIGGERS_CAMBIO);
+                long actualizadas = 0;
+                try (PreparedStatement psTotales = conexion.prepareStatement(sentencias.totales());
+                     PreparedStatement psMensual = conexion.prepareStatement(sentencias.mensual());
+                     PreparedStatement psActualizar = conexion.prepareStatement(sentencias.actualizar())) {
+                    List<Object> parametros = sentencias.parametros();
+                    for (PreparedStatement ps : List.of(psTotales, psMensual, psActualizar)) {
+                        for (int i = 0; i < parametros.size(); i++) {
+                            ps.setObject(i + 1, parametros.get(i));
+                        }
+                        ps.setLong(parametros.size() + 1, desdeId);
+                        ps.setLong(parametros.size() + 2, hastaId);
+                        ps.setInt(parametros.size() + 3, soloCalculadas);
+                    }
+                    psTotales.executeUpdate();
+                    psMensual.executeUpdate();
+                    actualizadas = psActualizar.executeUpdate();
+                }
+                EsquemaEmisiones.restaurar(conexion, triggers);
+                conexion.commit();
+                return actualizadas;
+            } catch (SQLException e) {
+                conexion.rollback();
+                throw e;
+            } finally {
+                conexion.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Factores del catálogo agrupados por ID de tipo, ordenados por fecha de inicio (y de alta, si coincide).
+     * Solo se usan su factor y sus fechas: el nombre del tipo no se lee.
+     *
+     * @param tipo Tipo del que leer los factores (null para todos).
+     */
+    private static Map<Integer, List<FactorEmision>> leerFactores(Connection conexion, TipoEmision tipo) throws SQLException {
+        String consulta = "SELECT id, id_tipo, unidad, factor, desde, hasta FROM factor_emision"
+                + (tipo != null ? " WHERE id_tipo = ?" : "") + " ORDER BY id_tipo, desde, id";
+        Map<Integer, List<FactorEmision>> factores = new LinkedHashMap<>();
+        try (PreparedStatement ps = conexion.prepareStatement(consulta)) {
+            if (tipo != null) ps.setInt(1, tipo.getId());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long hasta = rs.getLong(6);
+                    boolean sinFin = rs.wasNull();
+                    FactorEmision factor = new FactorEmision(rs.getLong(1), null, rs.getString(3),
+                            rs.getDouble(4), LocalDate.ofEpochDay(rs.getLong(5)),
+                            sinFin ? null : LocalDate.ofEpochDay(hasta));
+                    factores.computeIfAbsent(rs.getInt(2), t -> new ArrayList<>()).add(factor);
+                }
+            }
+        }
+        return factores;
+    }
+
+    /**
+     * Reduce los periodos de un tipo a intervalos sin solapes: en cada día se aplica el factor vigente
+     * que empieza más tarde, o el último dado de alta si empiezan el mismo día (el mismo criterio que
+     * {@link GestorBD#getFactorEmision}).
+     *
+     * @param factores Factores de un mismo tipo.
+     * @return Intervalos en orden, con los días sin factor vigente fuera de todos ellos.
+     */
+    static List<Tramo> tramos(List<FactorEmision> factores) {
+        TreeSet<Long> limites = new TreeSet<>();
+        for (FactorEmision factor : factores) {
+            limites.add(factor.getDesde().toEpochDay());
+            if (factor.getHasta() != null) limites.add(factor.getHasta().toEpochDay() + 1);
+        }
+        List<Tramo> tramos = new ArrayList<>();
+        for (long inicio : limites) {
+            Long siguiente = limites.higher(inicio);
+            long fin = siguiente != null ? siguiente - 1 : SIN_FIN;
+            FactorEmision vigente = null;
+            for (FactorEmision factor : factores) {
+                boolean cubre = factor.getDesde().toEpochDay() <= inicio
+                        && (factor.getHasta() == null || factor.getHasta().toEpochDay() >= inicio);
+                if (cubre && (vigente == null || !factor.getDesde().isBefore(vigente.getDesde()))) vigente = factor;
+            }
+            if (vigente == null) continue;
+            Tramo ultimo = tramos.isEmpty() ? null : tramos.get(tramos.size() - 1);
+            if (ultimo != null && ultimo.hasta() == inicio - 1 && ultimo.factor() == vigente.getFactor()) {
+                tramos.set(tramos.size() - 1, new Tramo(ultimo.desde(), fin, ultimo.factor()));
+            } else {
+                tramos.add(new Tramo(inicio, fin, vigente.getFactor()));
+            }
+        }
+        return tramos;
+    }
+
+    private static Resultado cancelado(long recalculadas, long inicio) {
+        return new Resultado(recalculadas, true, (System.nanoTime() - inicio) / 1_000_000);
+    }
+}
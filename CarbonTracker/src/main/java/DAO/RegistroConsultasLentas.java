@@ -0,0 +1,333 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Registro de consultas lentas (tabla {@code consulta_lenta}), alimentado por {@link PoolConexiones}.
+ * <p>
+ * Cuando una ejecución de una sentencia cacheada dura al menos el umbral de la configuración
+ * ({@link ConfiguracionBD#getUmbralConsultaLentaMs()}), se guardan su texto SQL, los parámetros enlazados,
+ * las filas, la duración (medida igual que en {@link MetricasBD}: hasta el cierre, incluida la lectura de
+ * las filas), el método del DAO que la lanzó y su EXPLAIN QUERY PLAN. Los valores con forma de hash de
+ * contraseña (64 dígitos hexadecimales, como los que guarda {@code usuario.hash_contrasena}) nunca se escriben.
+ * <p>
+ * El llamante solo encola la entrada: el plan y la inserción los hace un hilo propio, porque la consulta
+ * lenta puede estar ocupando la conexión de escritura (por ejemplo, dentro de una transacción) y esperar por
+ * ella desde el mismo hilo lo bloquearía. Las sentencias de ese hilo no se registran, y si la cola se llena
+ * las entradas nuevas se descartan. Al superar el máximo de entradas se borran las más antiguas.
+ * <p>
+ * Para agrupar las entradas, cada SQL se reduce a su forma ({@link #forma}): sin literales y con las listas
+ * de parámetros colapsadas, de modo que {@code IN (?, ?)} e {@code IN (?, ?, ?)} cuentan como la misma consulta.
+ */
+public class RegistroConsultasLentas {
+
+    /** Inserción de una entrada, devolviendo su ID para la rotación. */
+    private static final String INSERT_ENTRADA = "INSERT INTO consulta_lenta(fecha, operacion, forma, sql, parametros, "
+            + "filas, duracion_ms, plan) VALUES(?,?,?,?,?,?,?,?) RETURNING id";
+
+    /** Borrado de las entradas que quedan fuera del máximo. */
+    private static final String DELETE_ANTIGUAS = "DELETE FROM consulta_lenta WHERE id <= ?";
+
+    /** Entradas pendientes como máximo; las que lleguen con la cola llena se descartan. */
+    private static final int CAPACIDAD_COLA = 1000;
+
+    /** Entradas por transacción. */
+    private static final int MAX_LOTE = 100;
+
+    /** Longitud máxima con la que se guarda cada parámetro de texto. */
+    private static final int LONGITUD_MAXIMA_PARAMETRO = 200;
+
+    /** Texto que sustituye a los valores ocultos. */
+    private static final String OCULTO = "[oculto]";
+
+    /** Hash SHA-256 en hexadecimal (el formato de las contraseñas). */
+    private static final Pattern HASH = Pattern.compile("[0-9a-fA-F]{64}");
+
+    /** Literales de texto SQL (con comillas dobladas dentro). */
+    private static final Pattern LITERAL_TEXTO = Pattern.compile("'(?:[^']|'')*'");
+
+    /** Literales numéricos que no forman parte de un identificador. */
+    private static final Pattern LITERAL_NUMERO = Pattern.compile("(?<![\\w.])\\d+(?:\\.\\d+)?\\b");
+
+    /** Lista de parámetros entre paréntesis: "(?)", "(?, ?, ?)". */
+    private static final Pattern LISTA_PARAMETROS = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    /** Varias listas seguidas (filas de un VALUES). */
+    private static final Pattern LISTAS_REPETIDAS = Pattern.compile("\\(\\?, \\.\\.\\.\\)(?:\\s*,\\s*\\(\\?, \\.\\.\\.\\))+");
+
+    /** Formato de la fecha de cada entrada (el mismo que datetime() de SQLite). */
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * Formas de consulta del registro, con sus entradas agregadas.
+     *
+     * @param forma SQL normalizado.
+     * @param operaciones Métodos del DAO que la han lanzado (separados por comas).
+     * @param veces Entradas de esta forma.
+     * @param mediaMs Duración media.
+     * @param maximoMs Duración máxima.
+     * @param filasMaximas Mayor número de filas de una ejecución.
+     * @param ultima Fecha de la entrada más reciente.
+     */
+    public record Forma(String forma, String operaciones, long veces, double mediaMs, double maximoMs,
+                        long filasMaximas, String ultima) { }
+
+    /**
+     * Una ejecución lenta.
+     *
+     * @param id ID de la entrada.
+     * @param fecha Momento en que terminó la ejecución.
+     * @param operacion Método del DAO que la lanzó.
+     * @param sql Texto de la sentencia.
+     * @param parametros Parámetros enlazados ("[1] 'texto', [2] 42"), con los hashes ocultos.
+     * @param filas Filas leídas o modificadas.
+     * @param duracionMs Duración.
+     * @param plan EXPLAIN QUERY PLAN, un paso por línea y sangrado según su anidamiento.
+     */
+    public record Entrada(long id, String fecha, String operacion, String sql, String parametros, long filas,
+                          double duracionMs, String plan) { }
+
+    /**
+     * Ejecución lenta a la espera de su plan y de ser guardada.
+     */
+    private record Pendiente(String fecha, String operacion, String sql, String parametros, long filas, long duracionNanos) { }
+
+    /** Pool del que se toman la conexión de lectura (plan) y la de escritura (inserción); se fija en {@link #iniciar}. */
+    private volatile PoolConexiones pool;
+
+    /** Duración mínima (ns) de una ejecución para registrarla. */
+    private final long umbralNanos;
+
+    /** Máximo de entradas de la tabla. */
+    private final int maxEntradas;
+
+    /** Entradas pendientes de guardar. */
+    private final LinkedBlockingQueue<Pendiente> cola = new LinkedBlockingQueue<>(CAPACIDAD_COLA);
+
+    /** Hilo que guarda las entradas (se arranca con la primera). */
+    private volatile Thread hilo;
+
+    /** Indica si se ha solicitado el cierre. */
+    private volatile boolean cerrado = false;
+
+    /**
+     * @param umbralMs Duración mínima de una ejecución para registrarla.
+     * @param maxEntradas Máximo de entradas que se conservan.
+     */
+    RegistroConsultasLentas(long umbralMs, int maxEntradas) {
+        this.umbralNanos = TimeUnit.MILLISECONDS.toNanos(umbralMs);
+        this.maxEntradas = Math.max(1, maxEntradas);
+    }
+
+    /**
+     * Indica al registro el pool del que tomar las conexiones. El pool lo llama al abrir su primera conexión,
+     * antes de que se ejecute ninguna sentencia.
+     *
+     * @param pool Pool de conexiones de la aplicación.
+     */
+    void iniciar(PoolConexiones pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Indica si una ejecución supera el umbral (y no la ha lanzado el propio registro).
+     *
+     * @param duracionNanos Duración de la ejecución.
+     * @return true si hay que registrarla.
+     */
+    boolean esLenta(long duracionNanos) {
+        return duracionNanos >= umbralNanos && pool != null && !cerrado && Thread.currentThread() != hilo;
+    }
+
+    /**
+     * Encola una ejecución lenta. No espera a que se guarde.
+     *
+     * @param operacion Método del DAO que la lanzó.
+     * @param sql Texto de la sentencia.
+     * @param parametros Descripción de los parámetros ({@link #describirParametros}).
+     * @param filas Filas leídas o modificadas.
+     * @param duracionNanos Duración de la ejecución.
+     */
+    void anotar(String operacion, String sql, String parametros, long filas, long duracionNanos) {
+        arrancarSiHaceFalta();
+        cola.offer(new Pendiente(LocalDateTime.now().format(FORMATO_FECHA), operacion, sql, parametros, filas, duracionNanos));
+    }
+
+    /**
+     * Arranca el hilo del registro la primera vez que se necesita.
+     */
+    private synchronized void arrancarSiHaceFalta() {
+        if (hilo == null) {
+            hilo = new Thread(this::bucleRegistro, "registro-consultas-lentas");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+    }
+
+    /**
+     * Detiene el registro tras guardar lo que quede en la cola.
+     */
+    void cerrar() {
+        Thread actual;
+        synchronized (this) {
+            cerrado = true;
+            actual = hilo;
+        }
+        if (actual == null) return;
+        try {
+            actual.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==========================================
+    // FORMA Y PARÁMETROS
+    // ==========================================
+
+    /**
+     * Forma de una consulta: el SQL con los espacios colapsados, los literales sustituidos por {@code ?}
+     * y las listas de parámetros (de un IN o de las filas de un VALUES) reducidas a {@code (?, ...)}.
+     *
+     * @param sql Texto de la sentencia.
+     * @return SQL normalizado.
+     */
+    public static String forma(String sql) {
+        String forma = LITERAL_TEXTO.matcher(sql).replaceAll("?");
+        forma = forma.replaceAll("\\s+", " ").trim();
+        forma = LITERAL_NUMERO.matcher(forma).replaceAll("?");
+        forma = LISTA_PARAMETROS.matcher(forma).replaceAll("(?, ...)");
+        return LISTAS_REPETIDAS.matcher(forma).replaceAll("(?, ...)");
+    }
+
+    /**
+     * Describe los parámetros enlazados de una ejecución ("[1] 'admin', [2] [oculto]"). Los textos con forma
+     * de hash de contraseña se ocultan y los textos largos se recortan.
+     *
+     * @param valores Valor de cada parámetro por posición (null = sin enlazar o NULL).
+     * @param numero Número de parámetros enlazados.
+     * @param filasLote Filas añadidas al lote (0 si no es un executeBatch).
+     * @return Descripción, o cadena vacía si no hay parámetros.
+     */
+    public static String describirParametros(Object[] valores, int numero, int filasLote) {
+        StringBuilder texto = new StringBuilder();
+        if (filasLote > 0) texto.append("Lote de ").append(filasLote).append(" filas; última: ");
+        for (int i = 0; i < numero; i++) {
+            if (i > 0) texto.append(", ");
+            texto.append('[').append(i + 1).append("] ").append(describirValor(valores[i]));
+        }
+        return texto.toString();
+    }
+
+    private static String describirValor(Object valor) {
+        if (valor == null) return "NULL";
+        if (valor instanceof String cadena) {
+            if (HASH.matcher(cadena).matches()) return OCULTO;
+            if (cadena.length() > LONGITUD_MAXIMA_PARAMETRO) cadena = cadena.substring(0, LONGITUD_MAXIMA_PARAMETRO) + "...";
+            return "'" + cadena.replace("'", "''") + "'";
+        }
+        if (valor instanceof Number || valor instanceof Boolean) return valor.toString();
+        if (valor instanceof byte[] bytes) return "<" + bytes.length + " bytes>";
+        return "<" + valor.getClass().getSimpleName() + ">";
+    }
+
+    // ==========================================
+    // HILO DEL REGISTRO
+    // ==========================================
+
+    /**
+     * Bucle del hilo: espera la primera entrada, toma las que haya en cola y las guarda juntas.
+     */
+    private void bucleRegistro() {
+        List<Pendiente> lote = new ArrayList<>(MAX_LOTE);
+        while (true) {
+            try {
+                Pendiente primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    if (cerrado && cola.isEmpty()) return;
+                    continue;
+                }
+                lote.add(primera);
+                cola.drainTo(lote, MAX_LOTE - 1);
+                guardar(lote);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    /**
+     * Obtiene el plan de cada entrada y las inserta en una transacción, borrando después las que sobran.
+     */
+    private void guardar(List<Pendiente> lote) {
+        Map<String, String> planes = new HashMap<>();
+        for (Pendiente pendiente : lote) {
+            planes.computeIfAbsent(pendiente.sql(), this::planDe);
+        }
+        try (Connection conexion = pool.obtenerEscritura()) {
+            conexion.setAutoCommit(false);
+            long ultimoId = 0;
+            try (PreparedStatement ps = conexion.prepareStatement(INSERT_ENTRADA)) {
+                for (Pendiente pendiente : lote) {
+                    ps.setString(1, pendiente.fecha());
+                    ps.setString(2, pendiente.operacion());
+                    ps.setString(3, forma(pendiente.sql()));
+                    ps.setString(4, pendiente.sql());
+                    ps.setString(5, pendiente.parametros());
+                    ps.setLong(6, pendiente.filas());
+                    ps.setDouble(7, pendiente.duracionNanos() / 1_000_000.0);
+                    ps.setString(8, planes.get(pendiente.sql()));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) ultimoId = rs.getLong(1);
+                    }
+                }
+            }
+            if (ultimoId > maxEntradas) {
+                try (PreparedStatement ps = conexion.prepareStatement(DELETE_ANTIGUAS)) {
+                    ps.setLong(1, ultimoId - maxEntradas);
+                    ps.executeUpdate();
+                }
+            }
+            conexion.commit();
+        } catch (SQLException e) {
+            System.out.println("Error guardando consultas lentas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * EXPLAIN QUERY PLAN de una sentencia (sin valores en sus parámetros, que no cambian el plan),
+     * con cada paso sangrado bajo su paso padre.
+     */
+    private String planDe(String sql) {
+        try (Connection conexion = pool.obtenerLectura();
+             Statement st = conexion.createStatement();
+             ResultSet rs = st.executeQuery("EXPLAIN QUERY PLAN " + sql)) {
+            Map<Integer, Integer> niveles = new HashMap<>();
+            StringBuilder plan = new StringBuilder();
+            while (rs.next()) {
+                int nivel = niveles.getOrDefault(rs.getInt("parent"), -1) + 1;
+                niveles.put(rs.getInt("id"), nivel);
+                if (!plan.isEmpty()) plan.append('\n');
+                plan.append("  ".repeat(nivel)).append(rs.getString("detail"));
+            }
+            return plan.toString();
+        } catch (SQLException e) {
+            return "Plan no disponible: " + e.getMessage();
+        }
+    }
+}
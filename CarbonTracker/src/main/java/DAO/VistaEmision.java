@@ -0,0 +1,183 @@
+package DAO;
+
+import Modelos.Emisiones;
+import Modelos.TipoEmision;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Vista reutilizable de la fila actual de un recorrido de emisiones ({@link GestorBD#forEachEmision}).
+ * <p>
+ * Un recorrido crea una sola vista y la va moviendo de fila en fila: no se crea ningún objeto por fila,
+ * así que recorrer la tabla completa no genera trabajo para el recolector de basura.
+ * <ul>
+ * <li>ID, empresa, día, cantidad y CO2e se leen como primitivos al avanzar.</li>
+ * <li>La fecha se lee de la columna entera {@code dia} (días desde 1970-01-01, {@link LocalDate#toEpochDay()}).</li>
+ * <li>La empresa se identifica además por su posición en un diccionario de empresas leído al empezar
+ * (mismo instante que el cursor), útil para acumular en arrays: {@code totales[vista.getIndiceEmpresa()] += ...}.</li>
+ * <li>El tipo se lee como su ID ({@link #getIdTipo()}), útil también para acumular en arrays; el nombre
+ * sale del {@link DiccionarioTipos} y es siempre la misma instancia para un mismo tipo.</li>
+ * </ul>
+ * <b>Importante:</b> la vista solo es válida durante la llamada que la recibe; no debe guardarse.
+ * Para conservar una fila, {@link #aEmisiones()} crea el objeto del modelo.
+ */
+public final class VistaEmision {
+
+    /**
+     * Columnas que debe seleccionar una consulta para recorrerla con esta vista, en este orden.
+     * Una séptima columna opcional puede traer el nombre de la empresa (si no se usa el diccionario).
+     */
+    static final String COLUMNAS = "e.id, e.id_empresa, e.dia, e.cantidad, e.co2e, e.id_tipo";
+
+    /** Consulta del diccionario de empresas (ordenado por ID para buscar por bisección). */
+    static final String CONSULTA_EMPRESAS = "SELECT id, nombre FROM empresa ORDER BY id";
+
+    private final ResultSet rs;
+
+    /** IDs de las empresas, ordenados (null si el nombre viene en la consulta). */
+    private final long[] idsEmpresa;
+
+    /** Nombres de las empresas, en la misma posición que su ID. */
+    private final String[] nombresEmpresa;
+
+    /** Diccionario de tipos y conexión del recorrido (para leer un tipo creado después de cargarlo). */
+    private final DiccionarioTipos tipos;
+    private final Connection conexion;
+
+    private long id;
+    private long idEmpresa;
+    private int diaEpoca;
+    private double cantidad;
+    private double co2e;
+    private int idTipo;
+
+    /** Posición de la empresa en el diccionario, calculada bajo demanda (-2 = aún no calculada). */
+    private int indiceEmpresa;
+
+    /**
+     * @param rs Cursor con las {@link #COLUMNAS}.
+     * @param idsEmpresa IDs ordenados del diccionario de empresas (null si la consulta trae el nombre).
+     * @param nombresEmpresa Nombres del diccionario, en la misma posición que su ID.
+     * @param tipos Diccionario de tipos de emisión.
+     * @param conexion Conexión del cursor.
+     */
+    VistaEmision(ResultSet rs, long[] idsEmpresa, String[] nombresEmpresa, DiccionarioTipos tipos, Connection conexion) {
+        this.rs = rs;
+        this.idsEmpresa = idsEmpresa;
+        this.nombresEmpresa = nombresEmpresa;
+        this.tipos = tipos;
+        this.conexion = conexion;
+    }
+
+    /**
+     * Avanza a la siguiente fila del cursor.
+     *
+     * @return false si no quedan filas.
+     */
+    boolean avanzar() throws SQLException {
+        if (!rs.next()) return false;
+        id = rs.getLong(1);
+        idEmpresa = rs.getLong(2);
+        diaEpoca = rs.getInt(3);
+        cantidad = rs.getDouble(4);
+        co2e = rs.getDouble(5);
+        idTipo = rs.getInt(6);
+        indiceEmpresa = -2;
+        return true;
+    }
+
+    /** @return ID de la emisión. */
+    public long getId() { return id; }
+
+    /** @return ID de la empresa. */
+    public long getIdEmpresa() { return idEmpresa; }
+
+    /** @return Fecha como días desde 1970-01-01. */
+    public int getDiaEpoca() { return diaEpoca; }
+
+    /** @return Cantidad consumida. */
+    public double getCantidad() { return cantidad; }
+
+    /** @return CO2 equivalente en kg. */
+    public double getCo2e() { return co2e; }
+
+    /** @return ID del tipo de emisión. */
+    public int getIdTipo() { return idTipo; }
+
+    /**
+     * @return Posición de la empresa en el diccionario (0..{@link #getNumeroEmpresas()}-1),
+     * o -1 si no está (no debería ocurrir: el diccionario se lee en la misma transacción).
+     */
+    public int getIndiceEmpresa() {
+        if (indiceEmpresa == -2) {
+            int posicion = idsEmpresa != null ? Arrays.binarySearch(idsEmpresa, idEmpresa) : -1;
+            indiceEmpresa = Math.max(posicion, -1);
+        }
+        return indiceEmpresa;
+    }
+
+    /** @return Número de empresas del diccionario (tamaño para arrays indexados por empresa). */
+    public int getNumeroEmpresas() {
+        return idsEmpresa != null ? idsEmpresa.length : 0;
+    }
+
+    /**
+     * @param indice Posición en el diccionario.
+     * @return Nombre de la empresa en esa posición.
+     */
+    public String getNombreEmpresa(int indice) {
+        return nombresEmpresa[indice];
+    }
+
+    /** @return Nombre de la empresa de la fila actual. */
+    public String getNombreEmpresa() {
+        if (idsEmpresa == null) return columnaTexto(7);
+        int indice = getIndiceEmpresa();
+        return indice >= 0 ? nombresEmpresa[indice] : null;
+    }
+
+    /**
+     * Nombre canónico del tipo de la fila actual (siempre la misma instancia para un mismo tipo).
+     *
+     * @return Tipo de emisión.
+     */
+    public String getTipo() {
+        try {
+            TipoEmision tipo = tipos.tipo(idTipo, conexion);
+            return tipo != null ? tipo.getNombre() : null;
+        } catch (SQLException e) {
+            throw new IllegalStateException("La vista de emisión se ha usado fuera de su recorrido", e);
+        }
+    }
+
+    /** @return Fecha de la fila actual (crea un objeto: usar {@link #getDiaEpoca()} en los bucles). */
+    public LocalDate getFecha() {
+        return LocalDate.ofEpochDay(diaEpoca);
+    }
+
+    /**
+     * Copia la fila actual en un objeto del modelo, para conservarla después del recorrido.
+     *
+     * @return Emisión con todos sus datos, incluido el nombre de la empresa.
+     */
+    public Emisiones aEmisiones() {
+        Emisiones emision = new Emisiones(id, getTipo(), cantidad, co2e, getFecha(), idEmpresa);
+        emision.setNombreEmpresa(getNombreEmpresa());
+        return emision;
+    }
+
+    /**
+     * Lee una columna de texto de la fila actual.
+     */
+    private String columnaTexto(int columna) {
+        try {
+            return rs.getString(columna);
+        } catch (SQLException e) {
+            throw new IllegalStateException("La vista de emisión se ha usado fuera de su recorrido", e);
+        }
+    }
+}
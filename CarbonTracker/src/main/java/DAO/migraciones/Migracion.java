@@ -0,0 +1,43 @@
+package DAO.migraciones;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Paso de migración del esquema de la base de datos.
+ * <p>
+ * Cada migración tiene un número de versión único y creciente. {@link MigradorEsquema}
+ * las aplica en orden dentro de su propia transacción y, al terminar, guarda su versión
+ * en {@code PRAGMA user_version}. Una migración ya publicada no debe modificarse:
+ * los cambios posteriores se añaden como una migración nueva.
+ */
+public interface Migracion {
+
+    /**
+     * @return Versión del esquema que deja aplicada esta migración (1, 2, 3...).
+     */
+    int getVersion();
+
+    /**
+     * @return Descripción breve del cambio (se muestra por consola al aplicarla).
+     */
+    String getDescripcion();
+
+    /**
+     * Aplica los cambios de esquema y datos. Se ejecuta dentro de una transacción abierta.
+     *
+     * @param conexion Conexión de escritura con autocommit desactivado.
+     * @throws SQLException Si falla alguna sentencia (se deshace la migración completa).
+     */
+    void aplicar(Connection conexion) throws SQLException;
+
+    /**
+     * Indica si tras aplicar la migración conviene compactar el fichero ({@code VACUUM}): por ejemplo,
+     * cuando elimina columnas o reescribe tablas grandes y deja páginas libres.
+     *
+     * @return {@code true} para compactar al terminar las migraciones pendientes.
+     */
+    default boolean requiereCompactar() {
+        return false;
+    }
+}
@@ -0,0 +1,120 @@
+package DAO.migraciones;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Versión 1: esquema base de la aplicación (el que antes creaba {@code arrancarBD} en cada arranque).
+ * <p>
+ * Es idempotente para poder aplicarse tanto sobre una base de datos vacía como sobre una
+ * creada por versiones anteriores de la aplicación (user_version = 0 pero con tablas):
+ * usa CREATE TABLE IF NOT EXISTS, añade la columna 'activo' de usuario solo si falta
+ * e inserta los datos semilla con INSERT OR IGNORE.
+ */
+public class MigracionV1EsquemaInicial implements Migracion {
+
+    /**
+     * Hash SHA-256 de la contraseña "admin" del usuario administrador por defecto.
+     * Se fija aquí para que la migración no dependa de cambios futuros en el hash.
+     */
+    private static final String HASH_ADMIN = "8c6976e5b5410415bde908bd4dee15dfb167a9c873fc4bb8a81f6f2ab448a918";
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public String getDescripcion() {
+        return "Esquema inicial (empresas, emisiones, usuarios, sedes, auditoría y filtros)";
+    }
+
+    @Override
+    public void aplicar(Connection conexion) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS filtro (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "criterio_busqueda TEXT, " +
+                    "ordenamiento TEXT, " +
+                    "contexto TEXT, " +
+                    "fecha_hora TEXT DEFAULT (datetime('now', 'localtime')), " +
+                    "id_usuario INTEGER NOT NULL, " +
+                    "FOREIGN KEY (id_usuario) REFERENCES usuario(id));");
+
+            st.execute("CREATE TABLE IF NOT EXISTS empresa (\n"
+                    + " id INTEGER PRIMARY KEY AUTOINCREMENT,\n"
+                    + " nombre TEXT NOT NULL,\n"
+                    + " sector TEXT NOT NULL\n"
+                    + ");");
+
+            st.execute("CREATE TABLE IF NOT EXISTS registro_emisiones (\n"
+                    + " id INTEGER PRIMARY KEY AUTOINCREMENT,\n"
+                    + " tipo TEXT NOT NULL,\n"
+                    + " cantidad REAL NOT NULL,\n"
+                    + " co2e REAL NOT NULL,\n"
+                    + " fecha TEXT NOT NULL,\n"
+                    + " id_empresa INTEGER NOT NULL,\n"
+                    + " FOREIGN KEY (id_empresa) REFERENCES empresa (id) ON DELETE CASCADE\n"
+                    + ");");
+
+            st.execute("CREATE TABLE IF NOT EXISTS rol (\n"
+                    + " id INTEGER PRIMARY KEY AUTOINCREMENT,\n"
+                    + " nombre_rol TEXT NOT NULL UNIQUE\n"
+                    + ");");
+
+            st.execute("CREATE TABLE IF NOT EXISTS usuario (\n"
+                    + " id INTEGER PRIMARY KEY AUTOINCREMENT,\n"
+                    + " nombre_usuario TEXT NOT NULL UNIQUE,\n"
+                    + " hash_contrasena TEXT NOT NULL,\n"
+                    + " nombre_completo TEXT NOT NULL,\n"
+                    + " id_rol INTEGER NOT NULL,\n"
+                    + " activo INTEGER DEFAULT 1,\n"
+                    + " FOREIGN KEY (id_rol) REFERENCES rol (id)\n"
+                    + ");");
+
+            st.execute("CREATE TABLE IF NOT EXISTS sede (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "ciudad TEXT NOT NULL, " +
+                    "pais TEXT DEFAULT 'España', " +
+                    "direccion TEXT, " +
+                    "id_empresa INTEGER NOT NULL, " +
+                    "FOREIGN KEY (id_empresa) REFERENCES empresa(id) ON DELETE CASCADE, " +
+                    "UNIQUE(ciudad, id_empresa));");
+
+            st.execute("CREATE TABLE IF NOT EXISTS auditoria (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "accion TEXT NOT NULL, " +
+                    "fecha_hora TEXT NOT NULL, " +
+                    "id_usuario INTEGER NOT NULL, " +
+                    "FOREIGN KEY (id_usuario) REFERENCES usuario(id));");
+
+            // Bases de datos antiguas: la tabla usuario se creó sin la columna 'activo'
+            if (!tieneColumna(st, "usuario", "activo")) {
+                st.execute("ALTER TABLE usuario ADD COLUMN activo INTEGER DEFAULT 1;");
+            }
+
+            // Roles básicos
+            st.execute("INSERT OR IGNORE INTO rol(id, nombre_rol) VALUES (1, 'ADMINISTRADOR');");
+            st.execute("INSERT OR IGNORE INTO rol(id, nombre_rol) VALUES (2, 'USUARIO');");
+            st.execute("INSERT OR IGNORE INTO rol(id, nombre_rol) VALUES (3, 'CLIENTE');");
+
+            // Usuario admin por defecto (admin/admin)
+            st.execute("INSERT OR IGNORE INTO usuario(id, nombre_usuario, hash_contrasena, nombre_completo, id_rol) "
+                    + "VALUES (1, 'admin', '" + HASH_ADMIN + "', 'Administrador', 1);");
+        }
+    }
+
+    /**
+     * Comprueba si una tabla tiene una columna concreta mediante PRAGMA table_info.
+     */
+    static boolean tieneColumna(Statement st, String tabla, String columna) throws SQLException {
+        try (ResultSet rs = st.executeQuery("PRAGMA table_info(" + tabla + ");")) {
+            while (rs.next()) {
+                if (columna.equalsIgnoreCase(rs.getString("name"))) return true;
+            }
+        }
+        return false;
+    }
+}
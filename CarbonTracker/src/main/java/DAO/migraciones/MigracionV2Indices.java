@@ -0,0 +1,45 @@
+package DAO.migraciones;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Versión 2: índices compuestos para los accesos habituales a registro_emisiones y a las claves ajenas.
+ * <ul>
+ * <li>(id_empresa, tipo, co2e): índice que cubre el informe por tipo, el total de CO2e de la
+ * lista de empresas (LEFT JOIN + SUM) y el borrado en cascada al eliminar una empresa.</li>
+ * <li>(id_empresa, fecha): emisiones de una empresa ordenadas por fecha.</li>
+ * <li>sede(id_empresa), auditoria(id_usuario), filtro(id_usuario), usuario(id_rol): claves ajenas que SQLite
+ * comprueba al borrar la fila padre y que no tenían índice.</li>
+ * <li>auditoria(fecha_hora): listado de auditoría ordenado sin ordenación temporal.</li>
+ * <li>empresa(LOWER(nombre)) y empresa(nombre): comprobación de duplicados y listado ordenado.</li>
+ * </ul>
+ */
+public class MigracionV2Indices implements Migracion {
+
+    @Override
+    public int getVersion() {
+        return 2;
+    }
+
+    @Override
+    public String getDescripcion() {
+        return "Índices compuestos para emisiones y claves ajenas";
+    }
+
+    @Override
+    public void aplicar(Connection conexion) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("CREATE INDEX IF NOT EXISTS idx_emisiones_empresa_tipo_co2e ON registro_emisiones(id_empresa, tipo, co2e);");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_emisiones_empresa_fecha ON registro_emisiones(id_empresa, fecha);");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_sede_empresa ON sede(id_empresa);");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_auditoria_usuario ON auditoria(id_usuario);");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_auditoria_fecha ON auditoria(fecha_hora);");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_filtro_usuario ON filtro(id_usuario);");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_usuario_rol ON usuario(id_rol);");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_empresa_nombre_lower ON empresa(LOWER(nombre));");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_empresa_nombre ON empresa(nombre);");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package DAO.migraciones;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Versión 3: tabla materializada {@code empresa_totales} con el total de CO2e, el número de
+ * emisiones y la fecha de la última emisión de cada empresa.
+ * <p>
+ * Se mantiene con triggers sobre registro_emisiones (alta, modificación y borrado, incluido el
+ * borrado en cascada al eliminar una empresa), de modo que el listado de empresas ya no tiene
+ * que sumar todas las emisiones en cada búsqueda.
+ */
+public class MigracionV3TotalesEmpresa implements Migracion {
+
+    @Override
+    public int getVersion() {
+        return 3;
+    }
+
+    @Override
+    public String getDescripcion() {
+        return "Totales de CO2e por empresa mantenidos por triggers";
+    }
+
+    @Override
+    public void aplicar(Connection conexion) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS empresa_totales (\n"
+                    + " id_empresa INTEGER PRIMARY KEY,\n"
+                    + " total_co2e REAL NOT NULL DEFAULT 0,\n"
+                    + " num_emisiones INTEGER NOT NULL DEFAULT 0,\n"
+                    + " ultima_fecha TEXT,\n"
+                    + " FOREIGN KEY (id_empresa) REFERENCES empresa (id) ON DELETE CASCADE\n"
+                    + ");");
+
+            // Alta: se suma la emisión al total de su empresa (creando la fila si no existe)
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_totales_emision_alta AFTER INSERT ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + sumar("NEW")
+                    + "END;");
+
+            // Borrado (también el que provoca el ON DELETE CASCADE de empresa)
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_totales_emision_baja AFTER DELETE ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + restar("OLD")
+                    + "END;");
+
+            // Modificación: se resta el valor antiguo y se suma el nuevo (puede cambiar de empresa)
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_totales_emision_cambio "
+                    + "AFTER UPDATE OF co2e, fecha, id_empresa ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + restar("OLD")
+                    + sumar("NEW")
+                    + "END;");
+
+            st.execute("INSERT OR REPLACE INTO empresa_totales (id_empresa, total_co2e, num_emisiones, ultima_fecha) "
+                    + "SELECT id_empresa, SUM(co2e), COUNT(*), MAX(fecha) FROM registro_emisiones GROUP BY id_empresa;");
+        }
+    }
+
+    /**
+     * Cuerpo de trigger que añade la fila {@code fila} (NEW) a los totales.
+     */
+    private static String sumar(String fila) {
+        return " INSERT INTO empresa_totales (id_empresa, total_co2e, num_emisiones, ultima_fecha)\n"
+                + " VALUES (" + fila + ".id_empresa, " + fila + ".co2e, 1, " + fila + ".fecha)\n"
+                + " ON CONFLICT (id_empresa) DO UPDATE SET\n"
+                + "  total_co2e = total_co2e + excluded.total_co2e,\n"
+                + "  num_emisiones = num_emisiones + 1,\n"
+                + "  ultima_fecha = CASE WHEN ultima_fecha IS NULL OR excluded.ultima_fecha > ultima_fecha\n"
+                + "                      THEN excluded.ultima_fecha ELSE ultima_fecha END;\n";
+    }
+
+    /**
+     * Cuerpo de trigger que quita la fila {@code fila} (OLD) de los totales. Al quedarse sin
+     * emisiones el total se fija a 0 para no arrastrar errores de redondeo; la última fecha se
+     * vuelve a leer mediante el índice (id_empresa, fecha).
+     */
+    private static String restar(String fila) {
+        return " UPDATE empresa_totales SET\n"
+                + "  total_co2e = CASE WHEN num_emisiones <= 1 THEN 0 ELSE total_co2e - " + fila + ".co2e END,\n"
+                + "  num_emisiones = num_emisiones - 1,\n"
+                + "  ultima_fecha = (SELECT MAX(fecha) FROM registro_emisiones WHERE id_empresa = " + fila + ".id_empresa)\n"
+                + " WHERE id_empresa = " + fila + ".id_empresa;\n";
+    }
+}
@@ -0,0 +1,85 @@
+package DAO.migraciones;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Versión 4: índices de texto completo FTS5 para las búsquedas de empresas y emisiones.
+ * <ul>
+ * <li>{@code empresa_fts}: nombre y sector de empresa.</li>
+ * <li>{@code emision_tipo_fts}: tipos de emisión distintos (tabla {@code emision_tipo_busqueda}).</li>
+ * </ul>
+ * Ambas son tablas de contenido externo (no duplican el texto) que se mantienen sincronizadas con
+ * triggers. Un tipo que deja de usarse permanece en el índice: no devuelve filas, así que es inocuo.
+ * El tokenizador {@code unicode61 remove_diacritics 2} ignora mayúsculas y tildes
+ * ('logistica' encuentra 'Logística') y los índices de prefijo aceleran la búsqueda mientras se teclea.
+ * Además se añaden índices por tipo y por fecha para las búsquedas sin empresa.
+ */
+public class MigracionV4BusquedaTexto implements Migracion {
+
+    /** Opciones comunes de las tablas FTS5. */
+    private static final String OPCIONES_FTS = "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3'";
+
+    @Override
+    public int getVersion() {
+        return 4;
+    }
+
+    @Override
+    public String getDescripcion() {
+        return "Índices de texto completo (FTS5) para empresas y tipos de emisión";
+    }
+
+    @Override
+    public void aplicar(Connection conexion) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            // Empresas: nombre y sector
+            st.execute("CREATE VIRTUAL TABLE IF NOT EXISTS empresa_fts USING fts5("
+                    + "nombre, sector, content = 'empresa', content_rowid = 'id', " + OPCIONES_FTS + ");");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_empresa_fts_alta AFTER INSERT ON empresa\n"
+                    + "BEGIN\n"
+                    + " INSERT INTO empresa_fts (rowid, nombre, sector) VALUES (NEW.id, NEW.nombre, NEW.sector);\n"
+                    + "END;");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_empresa_fts_baja AFTER DELETE ON empresa\n"
+                    + "BEGIN\n"
+                    + " INSERT INTO empresa_fts (empresa_fts, rowid, nombre, sector) VALUES ('delete', OLD.id, OLD.nombre, OLD.sector);\n"
+                    + "END;");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_empresa_fts_cambio AFTER UPDATE OF nombre, sector ON empresa\n"
+                    + "BEGIN\n"
+                    + " INSERT INTO empresa_fts (empresa_fts, rowid, nombre, sector) VALUES ('delete', OLD.id, OLD.nombre, OLD.sector);\n"
+                    + " INSERT INTO empresa_fts (rowid, nombre, sector) VALUES (NEW.id, NEW.nombre, NEW.sector);\n"
+                    + "END;");
+
+            // Tipos de emisión: se indexan los tipos distintos, no cada fila de emisión,
+            // para que una búsqueda por tipo resuelva primero unos pocos tipos y después
+            // use los índices B-tree de registro_emisiones.
+            st.execute("CREATE TABLE IF NOT EXISTS emision_tipo_busqueda (\n"
+                    + " id INTEGER PRIMARY KEY,\n"
+                    + " tipo TEXT NOT NULL UNIQUE\n"
+                    + ");");
+            st.execute("CREATE VIRTUAL TABLE IF NOT EXISTS emision_tipo_fts USING fts5("
+                    + "tipo, content = 'emision_tipo_busqueda', content_rowid = 'id', " + OPCIONES_FTS + ");");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_emision_tipo_fts_alta AFTER INSERT ON emision_tipo_busqueda\n"
+                    + "BEGIN\n"
+                    + " INSERT INTO emision_tipo_fts (rowid, tipo) VALUES (NEW.id, NEW.tipo);\n"
+                    + "END;");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_emision_tipo_alta AFTER INSERT ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + " INSERT OR IGNORE INTO emision_tipo_busqueda (tipo) VALUES (NEW.tipo);\n"
+                    + "END;");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_emision_tipo_cambio AFTER UPDATE OF tipo ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + " INSERT OR IGNORE INTO emision_tipo_busqueda (tipo) VALUES (NEW.tipo);\n"
+                    + "END;");
+            st.execute("INSERT OR IGNORE INTO emision_tipo_busqueda (tipo) SELECT DISTINCT tipo FROM registro_emisiones;");
+
+            // Indexado de los datos existentes
+            st.execute("INSERT INTO empresa_fts (empresa_fts) VALUES ('rebuild');");
+            st.execute("INSERT INTO emision_tipo_fts (emision_tipo_fts) VALUES ('rebuild');");
+
+            st.execute("CREATE INDEX IF NOT EXISTS idx_emisiones_tipo ON registro_emisiones(tipo);");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_emisiones_fecha ON registro_emisiones(fecha);");
+        }
+    }
+}
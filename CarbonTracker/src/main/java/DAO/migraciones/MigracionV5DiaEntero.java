@@ -0,0 +1,105 @@
+package DAO.migraciones;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Versión 5: columna entera {@code dia} en registro_emisiones con la fecha como días desde
+ * 1970-01-01 ({@link java.time.LocalDate#toEpochDay()}).
+ * <p>
+ * La columna {@code fecha} (texto ISO) se conserva tal cual para la exportación y las búsquedas por
+ * texto, pero la ordenación, la paginación y los filtros por intervalo pasan a usar {@code dia}:
+ * <ul>
+ * <li>Los índices por fecha se sustituyen por {@code (dia)} e {@code (id_empresa, dia)}: claves de
+ * 8 bytes en lugar de cadenas de 10, y los intervalos de mes o año son rangos de enteros.</li>
+ * <li>La aplicación escribe {@code dia} junto con {@code fecha}; dos triggers la recalculan si
+ * alguien inserta o modifica la fecha sin ella (scripts, versiones antiguas), así que nunca
+ * queda desalineada.</li>
+ * <li>Los triggers de {@code empresa_totales} que recalculan la última fecha de una empresa se
+ * rehacen para usar el nuevo índice (id_empresa, dia).</li>
+ * </ul>
+ */
+public class MigracionV5DiaEntero implements Migracion {
+
+    @Override
+    public int getVersion() {
+        return 5;
+    }
+
+    @Override
+    public String getDescripcion() {
+        return "Fecha de las emisiones como día entero indexado";
+    }
+
+    @Override
+    public void aplicar(Connection conexion) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("ALTER TABLE registro_emisiones ADD COLUMN dia INTEGER;");
+            st.execute("UPDATE registro_emisiones SET dia = CAST(julianday(fecha) - 2440587.5 AS INTEGER);");
+
+            // Red de seguridad: solo actúan si el día escrito no corresponde a la fecha
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_emision_dia_alta AFTER INSERT ON registro_emisiones\n"
+                    + "WHEN NEW.dia IS NOT " + diaDe("NEW") + "\n"
+                    + "BEGIN\n"
+                    + " UPDATE registro_emisiones SET dia = " + diaDe("NEW") + " WHERE id = NEW.id;\n"
+                    + "END;");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_emision_dia_cambio AFTER UPDATE OF fecha, dia ON registro_emisiones\n"
+                    + "WHEN NEW.dia IS NOT " + diaDe("NEW") + "\n"
+                    + "BEGIN\n"
+                    + " UPDATE registro_emisiones SET dia = " + diaDe("NEW") + " WHERE id = NEW.id;\n"
+                    + "END;");
+
+            st.execute("DROP INDEX IF EXISTS idx_emisiones_fecha;");
+            st.execute("DROP INDEX IF EXISTS idx_emisiones_empresa_fecha;");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_emisiones_dia ON registro_emisiones(dia);");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_emisiones_empresa_dia ON registro_emisiones(id_empresa, dia);");
+
+            // La última fecha de la empresa se busca ahora por el índice (id_empresa, dia)
+            st.execute("DROP TRIGGER IF EXISTS trg_totales_emision_baja;");
+            st.execute("DROP TRIGGER IF EXISTS trg_totales_emision_cambio;");
+            st.execute("CREATE TRIGGER trg_totales_emision_baja AFTER DELETE ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + restar("OLD")
+                    + "END;");
+            st.execute("CREATE TRIGGER trg_totales_emision_cambio "
+                    + "AFTER UPDATE OF co2e, fecha, id_empresa ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + restar("OLD")
+                    + sumar("NEW")
+                    + "END;");
+        }
+    }
+
+    /**
+     * Cuerpo de trigger que añade la fila {@code fila} (NEW) a los totales. Es el mismo SQL que en la versión 3,
+     * copiado aquí: una migración publicada no se modifica ni se usa como biblioteca de otra.
+     */
+    private static String sumar(String fila) {
+        return " INSERT INTO empresa_totales (id_empresa, total_co2e, num_emisiones, ultima_fecha)\n"
+                + " VALUES (" + fila + ".id_empresa, " + fila + ".co2e, 1, " + fila + ".fecha)\n"
+                + " ON CONFLICT (id_empresa) DO UPDATE SET\n"
+                + "  total_co2e = total_co2e + excluded.total_co2e,\n"
+                + "  num_emisiones = num_emisiones + 1,\n"
+                + "  ultima_fecha = CASE WHEN ultima_fecha IS NULL OR excluded.ultima_fecha > ultima_fecha\n"
+                + "                      THEN excluded.ultima_fecha ELSE ultima_fecha END;\n";
+    }
+
+    /**
+     * Cuerpo de trigger que quita la fila {@code fila} (OLD) de los totales, como en la versión 3,
+     * leyendo la última fecha de la empresa desde el final de su rango en (id_empresa, dia).
+     */
+    private static String restar(String fila) {
+        return " UPDATE empresa_totales SET\n"
+                + "  total_co2e = CASE WHEN num_emisiones <= 1 THEN 0 ELSE total_co2e - " + fila + ".co2e END,\n"
+                + "  num_emisiones = num_emisiones - 1,\n"
+                + "  ultima_fecha = (SELECT fecha FROM registro_emisiones WHERE id_empresa = " + fila + ".id_empresa\n"
+                + "                  ORDER BY dia DESC LIMIT 1)\n"
+                + " WHERE id_empresa = " + fila + ".id_empresa;\n";
+    }
+
+    /** Día desde 1970-01-01 de la fecha de una fila ({@code NEW} u {@code OLD}). */
+    private static String diaDe(String fila) {
+        return "CAST(julianday(" + fila + ".fecha) - 2440587.5 AS INTEGER)";
+    }
+}
@@ -0,0 +1,101 @@
+package DAO.migraciones;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Versión 6: tabla de resumen {@code emision_mensual} con el CO2e, la cantidad y el número de
+ * emisiones de cada empresa, tipo y mes.
+ * <p>
+ * El mes se guarda como entero {@code año * 100 + mes} (202403). La clave (id_empresa, mes, tipo)
+ * deja las series de una empresa en un rango contiguo, y el índice por mes sirve las series de
+ * todas las empresas. Los totales anuales se obtienen sumando los meses del año.
+ * <p>
+ * Igual que {@code empresa_totales}, se mantiene con triggers de alta, baja y modificación
+ * (incluido el borrado en cascada de una empresa); una combinación que se queda sin emisiones
+ * se elimina, de modo que no arrastra errores de redondeo.
+ */
+public class MigracionV6ResumenMensual implements Migracion {
+
+    @Override
+    public int getVersion() {
+        return 6;
+    }
+
+    @Override
+    public String getDescripcion() {
+        return "Resumen mensual de emisiones por empresa y tipo mantenido por triggers";
+    }
+
+    @Override
+    public void aplicar(Connection conexion) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS emision_mensual (\n"
+                    + " id_empresa INTEGER NOT NULL,\n"
+                    + " mes INTEGER NOT NULL,\n"
+                    + " tipo TEXT NOT NULL,\n"
+                    + " total_co2e REAL NOT NULL DEFAULT 0,\n"
+                    + " total_cantidad REAL NOT NULL DEFAULT 0,\n"
+                    + " num_emisiones INTEGER NOT NULL DEFAULT 0,\n"
+                    + " PRIMARY KEY (id_empresa, mes, tipo),\n"
+                    + " FOREIGN KEY (id_empresa) REFERENCES empresa (id) ON DELETE CASCADE\n"
+                    + ") WITHOUT ROWID;");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_emision_mensual_mes ON emision_mensual(mes, total_co2e, num_emisiones);");
+
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_mensual_emision_alta AFTER INSERT ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + sumar("NEW")
+                    + "END;");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_mensual_emision_baja AFTER DELETE ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + restar("OLD")
+                    + "END;");
+            st.execute("CREATE TRIGGER IF NOT EXISTS trg_mensual_emision_cambio "
+                    + "AFTER UPDATE OF tipo, cantidad, co2e, fecha, id_empresa ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + restar("OLD")
+                    + sumar("NEW")
+                    + "END;");
+
+            st.execute("INSERT OR REPLACE INTO emision_mensual (id_empresa, mes, tipo, total_co2e, total_cantidad, num_emisiones) "
+                    + "SELECT id_empresa, " + mes("registro_emisiones") + ", tipo, SUM(co2e), SUM(cantidad), COUNT(*) "
+                    + "FROM registro_emisiones GROUP BY 1, 2, 3;");
+        }
+    }
+
+    /**
+     * Mes ({@code año * 100 + mes}) de la fecha de una fila.
+     */
+    private static String mes(String fila) {
+        return "CAST(strftime('%Y%m', " + fila + ".fecha) AS INTEGER)";
+    }
+
+    /**
+     * Cuerpo de trigger que añade la fila {@code fila} (NEW) a su mes.
+     */
+    private static String sumar(String fila) {
+        return " INSERT INTO emision_mensual (id_empresa, mes, tipo, total_co2e, total_cantidad, num_emisiones)\n"
+                + " VALUES (" + fila + ".id_empresa, " + mes(fila) + ", " + fila + ".tipo, "
+                + fila + ".co2e, " + fila + ".cantidad, 1)\n"
+                + " ON CONFLICT (id_empresa, mes, tipo) DO UPDATE SET\n"
+                + "  total_co2e = total_co2e + excluded.total_co2e,\n"
+                + "  total_cantidad = total_cantidad + excluded.total_cantidad,\n"
+                + "  num_emisiones = num_emisiones + 1;\n";
+    }
+
+    /**
+     * Cuerpo de trigger que quita la fila {@code fila} (OLD) de su mes, eliminando la combinación
+     * si era la última emisión.
+     */
+    private static String restar(String fila) {
+        String clave = " WHERE id_empresa = " + fila + ".id_empresa AND mes = " + mes(fila)
+                + " AND tipo = " + fila + ".tipo";
+        return " UPDATE emision_mensual SET\n"
+                + "  total_co2e = total_co2e - " + fila + ".co2e,\n"
+                + "  total_cantidad = total_cantidad - " + fila + ".cantidad,\n"
+                + "  num_emisiones = num_emisiones - 1\n"
+                + clave + ";\n"
+                + " DELETE FROM emision_mensual" + clave + " AND num_emisiones <= 0;\n";
+    }
+}
@@ -0,0 +1,54 @@
+package DAO.migraciones;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Versión 7: catálogo de factores de emisión y marca de CO2e calculado en las emisiones.
+ * <p>
+ * Cada factor da los kg de CO2e por unidad de un tipo de emisión durante un periodo de validez
+ * ({@code desde}/{@code hasta} como días desde 1970-01-01, igual que {@code registro_emisiones.dia};
+ * {@code hasta} nulo = sin fecha de fin). La clave es (tipo, desde, unidad): el índice único deja los
+ * periodos de un tipo ordenados, que es como se busca el factor vigente en una fecha.
+ * <p>
+ * La columna {@code co2e_calculado} de registro_emisiones indica que el CO2e se obtuvo del catálogo
+ * (cantidad × factor). Solo esas filas se recalculan al revisar un factor; las que se escribieron
+ * a mano o se importaron con su CO2e se respetan.
+ * <p>
+ * El índice (id_empresa, tipo, co2e) se sustituye por (id_empresa, tipo): sigue cubriendo el recuento
+ * de la búsqueda por texto, pero ya no se reescribe en cada cambio de CO2e.
+ */
+public class MigracionV7FactoresEmision implements Migracion {
+
+    @Override
+    public int getVersion() {
+        return 7;
+    }
+
+    @Override
+    public String getDescripcion() {
+        return "Catálogo de factores de emisión por tipo, unidad y periodo";
+    }
+
+    @Override
+    public void aplicar(Connection conexion) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS factor_emision (\n"
+                    + " id INTEGER PRIMARY KEY AUTOINCREMENT,\n"
+                    + " tipo TEXT NOT NULL,\n"
+                    + " unidad TEXT NOT NULL,\n"
+                    + " factor REAL NOT NULL CHECK (factor >= 0),\n"
+                    + " desde INTEGER NOT NULL,\n"
+                    + " hasta INTEGER CHECK (hasta IS NULL OR hasta >= desde),\n"
+                    + " UNIQUE (tipo, desde, unidad)\n"
+                    + ");");
+            st.execute("ALTER TABLE registro_emisiones ADD COLUMN co2e_calculado INTEGER NOT NULL DEFAULT 0;");
+
+            // Los totales por tipo se leen de emision_mensual desde la versión 6: el co2e del índice ya no
+            // sirve a ninguna consulta y encarece cada cambio de CO2e (sobre todo los recálculos)
+            st.execute("CREATE INDEX IF NOT EXISTS idx_emisiones_empresa_tipo ON registro_emisiones(id_empresa, tipo);");
+            st.execute("DROP INDEX IF EXISTS idx_emisiones_empresa_tipo_co2e;");
+        }
+    }
+}
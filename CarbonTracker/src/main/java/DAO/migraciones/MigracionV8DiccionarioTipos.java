@@ -0,0 +1,315 @@
+package DAO.migraciones;
+
+import DAO.DiccionarioTipos;
+import DAO.PoolConexiones;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Versión 8: diccionario de tipos de emisión. El texto libre de {@code tipo} se sustituye por el ID de
+ * un tipo canónico en registro_emisiones, emision_mensual y factor_emision.
+ * <ul>
+ * <li>{@code emision_tipo}: nombre canónico y categoría ({@code ELECTRICIDAD}, {@code TRANSPORTE},
+ * {@code COMBUSTION}, {@code RESIDUOS} u {@code OTROS}) de cada tipo.</li>
+ * <li>{@code emision_tipo_alias}: formas alternativas de cada nombre, por su clave normalizada
+ * ({@link DiccionarioTipos#clave}). El propio nombre es también un alias.</li>
+ * <li>{@code emision_tipo_fts}: índice de texto completo de los alias, que sustituye al de la versión 4:
+ * buscar "eléctrico" encuentra las emisiones de "Electricidad" a través de "Consumo Eléctrico".</li>
+ * </ul>
+ * Se crean los tipos habituales con sus alias y cada texto existente se asigna al tipo de su clave; los que
+ * no corresponden a ninguno pasan a ser tipos de la categoría {@code OTROS}. La tabla de emisiones se rehace
+ * sin la columna de texto y con {@code id_tipo NOT NULL} (los índices y triggers del texto se rehacen sobre el ID)
+ * y, como se reescribe entera, se compacta el fichero al terminar.
+ */
+public class MigracionV8DiccionarioTipos implements Migracion {
+
+    /** Opciones de las tablas FTS5 (las mismas que en la versión 4). */
+    private static final String OPCIONES_FTS = "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3'";
+
+    /** Tipos iniciales: nombre canónico, categoría y alias. */
+    private static final String[][] TIPOS = {
+            {"Electricidad", "ELECTRICIDAD", "Consumo Eléctrico", "Energía Eléctrica", "Luz"},
+            {"Transporte", "TRANSPORTE", "Flota Vehículos", "Flota", "Vehículos", "Desplazamientos", "Logística"},
+            {"Combustión", "COMBUSTION", "Combustible", "Generadores Diésel", "Gasóleo", "Diésel"},
+            {"Calefacción", "COMBUSTION", "Gas Natural", "Caldera"},
+            {"Residuos", "RESIDUOS", "Residuos Industriales", "Desechos", "Basura"}
+    };
+
+    @Override
+    public int getVersion() {
+        return 8;
+    }
+
+    @Override
+    public String getDescripcion() {
+        return "Diccionario de tipos de emisión con alias y categoría";
+    }
+
+    @Override
+    public boolean requiereCompactar() {
+        return true;
+    }
+
+    @Override
+    public void aplicar(Connection conexion) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS emision_tipo (\n"
+                    + " id INTEGER PRIMARY KEY,\n"
+                    + " nombre TEXT NOT NULL UNIQUE,\n"
+                    + " categoria TEXT NOT NULL DEFAULT 'OTROS'\n"
+                    + ");");
+            st.execute("CREATE TABLE IF NOT EXISTS emision_tipo_alias (\n"
+                    + " id INTEGER PRIMARY KEY,\n"
+                    + " clave TEXT NOT NULL UNIQUE,\n"
+                    + " alias TEXT NOT NULL,\n"
+                    + " id_tipo INTEGER NOT NULL,\n"
+                    + " FOREIGN KEY (id_tipo) REFERENCES emision_tipo (id) ON DELETE CASCADE\n"
+                    + ");");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_emision_tipo_alias_tipo ON emision_tipo_alias(id_tipo);");
+
+            // Búsqueda por texto: los alias sustituyen a la lista de tipos distintos de la versión 4
+            st.execute("DROP TRIGGER IF EXISTS trg_emision_tipo_alta;");
+            st.execute("DROP TRIGGER IF EXISTS trg_emision_tipo_cambio;");
+            st.execute("DROP TRIGGER IF EXISTS trg_emision_tipo_fts_alta;");
+            st.execute("DROP TABLE IF EXISTS emision_tipo_fts;");
+            st.execute("DROP TABLE IF EXISTS emision_tipo_busqueda;");
+            st.execute("CREATE VIRTUAL TABLE emision_tipo_fts USING fts5("
+                    + "alias, content = 'emision_tipo_alias', content_rowid = 'id', " + OPCIONES_FTS + ");");
+            st.execute("CREATE TRIGGER trg_emision_tipo_fts_alta AFTER INSERT ON emision_tipo_alias\n"
+                    + "BEGIN\n"
+                    + " INSERT INTO emision_tipo_fts (rowid, alias) VALUES (NEW.id, NEW.alias);\n"
+                    + "END;");
+            st.execute("CREATE TRIGGER trg_emision_tipo_fts_baja AFTER DELETE ON emision_tipo_alias\n"
+                    + "BEGIN\n"
+                    + " INSERT INTO emision_tipo_fts (emision_tipo_fts, rowid, alias) VALUES ('delete', OLD.id, OLD.alias);\n"
+                    + "END;");
+            st.execute("CREATE TRIGGER trg_emision_tipo_fts_cambio AFTER UPDATE OF alias ON emision_tipo_alias\n"
+                    + "BEGIN\n"
+                    + " INSERT INTO emision_tipo_fts (emision_tipo_fts, rowid, alias) VALUES ('delete', OLD.id, OLD.alias);\n"
+                    + " INSERT INTO emision_tipo_fts (rowid, alias) VALUES (NEW.id, NEW.alias);\n"
+                    + "END;");
+
+            Map<String, Integer> tipos = crearTiposIniciales(conexion);
+
+            // Cada texto distinto en uso pasa a su tipo (el de su clave, o uno nuevo)
+            st.execute("ALTER TABLE registro_emisiones ADD COLUMN id_tipo INTEGER REFERENCES emision_tipo (id);");
+            st.execute("ALTER TABLE factor_emision ADD COLUMN id_tipo INTEGER;");
+            Set<String> textos = new LinkedHashSet<>();
+            try (ResultSet rs = st.executeQuery("SELECT tipo FROM registro_emisiones GROUP BY tipo "
+                    + "UNION SELECT tipo FROM factor_emision")) {
+                while (rs.next()) textos.add(rs.getString(1));
+            }
+            // Sentencias fuera de la caché del pool (ver sinCache)
+            try (PreparedStatement psEmisiones = sinCache(conexion, "UPDATE registro_emisiones SET id_tipo = ? WHERE tipo = ?");
+                 PreparedStatement psFactores = sinCache(conexion, "UPDATE factor_emision SET id_tipo = ? WHERE tipo = ?")) {
+                for (String texto : textos) {
+                    int idTipo = idTipo(conexion, tipos, texto);
+                    for (PreparedStatement ps : new PreparedStatement[]{psEmisiones, psFactores}) {
+                        ps.setInt(1, idTipo);
+                        ps.setString(2, texto);
+                        ps.executeUpdate();
+                    }
+                }
+            }
+
+            // Índices y triggers que usan la columna de texto
+            st.execute("DROP TRIGGER IF EXISTS trg_mensual_emision_alta;");
+            st.execute("DROP TRIGGER IF EXISTS trg_mensual_emision_baja;");
+            st.execute("DROP TRIGGER IF EXISTS trg_mensual_emision_cambio;");
+            st.execute("DROP INDEX IF EXISTS idx_emisiones_tipo;");
+            st.execute("DROP INDEX IF EXISTS idx_emisiones_empresa_tipo;");
+
+            // La tabla se rehace sin la columna de texto y con id_tipo obligatorio (ALTER TABLE no puede
+            // añadir NOT NULL a una columna existente). Los demás índices y triggers se recrean tal cual.
+            List<String> esquema = new ArrayList<>();
+            try (ResultSet rs = st.executeQuery("SELECT sql FROM sqlite_master WHERE tbl_name = 'registro_emisiones' "
+                    + "AND type IN ('index', 'trigger') AND sql IS NOT NULL")) {
+                while (rs.next()) esquema.add(rs.getString(1));
+            }
+            st.execute("CREATE TABLE registro_emisiones_nueva (\n"
+                    + " id INTEGER PRIMARY KEY AUTOINCREMENT,\n"
+                    + " id_tipo INTEGER NOT NULL REFERENCES emision_tipo (id),\n"
+                    + " cantidad REAL NOT NULL,\n"
+                    + " co2e REAL NOT NULL,\n"
+                    + " fecha TEXT NOT NULL,\n"
+                    + " id_empresa INTEGER NOT NULL,\n"
+                    + " dia INTEGER,\n"
+                    + " co2e_calculado INTEGER NOT NULL DEFAULT 0,\n"
+                    + " FOREIGN KEY (id_empresa) REFERENCES empresa (id) ON DELETE CASCADE\n"
+                    + ");");
+            st.execute("INSERT INTO registro_emisiones_nueva (id, id_tipo, cantidad, co2e, fecha, id_empresa, dia, co2e_calculado) "
+                    + "SELECT id, id_tipo, cantidad, co2e, fecha, id_empresa, dia, co2e_calculado FROM registro_emisiones ORDER BY id;");
+            // Los IDs de emisiones borradas no se reutilizan: se conserva el contador de AUTOINCREMENT
+            st.execute("UPDATE sqlite_sequence SET seq = (SELECT seq FROM sqlite_sequence WHERE name = 'registro_emisiones') "
+                    + "WHERE name = 'registro_emisiones_nueva' "
+                    + "AND seq < (SELECT seq FROM sqlite_sequence WHERE name = 'registro_emisiones');");
+            st.execute("DROP TABLE registro_emisiones;");
+            st.execute("ALTER TABLE registro_emisiones_nueva RENAME TO registro_emisiones;");
+            for (String sentencia : esquema) st.execute(sentencia);
+            st.execute("CREATE INDEX IF NOT EXISTS idx_emisiones_tipo ON registro_emisiones(id_tipo);");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_emisiones_empresa_tipo ON registro_emisiones(id_empresa, id_tipo);");
+
+            // Resumen mensual por ID de tipo (misma estructura que en la versión 6)
+            st.execute("DROP TABLE emision_mensual;");
+            st.execute("CREATE TABLE emision_mensual (\n"
+                    + " id_empresa INTEGER NOT NULL,\n"
+                    + " mes INTEGER NOT NULL,\n"
+                    + " id_tipo INTEGER NOT NULL,\n"
+                    + " total_co2e REAL NOT NULL DEFAULT 0,\n"
+                    + " total_cantidad REAL NOT NULL DEFAULT 0,\n"
+                    + " num_emisiones INTEGER NOT NULL DEFAULT 0,\n"
+                    + " PRIMARY KEY (id_empresa, mes, id_tipo),\n"
+                    + " FOREIGN KEY (id_empresa) REFERENCES empresa (id) ON DELETE CASCADE\n"
+                    + ") WITHOUT ROWID;");
+            st.execute("CREATE INDEX idx_emision_mensual_mes ON emision_mensual(mes, total_co2e, num_emisiones);");
+            st.execute("CREATE TRIGGER trg_mensual_emision_alta AFTER INSERT ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + sumar("NEW")
+                    + "END;");
+            st.execute("CREATE TRIGGER trg_mensual_emision_baja AFTER DELETE ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + restar("OLD")
+                    + "END;");
+            st.execute("CREATE TRIGGER trg_mensual_emision_cambio "
+                    + "AFTER UPDATE OF id_tipo, cantidad, co2e, fecha, id_empresa ON registro_emisiones\n"
+                    + "BEGIN\n"
+                    + restar("OLD")
+                    + sumar("NEW")
+                    + "END;");
+            st.execute("INSERT INTO emision_mensual (id_empresa, mes, id_tipo, total_co2e, total_cantidad, num_emisiones) "
+                    + "SELECT id_empresa, " + mes("registro_emisiones") + ", id_tipo, SUM(co2e), SUM(cantidad), COUNT(*) "
+                    + "FROM registro_emisiones GROUP BY 1, 2, 3;");
+
+            // Catálogo de factores por ID de tipo (si dos textos del mismo tipo chocan, queda el último dado de alta)
+            st.execute("CREATE TABLE factor_emision_nueva (\n"
+                    + " id INTEGER PRIMARY KEY AUTOINCREMENT,\n"
+                    + " id_tipo INTEGER NOT NULL,\n"
+                    + " unidad TEXT NOT NULL,\n"
+                    + " factor REAL NOT NULL CHECK (factor >= 0),\n"
+                    + " desde INTEGER NOT NULL,\n"
+                    + " hasta INTEGER CHECK (hasta IS NULL OR hasta >= desde),\n"
+                    + " UNIQUE (id_tipo, desde, unidad),\n"
+                    + " FOREIGN KEY (id_tipo) REFERENCES emision_tipo (id)\n"
+                    + ");");
+            st.execute("INSERT OR REPLACE INTO factor_emision_nueva (id, id_tipo, unidad, factor, desde, hasta) "
+                    + "SELECT id, id_tipo, unidad, factor, desde, hasta FROM factor_emision ORDER BY id;");
+            st.execute("DROP TABLE factor_emision;");
+            st.execute("ALTER TABLE factor_emision_nueva RENAME TO factor_emision;");
+        }
+    }
+
+    /**
+     * Da de alta los tipos iniciales con sus alias.
+     *
+     * @return Mapa clave de alias → ID de tipo.
+     */
+    private static Map<String, Integer> crearTiposIniciales(Connection conexion) throws SQLException {
+        Map<String, Integer> tipos = new HashMap<>();
+        for (String[] tipo : TIPOS) {
+            int id = crearTipo(conexion, tipo[0], tipo[1]);
+            tipos.put(DiccionarioTipos.clave(tipo[0]), id);
+            for (int i = 2; i < tipo.length; i++) {
+                crearAlias(conexion, tipo[i], id);
+                tipos.put(DiccionarioTipos.clave(tipo[i]), id);
+            }
+        }
+        return tipos;
+    }
+
+    /**
+     * ID del tipo de un texto existente, creando un tipo {@code OTROS} si su clave no es de ninguno.
+     */
+    private static int idTipo(Connection conexion, Map<String, Integer> tipos, String texto) throws SQLException {
+        String nombre = DiccionarioTipos.nombre(texto);
+        String clave = DiccionarioTipos.clave(nombre);
+        Integer id = tipos.get(clave);
+        if (id == null) {
+            id = crearTipo(conexion, nombre.isEmpty() ? "Sin tipo" : nombre, "OTROS");
+            tipos.put(clave, id);
+        }
+        return id;
+    }
+
+    /**
+     * Crea un tipo con su nombre como primer alias.
+     *
+     * @return ID del tipo.
+     */
+    private static int crearTipo(Connection conexion, String nombre, String categoria) throws SQLException {
+        int id;
+        try (PreparedStatement ps = sinCache(conexion, "INSERT INTO emision_tipo (nombre, categoria) VALUES (?, ?) RETURNING id")) {
+            ps.setString(1, nombre);
+            ps.setString(2, categoria);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                id = rs.getInt(1);
+            }
+        }
+        crearAlias(conexion, nombre, id);
+        return id;
+    }
+
+    private static void crearAlias(Connection conexion, String alias, int idTipo) throws SQLException {
+        try (PreparedStatement ps = sinCache(conexion, "INSERT INTO emision_tipo_alias (clave, alias, id_tipo) VALUES (?, ?, ?)")) {
+            ps.setString(1, DiccionarioTipos.clave(alias));
+            ps.setString(2, alias);
+            ps.setInt(3, idTipo);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Prepara una sentencia fuera de la caché de sentencias del pool de conexiones. Las de esta migración se
+     * usan una sola vez y casi todas nombran la columna {@code tipo} o la tabla que se rehace: cacheadas, se
+     * quedarían en la conexión de escritura (que el pool no cierra) compiladas contra un esquema que ya no
+     * existe, ocupando sitio y apareciendo en {@link PoolConexiones#getSentenciasPreparadas()}.
+     */
+    private static PreparedStatement sinCache(Connection conexion, String sql) throws SQLException {
+        return PoolConexiones.prepararSinCache(conexion, sql);
+    }
+
+    /**
+     * Mes ({@code año * 100 + mes}) de la fecha de una fila.
+     */
+    private static String mes(String fila) {
+        return "CAST(strftime('%Y%m', " + fila + ".fecha) AS INTEGER)";
+    }
+
+    /**
+     * Cuerpo de trigger que añade la fila {@code fila} (NEW) a su mes.
+     */
+    private static String sumar(String fila) {
+        return " INSERT INTO emision_mensual (id_empresa, mes, id_tipo, total_co2e, total_cantidad, num_emisiones)\n"
+                + " VALUES (" + fila + ".id_empresa, " + mes(fila) + ", " + fila + ".id_tipo, "
+                + fila + ".co2e, " + fila + ".cantidad, 1)\n"
+                + " ON CONFLICT (id_empresa, mes, id_tipo) DO UPDATE SET\n"
+                + "  total_co2e = total_co2e + excluded.total_co2e,\n"
+                + "  total_cantidad = total_cantidad + excluded.total_cantidad,\n"
+                + "  num_emisiones = num_emisiones + 1;\n";
+    }
+
+    /**
+     * Cuerpo de trigger que quita la fila {@code fila} (OLD) de su mes, eliminando la combinación
+     * si era la última emisión.
+     */
+    private static String restar(String fila) {
+        String clave = " WHERE id_empresa = " + fila + ".id_empresa AND mes = " + mes(fila)
+                + " AND id_tipo = " + fila + ".id_tipo";
+        return " UPDATE emision_mensual SET\n"
+                + "  total_co2e = total_co2e - " + fila + ".co2e,\n"
+                + "  total_cantidad = total_cantidad - " + fila + ".cantidad,\n"
+                + "  num_emisiones = num_emisiones - 1\n"
+                + clave + ";\n"
+                + " DELETE FROM emision_mensual" + clave + " AND num_emisiones <= 0;\n";
+    }
+}
@@ -0,0 +1,44 @@
+package DAO.migraciones;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Versión 9: registro de consultas lentas ({@code consulta_lenta}).
+ * <p>
+ * Cada fila es una ejecución que ha superado el umbral configurado: momento, método del DAO, texto SQL,
+ * su forma normalizada (sin literales ni listas de parámetros), los parámetros enlazados, las filas, la duración
+ * y el EXPLAIN QUERY PLAN. El índice por forma sirve para agrupar las entradas y para listar las de una forma
+ * de la más reciente a la más antigua.
+ */
+public class MigracionV9ConsultasLentas implements Migracion {
+
+    @Override
+    public int getVersion() {
+        return 9;
+    }
+
+    @Override
+    public String getDescripcion() {
+        return "Registro de consultas lentas con su plan de ejecución";
+    }
+
+    @Override
+    public void aplicar(Connection conexion) throws SQLException {
+        try (Statement st = conexion.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS consulta_lenta (\n"
+                    + " id INTEGER PRIMARY KEY,\n"
+                    + " fecha TEXT NOT NULL,\n"
+                    + " operacion TEXT,\n"
+                    + " forma TEXT NOT NULL,\n"
+                    + " sql TEXT NOT NULL,\n"
+                    + " parametros TEXT,\n"
+                    + " filas INTEGER NOT NULL,\n"
+                    + " duracion_ms REAL NOT NULL,\n"
+                    + " plan TEXT\n"
+                    + ");");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_consulta_lenta_forma ON consulta_lenta(forma);");
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package DAO.migraciones;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Motor de migraciones del esquema basado en {@code PRAGMA user_version}.
+ * <p>
+ * La versión del esquema se guarda en la cabecera del fichero SQLite. Al arrancar se lee
+ * esa versión y solo se ejecutan las migraciones posteriores, por lo que sobre una base de
+ * datos ya actualizada el arranque se reduce a una única lectura del pragma.
+ */
+public class MigradorEsquema {
+
+    /**
+     * Migraciones de la aplicación, en orden de versión.
+     */
+    private static final List<Migracion> MIGRACIONES = List.of(
+            new MigracionV1EsquemaInicial(),
+            new MigracionV2Indices(),
+            new MigracionV3TotalesEmpresa(),
+            new MigracionV4BusquedaTexto(),
+            new MigracionV5DiaEntero(),
+            new MigracionV6ResumenMensual(),
+            new MigracionV7FactoresEmision(),
+            new MigracionV8DiccionarioTipos(),
+            new MigracionV9ConsultasLentas()
+    );
+
+    /** Migraciones que gestiona este migrador. */
+    private final List<Migracion> migraciones;
+
+    /**
+     * Migrador con las migraciones de la aplicación.
+     */
+    public MigradorEsquema() {
+        this(MIGRACIONES);
+    }
+
+    /**
+     * Migrador con una lista de migraciones concreta (debe estar ordenada por versión).
+     *
+     * @param migraciones Migraciones a gestionar.
+     */
+    public MigradorEsquema(List<Migracion> migraciones) {
+        for (int i = 1; i < migraciones.size(); i++) {
+            if (migraciones.get(i).getVersion() <= migraciones.get(i - 1).getVersion()) {
+                throw new IllegalArgumentException("Las migraciones deben estar ordenadas por versión creciente");
+            }
+        }
+        this.migraciones = migraciones;
+    }
+
+    /**
+     * @return Versión del esquema tras aplicar todas las migraciones.
+     */
+    public int getUltimaVersion() {
+        return migraciones.isEmpty() ? 0 : migraciones.get(migraciones.size() - 1).getVersion();
+    }
+
+    /**
+     * Lee la versión actual del esquema.
+     *
+     * @param conexion Conexión abierta.
+     * @return Valor de {@code PRAGMA user_version} (0 en una base de datos nueva o anterior a las migraciones).
+     * @throws SQLException Si falla la lectura.
+     */
+    public static int leerVersion(Connection conexion) throws SQLException {
+        try (Statement st = conexion.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA user_version;")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Aplica las migraciones pendientes, cada una en su propia transacción.
+     * Si una falla se deshace solo esa y se detiene el proceso. Si alguna de las aplicadas lo pide
+     * ({@link Migracion#requiereCompactar()}), al final se compacta el fichero con {@code VACUUM},
+     * que no puede ejecutarse dentro de una transacción.
+     *
+     * @param conexion Conexión de escritura (en modo autocommit).
+     * @return Número de migraciones aplicadas.
+     * @throws SQLException Si alguna migración falla.
+     */
+    public int migrar(Connection conexion) throws SQLException {
+        int version = leerVersion(conexion);
+        if (version >= getUltimaVersion()) return 0;
+
+        int aplicadas = 0;
+        boolean compactar = false;
+        for (Migracion migracion : migraciones) {
+            if (migracion.getVersion() <= version) continue;
+            conexion.setAutoCommit(false);
+            try (Statement st = conexion.createStatement()) {
+                migracion.aplicar(conexion);
+                st.execute("PRAGMA user_version = " + migracion.getVersion() + ";");
+                conexion.commit();
+                aplicadas++;
+                compactar |= migracion.requiereCompactar();
+                System.out.println("Esquema migrado a v" + migracion.getVersion() + ": " + migracion.getDescripcion());
+            } catch (SQLException e) {
+                conexion.rollback();
+                throw new SQLException("Fallo en la migración v" + migracion.getVersion() + ": " + e.getMessage(), e);
+            } finally {
+                conexion.setAutoCommit(true);
+            }
+        }
+        if (compactar) {
+            try (Statement st = conexion.createStatement()) {
+                st.execute("VACUUM;");
+            }
+        }
+        return aplicadas;
+    }
+}
@@ -48,6 +48,11 @@ public class Emisiones {
      */
     private String nombreEmpresa;
 
+    /**
+     * Indica que el CO2e se ha calculado con el catálogo de factores de emisión (cantidad × factor)
+     * en lugar de escribirse a mano; solo estas emisiones se recalculan al revisar un factor.
+     */
+    private boolean co2eCalculado;
 
     /**
      * Constructor para crear un nuevo registro de emisión (sin persistir).
@@ -89,6 +94,25 @@ public class Emisiones {
         this.idEmpresa = idEmpresa;
     }
 
+    /**
+     * Constructor para un registro recuperado de la base de datos con la fecha ya convertida.
+     *
+     * @param id El identificador único del registro.
+     * @param tipoEmision El tipo de emisión.
+     * @param cantidadEmision La cantidad emitida.
+     * @param co2e El cálculo de CO2.
+     * @param fecha La fecha del registro.
+     * @param idEmpresa El ID de la empresa asociada.
+     */
+    public Emisiones(Long id, String tipoEmision, double cantidadEmision, double co2e, LocalDate fecha, Long idEmpresa) {
+        this.id = id;
+        this.tipoEmision = tipoEmision;
+        this.cantidadEmision = cantidadEmision;
+        this.co2e = co2e;
+        this.fecha = fecha;
+        this.idEmpresa = idEmpresa;
+    }
+
     // Getters y Setters
 
     /**
@@ -141,4 +165,17 @@ public class Emisiones {
      * @param nombreEmpresa El nombre de la empresa.
      */
     public void setNombreEmpresa(String nombreEmpresa) { this.nombreEmpresa = nombreEmpresa; }
-}
\ No newline at end of file
+
+    /**
+     * Indica si el CO2e se ha calculado con el catálogo de factores de emisión.
+     * @return true si es cantidad × factor; false si se escribió a mano o se importó.
+     */
+    public boolean isCo2eCalculado() { return co2eCalculado; }
+
+    /**
+     * Marca el CO2e como calculado con el catálogo de factores (o como escrito a mano).
+     *
+     * @param co2eCalculado true si el CO2e es cantidad × factor.
+     */
+    public void setCo2eCalculado(boolean co2eCalculado) { this.co2eCalculado = co2eCalculado; }
+}
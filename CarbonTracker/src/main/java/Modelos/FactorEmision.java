@@ -0,0 +1,95 @@
+package Modelos;
+
+import java.time.LocalDate;
+
+/**
+ * Factor de emisión del catálogo: kg de CO2e por unidad de un tipo de emisión durante un periodo.
+ * <p>
+ * Con él, el CO2e de una emisión se obtiene de su cantidad: {@code cantidad × factor}.
+ * Si varios periodos de un mismo tipo se solapan, se aplica el que empieza más tarde.
+ */
+public class FactorEmision {
+
+    /**
+     * Identificador único (ID) del factor.
+     */
+    private Long id;
+
+    /**
+     * Tipo de emisión al que se aplica (ej. "Electricidad").
+     */
+    private String tipo;
+
+    /**
+     * Unidad de la cantidad (ej. "kWh", "l", "km").
+     */
+    private String unidad;
+
+    /**
+     * kg de CO2e por unidad.
+     */
+    private double factor;
+
+    /**
+     * Primer día de validez.
+     */
+    private LocalDate desde;
+
+    /**
+     * Último día de validez (null si sigue vigente).
+     */
+    private LocalDate hasta;
+
+    /**
+     * Constructor para un factor recuperado de la base de datos.
+     *
+     * @param id Identificador del factor.
+     * @param tipo Tipo de emisión.
+     * @param unidad Unidad de la cantidad.
+     * @param factor kg de CO2e por unidad.
+     * @param desde Primer día de validez.
+     * @param hasta Último día de validez (null si no tiene fin).
+     */
+    public FactorEmision(Long id, String tipo, String unidad, double factor, LocalDate desde, LocalDate hasta) {
+        this.id = id;
+        this.tipo = tipo;
+        this.unidad = unidad;
+        this.factor = factor;
+        this.desde = desde;
+        this.hasta = hasta;
+    }
+
+    // Getters
+
+    public Long getId() { return id; }
+
+    public String getTipo() { return tipo; }
+
+    public String getUnidad() { return unidad; }
+
+    public double getFactor() { return factor; }
+
+    public LocalDate getDesde() { return desde; }
+
+    public LocalDate getHasta() { return hasta; }
+
+    /**
+     * Indica si el factor está vigente en una fecha.
+     *
+     * @param fecha Fecha de la emisión.
+     * @return true si la fecha está dentro del periodo de validez.
+     */
+    public boolean vigenteEn(LocalDate fecha) {
+        return !fecha.isBefore(desde) && (hasta == null || !fecha.isAfter(hasta));
+    }
+
+    /**
+     * CO2e de una cantidad con este factor.
+     *
+     * @param cantidad Cantidad en {@link #getUnidad()}.
+     * @return kg de CO2e.
+     */
+    public double calcularCo2e(double cantidad) {
+        return cantidad * factor;
+    }
+}
@@ -1,6 +1,6 @@
 package Modelos;
 
-import DAO.GestorBD;
+import DAO.GestorBDAsincrono;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -31,8 +31,8 @@ import java.util.Map;
  */
 public class PanelRecomendaciones extends VBox {
 
-    /** Instancia del gestor de datos para realizar consultas. */
-    private final GestorBD gestorBD;
+    /** Instancia del gestor de datos para realizar consultas (en segundo plano). */
+    private final GestorBDAsincrono gestorBD;
 
     /** Contenedor que se encarga de actualizar la información para el reporte generado. */
     private final VBox contenedorResultados;
@@ -42,12 +42,23 @@ public class PanelRecomendaciones extends VBox {
     private String textoResumen = "";
     private String[] consejosActuales = new String[]{};
 
+    /** Empresa del último análisis solicitado: las respuestas de análisis anteriores se descartan. */
+    private Empresa empresaSolicitada;
+
+    /**
+     * Datos de un análisis, leídos juntos en segundo plano.
+     *
+     * @param reporte CO2e total por tipo de emisión.
+     * @param tipos Tipos de emisión del diccionario, para conocer la categoría de cada uno.
+     */
+    private record DatosAnalisis(List<Map.Entry<String, Double>> reporte, List<TipoEmision> tipos) { }
+
     /**
      * Inicializa el panel de recomendaciones con su estructura base y el selector de empresas.
      *
-     * @param gestorBD El gestor de base de datos inicializado.
+     * @param gestorBD El gestor asíncrono de base de datos inicializado.
      */
-    public PanelRecomendaciones(GestorBD gestorBD) {
+    public PanelRecomendaciones(GestorBDAsincrono gestorBD) {
         this.gestorBD = gestorBD;
 
         // Configuración del estilo base del panel (Tarjeta)
@@ -64,9 +75,12 @@ public class PanelRecomendaciones extends VBox {
         tituloSeccion.getStyleClass().add("titulo-dash");
 
         ComboBox<Empresa> selectorEmpresa = new ComboBox<>();
-        selectorEmpresa.setPromptText("Seleccione una Empresa para analizar...");
+        selectorEmpresa.setPromptText("Cargando empresas...");
         selectorEmpresa.setPrefWidth(300);
-        selectorEmpresa.setItems(FXCollections.observableArrayList(gestorBD.getTodasEmpresas()));
+        gestorBD.llamar(g -> g.getTodasEmpresas(), empresas -> {
+            selectorEmpresa.setItems(FXCollections.observableArrayList(empresas));
+            selectorEmpresa.setPromptText("Seleccione una Empresa para analizar...");
+        });
 
         // Listener
         selectorEmpresa.setOnAction(e -> {
@@ -116,11 +130,27 @@ public class PanelRecomendaciones extends VBox {
      * @param empresa La empresa sobre la que realizar el análisis.
      */
     private void generarAnalisis(Empresa empresa) {
-        contenedorResultados.getChildren().clear();
-        this.nombreEmpresaActual = empresa.getNombreEmpresa();
+        empresaSolicitada = empresa;
+        ProgressIndicator progreso = new ProgressIndicator();
+        progreso.setMaxSize(40, 40);
+        contenedorResultados.getChildren().setAll(progreso);
 
         // 1. Se recopilan los datos
-        List<Map.Entry<String, Double>> reporte = gestorBD.getReporteEmisionesPorEmpresa(empresa.getId());
+        gestorBD.llamar(g -> new DatosAnalisis(g.getReporteEmisionesPorEmpresa(empresa.getId()), g.getTiposEmision()), datos -> {
+            if (empresa == empresaSolicitada) mostrarAnalisis(empresa, datos.reporte(), datos.tipos());
+        });
+    }
+
+    /**
+     * Construye el informe de optimización con los datos ya recuperados.
+     *
+     * @param empresa La empresa analizada.
+     * @param reporte CO2e total por tipo de emisión.
+     * @param tipos Tipos de emisión del diccionario.
+     */
+    private void mostrarAnalisis(Empresa empresa, List<Map.Entry<String, Double>> reporte, List<TipoEmision> tipos) {
+        contenedorResultados.getChildren().clear();
+        this.nombreEmpresaActual = empresa.getNombreEmpresa();
 
         if (reporte.isEmpty()) {
             Label sinDatos = new Label("⚠ No hay registros de emisiones para " + empresa.getNombreEmpresa() + ".");
@@ -171,7 +201,7 @@ public class PanelRecomendaciones extends VBox {
         cajaRecomendaciones.getChildren().add(etiquetaRecomendaciones);
 
         // Configuración de la lista de consejos por emisión
-        this.consejosActuales = obtenerConsejos(tipoDominante);
+        this.consejosActuales = obtenerConsejos(categoriaDe(tipoDominante, tipos));
 
         for (String consejo : consejosActuales) {
             HBox objConsejo = new HBox(10);
@@ -253,37 +283,47 @@ public class PanelRecomendaciones extends VBox {
         popUp.showAndWait();
     }
 
+    /**
+     * Categoría de un tipo de emisión según el diccionario ("Consumo Eléctrico" → ELECTRICIDAD).
+     */
+    private static TipoEmision.Categoria categoriaDe(String nombreTipo, List<TipoEmision> tipos) {
+        for (TipoEmision tipo : tipos) {
+            if (tipo.getNombre().equals(nombreTipo)) return tipo.getCategoria();
+        }
+        return TipoEmision.Categoria.OTROS;
+    }
+
     /**
      * Retorna sugerencias basadas en la categoría de emisión.
      * Este contenido es reciclable y exportable. Estos consejos son genéricos y limitados
      * la opción más lógica sería insertar un token de alguna IA para poder darlos de forma
      * personalizada.
      */
-    private String[] obtenerConsejos(String tipoRecomendado) {
-        return switch (tipoRecomendado.toUpperCase()) {
-            case "ELECTRICIDAD" -> new String[]{
+    private String[] obtenerConsejos(TipoEmision.Categoria categoria) {
+        return switch (categoria) {
+            case ELECTRICIDAD -> new String[]{
                     "Realizar una auditoría energética (ISO 50001).",
                     "Instalar sensores de movimiento e iluminación LED.",
                     "Contratar proveedores de energía 100% renovable.",
                     "Programar el apagado automático de maquinaria en stand-by."
             };
-            case "TRANSPORTE" -> new String[]{
+            case TRANSPORTE -> new String[]{
                     "Optimizar rutas de distribución mediante software GPS.",
                     "Renovar la flota hacia vehículos eléctricos o híbridos.",
                     "Fomentar el teletrabajo para reducir desplazamientos in itinere.",
                     "Revisar la presión de neumáticos mensualmente (ahorro 5-10%)."
             };
-            case "COMBUSTIÓN", "CALEFACCIÓN" -> new String[]{
+            case COMBUSTION -> new String[]{
                     "Sustituir calderas antiguas por bombas de calor aerotérmicas.",
                     "Mejorar el aislamiento térmico de las instalaciones.",
                     "Instalar termostatos inteligentes y zonificados."
             };
-            case "RESIDUOS" -> new String[]{
+            case RESIDUOS -> new String[]{
                     "Implementar política de 'Residuo Cero' en oficinas.",
                     "Negociar envases retornables con proveedores.",
                     "Separar y valorizar subproductos industriales."
             };
-            default ->
+            case OTROS ->
                     new String[]{"Contacte con un consultor ambiental para un análisis detallado de esta categoría."};
         };
     }
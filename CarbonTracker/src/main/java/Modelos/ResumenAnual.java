@@ -0,0 +1,71 @@
+package Modelos;
+
+/**
+ * Total de CO2e de un año, comparado con el año anterior.
+ * <p>
+ * Se calcula a partir del resumen mensual de emisiones (tabla {@code emision_mensual}),
+ * para una empresa o para todas.
+ */
+public class ResumenAnual {
+
+    /**
+     * Año del resumen.
+     */
+    private int anio;
+
+    /**
+     * CO2e total del año en kg.
+     */
+    private double co2e;
+
+    /**
+     * CO2e total del año anterior en kg (null si no hay datos de ese año).
+     */
+    private Double co2eAnterior;
+
+    /**
+     * Número de emisiones registradas en el año.
+     */
+    private long numEmisiones;
+
+    /**
+     * Crea el resumen de un año.
+     *
+     * @param anio Año.
+     * @param co2e CO2e total del año.
+     * @param co2eAnterior CO2e total del año anterior (null si no hay datos).
+     * @param numEmisiones Número de emisiones del año.
+     */
+    public ResumenAnual(int anio, double co2e, Double co2eAnterior, long numEmisiones) {
+        this.anio = anio;
+        this.co2e = co2e;
+        this.co2eAnterior = co2eAnterior;
+        this.numEmisiones = numEmisiones;
+    }
+
+    // Getters
+
+    public int getAnio() { return anio; }
+
+    public double getCo2e() { return co2e; }
+
+    public Double getCo2eAnterior() { return co2eAnterior; }
+
+    public long getNumEmisiones() { return numEmisiones; }
+
+    /**
+     * Diferencia con el año anterior.
+     * @return kg de CO2e de más (positivo) o de menos (negativo), o null si no hay año anterior.
+     */
+    public Double getVariacion() {
+        return co2eAnterior != null ? co2e - co2eAnterior : null;
+    }
+
+    /**
+     * Variación relativa con el año anterior.
+     * @return Porcentaje de cambio (15.0 = un 15 % más), o null si no hay año anterior o fue cero.
+     */
+    public Double getVariacionPorcentaje() {
+        return co2eAnterior != null && co2eAnterior != 0 ? (co2e - co2eAnterior) * 100 / co2eAnterior : null;
+    }
+}
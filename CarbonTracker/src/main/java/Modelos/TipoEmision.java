@@ -0,0 +1,85 @@
+package Modelos;
+
+import java.util.List;
+
+/**
+ * Tipo de emisión del diccionario (tabla {@code emision_tipo}): nombre canónico, categoría y
+ * las formas alternativas con las que se escribe (alias).
+ * <p>
+ * "Consumo Eléctrico", "electricidad" o "Energía eléctrica" son alias del mismo tipo "Electricidad":
+ * las emisiones guardan el ID del tipo, no el texto tecleado.
+ */
+public class TipoEmision {
+
+    /**
+     * Categoría del tipo, que decide las recomendaciones de reducción.
+     */
+    public enum Categoria {
+        ELECTRICIDAD,
+        TRANSPORTE,
+        COMBUSTION,
+        RESIDUOS,
+        OTROS;
+
+        /**
+         * @param texto Nombre de la categoría guardado en la base de datos.
+         * @return La categoría, u {@link #OTROS} si no se reconoce.
+         */
+        public static Categoria de(String texto) {
+            for (Categoria categoria : values()) {
+                if (categoria.name().equals(texto)) return categoria;
+            }
+            return OTROS;
+        }
+    }
+
+    /**
+     * Identificador único (ID) del tipo.
+     */
+    private int id;
+
+    /**
+     * Nombre canónico (el que se muestra en listados e informes).
+     */
+    private String nombre;
+
+    /**
+     * Categoría del tipo.
+     */
+    private Categoria categoria;
+
+    /**
+     * Formas alternativas del nombre, incluido el propio nombre.
+     */
+    private List<String> alias;
+
+    /**
+     * Constructor para un tipo recuperado de la base de datos.
+     *
+     * @param id Identificador del tipo.
+     * @param nombre Nombre canónico.
+     * @param categoria Categoría del tipo.
+     * @param alias Formas alternativas del nombre.
+     */
+    public TipoEmision(int id, String nombre, Categoria categoria, List<String> alias) {
+        this.id = id;
+        this.nombre = nombre;
+        this.categoria = categoria;
+        this.alias = alias;
+    }
+
+    // Getters
+
+    public int getId() { return id; }
+
+    public String getNombre() { return nombre; }
+
+    public Categoria getCategoria() { return categoria; }
+
+    public List<String> getAlias() { return alias; }
+
+    @Override
+    public String toString() {
+        return nombre;
+    }
+}
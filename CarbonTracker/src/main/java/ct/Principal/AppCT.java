@@ -1,7 +1,17 @@
 package ct.Principal;
 
+import DAO.Cancelacion;
+import DAO.ConfiguracionBD;
 import DAO.ControlCSV;
+import DAO.DiccionarioTipos;
+import DAO.ExportadorCSV;
+import DAO.FiltroEmisiones;
 import DAO.GestorBD;
+import DAO.GestorBDAsincrono;
+import DAO.ImportadorCSV;
+import DAO.MetricasBD;
+import DAO.RecalculoCo2e;
+import DAO.RegistroConsultasLentas;
 import Modelos.*;
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -24,11 +34,20 @@ import javafx.stage.Stage;
 import org.kordamp.ikonli.javafx.FontIcon;
 import org.kordamp.ikonli.materialdesign.MaterialDesign;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 import java.text.NumberFormat;
 import java.util.Locale;
 import java.time.format.DateTimeFormatter;
@@ -53,8 +72,20 @@ public class AppCT extends Application {
     // 1. VARIABLES Y COMPONENTES GLOBALES
     // ==========================================
 
-    /** Instancia del Gestor de Base de Datos para todas las operaciones de persistencia. */
-    private GestorBD gestorBD;
+    /** Meses que abarca el gráfico de tendencia del dashboard. */
+    private static final int MESES_TENDENCIA = 24;
+
+    /** Ejecuciones de una consulta lenta que se muestran en su detalle. */
+    private static final int EJECUCIONES_LENTAS_DETALLE = 20;
+
+    /**
+     * Gestor de Base de Datos para todas las operaciones de persistencia.
+     * Se usa siempre a través de la fachada asíncrona: ninguna consulta se ejecuta en el hilo de JavaFX.
+     */
+    private GestorBDAsincrono gestorBD;
+
+    /** Vigilante de bloqueos del hilo de JavaFX (su informe se exporta desde la vista de rendimiento). */
+    private VigilanteHiloFX vigilanteFX;
 
     /** Usuario autenticado en la sesión actual; determina los permisos de acceso. */
     private Usuario usuarioSesionActual;
@@ -62,11 +93,14 @@ public class AppCT extends Application {
     /** Panel central del layout que cambia dinámicamente según la opción del menú seleccionada. */
     private BorderPane contenidoPrincipal;
 
-    /** Lista observable para sincronizar los datos de la tabla de Empresas. */
-    private ObservableList<Empresa> infoEmpresa = FXCollections.observableArrayList();
+    /** Lista observable para sincronizar los datos de la tabla de Empresas (se actualiza por diferencias con cada búsqueda). */
+    private ListaReconciliable<Empresa, Long> infoEmpresa = new ListaReconciliable<>(Empresa::getId,
+            (a, b) -> Objects.equals(a.getNombreEmpresa(), b.getNombreEmpresa())
+                    && Objects.equals(a.getSector(), b.getSector())
+                    && a.getAuxiliarAlmacenC02() == b.getAuxiliarAlmacenC02());
 
-    /** Lista observable para sincronizar los datos de la tabla de Emisiones. */
-    private ObservableList<Emisiones> infoEmision = FXCollections.observableArrayList();
+    /** Lista paginada de la tabla de Emisiones: solo lee de la base de datos las filas que se muestran. */
+    private ListaEmisionesPaginada infoEmision;
 
     /** Componente visual de la tabla de empresas. */
     private TableView<Empresa> tablaEmpresa = new TableView<>();
@@ -93,9 +127,21 @@ public class AppCT extends Application {
 
     /** Campo de texto para filtrar la tabla de emisiones. */
     private TextField busquedaEmision;
+    private DatePicker desdeEmision;
+    private DatePicker hastaEmision;
 
-    /** Lista para los registros de auditoría (solo Administrador). */
-    private ObservableList<Modelos.AuditoriaLog> infoAuditoria = FXCollections.observableArrayList();
+    /** Etiqueta con el número de emisiones que cumplen el filtro actual. */
+    private Label totalEmisiones = new Label();
+
+    /** Búsqueda en segundo plano de la lista de empresas. */
+    private BusquedaDiferida<String, List<Empresa>> busquedaEmpresas;
+
+    /** Búsqueda en segundo plano de la lista de emisiones (recuento y primera página). */
+    private BusquedaDiferida<FiltroEmisiones, ListaEmisionesPaginada.Carga> busquedaEmisiones;
+
+    /** Lista para los registros de auditoría (solo Administrador). Los registros no cambian: basta con el ID. */
+    private ListaReconciliable<Modelos.AuditoriaLog, Long> infoAuditoria = new ListaReconciliable<>(Modelos.AuditoriaLog::getId,
+            (a, b) -> Objects.equals(a.getAccion(), b.getAccion()) && Objects.equals(a.getNombreUsuario(), b.getNombreUsuario()));
 
     /** Tabla para ver los registros de auditoría. */
     private TableView<Modelos.AuditoriaLog> tablaAuditoria = new TableView<>();
@@ -105,7 +151,11 @@ public class AppCT extends Application {
     /** Coordenada Y para el cálculo del arrastre de la ventana personalizada. */
     private double yOffset = 0;
     /** Lista para la vista de usuarios (solo Administrador). */
-    private ObservableList<Usuario> infoUsuarios = FXCollections.observableArrayList();
+    private ListaReconciliable<Usuario, Long> infoUsuarios = new ListaReconciliable<>(Usuario::getId,
+            (a, b) -> Objects.equals(a.getNombreUsuario(), b.getNombreUsuario())
+                    && Objects.equals(a.getNombreCompleto(), b.getNombreCompleto())
+                    && a.isActivo() == b.isActivo()
+                    && Objects.equals(a.getRol() != null ? a.getRol().getId() : null, b.getRol() != null ? b.getRol().getId() : null));
     /** Tabla para ver los registros de los usuarios. */
     private TableView<Usuario> tablaUsuarios = new TableView<>();
     /** Contenedor para la vista de la lista de los usuarios. */
@@ -123,6 +173,26 @@ public class AppCT extends Application {
         launch(args);
     }
 
+    /**
+     * Abre y migra la base de datos antes de mostrar ninguna ventana.
+     * <p>
+     * JavaFX ejecuta este método en el hilo del lanzador, no en el de la interfaz,
+     * así que la migración del esquema no retrasa el pintado de la aplicación.
+     */
+    @Override
+    public void init() {
+        // La vista de rendimiento muestra las métricas por método del gestor
+        ConfiguracionBD configuracion = new ConfiguracionBD();
+        configuracion.setAtribucionOperaciones(true);
+        GestorBD gestor = new GestorBD(configuracion);
+        gestor.arrancarBD();
+        gestorBD = new GestorBDAsincrono(gestor, Platform::runLater);
+        // Copia en memoria para los agregados del dashboard; mientras se carga se consulta con SQL
+        gestorBD.ejecutar(GestorBD::cargarAlmacenColumnar);
+        vigilanteFX = new VigilanteHiloFX(Platform::runLater, VigilanteHiloFX.UMBRAL_POR_DEFECTO);
+        vigilanteFX.iniciar();
+    }
+
     /**
      * Punto de entrada principal del ciclo de vida de la aplicación.
      * <p>
@@ -136,8 +206,18 @@ public class AppCT extends Application {
      */
     @Override
     public void start(Stage principal) {
-        gestorBD = new GestorBD();
-        gestorBD.arrancarBD();
+        // Al cerrar sesión se vuelve a llamar a start: reutilizamos el gestor, su pool de conexiones y las búsquedas
+        if (infoEmision == null) {
+            gestorBD.setManejadorErrores(error -> popUpError("Error de Base de Datos",
+                    "No se pudo completar la operación.", error.getMessage()));
+            infoEmision = new ListaEmisionesPaginada(gestorBD);
+            busquedaEmpresas = BusquedaDiferida.crear("busqueda-empresas",
+                    termino -> gestorBD.getGestorBD().getTodasEmpresas(termino),
+                    this::mostrarEmpresas);
+            busquedaEmisiones = BusquedaDiferida.crear("busqueda-emisiones",
+                    filtro -> infoEmision.consultar(filtro),
+                    this::mostrarCargaEmisiones);
+        }
         // Estilo de ventana sin decoración del SO para usar nuestra barra personalizada
         principal.initStyle(javafx.stage.StageStyle.UNDECORATED);
 
@@ -180,14 +260,15 @@ public class AppCT extends Application {
         bPrincipal.setCenter(contenedorPrincipal);
 
         // Configuración de buscadores
+        // (la búsqueda al teclear se registra en cada vista, una sola vez)
         busquedaEmpresa = new TextField();
         busquedaEmpresa.setPromptText("Buscar empresa o sector...");
-        busquedaEmpresa.textProperty().addListener((obs, oldV, newV)
-                -> cargarListaEmpresa());
         busquedaEmision = new TextField();
         busquedaEmision.setPromptText("Buscar por empresa, tipo o fecha...");
-        busquedaEmision.textProperty().addListener((obs, oldV, newV)
-                -> cargarListaEmision());
+        desdeEmision = new DatePicker();
+        desdeEmision.setPromptText("Desde");
+        hastaEmision = new DatePicker();
+        hastaEmision.setPromptText("Hasta");
 
         // Se cargan los datos
         vistaListaEmpresa = crearVistaListaEmpresa(principal);
@@ -216,6 +297,21 @@ public class AppCT extends Application {
         cargarListaEmision();
     }
 
+    /**
+     * Cierre ordenado de la aplicación.
+     * <p>
+     * Libera las conexiones del pool de la base de datos antes de que termine la JVM.
+     */
+    @Override
+    public void stop() {
+        if (busquedaEmpresas != null) busquedaEmpresas.cerrar();
+        if (busquedaEmisiones != null) busquedaEmisiones.cerrar();
+        if (vigilanteFX != null) vigilanteFX.detener();
+        if (gestorBD != null) {
+            gestorBD.cerrar();
+        }
+    }
+
     // ==========================================
     // ESTRUCTURA BASE (BARRA, SIDEBAR, CABECERA)
     // ==========================================
@@ -325,6 +421,10 @@ public class AppCT extends Application {
         addEmision.getStyleClass().add("bton-nav");
         addEmision.setOnAction(e -> ventanaRegistroEmision(vista, null));
 
+        Button btnImportar = new Button("⬆ Importar CSV");
+        btnImportar.getStyleClass().add("bton-nav");
+        btnImportar.setOnAction(e -> ventanaImportacion(vista));
+
         // SECCIÓN OPTIMIZACIÓN
         Label tituloOptimizacion = new Label("OPTIMIZACIÓN");
         tituloOptimizacion.getStyleClass().add("nav-header");
@@ -336,7 +436,7 @@ public class AppCT extends Application {
             contenidoPrincipal.setCenter(moduloRecomendaciones);
         });
 
-        botonesNavegacion.getChildren().addAll(tituloEmpresa, botonVerEmpresa, addEmpresa, tituloEmision, botonVerEmision, addEmision,tituloOptimizacion,
+        botonesNavegacion.getChildren().addAll(tituloEmpresa, botonVerEmpresa, addEmpresa, tituloEmision, botonVerEmision, addEmision, btnImportar, tituloOptimizacion,
                 btnRecomendaciones);
 
         // AUDITORIA (Solo ADMIN) ---
@@ -352,6 +452,10 @@ public class AppCT extends Application {
                 contenidoPrincipal.setCenter(crearVistaAuditoria());
 
             });
+            Button btnRendimiento = new Button("⏱ Rendimiento");
+            btnRendimiento.getStyleClass().add("bton-nav");
+            btnRendimiento.setOnAction(e -> contenidoPrincipal.setCenter(crearVistaRendimiento()));
+
             Button btnUsuarios = new Button("👥 Gestión Usuarios");
             btnUsuarios.getStyleClass().add("bton-nav");
             btnUsuarios.setOnAction(e -> {
@@ -359,7 +463,7 @@ public class AppCT extends Application {
                 vistaListaUsuarios = crearVistaUsuarios();
                 contenidoPrincipal.setCenter(vistaListaUsuarios);
             });
-            botonesNavegacion.getChildren().addAll(tituloAdmin, btnAuditoria, btnUsuarios);
+            botonesNavegacion.getChildren().addAll(tituloAdmin, btnAuditoria, btnRendimiento, btnUsuarios);
         }
 
         // APLICACIÓN ROLES
@@ -369,6 +473,8 @@ public class AppCT extends Application {
             addEmpresa.setManaged(false);
             addEmision.setVisible(false);
             addEmision.setManaged(false);
+            btnImportar.setVisible(false);
+            btnImportar.setManaged(false);
         } else if (rol.equals("USUARIO")) {
             addEmpresa.setVisible(true);
             addEmpresa.setManaged(true);
@@ -476,7 +582,8 @@ public class AppCT extends Application {
         btnExportarEmpresa.setOnAction(e -> {
             // Guardamos en BD el estado actual antes de exportar
             String ordenActual = getTextoFiltro(tablaEmpresa);
-            gestorBD.registrarFiltro(busquedaEmpresa.getText(), ordenActual, "EMPRESAS", usuarioSesionActual);
+            String criterio = busquedaEmpresa.getText();
+            gestorBD.ejecutar(g -> g.registrarFiltro(criterio, ordenActual, "EMPRESAS", usuarioSesionActual));
 
             exportarEmpresas(vista);
         });
@@ -487,12 +594,13 @@ public class AppCT extends Application {
         // Tabla
         columnasTablaEmpresa(vista);
         tablaEmpresa.setItems(infoEmpresa);
+        tablaEmpresa.setPlaceholder(indicadorCarga("Cargando empresas..."));
         VBox.setVgrow(tablaEmpresa, Priority.ALWAYS);
 
         // Lógica de actualización
         // Adición caja de búsqueda al filtro
         busquedaEmpresa.textProperty().addListener((obs, oldV, newV) -> {
-            cargarListaEmpresa(); // Tu método existente de filtrado
+            busquedaEmpresas.solicitar(newV);
             actualizarEtiquetaFiltro(etiquetaFiltro, newV, tablaEmpresa);
         });
 
@@ -565,29 +673,48 @@ public class AppCT extends Application {
             // Contexto dinámico (Global o por Empresa)
             String contextoLog = (empresaObjetivo != null) ? "EMISIONES (" + empresaObjetivo.getNombreEmpresa() + ")" : "EMISIONES (GLOBAL)";
 
-            gestorBD.registrarFiltro(busquedaEmision.getText(), ordenActual, contextoLog, usuarioSesionActual);
+            String criterio = busquedaEmision.getText();
+            gestorBD.ejecutar(g -> g.registrarFiltro(criterio, ordenActual, contextoLog, usuarioSesionActual));
 
             exportarEmisiones(vista);
         });
 
-        cajaBusqueda.getChildren().addAll(busquedaEmision, btnExportarEmision);
+        // Intervalo de fechas: cada extremo acota el recorrido del índice de días
+        desdeEmision.setPrefWidth(130);
+        hastaEmision.setPrefWidth(130);
+        Button btnLimpiarFechas = new Button("", new FontIcon(MaterialDesign.MDI_CALENDAR_REMOVE));
+        btnLimpiarFechas.setTooltip(new Tooltip("Quitar el intervalo de fechas"));
+        btnLimpiarFechas.setOnAction(e -> {
+            desdeEmision.setValue(null);
+            hastaEmision.setValue(null);
+        });
+
+        cajaBusqueda.getChildren().addAll(busquedaEmision, desdeEmision, hastaEmision, btnLimpiarFechas, btnExportarEmision);
         cajaBusqueda.setPadding(new Insets(10, 0, 10, 0));
 
         // Configuración de la tabla
         columnasTabEmision(vista);
         tablaEmision.setItems(infoEmision);
+        tablaEmision.setPlaceholder(indicadorCarga("Cargando emisiones..."));
         VBox.setVgrow(tablaEmision, Priority.ALWAYS);
 
         // Actualización de estados de filtro
         // Adicion de estado para la búsqueda
         busquedaEmision.textProperty().addListener((obs, oldV, newV) -> {
-            cargarListaEmision();
-            actualizarEtiquetaFiltro(registroFiltro, newV, tablaEmision);
+            busquedaEmisiones.solicitar(filtroEmisiones());
+            actualizarEtiquetaEmisiones(registroFiltro);
         });
+        // Cambio de fechas: se consulta sin esperar, no hay tecleo que agrupar
+        for (DatePicker selector : List.of(desdeEmision, hastaEmision)) {
+            selector.valueProperty().addListener((obs, oldV, newV) -> {
+                busquedaEmisiones.ejecutarYa(filtroEmisiones());
+                actualizarEtiquetaEmisiones(registroFiltro);
+            });
+        }
 
         // Adición de estado de filtro por columna
         tablaEmision.getSortOrder().addListener((ListChangeListener<TableColumn<Emisiones, ?>>) c -> {
-            actualizarEtiquetaFiltro(registroFiltro, busquedaEmision.getText(), tablaEmision);
+            actualizarEtiquetaEmisiones(registroFiltro);
         });
         // Forzamos la actualización de ASC o DESC de la leyenda del filtro
         for (TableColumn<Empresa, ?> col : tablaEmpresa.getColumns()) {
@@ -595,7 +722,9 @@ public class AppCT extends Application {
                     actualizarEtiquetaFiltro(registroFiltro, busquedaEmpresa.getText(), tablaEmpresa));
         }
 
-        vistaListaEmisiones.getChildren().addAll(cabecera, cajaBusqueda, registroFiltro, tablaEmision);
+        totalEmisiones.setStyle("-fx-text-fill: #6B7280; -fx-font-size: 12px; -fx-padding: 5 0 0 5;");
+
+        vistaListaEmisiones.getChildren().addAll(cabecera, cajaBusqueda, registroFiltro, tablaEmision, totalEmisiones);
         VBox.setMargin(vistaListaEmisiones, new Insets(0, 30, 30, 30));
         return vistaListaEmisiones;
     }
@@ -690,8 +819,8 @@ public class AppCT extends Application {
 
                     // Invertimos el estado y guardamos en BD
                     boolean cambioEstado = !usuario.isActivo();
-                    gestorBD.bloqueoUsuario(usuario.getId(), cambioEstado);
-                    cargarListaUsuarios(); // Refrescamos la tabla
+                    gestorBD.ejecutar(g -> g.bloqueoUsuario(usuario.getId(), cambioEstado),
+                            () -> cargarListaUsuarios()); // Refrescamos la tabla
                 });
 
                 btnEliminar.setOnAction(e -> {
@@ -714,16 +843,17 @@ public class AppCT extends Application {
                     if (respuesta.isPresent() && respuesta.get() == ButtonType.OK) {
 
                         // Registro de borrado
-                        boolean borradoExitoso = gestorBD.borrarUsuario(usuario.getId(), usuarioSesionActual);
-                        if (borradoExitoso) {
-                            popUpOk("Usuario Eliminado", "El usuario ha sido borrado del sistema.");
-                            cargarListaUsuarios();
-                        } else {
-                            // Recogemos el error arrojado por la integridad que tiene la bd entre usuario-auditoria
-                            popUpError("No se pudo eliminar",
-                                    "El usuario tiene historial registrado.",
-                                    "Por seguridad e integridad de datos (auditoría), no se puede borrar un usuario con actividad. \n\nSolución: Bloquéalo en su lugar.");
-                        }
+                        gestorBD.llamar(g -> g.borrarUsuario(usuario.getId(), usuarioSesionActual), borradoExitoso -> {
+                            if (borradoExitoso) {
+                                popUpOk("Usuario Eliminado", "El usuario ha sido borrado del sistema.");
+                                cargarListaUsuarios();
+                            } else {
+                                // Recogemos el error arrojado por la integridad que tiene la bd entre usuario-auditoria
+                                popUpError("No se pudo eliminar",
+                                        "El usuario tiene historial registrado.",
+                                        "Por seguridad e integridad de datos (auditoría), no se puede borrar un usuario con actividad. \n\nSolución: Bloquéalo en su lugar.");
+                            }
+                        });
                     }
                 });
 
@@ -852,7 +982,8 @@ public class AppCT extends Application {
             titulo.setText("Historial de Búsquedas y Exportaciones");
             icono.setIconLiteral("mdi-filter");
             // Cargamos la lista de filtros desde BD
-            tablaAuditoria.setItems(gestorBD.getHistorialFiltros());
+            tablaAuditoria.setItems(FXCollections.observableArrayList());
+            cargarTabla(tablaAuditoria, GestorBD::getHistorialFiltros, tablaAuditoria::setItems);
         });
 
         panelBotones.getChildren().addAll(btnLogsSeguridad, btnHistorialFiltros);
@@ -867,6 +998,260 @@ public class AppCT extends Application {
         return tarjetaAudt;
     }
 
+    /**
+     * Genera la vista de rendimiento de la base de datos: por cada método del DAO (o cada sentencia SQL),
+     * llamadas, filas, errores, espera por conexión y latencias p50, p99 y máxima.
+     * <p>
+     * Las métricas están en memoria ({@link MetricasBD}), así que se leen sin pasar por la base de datos.
+     * El modo "Consultas Lentas" muestra en cambio el registro de la tabla consulta_lenta agrupado por forma
+     * de consulta y, al seleccionar una, sus últimas ejecuciones con parámetros y plan.
+     *
+     * @return Panel VBox con la tabla de métricas.
+     */
+    private VBox crearVistaRendimiento() {
+        VBox tarjetaRend = new VBox();
+        tarjetaRend.getStyleClass().add("tarjeta");
+
+        HBox cabecera = new HBox(10);
+        cabecera.setAlignment(Pos.CENTER);
+        cabecera.setPadding(new Insets(25, 0, 15, 0));
+        FontIcon icono = new FontIcon(MaterialDesign.MDI_SPEEDOMETER);
+        icono.setIconSize(24);
+        Text titulo = new Text("Rendimiento por Operación");
+        titulo.getStyleClass().add("tarjeta-title");
+        cabecera.getChildren().addAll(icono, titulo);
+
+        MetricasBD metricas = gestorBD.getGestorBD().getMetricas();
+        TableView<MetricasBD.Resumen> tablaRendimiento = new TableView<>();
+        tablaRendimiento.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+        tablaRendimiento.setPlaceholder(new Label(metricas == null ? "La instrumentación está desactivada" : "Aún no hay mediciones"));
+
+        TableColumn<MetricasBD.Resumen, String> colNombre = new TableColumn<>("OPERACIÓN");
+        colNombre.setCellValueFactory(cell -> new javafx.beans.property.SimpleStringProperty(cell.getValue().nombre()));
+        colNombre.setCellFactory(column -> new TableCell<>() {
+            @Override
+            protected void updateItem(String item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty ? null : item);
+                // El SQL completo puede ser largo: se ve entero al pasar el ratón
+                setTooltip(empty || item == null ? null : new Tooltip(item));
+            }
+        });
+        colNombre.setPrefWidth(320);
+
+        TableColumn<MetricasBD.Resumen, Number> colLlamadas = new TableColumn<>("LLAMADAS");
+        colLlamadas.setCellValueFactory(cell -> new javafx.beans.property.SimpleLongProperty(cell.getValue().llamadas()));
+        TableColumn<MetricasBD.Resumen, Number> colFilas = new TableColumn<>("FILAS");
+        colFilas.setCellValueFactory(cell -> new javafx.beans.property.SimpleLongProperty(cell.getValue().filas()));
+        TableColumn<MetricasBD.Resumen, Number> colErrores = new TableColumn<>("ERRORES");
+        colErrores.setCellValueFactory(cell -> new javafx.beans.property.SimpleLongProperty(cell.getValue().errores()));
+        TableColumn<MetricasBD.Resumen, Number> colEspera = columnaMs("ESPERA CONEXIÓN (media)", MetricasBD.Resumen::esperaMediaMs);
+
+        List<TableColumn<MetricasBD.Resumen, ?>> columnasRendimiento = List.of(colNombre, colLlamadas, colFilas, colErrores, colEspera,
+                columnaMs("P50", MetricasBD.Resumen::p50Ms), columnaMs("P99", MetricasBD.Resumen::p99Ms),
+                columnaMs("MÁXIMO", MetricasBD.Resumen::maximoMs), columnaMs("TOTAL", MetricasBD.Resumen::totalMs));
+        tablaRendimiento.getColumns().setAll(columnasRendimiento);
+        VBox.setVgrow(tablaRendimiento, Priority.ALWAYS);
+
+        // Registro de consultas lentas: una fila por forma de consulta y el detalle de la seleccionada
+        TableView<RegistroConsultasLentas.Forma> tablaLentas = new TableView<>();
+        tablaLentas.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+        tablaLentas.setPlaceholder(new Label("No hay consultas lentas registradas"));
+
+        TableColumn<RegistroConsultasLentas.Forma, String> colForma = new TableColumn<>("FORMA DE LA CONSULTA");
+        colForma.setCellValueFactory(cell -> new javafx.beans.property.SimpleStringProperty(cell.getValue().forma()));
+        colForma.setCellFactory(column -> new TableCell<>() {
+            @Override
+            protected void updateItem(String item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty ? null : item);
+                setTooltip(empty || item == null ? null : new Tooltip(item));
+            }
+        });
+        colForma.setPrefWidth(320);
+        TableColumn<RegistroConsultasLentas.Forma, String> colOperaciones = new TableColumn<>("OPERACIÓN");
+        colOperaciones.setCellValueFactory(cell -> new javafx.beans.property.SimpleStringProperty(cell.getValue().operaciones()));
+        TableColumn<RegistroConsultasLentas.Forma, Number> colVeces = new TableColumn<>("VECES");
+        colVeces.setCellValueFactory(cell -> new javafx.beans.property.SimpleLongProperty(cell.getValue().veces()));
+        TableColumn<RegistroConsultasLentas.Forma, Number> colFilasMax = new TableColumn<>("FILAS (máx.)");
+        colFilasMax.setCellValueFactory(cell -> new javafx.beans.property.SimpleLongProperty(cell.getValue().filasMaximas()));
+        TableColumn<RegistroConsultasLentas.Forma, String> colUltima = new TableColumn<>("ÚLTIMA");
+        colUltima.setCellValueFactory(cell -> new javafx.beans.property.SimpleStringProperty(cell.getValue().ultima()));
+        List<TableColumn<RegistroConsultasLentas.Forma, ?>> columnasLentas = List.of(colForma, colOperaciones, colVeces,
+                colFilasMax, columnaMs("MEDIA", RegistroConsultasLentas.Forma::mediaMs),
+                columnaMs("MÁXIMO", RegistroConsultasLentas.Forma::maximoMs), colUltima);
+        tablaLentas.getColumns().setAll(columnasLentas);
+        VBox.setVgrow(tablaLentas, Priority.ALWAYS);
+
+        TextArea detalleLentas = new TextArea();
+        detalleLentas.setEditable(false);
+        detalleLentas.setPrefRowCount(12);
+        detalleLentas.setStyle("-fx-font-family: 'monospace';");
+        detalleLentas.setPromptText("Seleccione una consulta para ver sus ejecuciones, parámetros y plan");
+        tablaLentas.getSelectionModel().selectedItemProperty().addListener((obs, anterior, forma) -> {
+            detalleLentas.clear();
+            if (forma == null) return;
+            gestorBD.llamar(g -> g.getConsultasLentas(forma.forma(), EJECUCIONES_LENTAS_DETALLE),
+                    entradas -> detalleLentas.setText(describirConsultasLentas(entradas)));
+        });
+
+        VBox panelLentas = new VBox(10, tablaLentas, detalleLentas);
+        VBox.setVgrow(panelLentas, Priority.ALWAYS);
+        panelLentas.setVisible(false);
+        panelLentas.setManaged(false);
+
+        Label lblDesde = new Label();
+        lblDesde.setPadding(new Insets(0, 0, 10, 0));
+
+        // Cabecera de botones para modo
+        HBox panelBotones = new HBox(10);
+        panelBotones.setAlignment(Pos.CENTER);
+        panelBotones.setPadding(new Insets(0, 0, 10, 0));
+
+        Button btnPorOperacion = new Button("Por Operación", new FontIcon(MaterialDesign.MDI_FUNCTION));
+        Button btnPorConsulta = new Button("Por Consulta SQL", new FontIcon(MaterialDesign.MDI_DATABASE));
+        Button btnLentas = new Button("Consultas Lentas", new FontIcon(MaterialDesign.MDI_CLOCK_ALERT));
+        Button btnActualizar = new Button("Actualizar", new FontIcon(MaterialDesign.MDI_REFRESH));
+        Button btnReiniciar = new Button("Reiniciar Contadores", new FontIcon(MaterialDesign.MDI_DELETE_SWEEP));
+        Button btnBloqueos = new Button("Exportar Bloqueos de la Interfaz", new FontIcon(MaterialDesign.MDI_FILE_EXPORT));
+        btnBloqueos.setOnAction(e -> exportarBloqueosInterfaz((Stage) tarjetaRend.getScene().getWindow()));
+
+        // Modo actual: true = por consulta SQL; lentas = registro de consultas lentas
+        boolean[] porConsulta = {false};
+        boolean[] lentas = {false};
+        Runnable refrescar = () -> {
+            tablaRendimiento.setVisible(!lentas[0]);
+            tablaRendimiento.setManaged(!lentas[0]);
+            panelLentas.setVisible(lentas[0]);
+            panelLentas.setManaged(lentas[0]);
+            btnReiniciar.setText(lentas[0] ? "Vaciar Registro" : "Reiniciar Contadores");
+            if (lentas[0]) {
+                lblDesde.setText("Ejecuciones que han superado el umbral de consulta lenta, agrupadas por forma de consulta");
+                cargarTabla(tablaLentas, GestorBD::getConsultasLentasPorForma,
+                        formas -> tablaLentas.setItems(FXCollections.observableArrayList(formas)));
+                return;
+            }
+            if (metricas == null) return;
+            tablaRendimiento.setItems(FXCollections.observableArrayList(
+                    porConsulta[0] ? metricas.getConsultas() : metricas.getOperaciones()));
+            lblDesde.setText("Mediciones desde el " + metricas.getInicio().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"))
+                    + "  ·  Bloqueos de la interfaz (más de " + vigilanteFX.getUmbralMs() + " ms): " + vigilanteFX.getBloqueos().size());
+        };
+
+        // ACCIONES
+        btnPorOperacion.setOnAction(e -> {
+            porConsulta[0] = false;
+            lentas[0] = false;
+            titulo.setText("Rendimiento por Operación");
+            colNombre.setText("OPERACIÓN");
+            colEspera.setVisible(true);
+            refrescar.run();
+        });
+        btnPorConsulta.setOnAction(e -> {
+            porConsulta[0] = true;
+            lentas[0] = false;
+            titulo.setText("Rendimiento por Consulta SQL");
+            colNombre.setText("CONSULTA SQL");
+            colEspera.setVisible(false);
+            refrescar.run();
+        });
+        btnLentas.setOnAction(e -> {
+            lentas[0] = true;
+            titulo.setText("Consultas Lentas");
+            refrescar.run();
+        });
+        btnActualizar.setOnAction(e -> refrescar.run());
+        btnReiniciar.setOnAction(e -> {
+            if (lentas[0]) {
+                gestorBD.llamar(GestorBD::borrarConsultasLentas, vaciado -> refrescar.run());
+                return;
+            }
+            if (metricas == null) return;
+            metricas.reiniciar();
+            refrescar.run();
+        });
+        for (Button boton : List.of(btnPorOperacion, btnPorConsulta, btnActualizar, btnReiniciar)) {
+            boton.setDisable(metricas == null);
+        }
+
+        btnLentas.setDisable(metricas == null);
+
+        panelBotones.getChildren().addAll(btnPorOperacion, btnPorConsulta, btnLentas, btnActualizar, btnReiniciar, btnBloqueos);
+
+        HBox pie = new HBox(lblDesde);
+        pie.setAlignment(Pos.CENTER);
+
+        tarjetaRend.getChildren().addAll(cabecera, panelBotones, pie, tablaRendimiento, panelLentas);
+        VBox.setMargin(tarjetaRend, new Insets(0, 30, 30, 30));
+
+        refrescar.run();
+        return tarjetaRend;
+    }
+
+    /**
+     * Exporta el informe de bloqueos del hilo de JavaFX ({@link VigilanteHiloFX}) a un fichero de texto.
+     * @param contActual Ventana sobre la que se abre el explorador de archivos.
+     */
+    private void exportarBloqueosInterfaz(Stage contActual) {
+        FileChooser ventanaExportacion = new FileChooser();
+        ventanaExportacion.setTitle("Guardar Informe de Bloqueos");
+        ventanaExportacion.setInitialFileName("bloqueos_interfaz.txt");
+        File archivo = ventanaExportacion.showSaveDialog(contActual);
+        if (archivo != null) {
+            try {
+                vigilanteFX.exportarInforme(archivo.toPath());
+                popUpOk("Exportación Completa", "Informe de bloqueos guardado en:\n" + archivo.getAbsolutePath());
+            } catch (IOException ex) {
+                popUpError("Error de Exportación", "No se pudo guardar el archivo.", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Texto del detalle de una forma de consulta lenta: cada ejecución con su fecha, duración, filas,
+     * operación, parámetros y plan de ejecución.
+     *
+     * @param entradas Ejecuciones de la forma, de la más reciente a la más antigua.
+     * @return Texto para el panel de detalle.
+     */
+    private String describirConsultasLentas(List<RegistroConsultasLentas.Entrada> entradas) {
+        StringBuilder texto = new StringBuilder();
+        for (RegistroConsultasLentas.Entrada entrada : entradas) {
+            texto.append(entrada.fecha()).append("  ·  ").append(String.format("%.2f ms", entrada.duracionMs()))
+                    .append("  ·  ").append(entrada.filas()).append(" filas  ·  ").append(entrada.operacion()).append('\n')
+                    .append(entrada.sql()).append('\n');
+            if (entrada.parametros() != null && !entrada.parametros().isEmpty()) {
+                texto.append("Parámetros: ").append(entrada.parametros()).append('\n');
+            }
+            texto.append("Plan:\n");
+            if (entrada.plan() != null) {
+                for (String paso : entrada.plan().split("\n")) texto.append("  ").append(paso).append('\n');
+            }
+            texto.append('\n');
+        }
+        return texto.toString();
+    }
+
+    /**
+     * Columna numérica en milisegundos (con dos decimales) de la vista de rendimiento.
+     *
+     * @param titulo Cabecera de la columna.
+     * @param valor Valor en milisegundos de cada fila.
+     * @return Columna ordenable por su valor numérico.
+     */
+    private <S> TableColumn<S, Number> columnaMs(String titulo, ToDoubleFunction<S> valor) {
+        TableColumn<S, Number> columna = new TableColumn<>(titulo);
+        columna.setCellValueFactory(cell -> new javafx.beans.property.SimpleDoubleProperty(valor.applyAsDouble(cell.getValue())));
+        columna.setCellFactory(column -> new TableCell<>() {
+            @Override
+            protected void updateItem(Number item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : String.format("%.2f ms", item.doubleValue()));
+            }
+        });
+        return columna;
+    }
+
     /**
      * Genera el Dashboard de gráficos para la empresa seleccionada.
      * @param empresa Empresa a analizar.
@@ -881,14 +1266,78 @@ public class AppCT extends Application {
         Text titulo = new Text("Dashboard de Emisiones: " + empresa.getNombreEmpresa());
         titulo.getStyleClass().add("titulo-dash");
 
-        List<Map.Entry<String, Double>> datosReporte = gestorBD.getReporteEmisionesPorEmpresa(empresa.getId());
+        // Los gráficos se construyen cuando llegan los datos; mientras, se muestra el indicador de carga
+        // (todo sale de agregados: copia en memoria o resumen mensual, sin recorrer las emisiones)
+        dashboard.getChildren().addAll(titulo, indicadorCarga("Calculando emisiones..."));
+        gestorBD.llamar(g -> new DatosDashboard(g.getReporteEmisionesPorEmpresa(empresa.getId()),
+                g.getUltimosMeses(empresa.getId(), MESES_TENDENCIA), g.getResumenAnual(empresa.getId())), datos -> {
+            if (datos.reporte().isEmpty()) {
+                dashboard.getChildren().setAll(new Text("No hay datos de emisiones registrados para esta empresa."));
+                dashboard.setAlignment(Pos.CENTER);
+            } else {
+                dashboard.getChildren().setAll(titulo, crearGraficosDashboard(datos.reporte()),
+                        crearGraficoTendencia(datos.serieMensual(), datos.resumenAnual()));
+            }
+        });
+        return dashboard;
+    }
 
-        if (datosReporte.isEmpty()) {
-            VBox error = new VBox(new Text("No hay datos de emisiones registrados para esta empresa."));
-            error.setAlignment(Pos.CENTER);
-            return error;
+    /**
+     * Datos del dashboard de una empresa, leídos juntos en segundo plano.
+     *
+     * @param reporte CO2e total por tipo de emisión.
+     * @param serieMensual CO2e de los últimos {@value #MESES_TENDENCIA} meses.
+     * @param resumenAnual Totales por año con su variación.
+     */
+    private record DatosDashboard(List<Map.Entry<String, Double>> reporte, Map<YearMonth, Double> serieMensual,
+                                  List<ResumenAnual> resumenAnual) { }
+
+    /**
+     * Construye el gráfico de evolución mensual y la comparación del último año con el anterior.
+     * @param serieMensual CO2e por mes, en orden cronológico.
+     * @param resumenAnual Totales por año.
+     * @return Contenedor con el gráfico y el resumen interanual.
+     */
+    private VBox crearGraficoTendencia(Map<YearMonth, Double> serieMensual, List<ResumenAnual> resumenAnual) {
+        DateTimeFormatter formatoMes = DateTimeFormatter.ofPattern("MM/yy");
+        final CategoryAxis ejeX = new CategoryAxis();
+        final NumberAxis ejeY = new NumberAxis();
+        final LineChart<String, Number> graficoLineas = new LineChart<>(ejeX, ejeY);
+        graficoLineas.setTitle("Evolución mensual de CO2e (kg), últimos " + MESES_TENDENCIA + " meses");
+        graficoLineas.setLegendVisible(false);
+        graficoLineas.setCreateSymbols(false);
+        graficoLineas.setPrefSize(1000, 280);
+        graficoLineas.setStyle("-fx-background-color: white;");
+
+        XYChart.Series<String, Number> serie = new XYChart.Series<>();
+        for (Map.Entry<YearMonth, Double> mes : serieMensual.entrySet()) {
+            serie.getData().add(new XYChart.Data<>(mes.getKey().format(formatoMes), mes.getValue()));
         }
+        graficoLineas.getData().add(serie);
+
+        VBox tendencia = new VBox(10, graficoLineas);
+        tendencia.setAlignment(Pos.CENTER);
+        if (!resumenAnual.isEmpty()) {
+            ResumenAnual ultimo = resumenAnual.get(resumenAnual.size() - 1);
+            NumberFormat formatoNumero = NumberFormat.getInstance(Locale.GERMANY);
+            formatoNumero.setMaximumFractionDigits(2);
+            String texto = ultimo.getAnio() + ": " + formatoNumero.format(ultimo.getCo2e()) + " kg CO2e";
+            if (ultimo.getVariacionPorcentaje() != null) {
+                texto += String.format("  (%+.1f %% respecto a %d)", ultimo.getVariacionPorcentaje(), ultimo.getAnio() - 1);
+            }
+            Label interanual = new Label(texto);
+            interanual.setStyle("-fx-text-fill: #6B7280; -fx-font-size: 13px;");
+            tendencia.getChildren().add(interanual);
+        }
+        return tendencia;
+    }
 
+    /**
+     * Construye los gráficos circular y de barras del dashboard.
+     * @param datosReporte CO2e total por tipo de emisión.
+     * @return Contenedor con ambos gráficos.
+     */
+    private HBox crearGraficosDashboard(List<Map.Entry<String, Double>> datosReporte) {
         HBox contenedorGraficos = new HBox(50);
         contenedorGraficos.setAlignment(Pos.CENTER);
         HBox.setHgrow(contenedorGraficos, Priority.ALWAYS);
@@ -918,9 +1367,7 @@ public class AppCT extends Application {
         graficoBarras.getData().add(seriesGrafico);
 
         contenedorGraficos.getChildren().addAll(graficoCircular, graficoBarras);
-        dashboard.getChildren().addAll(titulo, contenedorGraficos);
-
-        return dashboard;
+        return contenedorGraficos;
     }
 
     // ==========================================
@@ -1138,6 +1585,21 @@ public class AppCT extends Application {
         });
 
         tablaEmision.getColumns().addAll(columnaEmpresa, columnaTipo, columnaCantidad, colCO2e, colFecha, colAccion);
+
+        // La lista se lee paginada por (fecha, id) desde la base de datos: solo se puede ordenar por fecha,
+        // y la ordenación la hace la consulta en lugar de ordenar la lista en memoria
+        columnaEmpresa.setSortable(false);
+        columnaTipo.setSortable(false);
+        columnaCantidad.setSortable(false);
+        colCO2e.setSortable(false);
+        colAccion.setSortable(false);
+        colFecha.setSortType(TableColumn.SortType.DESCENDING);
+        tablaEmision.setSortPolicy(tabla -> {
+            if (infoEmision.getFiltro().isDescendente() != ordenFechaDescendente()) {
+                cargarListaEmision();
+            }
+            return true;
+        });
     }
     // ==========================================
     //  DIÁLOGOS Y FORMULARIOS
@@ -1180,9 +1642,10 @@ public class AppCT extends Application {
                 if (empresa == null) {
                     return new Empresa(campoNombre.getText(), campoSector.getText());
                 } else {
-                    empresa.setNombreEmpresa(campoNombre.getText());
-                    empresa.setSector(campoSector.getText());
-                    return empresa;
+                    // Copia con los cambios: la fila de la tabla se sustituye al recargar la lista
+                    Empresa editada = new Empresa(empresa.getId(), campoNombre.getText(), campoSector.getText());
+                    editada.setAuxiliarAlmacenC02(empresa.getAuxiliarAlmacenC02());
+                    return editada;
                 }
             }
             return null;
@@ -1193,22 +1656,21 @@ public class AppCT extends Application {
             if (comp.getId() == null) {
 
                 // Controlamos duplicados. Intentamos agregar. Si devuelve NULL es que ya existe.
-                Empresa resultado = gestorBD.agregarEmpresa(comp);
-
-                if (resultado == null) {
-                    // Lanzamos mensaje de error si ya existe la empresa
-                    popUpError("Error de Creación",
-                            "Empresa Duplicada",
-                            "Ya existe una empresa registrada con el nombre: '" + comp.getNombreEmpresa() + "'.\nPor favor, verifica el nombre.");
-                } else {
-                    // Damos feedback al usuario de que se ha agregado la empresa con éxito
-                    cargarListaEmpresa();
-                    popUpOk("Éxito", "Empresa '" + comp.getNombreEmpresa() + "' registrada correctamente.");
-                }
+                gestorBD.llamar(g -> g.agregarEmpresa(comp), resultado -> {
+                    if (resultado == null) {
+                        // Lanzamos mensaje de error si ya existe la empresa
+                        popUpError("Error de Creación",
+                                "Empresa Duplicada",
+                                "Ya existe una empresa registrada con el nombre: '" + comp.getNombreEmpresa() + "'.\nPor favor, verifica el nombre.");
+                    } else {
+                        // Damos feedback al usuario de que se ha agregado la empresa con éxito
+                        cargarListaEmpresa();
+                        popUpOk("Éxito", "Empresa '" + comp.getNombreEmpresa() + "' registrada correctamente.");
+                    }
+                });
             } else {
                 // Editar empresa
-                gestorBD.logActualizarEmpresa(comp, usuarioSesionActual);
-                cargarListaEmpresa();
+                gestorBD.ejecutar(g -> g.logActualizarEmpresa(comp, usuarioSesionActual), this::cargarListaEmpresa);
             }
         });
     }
@@ -1219,6 +1681,32 @@ public class AppCT extends Application {
      * @param registroEmision Entidad de emisión (null para crear, objeto para editar).
      */
     private void ventanaRegistroEmision(Stage vista, Emisiones registroEmision) {
+        // El selector necesita todas las empresas y el cálculo del CO2e el catálogo de factores y los tipos: se leen antes de abrir el diálogo
+        gestorBD.llamar(g -> new DatosRegistroEmision(g.getTodasEmpresas(), g.getFactoresEmision(), g.getTiposEmision()),
+                datos -> ventanaRegistroEmision(vista, registroEmision, datos.empresas(), datos.factores(), datos.tipos()));
+    }
+
+    /**
+     * Datos del diálogo de emisión, leídos en una sola llamada.
+     * @param empresas Empresas disponibles en el selector.
+     * @param factores Catálogo de factores de emisión.
+     * @param tipos Tipos de emisión con sus alias.
+     */
+    private record DatosRegistroEmision(List<Empresa> empresas, List<FactorEmision> factores, List<TipoEmision> tipos) { }
+
+    /**
+     * Abre el diálogo de registro o edición de una emisión con la lista de empresas ya cargada.
+     * <p>
+     * Si el tipo tiene un factor de emisión vigente, el CO2e se calcula a partir de la cantidad;
+     * el usuario puede corregirlo a mano, y entonces la emisión no se recalcula al revisar el factor.
+     * @param vista panel del dialogo.
+     * @param registroEmision Entidad de emisión (null para crear, objeto para editar).
+     * @param empresas Empresas disponibles en el selector.
+     * @param factores Catálogo de factores de emisión.
+     * @param tipos Tipos de emisión con sus alias (para reconocer el tipo escrito).
+     */
+    private void ventanaRegistroEmision(Stage vista, Emisiones registroEmision, List<Empresa> empresas,
+                                        List<FactorEmision> factores, List<TipoEmision> tipos) {
         Dialog<Emisiones> ventanaRegistro = new Dialog<>();
         ventanaRegistro.setTitle(registroEmision == null ? "Añadir Emisión" : "Editar Emisión");
         ventanaRegistro.initOwner(vista);
@@ -1229,7 +1717,7 @@ public class AppCT extends Application {
         rejilla.setPadding(new Insets(20, 150, 10, 10));
 
         // Obtenemos la lista original de emisión
-        ObservableList<Empresa> datosOriginales = FXCollections.observableArrayList(gestorBD.getTodasEmpresas());
+        ObservableList<Empresa> datosOriginales = FXCollections.observableArrayList(empresas);
 
         // Creamos una lista filtrable en la que se puede buscar
         FilteredList<Empresa> listaFiltrada = new FilteredList<>(datosOriginales, p -> true);
@@ -1290,15 +1778,16 @@ public class AppCT extends Application {
         campoCantidad.setPromptText("Ej: 150.5");
         TextField campoCo = new TextField();
         campoCo.setPromptText("Ej: 75.2");
+        Label infoFactor = new Label();
+        // Formateo de números para evitar vista exponencial
+        NumberFormat formatoInput = NumberFormat.getInstance(Locale.GERMANY);
+        formatoInput.setGroupingUsed(false);
+        formatoInput.setMaximumFractionDigits(2);
+        LocalDate fechaEmision = registroEmision != null ? registroEmision.getFecha() : LocalDate.now();
 
         // Rellenamos el formulario con los datos de la emisión que vamos a editar
         if (registroEmision != null) {
             campoTipo.setText(registroEmision.getTipoEmision());
-            // Formateo de números para evitar vista exponencial
-            NumberFormat formatoInput = NumberFormat.getInstance(Locale.GERMANY);
-            formatoInput.setGroupingUsed(false);
-            formatoInput.setMaximumFractionDigits(2);
-
             campoCantidad.setText(formatoInput.format(registroEmision.getCantidadEmision()));
             campoCo.setText(formatoInput.format(registroEmision.getCo2e()));
 
@@ -1321,11 +1810,32 @@ public class AppCT extends Application {
             }
         }
 
+        // Cálculo del CO2e con el factor vigente del tipo (al editar, solo si se cambia el tipo o la cantidad)
+        Consumer<Boolean> aplicarFactor = recalcular -> {
+            FactorEmision factor = factorVigente(factores, tipos, campoTipo.getText(), fechaEmision);
+            if (factor == null) {
+                infoFactor.setText("");
+                return;
+            }
+            infoFactor.setText("Factor: " + formatoInput.format(factor.getFactor()) + " kgCO2e/" + factor.getUnidad());
+            if (!recalcular) return;
+            try {
+                double cantidad = Double.parseDouble(campoCantidad.getText().replace(",", "."));
+                campoCo.setText(formatoInput.format(factor.calcularCo2e(cantidad)));
+            } catch (NumberFormatException e) {
+                // Cantidad incompleta mientras se escribe: se calcula con la siguiente pulsación
+            }
+        };
+        aplicarFactor.accept(registroEmision == null);
+        campoTipo.textProperty().addListener((obs, anterior, nuevo) -> aplicarFactor.accept(true));
+        campoCantidad.textProperty().addListener((obs, anterior, nuevo) -> aplicarFactor.accept(true));
+
         //Campos del formulario
         rejilla.add(new Label("Empresa:"), 0, 0); rejilla.add(selectorEmpresa, 1, 0);
         rejilla.add(new Label("Tipo:"), 0, 1);    rejilla.add(campoTipo, 1, 1);
         rejilla.add(new Label("Cantidad:"), 0, 2); rejilla.add(campoCantidad, 1, 2);
         rejilla.add(new Label("kgCO2e:"), 0, 3);  rejilla.add(campoCo, 1, 3);
+        rejilla.add(infoFactor, 1, 4);
 
         ventanaRegistro.getDialogPane().setContent(rejilla);
 
@@ -1359,11 +1869,19 @@ public class AppCT extends Application {
                         return null; // Forzamos a que no cierre si no hay empresa
                     }
 
+                    // Si el CO2e es el que da el factor (con los decimales que muestra el campo), se guarda como calculado
+                    FactorEmision factor = factorVigente(factores, tipos, tipo, fechaEmision);
+                    boolean calculado = factor != null && Math.abs(factor.calcularCo2e(cantidad) - co2e) < 0.005;
+                    if (calculado) co2e = factor.calcularCo2e(cantidad);
+
+                    Emisiones emision;
                     if (registroEmision != null) {
-                        return new Emisiones(registroEmision.getId(), tipo, cantidad, co2e, registroEmision.getFecha().toString(), empresaSeleccionada.getId());
+                        emision = new Emisiones(registroEmision.getId(), tipo, cantidad, co2e, registroEmision.getFecha().toString(), empresaSeleccionada.getId());
                     } else {
-                        return new Emisiones(tipo, cantidad, co2e, empresaSeleccionada.getId());
+                        emision = new Emisiones(tipo, cantidad, co2e, empresaSeleccionada.getId());
                     }
+                    emision.setCo2eCalculado(calculado);
+                    return emision;
                 } catch (NumberFormatException e) {
                     Platform.runLater(() -> popUpError("Error", "Formato numérico inválido", "Usa solo números."));
                     return null;
@@ -1377,15 +1895,51 @@ public class AppCT extends Application {
 
         //Resultado
         Optional<Emisiones> resultado = ventanaRegistro.showAndWait();
-        resultado.ifPresent(rec -> {
+        resultado.ifPresent(rec -> gestorBD.ejecutar(g -> {
             if (rec.getId() != null) {
-                gestorBD.actualizarEmision(rec, usuarioSesionActual);
+                g.actualizarEmision(rec, usuarioSesionActual);
             } else {
-                gestorBD.nuevaEmision(rec);
+                g.nuevaEmision(rec);
             }
+        }, () -> {
             cargarListaEmision();
             cargarListaEmpresa();
-        });
+        }));
+    }
+
+    /**
+     * Factor del catálogo vigente para un tipo en una fecha: el que empieza más tarde, como en
+     * {@link GestorBD#getFactorEmision}.
+     * El tipo escrito se reconoce por cualquiera de sus alias ("consumo electrico" → Electricidad).
+     * @param factores Catálogo ordenado por tipo y fecha de inicio.
+     * @param tipos Tipos de emisión con sus alias.
+     * @param tipo Tipo escrito en el formulario.
+     * @param fecha Fecha de la emisión.
+     * @return El factor, o null si el tipo no tiene ninguno vigente.
+     */
+    private static FactorEmision factorVigente(List<FactorEmision> factores, List<TipoEmision> tipos, String tipo,
+                                               LocalDate fecha) {
+        String nombre = nombreTipo(tipos, tipo);
+        if (nombre == null) return null;
+        FactorEmision vigente = null;
+        for (FactorEmision factor : factores) {
+            if (factor.getTipo().equals(nombre) && factor.vigenteEn(fecha)) vigente = factor;
+        }
+        return vigente;
+    }
+
+    /**
+     * Nombre canónico del tipo al que corresponde un texto, comparando su clave con la de cada alias.
+     * @return El nombre, o null si el texto no es de ningún tipo conocido (se creará al guardar).
+     */
+    private static String nombreTipo(List<TipoEmision> tipos, String texto) {
+        String clave = DiccionarioTipos.clave(texto);
+        for (TipoEmision tipoEmision : tipos) {
+            for (String alias : tipoEmision.getAlias()) {
+                if (DiccionarioTipos.clave(alias).equals(clave)) return tipoEmision.getNombre();
+            }
+        }
+        return null;
     }
 
     /**
@@ -1394,6 +1948,14 @@ public class AppCT extends Application {
      * Mantiene la ventana abierta si hay errores de validación.
      */
     private void ventanaGestionUsuario(javafx.stage.Window padre, Usuario usuarioEditado) {
+        // Los roles del selector se leen antes de abrir el diálogo
+        gestorBD.llamar(g -> g.getTodosLosRoles(), roles -> ventanaGestionUsuario(padre, usuarioEditado, roles));
+    }
+
+    /**
+     * Abre el diálogo de creación o edición de usuario con la lista de roles ya cargada.
+     */
+    private void ventanaGestionUsuario(javafx.stage.Window padre, Usuario usuarioEditado, List<Rol> roles) {
         Dialog<Usuario> formulario = new Dialog<>();
         formulario.setTitle(usuarioEditado == null ? "Nuevo Usuario" : "Editar Usuario");
         formulario.initOwner(padre);
@@ -1416,7 +1978,7 @@ public class AppCT extends Application {
 
         // Selector de Rol
         ComboBox<Rol> comboRol = new ComboBox<>();
-        comboRol.setItems(FXCollections.observableArrayList(gestorBD.getTodosLosRoles()));
+        comboRol.setItems(FXCollections.observableArrayList(roles));
 
         // Pre-cargamos los datos asociados del usuario
         if (usuarioEditado != null) {
@@ -1492,18 +2054,23 @@ public class AppCT extends Application {
 
             if (usuarioEditado == null) {
                 // Creamos nuevo usuario si no existe
-                if (gestorBD.crearUsuario(u.getNombreUsuario(), contrasena, u.getNombreCompleto(), u.getRol(), usuarioSesionActual)) {popUpOk("Usuario Creado", "El usuario " + u.getNombreUsuario() + " ha sido registrado.");
-                } else {
-                    popUpError("Error", "No se pudo crear el usuario", "Es posible que el nombre de usuario ya exista.");
-                }
+                gestorBD.llamar(g -> g.crearUsuario(u.getNombreUsuario(), contrasena, u.getNombreCompleto(), u.getRol(), usuarioSesionActual), creado -> {
+                    if (creado) {popUpOk("Usuario Creado", "El usuario " + u.getNombreUsuario() + " ha sido registrado.");
+                    } else {
+                        popUpError("Error", "No se pudo crear el usuario", "Es posible que el nombre de usuario ya exista.");
+                    }
+                    cargarListaUsuarios();
+                });
             } else {
                 // Actualizamos el usuario existente
-                if (gestorBD.actualizarUsuarioAdmin(u, contrasena, usuarioSesionActual)) { popUpOk("Usuario Actualizado", "Cambios guardados correctamente.");
-                } else {
-                    popUpError("Error", "No se pudo actualizar", null);
-                }
+                gestorBD.llamar(g -> g.actualizarUsuarioAdmin(u, contrasena, usuarioSesionActual), actualizado -> {
+                    if (actualizado) { popUpOk("Usuario Actualizado", "Cambios guardados correctamente.");
+                    } else {
+                        popUpError("Error", "No se pudo actualizar", null);
+                    }
+                    cargarListaUsuarios();
+                });
             }
-            cargarListaUsuarios();
         });
     }
 
@@ -1551,8 +2118,10 @@ public class AppCT extends Application {
         tablaSedes.getColumns().addAll(colCiudad, colDireccion);
 
         // Cargar datos
-        ObservableList<Sede> listaSedes = FXCollections.observableArrayList(gestorBD.getSedesPorEmpresa(empresa.getId()));
+        ObservableList<Sede> listaSedes = FXCollections.observableArrayList();
         tablaSedes.setItems(listaSedes);
+        Runnable recargarSedes = () -> cargarTabla(tablaSedes, g -> g.getSedesPorEmpresa(empresa.getId()), listaSedes::setAll);
+        recargarSedes.run();
         VBox.setVgrow(tablaSedes, Priority.ALWAYS);
         panelTabla.getChildren().addAll(tituloTabla, tablaSedes);
         HBox.setHgrow(panelTabla, Priority.ALWAYS);
@@ -1641,32 +2210,40 @@ public class AppCT extends Application {
             // ---COMMITS de cambios en las sedes---
             // ----------------------------------------
 
-            boolean guardadoCorrecto;
+            Function<GestorBD, Boolean> guardado;
             if (seleccionada == null) {
                 // Creamos la nueva sede
                 Sede nueva = new Sede(ciudad, dir, empresa.getId());
-                guardadoCorrecto = gestorBD.registrarSedeConAuditoria(nueva, usuarioSesionActual, empresa.getNombreEmpresa());
+                guardado = g -> g.registrarSedeConAuditoria(nueva, usuarioSesionActual, empresa.getNombreEmpresa());
             } else {
                 // Actualizamos la sede existente
                 Sede editada = new Sede(seleccionada.getId(), ciudad, dir, empresa.getId());
-                guardadoCorrecto = gestorBD.actualizarSede(editada, usuarioSesionActual, empresa.getNombreEmpresa());
+                guardado = g -> g.actualizarSede(editada, usuarioSesionActual, empresa.getNombreEmpresa());
             }
 
-            if (guardadoCorrecto) {
-                // Refrescar tabla para mostrar datos nuevos
-                listaSedes.setAll(gestorBD.getSedesPorEmpresa(empresa.getId()));
-                // Aquí limpiamos para permitir seguir añadiendo nuevas sedes
-                tablaSedes.getSelectionModel().clearSelection();
-                tituloForm.setText("Nueva Sede");
-                txtCiudad.clear();
-                txtDireccion.clear();
-                btnGuardar.setText("Guardar cambios");
-                btnBorrar.setDisable(true);
+            // Se desactiva el botón mientras se guarda para evitar altas duplicadas por doble clic
+            btnGuardar.setDisable(true);
+            gestorBD.llamar(guardado, guardadoCorrecto -> {
+                btnGuardar.setDisable(false);
+                if (guardadoCorrecto) {
+                    // Refrescar tabla para mostrar datos nuevos
+                    recargarSedes.run();
+                    // Aquí limpiamos para permitir seguir añadiendo nuevas sedes
+                    tablaSedes.getSelectionModel().clearSelection();
+                    tituloForm.setText("Nueva Sede");
+                    txtCiudad.clear();
+                    txtDireccion.clear();
+                    btnGuardar.setText("Guardar cambios");
+                    btnBorrar.setDisable(true);
 
-                popUpOk("Éxito", "Operación realizada correctamente.");
-            } else {
-                popUpError("Error", "No se pudo guardar la sede", null);
-            }
+                    popUpOk("Éxito", "Operación realizada correctamente.");
+                } else {
+                    popUpError("Error", "No se pudo guardar la sede", null);
+                }
+            }, error -> {
+                btnGuardar.setDisable(false);
+                popUpError("Error", "No se pudo guardar la sede", error.getMessage());
+            });
         });
 
         // Acción para borrar las sedes
@@ -1680,17 +2257,19 @@ public class AppCT extends Application {
             try { confirm.getDialogPane().getStylesheets().add(getClass().getResource("style.css").toExternalForm()); } catch(Exception ex){}
 
             if (confirm.showAndWait().get() == ButtonType.OK) {
-                if (gestorBD.borrarSede(seleccionada.getId(), seleccionada.getCiudad(), usuarioSesionActual, empresa.getNombreEmpresa())) {
-                    listaSedes.setAll(gestorBD.getSedesPorEmpresa(empresa.getId()));
-                    tablaSedes.getSelectionModel().clearSelection();
-                    tituloForm.setText("Nueva Sede");
-                    txtCiudad.clear();
-                    txtDireccion.clear();
-                    btnGuardar.setText("Guardar cambios");
-                    btnBorrar.setDisable(true);
-                } else {
-                    popUpError("Error", "No se pudo eliminar", null);
-                }
+                gestorBD.llamar(g -> g.borrarSede(seleccionada.getId(), seleccionada.getCiudad(), usuarioSesionActual, empresa.getNombreEmpresa()), borrada -> {
+                    if (borrada) {
+                        recargarSedes.run();
+                        tablaSedes.getSelectionModel().clearSelection();
+                        tituloForm.setText("Nueva Sede");
+                        txtCiudad.clear();
+                        txtDireccion.clear();
+                        btnGuardar.setText("Guardar cambios");
+                        btnBorrar.setDisable(true);
+                    } else {
+                        popUpError("Error", "No se pudo eliminar", null);
+                    }
+                });
             }
         });
 
@@ -1711,16 +2290,14 @@ public class AppCT extends Application {
      * Este método realiza las siguientes acciones:
      * <ol>
      * <li><b>Captura de filtro:</b> Obtiene el texto actual del campo de búsqueda ({@code busquedaEmpresa}). Si es nulo, asume una cadena vacía.</li>
-     * <li><b>Consulta a BD:</b> Recupera del gestor de base de datos la lista de empresas que coinciden con el término de búsqueda.</li>
-     * <li><b>Refresco de UI:</b> Limpia la lista observable ({@code infoEmpresa}) y añade los nuevos registros, lo que provoca la actualización automática de la tabla asociada.</li>
+     * <li><b>Consulta a BD:</b> Recupera en segundo plano la lista de empresas que coinciden con el término de búsqueda, cancelando la búsqueda anterior si sigue en curso.</li>
+     * <li><b>Refresco de UI:</b> Aplica al contenido de la lista observable ({@code infoEmpresa}), en el hilo de JavaFX, solo las altas, bajas y cambios respecto a lo mostrado; la tabla repinta esas filas y conserva la selección.</li>
      * </ol>
      * </p>
      */
     private void cargarListaEmpresa() {
         String terminoBusqueda = (busquedaEmpresa != null) ? busquedaEmpresa.getText() : "";
-        List<Empresa> empresas = gestorBD.getTodasEmpresas(terminoBusqueda);
-        infoEmpresa.clear();
-        infoEmpresa.addAll(empresas);
+        busquedaEmpresas.ejecutarYa(terminoBusqueda);
     }
 
     /**
@@ -1732,37 +2309,136 @@ public class AppCT extends Application {
      * <li><b>Modo Global:</b> Si no hay empresa seleccionada, se recuperan todas las emisiones registradas en el sistema.</li>
      * </ul>
      * En ambos casos, se respeta el filtro de texto introducido en {@code busquedaEmision} para refinar los resultados.
+     * Las filas no se leen aquí: en segundo plano solo se cuentan las coincidencias y se lee la primera página;
+     * la lista paginada carga después las páginas que la tabla va mostrando.
      * </p>
      */
     private void cargarListaEmision() {
+        busquedaEmisiones.ejecutarYa(filtroEmisiones());
+    }
+
+    /**
+     * Construye el filtro de emisiones a partir del estado actual de la vista
+     * (empresa seleccionada, texto de búsqueda, intervalo de fechas y orden de la columna de fecha).
+     */
+    private FiltroEmisiones filtroEmisiones() {
         String terminoBusqueda = (busquedaEmision != null) ? busquedaEmision.getText() : "";
-        List<Emisiones> emisiones;
+        Long idEmpresa = (empresaObjetivo != null) ? empresaObjetivo.getId() : null;
+        FiltroEmisiones filtro = new FiltroEmisiones(idEmpresa, terminoBusqueda, ordenFechaDescendente());
+        if (desdeEmision != null) filtro.setDesde(desdeEmision.getValue());
+        if (hastaEmision != null) filtro.setHasta(hastaEmision.getValue());
+        return filtro;
+    }
 
-        if (empresaObjetivo != null) {
-            emisiones = gestorBD.getEmissionsByCompanyId(empresaObjetivo.getId(), terminoBusqueda);
-        } else {
-            emisiones = gestorBD.getTodasEmisiones(terminoBusqueda);
-        }
+    /**
+     * Actualiza la leyenda del filtro de emisiones, añadiendo el intervalo de fechas si lo hay.
+     *
+     * @param label Etiqueta de la leyenda.
+     */
+    private void actualizarEtiquetaEmisiones(Label label) {
+        actualizarEtiquetaFiltro(label, busquedaEmision.getText(), tablaEmision);
+        LocalDate desde = desdeEmision.getValue();
+        LocalDate hasta = hastaEmision.getValue();
+        if (desde == null && hasta == null) return;
+        DateTimeFormatter formatoFecha = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        label.setText(label.getText() + "  |  📅 Periodo: "
+                + (desde != null ? desde.format(formatoFecha) : "…") + " – "
+                + (hasta != null ? hasta.format(formatoFecha) : "…"));
+    }
 
-        infoEmision.clear();
-        infoEmision.addAll(emisiones);
+    /**
+     * Indica si la tabla de emisiones se ordena de la fecha más reciente a la más antigua
+     * (orden por defecto, o columna FECHA en descendente).
+     */
+    private boolean ordenFechaDescendente() {
+        return tablaEmision.getSortOrder().isEmpty()
+                || tablaEmision.getSortOrder().get(0).getSortType() == TableColumn.SortType.DESCENDING;
+    }
+
+    /**
+     * Aplica a la tabla de emisiones el resultado de una búsqueda terminada.
+     *
+     * @param carga Recuento y primera página del filtro consultado.
+     */
+    private void mostrarCargaEmisiones(ListaEmisionesPaginada.Carga carga) {
+        // Un refresco del mismo filtro conserva la selección: solo cambian las filas afectadas
+        if (!carga.filtro().equals(infoEmision.getFiltro())) tablaEmision.getSelectionModel().clearSelection();
+        infoEmision.aplicar(carga);
+        tablaEmision.setPlaceholder(new Label("No hay datos"));
+        totalEmisiones.setText(NumberFormat.getInstance(Locale.GERMANY).format(infoEmision.size()) + " emisiones");
     }
 
     /**
      * Refresca la lista de usuarios desde la base de datos.
      */
     private void cargarListaUsuarios() {
-        infoUsuarios.clear();
         // Llama al método para listar todos los usuarios
-        infoUsuarios.addAll(gestorBD.getTodosLosUsuarios());
+        cargarTabla(tablaUsuarios, GestorBD::getTodosLosUsuarios, usuarios -> reconciliarTabla(tablaUsuarios, infoUsuarios, usuarios));
     }
 
     /**
      * Carga la información asociada a las auditorias de contenido de la aplicación
      */
     private void cargarAuditoria() {
-        infoAuditoria.clear();
-        infoAuditoria.addAll(gestorBD.getLogsAuditoria());
+        cargarTabla(tablaAuditoria, GestorBD::getLogsAuditoria, logs -> reconciliarTabla(tablaAuditoria, infoAuditoria, logs));
+    }
+
+    /**
+     * Aplica a la tabla de empresas el resultado de una búsqueda terminada.
+     *
+     * @param empresas Empresas que cumplen el término de búsqueda.
+     */
+    private void mostrarEmpresas(List<Empresa> empresas) {
+        reconciliarTabla(tablaEmpresa, infoEmpresa, empresas);
+        tablaEmpresa.setPlaceholder(new Label("No hay datos"));
+    }
+
+    /**
+     * Aplica un resultado nuevo a la lista de una tabla con los cambios mínimos ({@link ListaReconciliable}).
+     * Si la tabla está ordenada por alguna columna, el resultado se ordena igual antes de comparar,
+     * para que las filas que no cambian tampoco cambien de sitio.
+     *
+     * @param tabla Tabla que muestra la lista.
+     * @param lista Lista de la tabla.
+     * @param nuevos Resultado de la consulta.
+     */
+    private static <T> void reconciliarTabla(TableView<T> tabla, ListaReconciliable<T, ?> lista, List<T> nuevos) {
+        List<T> ordenados = new ArrayList<>(nuevos);
+        Comparator<T> orden = tabla.getComparator();
+        if (orden != null) ordenados.sort(orden);
+        lista.reconciliar(ordenados);
+    }
+
+    /**
+     * Lee datos en segundo plano para una tabla, mostrando un indicador de carga mientras tanto.
+     *
+     * @param tabla Tabla que se está cargando.
+     * @param consulta Consulta al gestor (fuera del hilo de JavaFX).
+     * @param alTerminar Acción que aplica el resultado a la tabla (en el hilo de JavaFX).
+     */
+    private <T> void cargarTabla(TableView<?> tabla, Function<GestorBD, T> consulta, Consumer<T> alTerminar) {
+        tabla.setPlaceholder(indicadorCarga("Cargando..."));
+        gestorBD.llamar(consulta, resultado -> {
+            alTerminar.accept(resultado);
+            tabla.setPlaceholder(new Label("No hay datos"));
+        }, error -> {
+            tabla.setPlaceholder(new Label("No se pudieron cargar los datos"));
+            popUpError("Error de Base de Datos", "No se pudieron cargar los datos.", error.getMessage());
+        });
+    }
+
+    /**
+     * Indicador de progreso con un texto, para las zonas que esperan datos de la base de datos.
+     *
+     * @param texto Mensaje bajo el indicador.
+     * @return Nodo con el indicador.
+     */
+    private VBox indicadorCarga(String texto) {
+        ProgressIndicator progreso = new ProgressIndicator();
+        progreso.setMaxSize(40, 40);
+        VBox indicador = new VBox(10, progreso, new Label(texto));
+        indicador.setAlignment(Pos.CENTER);
+        return indicador;
     }
 
     /**
@@ -1832,8 +2508,7 @@ public class AppCT extends Application {
         //Se comprueba el estado de la lista después de la acción y se refresca
         Optional<ButtonType> estadoPostBorrado = infoUsuario.showAndWait();
         if (estadoPostBorrado.isPresent() && estadoPostBorrado.get() == ButtonType.OK) {
-            gestorBD.borrarEmpresa(empresa.getId());
-            cargarListaEmpresa();
+            gestorBD.ejecutar(g -> g.borrarEmpresa(empresa.getId()), this::cargarListaEmpresa);
         }
     }
 
@@ -1851,9 +2526,10 @@ public class AppCT extends Application {
         //Se comprueba el estado de la lista de las emisiones para después de la acción refrescarse
         Optional<ButtonType> estadoPostBorrado = infoUsuario.showAndWait();
         if (estadoPostBorrado.isPresent() && estadoPostBorrado.get() == ButtonType.OK) {
-            gestorBD.borrarEmision(emision.getId());
-            cargarListaEmision();
-            cargarListaEmpresa();
+            gestorBD.ejecutar(g -> g.borrarEmision(emision.getId()), () -> {
+                cargarListaEmision();
+                cargarListaEmpresa();
+            });
         }
     }
 
@@ -1895,14 +2571,231 @@ public class AppCT extends Application {
         nombreArchivo.setInitialFileName(cadenaEmpresaEmision.replaceAll("[^a-zA-Z0-9]", "") + ".csv");
         File archivoCSV = nombreArchivo.showSaveDialog(contActual);
         //Mensajes de información para el usuario en función del resultado de la exportación
-        if (archivoCSV != null) {
+        // La tabla solo tiene en memoria las páginas visibles: las filas se leen en segundo plano directamente del cursor
+        if (archivoCSV == null) return;
+        FiltroEmisiones filtro = infoEmision.getFiltro();
+        Cancelacion cancelacion = new Cancelacion();
+        //Ventana de progreso con opción de cancelar
+        ProgressBar barraProgreso = new ProgressBar(ProgressIndicator.INDETERMINATE_PROGRESS);
+        barraProgreso.setPrefWidth(320);
+        Label estado = new Label("Exportando emisiones...");
+        Button btnCancelar = new Button("Cancelar");
+        btnCancelar.setOnAction(e -> {
+            btnCancelar.setDisable(true);
+            estado.setText("Cancelando...");
+            cancelacion.cancelar();
+        });
+        VBox caja = new VBox(10, estado, barraProgreso, btnCancelar);
+        caja.setAlignment(Pos.CENTER);
+        caja.setPadding(new Insets(20));
+        Stage ventanaProgreso = new Stage();
+        ventanaProgreso.setTitle("Exportar CSV");
+        ventanaProgreso.initOwner(contActual);
+        ventanaProgreso.initModality(Modality.WINDOW_MODAL);
+        ventanaProgreso.setOnCloseRequest(e -> cancelacion.cancelar());
+        ventanaProgreso.setScene(new Scene(caja));
+        ventanaProgreso.show();
+
+        Consumer<ExportadorCSV.Progreso> avance = p -> Platform.runLater(() -> {
+            barraProgreso.setProgress(p.fraccion() < 0 ? ProgressIndicator.INDETERMINATE_PROGRESS : p.fraccion());
+            estado.setText(NumberFormat.getIntegerInstance().format(p.filasEscritas()) + " filas exportadas");
+        });
+        gestorBD.llamar(g -> cancelacion.ejecutar(() -> {
             try {
-                ControlCSV.exportarEmisiones(infoEmision, archivoCSV);
-                popUpOk("Exportación Completa", "Emisiones exportadas con éxito a:\n" + archivoCSV.getAbsolutePath());
-            } catch (Exception ex) {
-                popUpError("Error de Exportación", "No se pudo guardar el archivo.", ex.getMessage());
+                return g.exportarEmisionesCSV(filtro, archivoCSV, avance);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
             }
-        }
+        }),
+                resultado -> {
+                    ventanaProgreso.close();
+                    if (!resultado.cancelada()) {
+                        popUpOk("Exportación Completa", resultado.filas() + " emisiones exportadas con éxito a:\n"
+                                + archivoCSV.getAbsolutePath());
+                    }
+                },
+                error -> {
+                    ventanaProgreso.close();
+                    popUpError("Error de Exportación", "No se pudo guardar el archivo.", error.getMessage());
+                });
+    }
+
+    /**
+     * Ventana de importación masiva desde CSV (emisiones, empresas o sedes).
+     * <p>
+     * El archivo se importa en segundo plano; la barra de progreso avanza con cada lote guardado
+     * y al terminar se muestran las líneas descartadas, sin que una línea errónea detenga la importación.
+     * @param vista ventana principal
+     */
+    private void ventanaImportacion(Stage vista) {
+        Dialog<Void> dialogos = new Dialog<>();
+        dialogos.setTitle("Importar CSV");
+        dialogos.initOwner(vista);
+        dialogos.getDialogPane().getStylesheets().add(getClass().getResource("style.css").toExternalForm());
+        //Tipo de datos que contiene el archivo
+        ComboBox<String> comboTipo = new ComboBox<>(FXCollections.observableArrayList("Emisiones", "Empresas", "Sedes",
+                "Factores de emisión"));
+        comboTipo.setValue("Emisiones");
+        Label formato = new Label();
+        comboTipo.valueProperty().addListener((obs, anterior, tipo) -> formato.setText(formatoImportacion(tipo)));
+        formato.setText(formatoImportacion(comboTipo.getValue()));
+        //Selección de archivo
+        Button btnArchivo = new Button("Seleccionar archivo...", new FontIcon(MaterialDesign.MDI_UPLOAD));
+        ProgressBar barraProgreso = new ProgressBar(0);
+        barraProgreso.setMaxWidth(Double.MAX_VALUE);
+        Label estado = new Label("Selecciona un archivo para empezar.");
+        TextArea errores = new TextArea();
+        errores.setEditable(false);
+        errores.setPrefRowCount(8);
+        errores.setVisible(false);
+        errores.setManaged(false);
+
+        btnArchivo.setOnAction(e -> {
+            FileChooser selector = new FileChooser();
+            selector.setTitle("Importar " + comboTipo.getValue());
+            selector.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV", "*.csv"));
+            File archivoCSV = selector.showOpenDialog(vista);
+            if (archivoCSV == null) return;
+
+            String tipo = comboTipo.getValue();
+            comboTipo.setDisable(true);
+            btnArchivo.setDisable(true);
+            errores.setVisible(false);
+            errores.setManaged(false);
+            barraProgreso.setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
+            estado.setText("Importando " + archivoCSV.getName() + "...");
+            // El avance llega desde el hilo escritor: se pasa a la interfaz
+            Consumer<ImportadorCSV.Progreso> avance = p -> Platform.runLater(() -> {
+                barraProgreso.setProgress(p.fraccion());
+                estado.setText(p.filasImportadas() + " filas importadas, " + p.errores() + " errores");
+            });
+            int lote = ImportadorCSV.TAMANO_LOTE_POR_DEFECTO;
+            gestorBD.llamar(g -> switch (tipo) {
+                        case "Empresas" -> g.importarEmpresasCSV(archivoCSV, lote, usuarioSesionActual, avance);
+                        case "Sedes" -> g.importarSedesCSV(archivoCSV, lote, usuarioSesionActual, avance);
+                        case "Factores de emisión" -> g.importarFactoresCSV(archivoCSV, usuarioSesionActual, avance);
+                        default -> g.importarEmisionesCSV(archivoCSV, lote, usuarioSesionActual, avance);
+                    },
+                    resultado -> {
+                        barraProgreso.setProgress(1);
+                        estado.setText(String.format("%d filas importadas de %d líneas en %.1f s (%d errores)",
+                                resultado.filasImportadas(), resultado.lineas(), resultado.milisegundos() / 1000.0,
+                                resultado.totalErrores()));
+                        if (!resultado.errores().isEmpty()) {
+                            StringBuilder detalle = new StringBuilder();
+                            for (ImportadorCSV.ErrorLinea error : resultado.errores()) {
+                                detalle.append("Línea ").append(error.linea()).append(": ").append(error.mensaje()).append('\n');
+                            }
+                            if (resultado.totalErrores() > resultado.errores().size()) {
+                                detalle.append("... y ").append(resultado.totalErrores() - resultado.errores().size()).append(" más");
+                            }
+                            errores.setText(detalle.toString());
+                            errores.setVisible(true);
+                            errores.setManaged(true);
+                        }
+                        comboTipo.setDisable(false);
+                        btnArchivo.setDisable(false);
+                        cargarListaEmpresa();
+                        cargarListaEmision();
+                        // Los factores revisados no cambian las emisiones hasta recalcularlas
+                        if (tipo.equals("Factores de emisión") && resultado.filasImportadas() > 0) ventanaRecalculoCo2e(vista);
+                    },
+                    error -> {
+                        barraProgreso.setProgress(0);
+                        estado.setText("Importación fallida.");
+                        comboTipo.setDisable(false);
+                        btnArchivo.setDisable(false);
+                        popUpError("Error de Importación", "No se pudo importar el archivo.", error.getMessage());
+                    });
+        });
+
+        VBox contenido = new VBox(10, new HBox(10, new Label("Tipo:"), comboTipo, btnArchivo), formato,
+                barraProgreso, estado, errores);
+        contenido.setPadding(new Insets(20));
+        contenido.setPrefWidth(520);
+        dialogos.getDialogPane().setContent(contenido);
+        dialogos.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        dialogos.show();
+    }
+
+    /**
+     * Ventana del recálculo de CO2e tras revisar el catálogo de factores de emisión.
+     * <p>
+     * El recálculo se hace en segundo plano, por bloques de emisiones confirmados uno a uno:
+     * se puede cancelar y lo ya recalculado se conserva.
+     * @param vista ventana principal
+     */
+    private void ventanaRecalculoCo2e(Stage vista) {
+        Cancelacion cancelacion = new Cancelacion();
+        CheckBox incluirManuales = new CheckBox("Incluir las emisiones con el CO2e escrito a mano o importado");
+        ProgressBar barraProgreso = new ProgressBar(0);
+        barraProgreso.setMaxWidth(Double.MAX_VALUE);
+        Label estado = new Label("Se recalculará el CO2e de las emisiones con los factores vigentes en su fecha.");
+        Button btnRecalcular = new Button("Recalcular", new FontIcon(MaterialDesign.MDI_CALCULATOR));
+        Button btnCancelar = new Button("Cancelar");
+        btnCancelar.setDisable(true);
+        btnCancelar.setOnAction(e -> {
+            btnCancelar.setDisable(true);
+            estado.setText("Cancelando...");
+            cancelacion.cancelar();
+        });
+
+        btnRecalcular.setOnAction(e -> {
+            boolean manuales = incluirManuales.isSelected();
+            btnRecalcular.setDisable(true);
+            incluirManuales.setDisable(true);
+            btnCancelar.setDisable(false);
+            barraProgreso.setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
+            Consumer<RecalculoCo2e.Progreso> avance = p -> Platform.runLater(() -> {
+                barraProgreso.setProgress(p.fraccion());
+                estado.setText(NumberFormat.getIntegerInstance().format(p.filasRecalculadas()) + " emisiones recalculadas");
+            });
+            gestorBD.llamar(g -> cancelacion.ejecutar(() -> g.recalcularCo2e(null, manuales, usuarioSesionActual, avance)),
+                    resultado -> {
+                        btnCancelar.setDisable(true);
+                        if (resultado == null) {
+                            barraProgreso.setProgress(0);
+                            estado.setText("No se pudo leer el catálogo de factores.");
+                            return;
+                        }
+                        if (!resultado.cancelado()) barraProgreso.setProgress(1);
+                        estado.setText(String.format("%s emisiones recalculadas en %.1f s%s",
+                                NumberFormat.getIntegerInstance().format(resultado.filasRecalculadas()),
+                                resultado.milisegundos() / 1000.0, resultado.cancelado() ? " (interrumpido)" : ""));
+                        cargarListaEmpresa();
+                        cargarListaEmision();
+                    },
+                    error -> {
+                        barraProgreso.setProgress(0);
+                        estado.setText("Recálculo fallido.");
+                        popUpError("Error de Recálculo", "No se pudo recalcular el CO2e.", error.getMessage());
+                    });
+        });
+
+        VBox contenido = new VBox(10, estado, incluirManuales, barraProgreso, new HBox(10, btnRecalcular, btnCancelar));
+        contenido.setPadding(new Insets(20));
+        contenido.setPrefWidth(520);
+        Stage ventana = new Stage();
+        ventana.setTitle("Recalcular CO2e");
+        ventana.initOwner(vista);
+        ventana.initModality(Modality.WINDOW_MODAL);
+        ventana.setOnCloseRequest(e -> cancelacion.cancelar());
+        Scene escena = new Scene(contenido);
+        escena.getStylesheets().add(getClass().getResource("style.css").toExternalForm());
+        ventana.setScene(escena);
+        ventana.show();
+    }
+
+    /**
+     * Columnas que espera la importación de cada tipo (las mismas que escribe la exportación).
+     */
+    private static String formatoImportacion(String tipo) {
+        return switch (tipo) {
+            case "Empresas" -> "Columnas: Nombre;Sector";
+            case "Sedes" -> "Columnas: Empresa;Ciudad;Dirección";
+            case "Factores de emisión" -> "Columnas: Tipo;Unidad;Factor (kgCO2e/unidad);Desde;Hasta (vacía si sigue vigente)";
+            default -> "Columnas: Empresa;Tipo;Cantidad;CO2e (kg);Fecha";
+        };
     }
 
     // ==========================================
@@ -0,0 +1,126 @@
+package ct.Principal;
+
+import DAO.Cancelacion;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Ejecuta las búsquedas de las listas fuera del hilo de JavaFX, agrupando las pulsaciones de teclado.
+ * <p>
+ * Funcionamiento:
+ * <ul>
+ * <li><b>Espera:</b> cada {@link #solicitar} reinicia un temporizador; la consulta solo se lanza cuando
+ * el usuario deja de escribir durante {@link #ESPERA}. Teclear una palabra produce una o dos consultas.</li>
+ * <li><b>Segundo plano:</b> la consulta se ejecuta en un hilo propio, así la interfaz nunca se congela.</li>
+ * <li><b>Cancelación:</b> al lanzar una consulta nueva, la anterior se interrumpe con
+ * {@link Cancelacion#cancelar()} ({@code Statement.cancel()}) y su resultado se descarta.</li>
+ * <li><b>Publicación:</b> solo el resultado de la última consulta se entrega, en el hilo de JavaFX.</li>
+ * </ul>
+ * Los métodos públicos deben llamarse desde el hilo de JavaFX.
+ *
+ * @param <C> Criterio de búsqueda (texto, filtro...), construido en el hilo de JavaFX.
+ * @param <R> Resultado de la consulta.
+ */
+public class BusquedaDiferida<C, R> {
+
+    /** Tiempo sin pulsaciones tras el que se lanza la búsqueda. */
+    public static final Duration ESPERA = Duration.millis(250);
+
+    /** Consulta que se ejecuta en segundo plano. */
+    private final Function<C, R> consulta;
+
+    /** Acción que recibe el resultado en el hilo de JavaFX. */
+    private final Consumer<R> publicar;
+
+    /** Temporizador que agrupa las pulsaciones. */
+    private final PauseTransition espera = new PauseTransition(ESPERA);
+
+    /** Hilo único de consultas: una consulta cancelada termina enseguida y deja paso a la siguiente. */
+    private final ExecutorService ejecutor;
+
+    /** Criterio de la búsqueda pendiente de lanzar. */
+    private C pendiente;
+
+    /** Cancelación de la última consulta lanzada (la única cuyo resultado se publicará). */
+    private Cancelacion enCurso;
+
+    private BusquedaDiferida(String nombre, Function<C, R> consulta, Consumer<R> publicar) {
+        this.consulta = consulta;
+        this.publicar = publicar;
+        this.ejecutor = Executors.newSingleThreadExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, nombre);
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    /**
+     * Crea una búsqueda diferida y conecta su temporizador (fuera del constructor, para no publicar
+     * el objeto antes de que esté construido).
+     *
+     * @param nombre Nombre del hilo de consultas (aparece en volcados de hilos y perfiles).
+     * @param consulta Consulta a la base de datos; se ejecuta fuera del hilo de JavaFX.
+     * @param publicar Acción que aplica el resultado a la interfaz; se ejecuta en el hilo de JavaFX.
+     * @return Búsqueda lista para recibir solicitudes.
+     */
+    public static <C, R> BusquedaDiferida<C, R> crear(String nombre, Function<C, R> consulta, Consumer<R> publicar) {
+        BusquedaDiferida<C, R> busqueda = new BusquedaDiferida<>(nombre, consulta, publicar);
+        busqueda.espera.setOnFinished(e -> busqueda.ejecutarYa(busqueda.pendiente));
+        return busqueda;
+    }
+
+    /**
+     * Programa una búsqueda para cuando el usuario deje de escribir.
+     *
+     * @param criterio Criterio de búsqueda.
+     */
+    public void solicitar(C criterio) {
+        pendiente = criterio;
+        espera.playFromStart();
+    }
+
+    /**
+     * Lanza la búsqueda inmediatamente (recargas tras altas, bajas o cambios de contexto),
+     * cancelando la búsqueda pendiente y la que esté en curso.
+     *
+     * @param criterio Criterio de búsqueda.
+     */
+    public void ejecutarYa(C criterio) {
+        espera.stop();
+        if (enCurso != null) enCurso.cancelar();
+        Cancelacion cancelacion = new Cancelacion();
+        enCurso = cancelacion;
+
+        ejecutor.execute(() -> {
+            // Si ya hay otra más reciente en cola, esta ni siquiera llega a consultar
+            if (cancelacion.isCancelada()) return;
+            R resultado;
+            try {
+                resultado = cancelacion.ejecutar(() -> consulta.apply(criterio));
+            } catch (RuntimeException e) {
+                System.out.println("Error en la búsqueda: " + e.getMessage());
+                return;
+            }
+            Platform.runLater(() -> {
+                if (cancelacion != enCurso || cancelacion.isCancelada()) return;
+                enCurso = null;
+                publicar.accept(resultado);
+            });
+        });
+    }
+
+    /**
+     * Cancela lo pendiente y detiene el hilo de consultas.
+     */
+    public void cerrar() {
+        espera.stop();
+        if (enCurso != null) enCurso.cancelar();
+        ejecutor.shutdownNow();
+    }
+}
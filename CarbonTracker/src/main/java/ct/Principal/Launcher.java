@@ -1,5 +1,7 @@
 package ct.Principal;
 
+import java.util.Arrays;
+
 /**
  * Punto de entrada para la aplicación Carbon Tracker.
  * <p>
@@ -21,10 +23,18 @@ public class Launcher {
      * y transferir los argumentos de línea de comandos al método main de la clase {@link AppCT},
      * iniciando así oficialmente el ciclo de vida de la aplicación gráfica.
      * </p>
+     * <p>
+     * Excepción: con {@code generar} como primer argumento no se abre la interfaz, sino que se generan datos
+     * sintéticos con el resto de argumentos (ver {@link DAO.GeneradorDatos#main}).
+     * </p>
      *
      * @param args Argumentos de línea de comandos recibidos al iniciar el programa (opcionales).
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("generar")) {
+            DAO.GeneradorDatos.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         AppCT.main(args);
     }
 }
\ No newline at end of file
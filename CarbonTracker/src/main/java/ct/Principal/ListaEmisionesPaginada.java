@@ -0,0 +1,316 @@
+package ct.Principal;
+
+import DAO.ClaveEmision;
+import DAO.FiltroEmisiones;
+import DAO.GestorBD;
+import DAO.GestorBDAsincrono;
+import Modelos.Emisiones;
+import javafx.collections.ObservableListBase;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Lista observable de emisiones que carga sus filas por páginas, solo cuando la tabla las pide.
+ * <p>
+ * El {@code TableView} solo consulta las filas visibles, así que con esta lista la tabla de emisiones
+ * puede mostrar cientos de miles de registros manteniendo en memoria unas pocas páginas:
+ * <ul>
+ * <li>El tamaño sale de {@link GestorBD#contarEmisiones(FiltroEmisiones)}, sin leer las filas.</li>
+ * <li>Cada página se pide por cursor (la clave de la última fila de la anterior), por lo que
+ * desplazarse hacia abajo cuesta lo mismo al principio que al final de la lista.</li>
+ * <li>Si se salta a una zona lejana (barra de desplazamiento), la clave inicial se localiza
+ * con {@link GestorBD#getClaveEnPosicion(FiltroEmisiones, int)} sobre el índice.</li>
+ * <li>Solo se conservan las {@value #PAGINAS_EN_MEMORIA} páginas usadas más recientemente.</li>
+ * <li>Las páginas se leen en segundo plano: mientras llegan, sus filas aparecen vacías (null)
+ * y al recibirlas se notifica a la tabla para que las pinte.</li>
+ * </ul>
+ * La lista es de solo lectura: los cambios se hacen en la base de datos y después se vuelve a aplicar el filtro.
+ * Al cambiar de filtro, el recuento y la primera página se leen con {@link #consultar} (en segundo plano)
+ * y se aplican con {@link #aplicar} en el hilo de JavaFX. Si el filtro es el mismo (un refresco tras guardar),
+ * la primera página se compara con la mostrada ({@link ListaReconciliable#aplicarDiferencias}) y solo se notifican
+ * las filas que han cambiado.
+ */
+public class ListaEmisionesPaginada extends ObservableListBase<Emisiones> {
+
+    /** Filas por página (unas pocas pantallas de tabla). */
+    public static final int TAMANO_PAGINA = 100;
+
+    /** Páginas que se mantienen en memoria. */
+    private static final int PAGINAS_EN_MEMORIA = 10;
+
+    /** Gestor del que se leen las páginas. */
+    private final GestorBDAsincrono gestorBD;
+
+    /** Filtro aplicado actualmente. */
+    private FiltroEmisiones filtro = new FiltroEmisiones();
+
+    /** Número de emisiones que cumplen el filtro. */
+    private int tamano = 0;
+
+    /** Páginas cargadas, en orden de uso (la menos usada se descarta primero). */
+    private final Map<Integer, List<Emisiones>> paginas = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Emisiones>> masAntigua) {
+            return size() > PAGINAS_EN_MEMORIA;
+        }
+    };
+
+    /** Clave de la última fila de cada página ya leída: cursor de la página siguiente. */
+    private final Map<Integer, ClaveEmision> finDePagina = new HashMap<>();
+
+    /** Páginas solicitadas que aún no han llegado. */
+    private final Set<Integer> enCarga = new HashSet<>();
+
+    /** Se incrementa con cada filtro aplicado, para descartar páginas de un filtro anterior. */
+    private int version = 0;
+
+    /**
+     * Resultado de consultar un filtro: número de coincidencias y primera página ya leída.
+     *
+     * @param filtro Filtro consultado.
+     * @param tamano Número de emisiones que lo cumplen.
+     * @param primeraPagina Primeras {@value #TAMANO_PAGINA} filas como máximo.
+     */
+    public record Carga(FiltroEmisiones filtro, int tamano, List<Emisiones> primeraPagina) { }
+
+    /**
+     * @param gestorBD Gestor asíncrono de base de datos de la aplicación.
+     */
+    public ListaEmisionesPaginada(GestorBDAsincrono gestorBD) {
+        this.gestorBD = gestorBD;
+    }
+
+    /**
+     * Lee el recuento y la primera página de un filtro sin modificar la lista.
+     * Solo accede a la base de datos, así que puede llamarse desde cualquier hilo.
+     *
+     * @param nuevoFiltro Filtro a consultar.
+     * @return Datos para {@link #aplicar(Carga)}.
+     */
+    public Carga consultar(FiltroEmisiones nuevoFiltro) {
+        GestorBD gestor = gestorBD.getGestorBD();
+        int coincidencias = gestor.contarEmisiones(nuevoFiltro);
+        List<Emisiones> primeraPagina = coincidencias == 0
+                ? List.of()
+                : gestor.getPaginaEmisiones(nuevoFiltro, null, TAMANO_PAGINA);
+        return new Carga(nuevoFiltro, coincidencias, primeraPagina);
+    }
+
+    /**
+     * Sustituye el contenido por el de un filtro ya consultado (o el mismo filtro releído tras un cambio en los datos).
+     * <p>
+     * Se descartan las páginas cargadas. Con un filtro nuevo se notifica a la tabla que todo el contenido ha cambiado;
+     * con el mismo filtro, solo las altas, bajas y cambios de la primera página y la diferencia de tamaño
+     * (el resto de páginas se vuelve a leer cuando la tabla las muestra).
+     *
+     * @param carga Resultado de {@link #consultar(FiltroEmisiones)}.
+     * @return true si era el mismo filtro y se han conservado las filas que no cambiaban.
+     */
+    public boolean aplicar(Carga carga) {
+        List<Emisiones> primeraPagina = paginas.get(0);
+        if (primeraPagina != null && carga.filtro().equals(filtro)) {
+            refrescar(new ArrayList<>(primeraPagina), carga);
+            return true;
+        }
+
+        int tamanoAnterior = tamano;
+        filtro = carga.filtro();
+        paginas.clear();
+        finDePagina.clear();
+        enCarga.clear();
+        version++;
+        tamano = carga.tamano();
+        if (!carga.primeraPagina().isEmpty()) guardarPagina(0, carga.primeraPagina());
+
+        beginChange();
+        if (tamanoAnterior > 0) nextRemove(0, Collections.<Emisiones>nCopies(tamanoAnterior, null));
+        if (tamano > 0) nextAdd(0, tamano);
+        endChange();
+        return false;
+    }
+
+    /**
+     * Aplica el mismo filtro releído: compara la primera página nueva con la mostrada y ajusta el tamaño al final.
+     *
+     * @param mostrada Copia de la primera página actual.
+     * @param carga Recuento y primera página releídos.
+     */
+    private void refrescar(List<Emisiones> mostrada, Carga carga) {
+        // Las filas detrás de la primera página siguen "presentes" mientras se aplican las diferencias
+        int tamanoIntermedio = tamano - mostrada.size() + carga.primeraPagina().size();
+        paginas.clear();
+        finDePagina.clear();
+        enCarga.clear();
+        version++;
+
+        beginChange();
+        ListaReconciliable.aplicarDiferencias(new PrimeraPagina(mostrada), carga.primeraPagina(),
+                Emisiones::getId, ListaEmisionesPaginada::mismaEmision);
+        // La diferencia de tamaño se aplica al final, donde las filas aún no están cargadas
+        tamano = carga.tamano();
+        if (tamano > tamanoIntermedio) {
+            nextAdd(tamanoIntermedio, tamano);
+        } else if (tamano < tamanoIntermedio) {
+            nextRemove(tamano, Collections.<Emisiones>nCopies(tamanoIntermedio - tamano, null));
+        }
+        // Ya es igual a la nueva primera página, con las mismas instancias en las filas que no cambian
+        if (!mostrada.isEmpty()) guardarPagina(0, mostrada);
+        endChange();
+    }
+
+    /**
+     * Indica si dos lecturas de una misma emisión se muestran igual en la tabla.
+     */
+    private static boolean mismaEmision(Emisiones a, Emisiones b) {
+        return Objects.equals(a.getTipoEmision(), b.getTipoEmision())
+                && a.getCantidadEmision() == b.getCantidadEmision()
+                && a.getCo2e() == b.getCo2e()
+                && Objects.equals(a.getFecha(), b.getFecha())
+                && Objects.equals(a.getIdEmpresa(), b.getIdEmpresa())
+                && Objects.equals(a.getNombreEmpresa(), b.getNombreEmpresa());
+    }
+
+    /**
+     * Vista modificable de la primera página que, además de cambiarla, anota cada cambio en la notificación en curso.
+     */
+    private final class PrimeraPagina extends AbstractList<Emisiones> {
+
+        private final List<Emisiones> filas;
+
+        PrimeraPagina(List<Emisiones> filas) {
+            this.filas = filas;
+        }
+
+        @Override
+        public Emisiones get(int indice) {
+            return filas.get(indice);
+        }
+
+        @Override
+        public int size() {
+            return filas.size();
+        }
+
+        @Override
+        public Emisiones set(int indice, Emisiones emision) {
+            Emisiones anterior = filas.set(indice, emision);
+            nextSet(indice, anterior);
+            return anterior;
+        }
+
+        @Override
+        public void add(int indice, Emisiones emision) {
+            filas.add(indice, emision);
+            nextAdd(indice, indice + 1);
+        }
+
+        @Override
+        public Emisiones remove(int indice) {
+            Emisiones quitada = filas.remove(indice);
+            nextRemove(indice, quitada);
+            return quitada;
+        }
+    }
+
+    /**
+     * @return Filtro aplicado actualmente.
+     */
+    public FiltroEmisiones getFiltro() {
+        return filtro;
+    }
+
+    @Override
+    public Emisiones get(int indice) {
+        if (indice < 0 || indice >= tamano) {
+            throw new IndexOutOfBoundsException("Índice " + indice + " fuera de la lista (" + tamano + ")");
+        }
+        List<Emisiones> pagina = paginas.get(indice / TAMANO_PAGINA);
+        if (pagina == null) {
+            solicitarPagina(indice / TAMANO_PAGINA);
+            return null;
+        }
+        int posicion = indice % TAMANO_PAGINA;
+        // Si se han borrado filas desde el recuento, el final de la lista queda vacío hasta recargar
+        return posicion < pagina.size() ? pagina.get(posicion) : null;
+    }
+
+    @Override
+    public int size() {
+        return tamano;
+    }
+
+    /**
+     * Busca solo en las páginas cargadas: recorrer la lista entera obligaría a leer toda la tabla.
+     */
+    @Override
+    public int indexOf(Object objeto) {
+        for (Map.Entry<Integer, List<Emisiones>> pagina : paginas.entrySet()) {
+            int posicion = pagina.getValue().indexOf(objeto);
+            if (posicion >= 0) return pagina.getKey() * TAMANO_PAGINA + posicion;
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object objeto) {
+        return indexOf(objeto) >= 0;
+    }
+
+    /**
+     * Pide en segundo plano una página que no está en memoria y, al recibirla,
+     * avisa a la tabla de que sus filas han cambiado.
+     */
+    private void solicitarPagina(int numero) {
+        if (!enCarga.add(numero)) return;
+        FiltroEmisiones filtroPagina = filtro;
+        ClaveEmision cursorConocido = numero > 0 ? finDePagina.get(numero - 1) : null;
+        int versionPagina = version;
+
+        gestorBD.llamar(gestor -> leerPagina(gestor, filtroPagina, numero, cursorConocido), pagina -> {
+            if (versionPagina != version) return;
+            enCarga.remove(numero);
+            guardarPagina(numero, pagina);
+
+            int desde = numero * TAMANO_PAGINA;
+            int hasta = Math.min(desde + TAMANO_PAGINA, tamano);
+            if (desde >= hasta) return;
+            beginChange();
+            nextReplace(desde, hasta, Collections.<Emisiones>nCopies(hasta - desde, null));
+            endChange();
+        });
+    }
+
+    /**
+     * Lee una página de la base de datos (fuera del hilo de JavaFX).
+     *
+     * @param cursor Clave de la última fila de la página anterior, si ya se conoce.
+     */
+    private static List<Emisiones> leerPagina(GestorBD gestor, FiltroEmisiones filtro, int numero, ClaveEmision cursor) {
+        if (numero > 0 && cursor == null) {
+            // Salto lejano: la última fila de la página anterior se localiza sobre el índice
+            cursor = gestor.getClaveEnPosicion(filtro, numero * TAMANO_PAGINA - 1);
+            if (cursor == null) return List.of();
+        }
+        return gestor.getPaginaEmisiones(filtro, cursor, TAMANO_PAGINA);
+    }
+
+    /**
+     * Guarda una página leída y la clave de su última fila.
+     */
+    private void guardarPagina(int numero, List<Emisiones> pagina) {
+        if (!pagina.isEmpty()) {
+            Emisiones ultima = pagina.get(pagina.size() - 1);
+            finDePagina.put(numero, new ClaveEmision(ultima.getFecha().toEpochDay(), ultima.getId()));
+        }
+        paginas.put(numero, pagina);
+    }
+}
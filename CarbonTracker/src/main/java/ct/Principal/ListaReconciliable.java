@@ -0,0 +1,161 @@
+package ct.Principal;
+
+import javafx.collections.ModifiableObservableListBase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Lista observable que se actualiza comparando el nuevo resultado de una consulta con su contenido,
+ * en lugar de vaciarla y volver a llenarla.
+ * <p>
+ * Las filas se identifican por una clave (el ID de la entidad):
+ * <ul>
+ * <li>las que ya no están se quitan, las nuevas se insertan en su posición;</li>
+ * <li>las que siguen y han cambiado se sustituyen; las que no han cambiado se conservan (misma instancia);</li>
+ * <li>todo se notifica en un único cambio.</li>
+ * </ul>
+ * Así, refrescar una tabla tras editar una fila solo repinta esa fila, y la tabla conserva la selección
+ * y la posición de desplazamiento.
+ *
+ * @param <T> Tipo de las filas.
+ * @param <K> Tipo de la clave que identifica cada fila.
+ */
+public class ListaReconciliable<T, K> extends ModifiableObservableListBase<T> {
+
+    /** Filas actuales. */
+    private final List<T> elementos = new ArrayList<>();
+
+    /** Clave de cada fila. */
+    private final Function<? super T, ? extends K> clave;
+
+    /** Indica si dos versiones de una misma fila muestran lo mismo (si no, se sustituye). */
+    private final BiPredicate<? super T, ? super T> mismoContenido;
+
+    /**
+     * @param clave Clave que identifica cada fila (única dentro de la lista).
+     * @param mismoContenido Compara la fila actual con la nueva de la misma clave.
+     */
+    public ListaReconciliable(Function<? super T, ? extends K> clave, BiPredicate<? super T, ? super T> mismoContenido) {
+        this.clave = clave;
+        this.mismoContenido = mismoContenido;
+    }
+
+    /**
+     * Deja la lista igual que {@code nuevos} (mismas filas y en el mismo orden) con los cambios mínimos,
+     * notificados en un único cambio. Si no hay diferencias no se notifica nada.
+     *
+     * @param nuevos Nuevo contenido (claves únicas).
+     * @return Número de inserciones, borrados y sustituciones aplicados.
+     */
+    public int reconciliar(List<? extends T> nuevos) {
+        beginChange();
+        try {
+            return aplicarDiferencias(this, nuevos, clave, mismoContenido);
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * Transforma {@code actual} en {@code nuevos} con inserciones, borrados y sustituciones por clave.
+     * <p>
+     * Las altas, bajas y ediciones cuestan una operación cada una, y mover una fila a otra posición, dos.
+     * Las filas se buscan recorriendo la lista solo cuando el orden deja de coincidir.
+     *
+     * @param actual Lista a modificar.
+     * @param nuevos Contenido final (claves únicas).
+     * @param clave Clave de cada fila.
+     * @param mismoContenido Compara la fila actual con la nueva de la misma clave.
+     * @return Número de operaciones aplicadas sobre {@code actual}.
+     */
+    public static <T, K> int aplicarDiferencias(List<T> actual, List<? extends T> nuevos,
+                                                Function<? super T, ? extends K> clave,
+                                                BiPredicate<? super T, ? super T> mismoContenido) {
+        Set<K> clavesNuevas = new HashSet<>();
+        for (T nuevo : nuevos) clavesNuevas.add(clave.apply(nuevo));
+
+        int operaciones = 0;
+        // 1. Bajas (de atrás hacia delante para no desplazar lo que queda por revisar)
+        for (int i = actual.size() - 1; i >= 0; i--) {
+            if (!clavesNuevas.contains(clave.apply(actual.get(i)))) {
+                actual.remove(i);
+                operaciones++;
+            }
+        }
+
+        // 2. Ediciones, altas y movimientos, posición por posición
+        for (int i = 0; i < nuevos.size(); i++) {
+            T nuevo = nuevos.get(i);
+            K claveNueva = clave.apply(nuevo);
+            if (i < actual.size() && Objects.equals(clave.apply(actual.get(i)), claveNueva)) {
+                if (!mismoContenido.test(actual.get(i), nuevo)) {
+                    actual.set(i, nuevo);
+                    operaciones++;
+                }
+                continue;
+            }
+            if (i + 1 < actual.size() && Objects.equals(clave.apply(actual.get(i + 1)), claveNueva)) {
+                // La fila de esta posición se ha movido más abajo: se quita y se insertará al llegar a ella
+                actual.remove(i);
+                operaciones++;
+                i--;
+                continue;
+            }
+            int anterior = buscar(actual, clave, claveNueva, i + 1);
+            if (anterior >= 0) {
+                actual.remove(anterior);
+                operaciones++;
+            }
+            actual.add(i, nuevo);
+            operaciones++;
+        }
+
+        // 3. Sobrantes (solo si los nuevos repetían alguna clave)
+        while (actual.size() > nuevos.size()) {
+            actual.remove(actual.size() - 1);
+            operaciones++;
+        }
+        return operaciones;
+    }
+
+    /**
+     * Posición de la fila con una clave a partir de {@code desde}, o -1 si no está.
+     */
+    private static <T, K> int buscar(List<T> lista, Function<? super T, ? extends K> clave, K buscada, int desde) {
+        for (int i = desde; i < lista.size(); i++) {
+            if (Objects.equals(clave.apply(lista.get(i)), buscada)) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public T get(int indice) {
+        return elementos.get(indice);
+    }
+
+    @Override
+    public int size() {
+        return elementos.size();
+    }
+
+    @Override
+    protected void doAdd(int indice, T elemento) {
+        elementos.add(indice, elemento);
+    }
+
+    @Override
+    protected T doSet(int indice, T elemento) {
+        return elementos.set(indice, elemento);
+    }
+
+    @Override
+    protected T doRemove(int indice) {
+        return elementos.remove(indice);
+    }
+}
@@ -1,6 +1,7 @@
 package ct.Principal;
 
 import DAO.GestorBD;
+import DAO.GestorBDAsincrono;
 import Modelos.Rol;
 import Modelos.Usuario;
 import javafx.collections.FXCollections;
@@ -22,8 +23,9 @@ public class Registro extends Dialog<Usuario> {
 
     /**
      * Instancia al gestor de la base de datos para realizar operaciones de login y registro.
+     * Las operaciones se ejecutan en segundo plano y su resultado llega al hilo de JavaFX.
      */
-    private GestorBD gestorBD;
+    private GestorBDAsincrono gestorBD;
 
     /**
      * Contenedor principal para la vista de inicio de sesión.
@@ -57,9 +59,9 @@ public class Registro extends Dialog<Usuario> {
      * <p>
      * Inicializa las vistas y configura el diálogo para comenzar en la pantalla de Login.
      *
-     * @param gestorBD La instancia del GestorBD necesaria para la autenticación.
+     * @param gestorBD El gestor asíncrono de base de datos necesario para la autenticación.
      */
-    public Registro(GestorBD gestorBD) {
+    public Registro(GestorBDAsincrono gestorBD) {
         this.gestorBD = gestorBD;
         setTitle("Bienvenido a Carbon Tracker");
         // Se incializan las ventanas de login y registro
@@ -106,7 +108,7 @@ public class Registro extends Dialog<Usuario> {
         Button botonPanelOk = new Button("Entrar");
         botonPanelOk.setDefaultButton(true);
         botonPanelOk.setMaxWidth(Double.MAX_VALUE); // Botón ancho
-        botonPanelOk.setOnAction(e -> manejarLogin());
+        botonPanelOk.setOnAction(e -> manejarLogin(botonPanelOk));
         // Enlace para cambiar a la vista de registro
         Hyperlink redireccionRegistro = new Hyperlink("¿No tienes cuenta? Regístrate");
         redireccionRegistro.setStyle("-fx-text-fill: #3ba136;");
@@ -125,18 +127,21 @@ public class Registro extends Dialog<Usuario> {
         Hyperlink llamadaDemo = new Hyperlink("🛠 Cargar Datos de Prueba");
         llamadaDemo.setStyle("-fx-text-fill: #E53E3E;");
         llamadaDemo.setOnAction(e -> {
-            // Ejecutamos la carga
-            gestorBD.cargarDatosDemo();
-            // Feedback de usuarios
-            Alert alerta = new Alert(Alert.AlertType.INFORMATION);
-            alerta.setTitle("Modo Test");
-            alerta.setHeaderText("Datos de prueba cargados correctamente");
-            alerta.setContentText("Credenciales creadas:\nUsuario: admin / Pass: admin\nUsuario: empleado / Pass: 1234\nUsuario: cliente / Pass: 1234");
-            try { alerta.getDialogPane().getStylesheets().add(getClass().getResource("style.css").toExternalForm()); } catch(Exception ex){}
-            alerta.showAndWait();
-            //Relleno de datos automático
-            campoUsuario.setText("admin");
-            campoContrasena.setText("admin");
+            // Ejecutamos la carga (en segundo plano; el enlace se desactiva mientras tanto)
+            llamadaDemo.setDisable(true);
+            gestorBD.ejecutar(GestorBD::cargarDatosDemo, () -> {
+                llamadaDemo.setDisable(false);
+                // Feedback de usuarios
+                Alert alerta = new Alert(Alert.AlertType.INFORMATION);
+                alerta.setTitle("Modo Test");
+                alerta.setHeaderText("Datos de prueba cargados correctamente");
+                alerta.setContentText("Credenciales creadas:\nUsuario: admin / Pass: admin\nUsuario: empleado / Pass: 1234\nUsuario: cliente / Pass: 1234");
+                try { alerta.getDialogPane().getStylesheets().add(getClass().getResource("style.css").toExternalForm()); } catch(Exception ex){}
+                alerta.showAndWait();
+                //Relleno de datos automático
+                campoUsuario.setText("admin");
+                campoContrasena.setText("admin");
+            });
         });
 
         VBox contenedorLink = new VBox(separador, llamadaDemo);
@@ -175,8 +180,11 @@ public class Registro extends Dialog<Usuario> {
         campoRegistroContrasena.setPromptText("Contraseña");
         campoNombreCompleto.setPromptText("Nombre completo");
         // Rellenamos el ComboBox con los roles recuperados de la BD
-        comboRoles.setItems(FXCollections.observableArrayList(gestorBD.getRoles()));
-        comboRoles.setPromptText("Selecciona un rol");
+        comboRoles.setPromptText("Cargando roles...");
+        gestorBD.llamar(GestorBD::getRoles, roles -> {
+            comboRoles.setItems(FXCollections.observableArrayList(roles));
+            comboRoles.setPromptText("Selecciona un rol");
+        });
         comboRoles.setMaxWidth(Double.MAX_VALUE);
         //Añadimos aquí los estilos para no mezclarlos con los de la pantalla principal
         msgErrorRegistro.setStyle("-fx-text-fill: #E53E3E;");
@@ -237,8 +245,10 @@ public class Registro extends Dialog<Usuario> {
      * </li>
      * </ol>
      * </p>
+     *
+     * @param botonEntrar Botón de login, desactivado mientras se comprueban las credenciales.
      */
-    private void manejarLogin() {
+    private void manejarLogin(Button botonEntrar) {
         String usuario = campoUsuario.getText();
         String pass = campoContrasena.getText();
 
@@ -248,10 +258,10 @@ public class Registro extends Dialog<Usuario> {
             return;
         }
 
-        try {
-            // Intentamos hacer login
-            Usuario usuarioRegistrado = gestorBD.login(usuario, pass);
-
+        // Intentamos hacer login (el hash de la contraseña se comprueba en segundo plano)
+        botonEntrar.setDisable(true);
+        gestorBD.llamar(g -> g.login(usuario, pass), usuarioRegistrado -> {
+            botonEntrar.setDisable(false);
             if (usuarioRegistrado != null) {
                 // CASO 1: LOGIN CORRECTO
                 setResult(usuarioRegistrado);
@@ -261,19 +271,24 @@ public class Registro extends Dialog<Usuario> {
                 msgInfo.setText("Nombre de usuario o contraseña incorrectos.");
                 msgInfo.setStyle("-fx-text-fill: #E53E3E;"); // Hardcoded Rojo
             }
+        }, error -> {
+            botonEntrar.setDisable(false);
+            if (error instanceof SecurityException) {
+                // CASO 3: USUARIO BLOQUEADO (Capturamos la excepción desde GestorBD)
+                msgInfo.setText(""); // Limpiamos
+                campoContrasena.clear(); // Limpiamos la pass
 
-        } catch (SecurityException e) {
-            // CASO 3: USUARIO BLOQUEADO (Capturamos la excepción desde GestorBD)
-            msgInfo.setText(""); // Limpiamos
-            campoContrasena.clear(); // Limpiamos la pass
-
-            // Mostramos el PopUp específico para el bloqueo
-            popUpInfoError(
-                    "Acceso No Permitido",
-                    "Cuenta Bloqueada",
-                    e.getMessage() //
-            );
-        }
+                // Mostramos el PopUp específico para el bloqueo
+                popUpInfoError(
+                        "Acceso No Permitido",
+                        "Cuenta Bloqueada",
+                        error.getMessage() //
+                );
+            } else {
+                msgInfo.setText("No se pudo conectar con la base de datos.");
+                msgInfo.setStyle("-fx-text-fill: #E53E3E;");
+            }
+        });
     }
 
     /**
@@ -305,8 +320,15 @@ public class Registro extends Dialog<Usuario> {
             return;
         }
 
-        boolean registroCorrecto = gestorBD.crearUsuario(usuario, pass, nomCompleto, rol, null);
+        gestorBD.llamar(g -> g.crearUsuario(usuario, pass, nomCompleto, rol, null), this::mostrarResultadoRegistro);
+    }
 
+    /**
+     * Aplica al formulario el resultado del alta de usuario.
+     *
+     * @param registroCorrecto true si el usuario se ha creado.
+     */
+    private void mostrarResultadoRegistro(boolean registroCorrecto) {
         if (registroCorrecto) {
             // Éxito en la creación
             msgErrorRegistro.setText("");
@@ -0,0 +1,400 @@
+package ct.Principal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vigilante de bloqueos del hilo de JavaFX.
+ * <p>
+ * Funcionamiento:
+ * <ul>
+ * <li><b>Latido:</b> un hilo propio envía una tarea vacía al hilo de la interfaz ({@code Platform::runLater}) y mide
+ * cuánto tarda en ejecutarse. Los pulsos de JavaFX (maquetación, CSS, pintado) y los eventos se atienden en ese mismo
+ * hilo, así que el retraso del latido es el tiempo que la interfaz ha estado sin responder.</li>
+ * <li><b>Muestras:</b> mientras un latido no se atiende, cada {@link #INTERVALO_MUESTREO_MS} ms se copia la pila del
+ * hilo de JavaFX y se clasifica ({@link Causa}): base de datos (JDBC), E/S de fichero, espera a otro hilo o cálculo.</li>
+ * <li><b>Registro:</b> si el retraso supera el umbral, se guarda un {@link Bloqueo} con la causa más repetida, el
+ * método de la aplicación que lo provocó y su pila, y se emite el evento JFR {@value #EVENTO_BLOQUEO}.</li>
+ * </ul>
+ * Se guardan los últimos {@value #MAX_BLOQUEOS} bloqueos, que el administrador puede exportar como informe
+ * ({@link #exportarInforme}). Sin bloqueos, el coste es una tarea vacía en la interfaz cada
+ * {@value #INTERVALO_MUESTREO_MS} ms.
+ */
+public class VigilanteHiloFX {
+
+    /** Nombre del evento JFR de los bloqueos. */
+    public static final String EVENTO_BLOQUEO = "carbontracker.BloqueoHiloFX";
+
+    /** Retraso a partir del cual se considera que la interfaz se ha bloqueado. */
+    public static final Duration UMBRAL_POR_DEFECTO = Duration.ofMillis(200);
+
+    /** Frecuencia de comprobación del latido y de copia de la pila durante un bloqueo. */
+    static final long INTERVALO_MUESTREO_MS = 50;
+
+    /** Bloqueos guardados (los más antiguos se descartan). */
+    static final int MAX_BLOQUEOS = 500;
+
+    /** Muestras de pila guardadas por bloqueo (en los más largos solo se siguen contando). */
+    private static final int MAX_MUESTRAS = 200;
+
+    /** Líneas de pila que se guardan de cada bloqueo. */
+    private static final int MAX_LINEAS_PILA = 60;
+
+    /** Paquetes que no son código de la aplicación (para encontrar el método que provocó el bloqueo). */
+    private static final String[] PAQUETES_AJENOS = {"java.", "javax.", "javafx.", "com.sun.", "jdk.", "sun.", "org.sqlite.", "DAO."};
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    /**
+     * Tipo de trabajo que tenía ocupado el hilo de JavaFX.
+     */
+    public enum Causa {
+        /** Dentro del controlador JDBC (consulta, confirmación, espera por bloqueo de SQLite...). */
+        JDBC("Base de datos (JDBC)"),
+        /** Lectura o escritura de ficheros. */
+        FICHERO("E/S de fichero"),
+        /** Esperando a otro hilo (un futuro, un cerrojo, sleep...). */
+        ESPERA("Espera a otro hilo"),
+        /** Ninguna de las anteriores: código de la aplicación o de JavaFX. */
+        CALCULO("Cálculo / interfaz");
+
+        private final String descripcion;
+
+        Causa(String descripcion) {
+            this.descripcion = descripcion;
+        }
+
+        public String getDescripcion() {
+            return descripcion;
+        }
+    }
+
+    /**
+     * Bloqueo registrado.
+     *
+     * @param momento Cuándo terminó.
+     * @param duracionMs Tiempo que la interfaz estuvo sin responder.
+     * @param causa Causa más repetida entre las muestras.
+     * @param origen Primer método de la aplicación en la pila (ej. {@code ct.Principal.AppCT.borradoEmpresa}).
+     * @param muestras Número de muestras de pila tomadas.
+     * @param pila Pila del hilo de JavaFX en una muestra de esa causa.
+     */
+    public record Bloqueo(LocalDateTime momento, long duracionMs, Causa causa, String origen, int muestras, String pila) { }
+
+    /** Ejecutor del hilo de la interfaz (en JavaFX, {@code Platform::runLater}). */
+    private final Executor hiloInterfaz;
+
+    /** Retraso mínimo de un bloqueo. */
+    private final long umbralNanos;
+
+    /** Hilo que envía los latidos y copia las pilas. */
+    private ScheduledExecutorService vigilante;
+
+    /** Hilo de la interfaz (se conoce con el primer latido atendido). */
+    private volatile Thread hiloFX;
+
+    /** Momento en que se envió el latido pendiente (System.nanoTime), o 0 si no hay ninguno. */
+    private long enviado;
+
+    /** Momento en que el hilo de la interfaz atendió el latido pendiente, o 0 si aún no lo ha hecho. */
+    private volatile long atendido;
+
+    /** Evento JFR del latido pendiente. */
+    private EventoBloqueo evento;
+
+    /** Muestras de pila del latido pendiente. */
+    private final List<StackTraceElement[]> muestras = new ArrayList<>();
+
+    /** Número de muestras del latido pendiente (incluidas las que no se guardan). */
+    private int numMuestras;
+
+    /** Últimos bloqueos, el más reciente al final. Protegido por {@code this}. */
+    private final Deque<Bloqueo> bloqueos = new ArrayDeque<>();
+
+    /**
+     * @param hiloInterfaz Ejecutor del hilo de la interfaz (en JavaFX, {@code Platform::runLater}).
+     * @param umbral Retraso a partir del cual se registra un bloqueo.
+     */
+    public VigilanteHiloFX(Executor hiloInterfaz, Duration umbral) {
+        this.hiloInterfaz = hiloInterfaz;
+        this.umbralNanos = umbral.toNanos();
+    }
+
+    /**
+     * Empieza a vigilar. No hace nada si ya se estaba vigilando.
+     */
+    public synchronized void iniciar() {
+        if (vigilante != null) return;
+        enviado = 0;
+        muestras.clear();
+        numMuestras = 0;
+        vigilante = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "vigilante-hilo-fx");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        vigilante.scheduleWithFixedDelay(this::comprobar, 0, INTERVALO_MUESTREO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deja de vigilar. Los bloqueos registrados se conservan.
+     */
+    public synchronized void detener() {
+        if (vigilante == null) return;
+        vigilante.shutdownNow();
+        vigilante = null;
+    }
+
+    /**
+     * @return Umbral de los bloqueos en milisegundos.
+     */
+    public long getUmbralMs() {
+        return TimeUnit.NANOSECONDS.toMillis(umbralNanos);
+    }
+
+    /**
+     * @return Bloqueos registrados, del más reciente al más antiguo.
+     */
+    public synchronized List<Bloqueo> getBloqueos() {
+        List<Bloqueo> copia = new ArrayList<>(bloqueos);
+        Collections.reverse(copia);
+        return copia;
+    }
+
+    /**
+     * Olvida los bloqueos registrados.
+     */
+    public synchronized void limpiar() {
+        bloqueos.clear();
+    }
+
+    /**
+     * Comprobación periódica (hilo del vigilante): cierra el latido atendido o toma una muestra del pendiente.
+     */
+    private void comprobar() {
+        try {
+            if (enviado != 0) {
+                long fin = atendido;
+                if (fin == 0) {
+                    muestrear();
+                    return;
+                }
+                terminarLatido(fin);
+            }
+            enviarLatido();
+        } catch (RuntimeException e) {
+            // Un error aquí cancelaría la tarea periódica: se informa y se sigue vigilando
+            System.out.println("Error en el vigilante del hilo de JavaFX: " + e.getMessage());
+        }
+    }
+
+    private void enviarLatido() {
+        atendido = 0;
+        evento = new EventoBloqueo();
+        evento.begin();
+        enviado = System.nanoTime();
+        hiloInterfaz.execute(() -> {
+            hiloFX = Thread.currentThread();
+            atendido = System.nanoTime();
+        });
+    }
+
+    private void muestrear() {
+        Thread hilo = hiloFX;
+        if (hilo == null) return;
+        numMuestras++;
+        if (muestras.size() < MAX_MUESTRAS) muestras.add(hilo.getStackTrace());
+    }
+
+    /**
+     * Registra el latido como bloqueo si ha superado el umbral y deja todo listo para el siguiente.
+     */
+    private void terminarLatido(long fin) {
+        long duracion = fin - enviado;
+        enviado = 0;
+        if (duracion >= umbralNanos) {
+            registrar(duracion);
+        }
+        muestras.clear();
+        numMuestras = 0;
+    }
+
+    private void registrar(long duracionNanos) {
+        // Causa más repetida y la primera muestra de esa causa
+        Map<Causa, Integer> veces = new EnumMap<>(Causa.class);
+        Map<Causa, StackTraceElement[]> ejemplo = new EnumMap<>(Causa.class);
+        for (StackTraceElement[] muestra : muestras) {
+            Causa causa = clasificar(muestra);
+            veces.merge(causa, 1, Integer::sum);
+            ejemplo.putIfAbsent(causa, muestra);
+        }
+        Causa causa = veces.entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(Causa.CALCULO);
+        StackTraceElement[] pila = ejemplo.getOrDefault(causa, new StackTraceElement[0]);
+
+        Bloqueo bloqueo = new Bloqueo(LocalDateTime.now(), TimeUnit.NANOSECONDS.toMillis(duracionNanos), causa,
+                origen(pila), numMuestras, formatear(pila));
+        synchronized (this) {
+            if (bloqueos.size() >= MAX_BLOQUEOS) bloqueos.removeFirst();
+            bloqueos.addLast(bloqueo);
+        }
+
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.duracion = duracionNanos;
+            evento.causa = causa.name();
+            evento.origen = bloqueo.origen();
+            evento.muestras = bloqueo.muestras();
+            evento.pila = bloqueo.pila();
+            evento.commit();
+        }
+    }
+
+    /**
+     * Clasifica una muestra. Manda el marco de JDBC o de fichero más interno (una exportación que lee
+     * un cursor y escribe un fichero se clasifica según lo que estaba haciendo en ese instante); esperar
+     * al pool de conexiones cuenta como JDBC. Si no hay ninguno, se mira si el hilo estaba esperando.
+     */
+    static Causa clasificar(StackTraceElement[] pila) {
+        boolean esperando = false;
+        for (StackTraceElement marco : pila) {
+            String clase = marco.getClassName();
+            String metodo = marco.getMethodName();
+            if (clase.startsWith("org.sqlite.") || clase.startsWith("java.sql.") || clase.startsWith("DAO.PoolConexiones")) {
+                return Causa.JDBC;
+            }
+            if (clase.startsWith("java.io.File") || clase.startsWith("java.io.RandomAccessFile")
+                    || clase.startsWith("java.nio.file.") || clase.startsWith("sun.nio.fs.")
+                    || clase.startsWith("sun.nio.ch.FileChannelImpl")) {
+                return Causa.FICHERO;
+            }
+            esperando |= clase.equals("jdk.internal.misc.Unsafe") && metodo.equals("park")
+                    || clase.equals("java.lang.Thread") && metodo.startsWith("sleep")
+                    || clase.equals("java.lang.Object") && metodo.equals("wait");
+        }
+        return esperando ? Causa.ESPERA : Causa.CALCULO;
+    }
+
+    /**
+     * Primer método de la aplicación en la pila (fuera del JDK, JavaFX, el controlador y el DAO).
+     */
+    static String origen(StackTraceElement[] pila) {
+        for (StackTraceElement marco : pila) {
+            String clase = marco.getClassName();
+            boolean ajeno = false;
+            for (String paquete : PAQUETES_AJENOS) {
+                if (clase.startsWith(paquete)) {
+                    ajeno = true;
+                    break;
+                }
+            }
+            if (!ajeno) return clase + "." + marco.getMethodName();
+        }
+        return "desconocido";
+    }
+
+    private static String formatear(StackTraceElement[] pila) {
+        StringBuilder texto = new StringBuilder();
+        for (int i = 0; i < pila.length && i < MAX_LINEAS_PILA; i++) {
+            texto.append("\tat ").append(pila[i]).append('\n');
+        }
+        if (pila.length > MAX_LINEAS_PILA) texto.append("\t... ").append(pila.length - MAX_LINEAS_PILA).append(" más\n");
+        return texto.toString();
+    }
+
+    /**
+     * Escribe un informe de texto con los bloqueos registrados: un resumen por método de origen
+     * (veces, tiempo total y máximo) y el detalle de cada bloqueo con su pila.
+     *
+     * @param fichero Fichero de destino (se sobrescribe).
+     * @throws IOException Si no se puede escribir.
+     */
+    public void exportarInforme(Path fichero) throws IOException {
+        List<Bloqueo> lista = getBloqueos();
+        Map<String, long[]> porOrigen = new LinkedHashMap<>();
+        lista.stream()
+                .sorted((a, b) -> Long.compare(b.duracionMs(), a.duracionMs()))
+                .forEach(b -> {
+                    long[] datos = porOrigen.computeIfAbsent(b.origen() + " · " + b.causa().getDescripcion(), k -> new long[3]);
+                    datos[0]++;
+                    datos[1] += b.duracionMs();
+                    datos[2] = Math.max(datos[2], b.duracionMs());
+                });
+
+        try (BufferedWriter salida = Files.newBufferedWriter(fichero, StandardCharsets.UTF_8)) {
+            salida.write("INFORME DE BLOQUEOS DEL HILO DE JAVAFX\n");
+            salida.write("Generado: " + LocalDateTime.now().format(FORMATO_FECHA) + " · Umbral: " + getUmbralMs()
+                    + " ms · Bloqueos: " + lista.size() + " (últimos " + MAX_BLOQUEOS + " como máximo)\n\n");
+
+            salida.write("RESUMEN POR ORIGEN (de mayor a menor bloqueo)\n");
+            salida.write(String.format("%8s %12s %10s  %s%n", "VECES", "TOTAL (ms)", "MÁX (ms)", "ORIGEN · CAUSA"));
+            for (Map.Entry<String, long[]> fila : porOrigen.entrySet()) {
+                long[] datos = fila.getValue();
+                salida.write(String.format("%8d %12d %10d  %s%n", datos[0], datos[1], datos[2], fila.getKey()));
+            }
+
+            salida.write("\nDETALLE (del más reciente al más antiguo)\n");
+            for (Bloqueo bloqueo : lista) {
+                salida.write("\n" + bloqueo.momento().format(FORMATO_FECHA) + " · " + bloqueo.duracionMs() + " ms · "
+                        + bloqueo.causa().getDescripcion() + " · " + bloqueo.origen() + " · " + bloqueo.muestras() + " muestras\n");
+                salida.write(bloqueo.pila());
+            }
+        }
+    }
+
+    // ==========================================
+    // EVENTO JFR
+    // ==========================================
+
+    /**
+     * Bloqueo del hilo de JavaFX, con la pila de ese hilo (la de la grabación sería la del vigilante).
+     */
+    @Name(EVENTO_BLOQUEO)
+    @Label("Bloqueo del hilo de JavaFX")
+    @Description("La interfaz ha estado sin responder más que el umbral del vigilante")
+    @Category({"CarbonTracker", "Interfaz"})
+    @StackTrace(false)
+    static final class EventoBloqueo extends Event {
+
+        @Label("Duración del bloqueo")
+        @Timespan(Timespan.NANOSECONDS)
+        long duracion;
+
+        @Label("Causa")
+        String causa;
+
+        @Label("Origen")
+        String origen;
+
+        @Label("Muestras")
+        int muestras;
+
+        @Label("Pila del hilo de JavaFX")
+        String pila;
+    }
+}
@@ -0,0 +1,211 @@
+import DAO.AlmacenColumnar;
+import DAO.ConfiguracionBD;
+import DAO.GeneradorDatos;
+import DAO.GestorBD;
+import Modelos.Emisiones;
+import Modelos.Empresa;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la copia columnar en memoria: tras cualquier secuencia de cambios responde lo mismo que SQL,
+ * deja paso a SQL cuando no cabe en su presupuesto y agrupa las recargas de invalidaciones seguidas.
+ * <p>
+ * Cada prueba abre dos gestores sobre la misma base: uno con la copia en memoria y otro sin ella
+ * (que responde siempre con SQL). Ninguno usa la caché de consultas, para comparar las dos vías.
+ */
+public class AlmacenColumnarTest {
+
+    @TempDir
+    Path directorio;
+
+    private final List<GestorBD> gestores = new ArrayList<>();
+
+    /** 3 empresas, 2 años con fechas fijas: unas 18.000 emisiones. */
+    private static final GeneradorDatos.Parametros MEDIANO = new GeneradorDatos.Parametros(11, 3, 1,
+            LocalDate.of(2023, 1, 1), LocalDate.of(2024, 12, 31), 8.2, GeneradorDatos.Distribucion.POISSON);
+
+    private GestorBD abrir(int memoriaMB) {
+        ConfiguracionBD configuracion = new ConfiguracionBD("jdbc:sqlite:" + directorio.resolve("columnar.db"));
+        configuracion.setEntradasCacheConsultas(0);
+        configuracion.setMemoriaAlmacenColumnarMB(memoriaMB);
+        GestorBD gestor = new GestorBD(configuracion);
+        gestor.arrancarBD();
+        gestores.add(gestor);
+        return gestor;
+    }
+
+    @AfterEach
+    void cerrar() {
+        gestores.forEach(GestorBD::cerrar);
+    }
+
+    private static Map<String, Double> comoMapa(List<Map.Entry<String, Double>> pares) {
+        Map<String, Double> mapa = new HashMap<>();
+        for (Map.Entry<String, Double> par : pares) mapa.put(par.getKey(), par.getValue());
+        return mapa;
+    }
+
+    private static <K> void assertMapasIguales(Map<K, Double> esperado, Map<K, Double> real, String contexto) {
+        assertEquals(esperado.keySet(), real.keySet(), contexto);
+        for (Map.Entry<K, Double> entrada : esperado.entrySet()) {
+            assertEquals(entrada.getValue(), real.get(entrada.getKey()), 1e-6, contexto + " / " + entrada.getKey());
+        }
+    }
+
+    /** Compara todos los agregados de la copia en memoria con los de SQL. */
+    private void assertIgualQueSQL(GestorBD memoria, GestorBD sql, List<Long> empresas) {
+        assertMapasIguales(sql.getTotalesPorEmpresa(), memoria.getTotalesPorEmpresa(), "totales por empresa");
+        assertMapasIguales(sql.getTotalesPorMes(null), memoria.getTotalesPorMes(null), "meses de todas");
+        List<LocalDate[]> intervalos = List.of(
+                new LocalDate[]{LocalDate.of(2023, 1, 1), LocalDate.of(2024, 12, 31)},
+                new LocalDate[]{LocalDate.of(2023, 3, 15), LocalDate.of(2023, 3, 15)},
+                new LocalDate[]{LocalDate.of(2023, 6, 10), LocalDate.of(2024, 2, 29)},
+                new LocalDate[]{LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31)});
+        for (LocalDate[] intervalo : intervalos) {
+            assertEquals(sql.getCo2eEmpresaEntre(null, intervalo[0], intervalo[1]),
+                    memoria.getCo2eEmpresaEntre(null, intervalo[0], intervalo[1]), 1e-6, "todas " + intervalo[0]);
+        }
+        for (Long id : empresas) {
+            assertMapasIguales(comoMapa(sql.getReporteEmisionesPorEmpresa(id)),
+                    comoMapa(memoria.getReporteEmisionesPorEmpresa(id)), "tipos de " + id);
+            Map<YearMonth, Double> meses = memoria.getTotalesPorMes(id);
+            assertMapasIguales(sql.getTotalesPorMes(id), meses, "meses de " + id);
+            assertEquals(new ArrayList<>(new TreeSet<>(meses.keySet())), new ArrayList<>(meses.keySet()),
+                    "Los meses deben salir en orden");
+            for (LocalDate[] intervalo : intervalos) {
+                assertEquals(sql.getCo2eEmpresaEntre(id, intervalo[0], intervalo[1]),
+                        memoria.getCo2eEmpresaEntre(id, intervalo[0], intervalo[1]), 1e-6, id + " " + intervalo[0]);
+            }
+        }
+    }
+
+    private Emisiones emision(String tipo, double co2e, LocalDate fecha, Long idEmpresa) {
+        return new Emisiones(null, tipo, co2e * 4, co2e, fecha, idEmpresa);
+    }
+
+    @Test
+    @DisplayName("ALM-01: Tras altas, modificaciones (de empresa y de tipo), bajas y bajas de empresa responde igual que SQL")
+    void testCambiosIgualQueSQL() {
+        GestorBD memoria = abrir(64);
+        GestorBD sql = abrir(0);
+        List<Long> empresas = new ArrayList<>();
+        for (String nombre : List.of("Alfa SA", "Beta SL", "Gamma SA", "Delta SL")) {
+            empresas.add(memoria.agregarEmpresa(new Empresa(nombre, "Industria")).getId());
+        }
+        List<Emisiones> altas = new ArrayList<>();
+        String[] tipos = {"Electricidad", "Gas Natural", "Transporte"};
+        for (int i = 0; i < 120; i++) {
+            altas.add(memoria.nuevaEmision(emision(tipos[i % 3], 1 + i * 0.5, LocalDate.of(2023, 1, 1).plusDays(i * 6L),
+                    empresas.get(i % 3))));
+        }
+        assertTrue(memoria.cargarAlmacenColumnar());
+        assertEquals(AlmacenColumnar.Estado.CARGADO, memoria.getEstadoAlmacenColumnar());
+        assertIgualQueSQL(memoria, sql, empresas);
+
+        // Altas después de cargar, una con un tipo que la copia aún no conoce
+        for (int i = 0; i < 10; i++) {
+            altas.add(memoria.nuevaEmision(emision(i % 2 == 0 ? "Residuos" : "Electricidad", 7 + i,
+                    LocalDate.of(2024, 5, 1 + i), empresas.get(3))));
+        }
+        // Modificaciones: solo importe, cambio de fecha (y de mes), de tipo y de empresa
+        Emisiones e0 = altas.get(0);
+        assertTrue(memoria.actualizarEmision(new Emisiones(e0.getId(), e0.getTipoEmision(), 10, 99.5, e0.getFecha(), e0.getIdEmpresa()), null));
+        Emisiones e1 = altas.get(1);
+        assertTrue(memoria.actualizarEmision(new Emisiones(e1.getId(), e1.getTipoEmision(), 10, 3.25, LocalDate.of(2024, 11, 30), e1.getIdEmpresa()), null));
+        Emisiones e2 = altas.get(2);
+        assertTrue(memoria.actualizarEmision(new Emisiones(e2.getId(), "Refrigerantes", 10, 12.5, e2.getFecha(), e2.getIdEmpresa()), null));
+        Emisiones e3 = altas.get(3);
+        assertTrue(memoria.actualizarEmision(new Emisiones(e3.getId(), "Gas Natural", 10, 8.75, LocalDate.of(2023, 2, 14), empresas.get(2)), null));
+        Emisiones e4 = altas.get(124);
+        assertTrue(memoria.actualizarEmision(new Emisiones(e4.getId(), e4.getTipoEmision(), 10, 1.5, e4.getFecha(), empresas.get(0)), null));
+        // Bajas sueltas y de una empresa entera (con sus emisiones en cascada)
+        memoria.borrarEmision(altas.get(5).getId());
+        memoria.borrarEmision(altas.get(6).getId());
+        memoria.borrarEmision(altas.get(125).getId());
+        memoria.borrarEmpresa(empresas.get(1));
+        // Alta para una empresa que sigue viva después de la baja
+        memoria.nuevaEmision(emision("Transporte", 4.5, LocalDate.of(2023, 8, 8), empresas.get(2)));
+
+        assertEquals(AlmacenColumnar.Estado.CARGADO, memoria.getEstadoAlmacenColumnar(), "Los cambios sueltos no deben descartar la copia");
+        assertTrue(sql.comprobarTotalesEmpresa().isEmpty());
+        assertIgualQueSQL(memoria, sql, empresas);
+    }
+
+    @Test
+    @DisplayName("ALM-02: Si las emisiones no caben en el presupuesto (al cargar o al crecer) se responde con SQL")
+    void testFueraDePresupuesto() throws Exception {
+        GestorBD memoria = abrir(1);
+        GestorBD sql = abrir(0);
+        GeneradorDatos.Resultado generados = memoria.generarDatos(MEDIANO, null);
+        assertNotNull(generados);
+        long filas = generados.emisiones();
+        List<Long> empresas = new ArrayList<>(sql.getTotalesPorEmpresa().keySet());
+
+        // Cabe al cargar (1 MB / 41 bytes por fila, con margen de crecimiento de 1/8)...
+        assertTrue(filas * 9 / 8 * 41 < 1024 * 1024 && filas * 9 / 8 * 3 / 2 * 41 > 1024 * 1024, "Filas generadas: " + filas);
+        assertTrue(memoria.cargarAlmacenColumnar());
+        assertIgualQueSQL(memoria, sql, empresas);
+
+        // ...pero al crecer para las nuevas altas se pasa y se descarta
+        List<CompletableFuture<Long>> futuros = new ArrayList<>();
+        for (int i = 0; i <= filas / 8 + 10; i++) {
+            futuros.add(memoria.encolarEmision(emision("Electricidad", 1 + i % 50, LocalDate.of(2024, 6, 1 + i % 30), empresas.get(i % empresas.size()))));
+        }
+        for (CompletableFuture<Long> futuro : futuros) assertNotNull(futuro.get(30, TimeUnit.SECONDS));
+        assertEquals(AlmacenColumnar.Estado.FUERA_DE_PRESUPUESTO, memoria.getEstadoAlmacenColumnar());
+        assertIgualQueSQL(memoria, sql, empresas);
+
+        // Con más altas, una carga nueva ya no cabe de entrada (ni se llega a leer la tabla)
+        futuros.clear();
+        for (int i = 0; i < 7_000; i++) {
+            futuros.add(memoria.encolarEmision(emision("Gas Natural", 2 + i % 40, LocalDate.of(2024, 7, 1 + i % 31), empresas.get(i % empresas.size()))));
+        }
+        for (CompletableFuture<Long> futuro : futuros) assertNotNull(futuro.get(30, TimeUnit.SECONDS));
+        assertFalse(memoria.cargarAlmacenColumnar());
+        assertEquals(AlmacenColumnar.Estado.FUERA_DE_PRESUPUESTO, memoria.getEstadoAlmacenColumnar());
+        assertIgualQueSQL(memoria, sql, empresas);
+    }
+
+    @Test
+    @DisplayName("ALM-03: Muchas invalidaciones seguidas comparten un solo hilo de recarga y terminan cargadas")
+    void testRecargasAgrupadas() throws Exception {
+        GestorBD memoria = abrir(64);
+        GestorBD sql = abrir(0);
+        assertNotNull(memoria.generarDatos(MEDIANO, null));
+        List<Long> empresas = new ArrayList<>(sql.getTotalesPorEmpresa().keySet());
+        assertTrue(memoria.cargarAlmacenColumnar());
+
+        // Cada importación con filas nuevas invalida la copia
+        String empresa = sql.getTodasEmpresas().get(0).getNombreEmpresa();
+        Path archivo = directorio.resolve("una.csv");
+        for (int i = 0; i < 30; i++) {
+            Files.writeString(archivo, "\"" + empresa + "\";\"Electricidad\";" + (i + 1) + ";" + (i + 2) + ";\"01/02/2024\"\n");
+            assertEquals(1, memoria.importarEmisionesCSV(archivo.toFile(), 100, null, null).filasImportadas());
+            long hilos = Thread.getAllStackTraces().keySet().stream()
+                    .filter(h -> h.getName().equals("almacen-columnar")).count();
+            assertTrue(hilos <= 1, "Hilos de recarga a la vez: " + hilos);
+        }
+
+        long limite = System.currentTimeMillis() + 30_000;
+        while (memoria.getEstadoAlmacenColumnar() != AlmacenColumnar.Estado.CARGADO && System.currentTimeMillis() < limite) {
+            Thread.sleep(20);
+        }
+        assertEquals(AlmacenColumnar.Estado.CARGADO, memoria.getEstadoAlmacenColumnar());
+        assertIgualQueSQL(memoria, sql, empresas);
+    }
+}
@@ -0,0 +1,202 @@
+import DAO.CacheConsultas;
+import DAO.CacheConsultas.Tabla;
+import DAO.ConfiguracionBD;
+import DAO.GestorBD;
+import DAO.ImportadorCSV;
+import Modelos.Emisiones;
+import Modelos.Empresa;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la caché de consultas: contadores de aciertos y fallos, expulsión LRU, invalidación
+ * por tabla y empresa, y coherencia con la copia en memoria durante una importación por lotes.
+ */
+public class CacheConsultasTest {
+
+    @TempDir
+    Path directorio;
+
+    /** Lectura de prueba que cuenta cuántas veces se ejecuta. */
+    private static class Lectura {
+        final AtomicInteger veces = new AtomicInteger();
+
+        List<String> leer(String valor) {
+            veces.incrementAndGet();
+            return List.of(valor);
+        }
+    }
+
+    @Test
+    @DisplayName("CAC-01: Aciertos y fallos se cuentan y la lectura solo se ejecuta en los fallos")
+    void testAciertosYFallos() {
+        CacheConsultas cache = new CacheConsultas(10);
+        Lectura lectura = new Lectura();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(List.of("a"), cache.obtener("consulta", 1L, Set.of(Tabla.EMISIONES), () -> lectura.leer("a")));
+        }
+        // Otros argumentos u otra empresa son otra entrada
+        cache.obtener("consulta", 1L, Set.of(Tabla.EMISIONES), () -> lectura.leer("b"), "filtro");
+        cache.obtener("consulta", 2L, Set.of(Tabla.EMISIONES), () -> lectura.leer("c"));
+        // Los resultados vacíos no se guardan
+        cache.obtener("vacia", null, Set.of(Tabla.EMISIONES), () -> { lectura.veces.incrementAndGet(); return List.of(); });
+        cache.obtener("vacia", null, Set.of(Tabla.EMISIONES), () -> { lectura.veces.incrementAndGet(); return List.of(); });
+
+        CacheConsultas.Estadisticas estadisticas = cache.getEstadisticas();
+        assertEquals(2, estadisticas.aciertos());
+        assertEquals(5, estadisticas.fallos());
+        assertEquals(5, lectura.veces.get());
+        assertEquals(3, estadisticas.entradas());
+        assertEquals(2.0 / 7, estadisticas.tasaAciertos(), 1e-9);
+
+        // Capacidad 0: siempre se lee y no se cuenta nada
+        CacheConsultas desactivada = new CacheConsultas(0);
+        Lectura directa = new Lectura();
+        desactivada.obtener("consulta", null, Set.of(Tabla.EMPRESA), () -> directa.leer("a"));
+        desactivada.obtener("consulta", null, Set.of(Tabla.EMPRESA), () -> directa.leer("a"));
+        assertEquals(2, directa.veces.get());
+        assertEquals(new CacheConsultas.Estadisticas(0, 0, 0, 0, 0, 0), desactivada.getEstadisticas());
+    }
+
+    @Test
+    @DisplayName("CAC-02: Al superar la capacidad se expulsa la entrada usada hace más tiempo")
+    void testExpulsionLRU() {
+        CacheConsultas cache = new CacheConsultas(2);
+        Lectura lectura = new Lectura();
+
+        cache.obtener("a", null, Set.of(Tabla.EMPRESA), () -> lectura.leer("a"));
+        cache.obtener("b", null, Set.of(Tabla.EMPRESA), () -> lectura.leer("b"));
+        // Usar "a" la hace la más reciente: la siguiente alta expulsa "b"
+        cache.obtener("a", null, Set.of(Tabla.EMPRESA), () -> lectura.leer("a"));
+        cache.obtener("c", null, Set.of(Tabla.EMPRESA), () -> lectura.leer("c"));
+        assertEquals(3, lectura.veces.get());
+
+        cache.obtener("a", null, Set.of(Tabla.EMPRESA), () -> lectura.leer("a"));
+        assertEquals(3, lectura.veces.get(), "\"a\" debe seguir guardada");
+        cache.obtener("b", null, Set.of(Tabla.EMPRESA), () -> lectura.leer("b"));
+        assertEquals(4, lectura.veces.get(), "\"b\" debe haberse expulsado");
+
+        CacheConsultas.Estadisticas estadisticas = cache.getEstadisticas();
+        assertEquals(2, estadisticas.expulsadas());
+        assertEquals(2, estadisticas.entradas());
+        assertEquals(2, estadisticas.capacidad());
+    }
+
+    @Test
+    @DisplayName("CAC-03: Invalidar una empresa descarta sus entradas y las globales de esa tabla, y nada más")
+    void testInvalidacionPorEmpresa() {
+        CacheConsultas cache = new CacheConsultas(10);
+        Lectura lectura = new Lectura();
+        Runnable leerTodo = () -> {
+            cache.obtener("emisiones", 1L, Set.of(Tabla.EMISIONES), () -> lectura.leer("e1"));
+            cache.obtener("emisiones", 2L, Set.of(Tabla.EMISIONES), () -> lectura.leer("e2"));
+            cache.obtener("emisiones", null, Set.of(Tabla.EMISIONES), () -> lectura.leer("todas"));
+            cache.obtener("sedes", 1L, Set.of(Tabla.SEDE), () -> lectura.leer("s1"));
+            cache.obtener("informe", 2L, Set.of(Tabla.EMPRESA, Tabla.SEDE), () -> lectura.leer("i2"));
+        };
+        leerTodo.run();
+        assertEquals(5, lectura.veces.get());
+
+        // Emisiones de la empresa 1: su entrada y la de todas las empresas
+        cache.invalidar(1L, Tabla.EMISIONES);
+        assertEquals(2, cache.getEstadisticas().invalidadas());
+        leerTodo.run();
+        assertEquals(7, lectura.veces.get());
+
+        // Sedes de cualquier empresa: las dos entradas que dependen de la tabla
+        cache.invalidar(null, Tabla.SEDE);
+        assertEquals(4, cache.getEstadisticas().invalidadas());
+        leerTodo.run();
+        assertEquals(9, lectura.veces.get());
+
+        // Una tabla de la que no depende nada no descarta nada
+        cache.invalidar(null, Tabla.FACTOR);
+        leerTodo.run();
+        assertEquals(9, lectura.veces.get());
+        assertEquals(5, cache.getEstadisticas().entradas());
+    }
+
+    @Test
+    @DisplayName("CAC-04: Una lectura que coincide con una invalidación no se guarda")
+    void testLecturaDuranteInvalidacion() {
+        CacheConsultas cache = new CacheConsultas(10);
+        Lectura lectura = new Lectura();
+
+        cache.obtener("emisiones", 1L, Set.of(Tabla.EMISIONES), () -> {
+            // Una escritura confirmada mientras se leía
+            cache.invalidar(1L, Tabla.EMISIONES);
+            return lectura.leer("antigua");
+        });
+        assertEquals(List.of("nueva"), cache.obtener("emisiones", 1L, Set.of(Tabla.EMISIONES), () -> lectura.leer("nueva")));
+        assertEquals(List.of("nueva"), cache.obtener("emisiones", 1L, Set.of(Tabla.EMISIONES), () -> lectura.leer("otra")));
+        assertEquals(2, lectura.veces.get());
+    }
+
+    @Test
+    @DisplayName("CAC-05: Las lecturas durante una importación por lotes no dejan en la caché los totales de la copia en memoria anterior")
+    void testImportacionConCopiaEnMemoria() throws Exception {
+        String url = "jdbc:sqlite:" + directorio.resolve("cache.db");
+        ConfiguracionBD configuracion = new ConfiguracionBD(url);
+        configuracion.setEntradasCacheConsultas(100);
+        configuracion.setMemoriaAlmacenColumnarMB(16);
+        GestorBD gestorBD = new GestorBD(configuracion);
+        ConfiguracionBD sinCache = new ConfiguracionBD(url);
+        sinCache.setEntradasCacheConsultas(0);
+        sinCache.setMemoriaAlmacenColumnarMB(0);
+        GestorBD sql = new GestorBD(sinCache);
+        try {
+            gestorBD.arrancarBD();
+            long alfa = gestorBD.agregarEmpresa(new Empresa("Alfa SA", "Industria")).getId();
+            long beta = gestorBD.agregarEmpresa(new Empresa("Beta SL", "Servicios")).getId();
+            for (int i = 0; i < 20; i++) {
+                assertNotNull(gestorBD.nuevaEmision(new Emisiones(null, "Electricidad", 10, 1 + i,
+                        LocalDate.of(2024, 1, 1).plusDays(i), i % 2 == 0 ? alfa : beta)));
+            }
+            assertTrue(gestorBD.cargarAlmacenColumnar());
+            Map<Long, Double> antes = gestorBD.getTotalesPorEmpresa();
+
+            List<String> lineas = new ArrayList<>();
+            lineas.add("Empresa;Tipo;Cantidad;CO2e (kg);Fecha");
+            for (int i = 0; i < 50; i++) {
+                lineas.add("\"" + (i % 2 == 0 ? "Alfa SA" : "Beta SL") + "\";\"Gas Natural\";5,00;2,50;\""
+                        + String.format("%02d", i % 28 + 1) + "/02/2024\"");
+            }
+            Path archivo = directorio.resolve("emisiones.csv");
+            Files.write(archivo, lineas, StandardCharsets.UTF_8);
+
+            // Cada aviso de progreso lee los totales, como haría el panel de la interfaz
+            double totalAntes = antes.get(alfa) + antes.get(beta);
+            List<double[]> vistos = new ArrayList<>();
+            ImportadorCSV.Resultado resultado = gestorBD.importarEmisionesCSV(archivo.toFile(), 10, null,
+                    avance -> vistos.add(new double[]{avance.filasImportadas(),
+                            gestorBD.getTotalesPorEmpresa().values().stream().mapToDouble(Double::doubleValue).sum()}));
+            assertEquals(50, resultado.filasImportadas());
+            assertTrue(vistos.size() >= 5);
+            for (double[] visto : vistos) {
+                assertEquals(totalAntes + visto[0] * 2.5, visto[1], 1e-6, "Tras " + (long) visto[0] + " filas");
+            }
+
+            Map<Long, Double> esperado = sql.getTotalesPorEmpresa();
+            Map<Long, Double> despues = gestorBD.getTotalesPorEmpresa();
+            assertEquals(esperado.keySet(), despues.keySet());
+            for (Long id : esperado.keySet()) assertEquals(esperado.get(id), despues.get(id), 1e-6);
+            assertEquals(antes.get(alfa) + 25 * 2.5, despues.get(alfa), 1e-6);
+        } finally {
+            sql.cerrar();
+            gestorBD.cerrar();
+        }
+    }
+}
@@ -23,13 +23,21 @@ public class CarbonTrackerTest {
         gestorBD = new GestorBD();
 
         // Borramos la BD vieja para empezar limpios
-        File dbFile = new File("carbon_tracker.db");
-        if (dbFile.exists()) {
-            dbFile.delete();
+        // (incluidos los ficheros -wal y -shm del modo WAL)
+        for (String fichero : new String[]{"carbon_tracker.db", "carbon_tracker.db-wal", "carbon_tracker.db-shm"}) {
+            File dbFile = new File(fichero);
+            if (dbFile.exists()) {
+                dbFile.delete();
+            }
         }
         gestorBD.arrancarBD();
     }
 
+    @AfterAll
+    static void cerrar() {
+        gestorBD.cerrar();
+    }
+
     // ==========================================
     // BATERÍA DE PRUEBAS DE UNIDAD (10 Pruebas)
     // ==========================================
@@ -0,0 +1,106 @@
+import DAO.ConfiguracionBD;
+import DAO.GestorBD;
+import Modelos.Empresa;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de concurrencia del modo WAL: las lecturas no deben quedar bloqueadas
+ * por una transacción de escritura larga.
+ */
+public class ConcurrenciaWalTest {
+
+    @TempDir
+    Path directorio;
+
+    private GestorBD gestorBD;
+    private String url;
+
+    @BeforeEach
+    void setup() {
+        url = "jdbc:sqlite:" + directorio.resolve("wal.db");
+        ConfiguracionBD configuracion = new ConfiguracionBD(url);
+        configuracion.setModo(ConfiguracionBD.ModoAlmacenamiento.WAL);
+        gestorBD = new GestorBD(configuracion);
+        gestorBD.arrancarBD();
+        assertNotNull(gestorBD.agregarEmpresa(new Empresa("Lectora SA", "Servicios")));
+    }
+
+    @AfterEach
+    void cerrar() {
+        gestorBD.cerrar();
+    }
+
+    @Test
+    @DisplayName("WAL-01: Varias lecturas concurrentes terminan mientras hay una escritura exclusiva abierta")
+    void testLecturasDuranteEscrituraLarga() throws Exception {
+        int hilos = 4;
+        ExecutorService lectores = Executors.newFixedThreadPool(hilos);
+        try (Connection escritor = DriverManager.getConnection(url);
+             Statement st = escritor.createStatement()) {
+            // Transacción de escritura larga que mantiene el bloqueo mientras leemos
+            st.execute("BEGIN EXCLUSIVE;");
+            st.execute("INSERT INTO empresa (nombre, sector) VALUES ('Pendiente SL', 'Energía');");
+
+            CountDownLatch salida = new CountDownLatch(1);
+            Future<?>[] lecturas = new Future<?>[hilos];
+            for (int i = 0; i < hilos; i++) {
+                lecturas[i] = lectores.submit(() -> {
+                    salida.await();
+                    return gestorBD.getTodasEmpresas("");
+                });
+            }
+            salida.countDown();
+
+            for (Future<?> lectura : lecturas) {
+                // Sin WAL la lectura esperaría al busy_timeout (5 s) y fallaría
+                List<?> empresas = (List<?>) lectura.get(2, TimeUnit.SECONDS);
+                assertEquals(1, empresas.size(), "Solo debe verse lo confirmado antes de la escritura");
+            }
+
+            st.execute("COMMIT;");
+        } finally {
+            lectores.shutdownNow();
+        }
+
+        // Tras confirmar, las nuevas lecturas ven la empresa insertada
+        assertEquals(2, gestorBD.getTodasEmpresas("").size());
+    }
+
+    @Test
+    @DisplayName("WAL-02: Las escrituras del gestor esperan al bloqueo externo y se completan al liberarse")
+    void testEscrituraEsperaBloqueo() throws Exception {
+        ExecutorService ejecutor = Executors.newSingleThreadExecutor();
+        try (Connection externo = DriverManager.getConnection(url);
+             Statement st = externo.createStatement()) {
+            st.execute("BEGIN IMMEDIATE;");
+
+            Future<Empresa> alta = ejecutor.submit(() -> gestorBD.agregarEmpresa(new Empresa("Escritora SA", "Industria")));
+
+            // Mientras la escritura del gestor espera, las lecturas siguen respondiendo
+            assertEquals(1, gestorBD.getTodasEmpresas("").size());
+
+            Thread.sleep(200);
+            st.execute("COMMIT;");
+
+            Empresa nueva = alta.get(5, TimeUnit.SECONDS);
+            assertNotNull(nueva, "La escritura debe completarse tras liberarse el bloqueo");
+        } finally {
+            ejecutor.shutdownNow();
+        }
+        assertEquals(2, gestorBD.getTodasEmpresas("").size());
+    }
+}
@@ -0,0 +1,162 @@
+import DAO.ConfiguracionBD;
+import DAO.GestorBD;
+import DAO.RegistroConsultasLentas;
+import Modelos.Empresa;
+import Modelos.Rol;
+import Modelos.Usuario;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del registro de consultas lentas: entradas con plan y parámetros, ocultación de los hashes de
+ * contraseña, agrupación por forma de consulta, umbral y rotación.
+ * <p>
+ * El registro se guarda en segundo plano; cerrar el gestor espera a que termine, así que cada prueba
+ * cierra y vuelve a abrir la base de datos (ya sin registrar, para que las lecturas no se sumen) antes de leerlo.
+ */
+public class ConsultasLentasTest {
+
+    /** SHA-256 de "admin", la contraseña del administrador por defecto. */
+    private static final String HASH_ADMIN = "8c6976e5b5410415bde908bd4dee15dfb167a9c873fc4bb8a81f6f2ab448a918";
+
+    @TempDir
+    Path directorio;
+
+    private GestorBD gestorBD;
+
+    @AfterEach
+    void cerrar() {
+        gestorBD.cerrar();
+    }
+
+    private ConfiguracionBD configuracion(int umbralMs) {
+        ConfiguracionBD configuracion = new ConfiguracionBD("jdbc:sqlite:" + directorio.resolve("lentas.db"));
+        // Sin caché: cada lectura llega al pool
+        configuracion.setEntradasCacheConsultas(0);
+        configuracion.setUmbralConsultaLentaMs(umbralMs);
+        return configuracion;
+    }
+
+    private void abrir(ConfiguracionBD configuracion) {
+        gestorBD = new GestorBD(configuracion);
+        gestorBD.arrancarBD();
+    }
+
+    /** Cierra el gestor (guardando lo pendiente) y lo vuelve a abrir con el registro desactivado. */
+    private void reabrir(ConfiguracionBD configuracion) {
+        gestorBD.cerrar();
+        configuracion.setUmbralConsultaLentaMs(-1);
+        abrir(configuracion);
+    }
+
+    private RegistroConsultasLentas.Forma forma(String fragmento) {
+        return gestorBD.getConsultasLentasPorForma().stream()
+                .filter(f -> f.forma().contains(fragmento)).findFirst()
+                .orElseThrow(() -> new AssertionError("Sin consultas lentas con: " + fragmento));
+    }
+
+    @Test
+    @DisplayName("CL-01: Cada ejecución que supera el umbral se guarda con su operación, filas, duración y plan")
+    void testEntradaConPlan() {
+        ConfiguracionBD configuracion = configuracion(0);
+        abrir(configuracion);
+        for (int i = 1; i <= 3; i++) assertNotNull(gestorBD.agregarEmpresa(new Empresa("Lenta " + i + " SA", "Servicios")));
+        assertEquals(3, gestorBD.getTodasEmpresas("").size());
+        reabrir(configuracion);
+
+        RegistroConsultasLentas.Forma lista = forma("FROM empresa c LEFT JOIN empresa_totales");
+        assertEquals("GestorBD.getTodasEmpresas", lista.operaciones());
+        assertEquals(3, lista.filasMaximas());
+
+        RegistroConsultasLentas.Entrada entrada = gestorBD.getConsultasLentas(lista.forma(), 10).get(0);
+        assertEquals("GestorBD.getTodasEmpresas", entrada.operacion());
+        assertEquals(3, entrada.filas());
+        assertTrue(entrada.duracionMs() >= 0);
+        assertNotNull(entrada.fecha());
+        assertTrue(entrada.plan().contains("SCAN c"), "Plan inesperado: " + entrada.plan());
+
+        RegistroConsultasLentas.Entrada alta = gestorBD.getConsultasLentas(forma("INSERT INTO empresa").forma(), 10).get(0);
+        assertEquals(1, alta.filas());
+        assertTrue(alta.parametros().startsWith("[1] 'Lenta 3 SA'"), alta.parametros());
+    }
+
+    @Test
+    @DisplayName("CL-02: Los hashes de contraseña de los parámetros nunca llegan al registro")
+    void testHashesOcultos() {
+        ConfiguracionBD configuracion = configuracion(0);
+        abrir(configuracion);
+        Usuario admin = gestorBD.login("admin", "admin");
+        assertNotNull(admin);
+        Rol rol = gestorBD.getRoles().get(0);
+        assertTrue(gestorBD.crearUsuario("lentas", "secreta", "Usuario Lentas", rol, admin));
+        reabrir(configuracion);
+
+        RegistroConsultasLentas.Entrada login = gestorBD.getConsultasLentas(forma("hash_contrasena = ?").forma(), 10).get(0);
+        assertEquals("GestorBD.login", login.operacion());
+        assertEquals("[1] 'admin', [2] [oculto]", login.parametros());
+
+        RegistroConsultasLentas.Entrada alta = gestorBD.getConsultasLentas(forma("INSERT INTO usuario").forma(), 10).get(0);
+        assertTrue(alta.parametros().contains("[2] [oculto]"), alta.parametros());
+
+        for (RegistroConsultasLentas.Forma forma : gestorBD.getConsultasLentasPorForma()) {
+            for (RegistroConsultasLentas.Entrada entrada : gestorBD.getConsultasLentas(forma.forma(), 1000)) {
+                assertFalse(entrada.parametros().contains(HASH_ADMIN), entrada.parametros());
+                assertFalse(entrada.parametros().matches(".*[0-9a-f]{64}.*"), entrada.parametros());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("CL-03: Las consultas que solo difieren en literales o en el tamaño de sus listas tienen la misma forma")
+    void testForma() {
+        assertEquals(RegistroConsultasLentas.forma("SELECT *\n  FROM t WHERE id IN (?, ?) AND nombre = 'a' AND n > 3"),
+                RegistroConsultasLentas.forma("SELECT * FROM t WHERE id IN (?,?,?,?) AND nombre = 'b''c' AND n > 42.5"));
+        assertEquals("INSERT INTO t(a, b) VALUES (?, ...)",
+                RegistroConsultasLentas.forma("INSERT INTO t(a, b) VALUES (?, ?), (?, ?), (?, ?)"));
+        assertEquals("SELECT v1 FROM t2 WHERE x = ?", RegistroConsultasLentas.forma("SELECT v1 FROM t2 WHERE x = 10"));
+
+        ConfiguracionBD configuracion = configuracion(0);
+        abrir(configuracion);
+        for (int i = 0; i < 4; i++) gestorBD.getTodasEmpresas("");
+        reabrir(configuracion);
+        RegistroConsultasLentas.Forma lista = forma("FROM empresa c LEFT JOIN empresa_totales");
+        assertEquals(4, lista.veces());
+        assertTrue(lista.maximoMs() >= lista.mediaMs());
+    }
+
+    @Test
+    @DisplayName("CL-04: Las ejecuciones por debajo del umbral no se registran y un umbral negativo lo desactiva")
+    void testUmbral() {
+        ConfiguracionBD configuracion = configuracion(60_000);
+        abrir(configuracion);
+        gestorBD.getTodasEmpresas("");
+        reabrir(configuracion);
+        assertTrue(gestorBD.getConsultasLentasPorForma().isEmpty());
+
+        // Ya sin registro (reabrir lo desactiva)
+        gestorBD.getTodasEmpresas("");
+        reabrir(configuracion);
+        assertTrue(gestorBD.getConsultasLentasPorForma().isEmpty());
+    }
+
+    @Test
+    @DisplayName("CL-05: El registro conserva solo las entradas más recientes y se puede vaciar")
+    void testRotacion() {
+        ConfiguracionBD configuracion = configuracion(0);
+        configuracion.setMaxConsultasLentas(10);
+        abrir(configuracion);
+        for (int i = 0; i < 30; i++) gestorBD.getTodasEmpresas("");
+        reabrir(configuracion);
+
+        List<RegistroConsultasLentas.Forma> formas = gestorBD.getConsultasLentasPorForma();
+        assertEquals(10, formas.stream().mapToLong(RegistroConsultasLentas.Forma::veces).sum());
+
+        assertTrue(gestorBD.borrarConsultasLentas());
+        assertTrue(gestorBD.getConsultasLentasPorForma().isEmpty());
+    }
+}
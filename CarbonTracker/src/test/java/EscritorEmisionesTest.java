@@ -0,0 +1,118 @@
+import DAO.ConfiguracionBD;
+import DAO.GestorBD;
+import DAO.MetricasBD;
+import Modelos.Emisiones;
+import Modelos.Empresa;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la vía de escritura asíncrona de emisiones: agrupación en transacciones, aislamiento de
+ * los registros erróneos y vaciado de la cola al cerrar.
+ */
+public class EscritorEmisionesTest {
+
+    @TempDir
+    Path directorio;
+
+    private String url;
+    private GestorBD gestorBD;
+    private Long idEmpresa;
+
+    @BeforeEach
+    void setup() {
+        url = "jdbc:sqlite:" + directorio.resolve("escritor.db");
+        ConfiguracionBD configuracion = new ConfiguracionBD(url);
+        // ESC-01 cuenta las transacciones por el método que las abre
+        configuracion.setAtribucionOperaciones(true);
+        gestorBD = new GestorBD(configuracion);
+        gestorBD.arrancarBD();
+        idEmpresa = gestorBD.agregarEmpresa(new Empresa("Escritora SA", "Industria")).getId();
+    }
+
+    @AfterEach
+    void cerrar() {
+        gestorBD.cerrar();
+    }
+
+    private Emisiones emision(int i) {
+        return new Emisiones(null, "Electricidad", i, i * 0.25, LocalDate.of(2024, 1, 1).plusDays(i % 365), idEmpresa);
+    }
+
+    private long contarEmisiones() throws Exception {
+        try (Connection conexion = DriverManager.getConnection(url);
+             Statement st = conexion.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM registro_emisiones")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    @Test
+    @DisplayName("ESC-01: Las altas encoladas se confirman agrupadas en pocas transacciones, cada una con su ID")
+    void testGroupCommit() throws Exception {
+        gestorBD.getMetricas().reiniciar();
+        List<CompletableFuture<Long>> futuros = new ArrayList<>();
+        for (int i = 0; i < 500; i++) futuros.add(gestorBD.encolarEmision(emision(i)));
+
+        Set<Long> ids = new HashSet<>();
+        for (CompletableFuture<Long> futuro : futuros) ids.add(futuro.get(10, TimeUnit.SECONDS));
+        assertEquals(500, ids.size());
+        assertEquals(500, contarEmisiones());
+
+        MetricasBD.Resumen transacciones = gestorBD.getMetricas().getOperaciones().stream()
+                .filter(r -> r.nombre().equals("EscritorEmisiones.insertarEnTransaccion")).findFirst().orElseThrow();
+        assertTrue(transacciones.llamadas() < 500, "Se esperaban lotes de varias filas: " + transacciones.llamadas());
+    }
+
+    @Test
+    @DisplayName("ESC-02: Un registro erróneo solo falla su propio futuro y el escritor sigue funcionando")
+    void testFalloPorFila() throws Exception {
+        List<CompletableFuture<Long>> buenos = new ArrayList<>();
+        for (int i = 0; i < 20; i++) buenos.add(gestorBD.encolarEmision(emision(i)));
+        // Sin fecha: el lote falla con una excepción de Java, no SQL
+        CompletableFuture<Long> sinFecha = gestorBD.encolarEmision(new Emisiones(null, "Electricidad", 1, 1, (LocalDate) null, idEmpresa));
+        // Empresa inexistente: falla la clave ajena
+        CompletableFuture<Long> sinEmpresa = gestorBD.encolarEmision(new Emisiones(null, "Electricidad", 1, 1, LocalDate.of(2024, 1, 1), 999_999L));
+        for (int i = 20; i < 40; i++) buenos.add(gestorBD.encolarEmision(emision(i)));
+
+        for (CompletableFuture<Long> futuro : buenos) assertNotNull(futuro.get(10, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> sinFecha.get(10, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> sinEmpresa.get(10, TimeUnit.SECONDS));
+        assertEquals(40, contarEmisiones(), "Los registros buenos del lote fallido se insertan fila a fila, y solo ellos");
+
+        assertNotNull(gestorBD.encolarEmision(emision(99)).get(10, TimeUnit.SECONDS), "El hilo escritor debe seguir vivo");
+        assertEquals(41, contarEmisiones());
+    }
+
+    @Test
+    @DisplayName("ESC-03: Al cerrar se escribe todo lo encolado y lo que llega después se rechaza")
+    void testCierreVaciaLaCola() throws Exception {
+        List<CompletableFuture<Long>> futuros = new ArrayList<>();
+        for (int i = 0; i < 300; i++) futuros.add(gestorBD.encolarEmision(emision(i)));
+        gestorBD.cerrar();
+
+        for (CompletableFuture<Long> futuro : futuros) {
+            assertTrue(futuro.isDone());
+            assertNotNull(futuro.get());
+        }
+        assertEquals(300, contarEmisiones());
+        assertThrows(ExecutionException.class, () -> gestorBD.encolarEmision(emision(0)).get(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,74 @@
+import DAO.ControlCSV;
+import DAO.FiltroEmisiones;
+import DAO.GestorBD;
+import Modelos.Emisiones;
+import Modelos.Empresa;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la exportación en streaming: el archivo es el mismo que escribe {@link ControlCSV}.
+ */
+public class ExportadorCSVTest {
+
+    @TempDir
+    Path directorio;
+
+    private GestorBD gestorBD;
+
+    @BeforeEach
+    void setup() {
+        gestorBD = new GestorBD("jdbc:sqlite:" + directorio.resolve("exportar.db"));
+        gestorBD.arrancarBD();
+    }
+
+    @AfterEach
+    void cerrar() {
+        gestorBD.cerrar();
+    }
+
+    /** Líneas del archivo, con la cabecera primero y el resto ordenadas (cada exportador usa su orden). */
+    private static List<String> lineas(File archivo) throws Exception {
+        List<String> lineas = new ArrayList<>(Files.readAllLines(archivo.toPath(), StandardCharsets.UTF_8));
+        lineas.subList(1, lineas.size()).sort(null);
+        return lineas;
+    }
+
+    @Test
+    @DisplayName("EXP-01: ExportadorCSV escribe los mismos importes que %.2f, incluidos los de medio céntimo")
+    void testParidadConControlCSV() throws Exception {
+        Long alfa = gestorBD.agregarEmpresa(new Empresa("Alfa \"Uno\"; SA", "Industria")).getId();
+        Long beta = gestorBD.agregarEmpresa(new Empresa("Beta Energía", "Servicios")).getId();
+        // Medios céntimos cuyo double queda por debajo del decimal escrito (1.005 es 1.00499999...)
+        double[] delicados = {1.005, 0.285, 2.675, 1.115, 0.125, 10.005, 1234567.895, 0.004999, 0.0};
+        for (int i = 0; i < delicados.length; i++) {
+            assertNotNull(gestorBD.nuevaEmision(new Emisiones(null, "Electricidad", delicados[i],
+                    delicados[delicados.length - 1 - i], LocalDate.of(2024, 2, 1 + i), alfa)));
+        }
+        SplittableRandom aleatorio = new SplittableRandom(7);
+        for (int i = 0; i < 500; i++) {
+            double cantidad = aleatorio.nextInt(1_000_000) / 1000.0;
+            double co2e = aleatorio.nextInt(100_000) / 1000.0 + aleatorio.nextDouble() / 1e6;
+            assertNotNull(gestorBD.nuevaEmision(new Emisiones(null, "Gas Natural", cantidad, co2e,
+                    LocalDate.of(2023, 1, 1).plusDays(i), i % 2 == 0 ? alfa : beta)));
+        }
+
+        File streaming = directorio.resolve("streaming.csv").toFile();
+        assertEquals(509, gestorBD.exportarEmisionesCSV(new FiltroEmisiones(), streaming, null).filas());
+        File lista = directorio.resolve("lista.csv").toFile();
+        ControlCSV.exportarEmisiones(gestorBD.getTodasEmisiones(""), lista);
+
+        assertEquals(lineas(lista), lineas(streaming));
+    }
+}
@@ -0,0 +1,133 @@
+import DAO.GeneradorDatos;
+import DAO.GestorBD;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del generador de datos sintéticos: determinismo, repetición sin duplicados
+ * y coherencia de los agregados tras una carga masiva.
+ */
+public class GeneradorDatosTest {
+
+    @TempDir
+    Path directorio;
+
+    private final List<GestorBD> gestores = new ArrayList<>();
+
+    /** Parámetros pequeños con fechas fijas (no dependen del día en que se ejecuta la prueba). */
+    private static final GeneradorDatos.Parametros PEQUENO = new GeneradorDatos.Parametros(7, 5, 3,
+            LocalDate.of(2024, 1, 1), LocalDate.of(2024, 3, 31), 2.0, GeneradorDatos.Distribucion.POISSON);
+
+    private GestorBD abrir(String nombre) {
+        GestorBD gestor = new GestorBD(url(nombre));
+        gestor.arrancarBD();
+        gestores.add(gestor);
+        return gestor;
+    }
+
+    private String url(String nombre) {
+        return "jdbc:sqlite:" + directorio.resolve(nombre);
+    }
+
+    @AfterEach
+    void cerrar() {
+        gestores.forEach(GestorBD::cerrar);
+    }
+
+    /** Resultado de una consulta como lista de filas de texto. */
+    private List<String> filas(String nombre, String sql) throws SQLException {
+        List<String> filas = new ArrayList<>();
+        try (Connection conexion = DriverManager.getConnection(url(nombre));
+             Statement st = conexion.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            int columnas = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder fila = new StringBuilder();
+                for (int c = 1; c <= columnas; c++) fila.append(rs.getString(c)).append('|');
+                filas.add(fila.toString());
+            }
+        }
+        return filas;
+    }
+
+    private long contar(String nombre, String tabla) throws SQLException {
+        return Long.parseLong(filas(nombre, "SELECT COUNT(*) FROM " + tabla).get(0).replace("|", ""));
+    }
+
+    @Test
+    @DisplayName("GD-01: La misma semilla genera exactamente las mismas filas")
+    void testDeterminista() throws SQLException {
+        assertNotNull(abrir("a.db").generarDatos(PEQUENO, null));
+        assertNotNull(abrir("b.db").generarDatos(PEQUENO, null));
+
+        String emisiones = "SELECT e.nombre, t.nombre, r.cantidad, r.co2e, r.fecha FROM registro_emisiones r "
+                + "JOIN empresa e ON e.id = r.id_empresa JOIN emision_tipo t ON t.id = r.id_tipo ORDER BY r.id";
+        assertFalse(filas("a.db", emisiones).isEmpty());
+        assertEquals(filas("a.db", emisiones), filas("b.db", emisiones));
+        String sedes = "SELECT ciudad, direccion, id_empresa FROM sede ORDER BY id";
+        assertEquals(filas("a.db", sedes), filas("b.db", sedes));
+    }
+
+    @Test
+    @DisplayName("GD-02: Se crean las empresas y sedes pedidas, y repetir la generación no duplica nada")
+    void testRepetirNoDuplica() throws SQLException {
+        GestorBD gestor = abrir("repetir.db");
+        GeneradorDatos.Resultado primera = gestor.generarDatos(PEQUENO, null);
+        assertNotNull(primera);
+        assertEquals(5, primera.empresas());
+        assertEquals(15, primera.sedes());
+        assertEquals(5, contar("repetir.db", "empresa"));
+        assertEquals(15, contar("repetir.db", "sede"));
+        assertEquals(primera.emisiones(), contar("repetir.db", "registro_emisiones"));
+
+        GeneradorDatos.Resultado segunda = gestor.generarDatos(PEQUENO, null);
+        assertNotNull(segunda);
+        assertEquals(0, segunda.empresas());
+        assertEquals(0, segunda.emisiones());
+        assertEquals(5, contar("repetir.db", "empresa"));
+        assertEquals(primera.emisiones(), contar("repetir.db", "registro_emisiones"));
+    }
+
+    @Test
+    @DisplayName("GD-03: Una carga masiva deja índices, triggers, totales y resumen mensual coherentes")
+    void testCargaMasiva() throws SQLException {
+        GestorBD gestor = abrir("masiva.db");
+        String esquema = "SELECT type, name, sql FROM sqlite_master WHERE tbl_name = 'registro_emisiones' ORDER BY name";
+        List<String> antes = filas("masiva.db", esquema);
+
+        List<GeneradorDatos.Progreso> avisos = new ArrayList<>();
+        GeneradorDatos.Resultado resultado = gestor.generarDatos(GeneradorDatos.Parametros.paraFilas(60_000, 1), avisos::add);
+        assertNotNull(resultado);
+        assertTrue(resultado.cargaMasiva());
+        assertFalse(avisos.isEmpty());
+        assertEquals(resultado.emisiones(), contar("masiva.db", "registro_emisiones"));
+
+        assertEquals(antes, filas("masiva.db", esquema), "Deben volver los mismos índices y triggers");
+        assertTrue(gestor.comprobarTotalesEmpresa().isEmpty());
+        assertTrue(gestor.comprobarResumenMensual().isEmpty());
+        assertTrue(filas("masiva.db", "SELECT id FROM registro_emisiones WHERE dia IS NOT CAST(julianday(fecha) - 2440587.5 AS INTEGER) LIMIT 1").isEmpty(),
+                "El día debe coincidir con la fecha aunque se quite su trigger");
+    }
+
+    @Test
+    @DisplayName("GD-04: Los datos de prueba del menú siguen creando empresas con emisiones")
+    void testDatosDemo() throws SQLException {
+        GestorBD gestor = abrir("demo.db");
+        gestor.cargarDatosDemo();
+        assertEquals(12, contar("demo.db", "empresa"));
+        assertTrue(contar("demo.db", "registro_emisiones") > 0);
+        assertTrue(gestor.comprobarTotalesEmpresa().isEmpty());
+    }
+}
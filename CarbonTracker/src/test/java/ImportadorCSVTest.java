@@ -0,0 +1,232 @@
+import DAO.ControlCSV;
+import DAO.FiltroEmisiones;
+import DAO.GestorBD;
+import DAO.ImportadorCSV;
+import Modelos.Emisiones;
+import Modelos.Empresa;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la importación de CSV: ida y vuelta con los dos exportadores, errores por línea,
+ * aislamiento de un lote fallido y coherencia de los agregados tras una carga masiva.
+ */
+public class ImportadorCSVTest {
+
+    @TempDir
+    Path directorio;
+
+    private final List<GestorBD> gestores = new ArrayList<>();
+
+    private GestorBD abrir(String nombre) {
+        GestorBD gestor = new GestorBD(url(nombre));
+        gestor.arrancarBD();
+        gestores.add(gestor);
+        return gestor;
+    }
+
+    private String url(String nombre) {
+        return "jdbc:sqlite:" + directorio.resolve(nombre);
+    }
+
+    @AfterEach
+    void cerrar() {
+        gestores.forEach(GestorBD::cerrar);
+    }
+
+    /** Resultado de una consulta como lista de filas de texto. */
+    private List<String> filas(String nombre, String sql) throws SQLException {
+        List<String> filas = new ArrayList<>();
+        try (Connection conexion = DriverManager.getConnection(url(nombre));
+             Statement st = conexion.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            int columnas = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder fila = new StringBuilder();
+                for (int c = 1; c <= columnas; c++) fila.append(rs.getString(c)).append('|');
+                filas.add(fila.toString());
+            }
+        }
+        return filas;
+    }
+
+    private void ejecutar(String nombre, String sql) throws SQLException {
+        try (Connection conexion = DriverManager.getConnection(url(nombre));
+             Statement st = conexion.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    private File escribir(String nombre, List<String> lineas) throws IOException {
+        Path archivo = directorio.resolve(nombre);
+        Files.write(archivo, lineas, StandardCharsets.UTF_8);
+        return archivo.toFile();
+    }
+
+    /** Emisiones de la base como texto comparable (empresa, tipo, cantidad, CO2e, fecha), en orden. */
+    private List<String> emisiones(String nombre) throws SQLException {
+        return filas(nombre, "SELECT c.nombre, t.nombre, printf('%.2f', e.cantidad), printf('%.2f', e.co2e), e.fecha "
+                + "FROM registro_emisiones e JOIN empresa c ON c.id = e.id_empresa JOIN emision_tipo t ON t.id = e.id_tipo "
+                + "ORDER BY 1, 2, 5, 3, 4");
+    }
+
+    /** Comprueba que los totales y el resumen mensual son exactamente la suma agrupada de las emisiones. */
+    private void assertAgregadosCoherentes(String nombre) throws SQLException {
+        assertEquals(
+                filas(nombre, "SELECT id_empresa, ROUND(SUM(co2e), 6), COUNT(*), MAX(fecha) FROM registro_emisiones "
+                        + "GROUP BY id_empresa ORDER BY 1"),
+                filas(nombre, "SELECT id_empresa, ROUND(total_co2e, 6), num_emisiones, ultima_fecha FROM empresa_totales "
+                        + "WHERE num_emisiones > 0 ORDER BY 1"));
+        assertEquals(
+                filas(nombre, "SELECT id_empresa, CAST(strftime('%Y%m', fecha) AS INTEGER), id_tipo, ROUND(SUM(co2e), 6), "
+                        + "ROUND(SUM(cantidad), 6), COUNT(*) FROM registro_emisiones GROUP BY 1, 2, 3 ORDER BY 1, 2, 3"),
+                filas(nombre, "SELECT id_empresa, mes, id_tipo, ROUND(total_co2e, 6), ROUND(total_cantidad, 6), num_emisiones "
+                        + "FROM emision_mensual WHERE num_emisiones > 0 ORDER BY 1, 2, 3"));
+    }
+
+    /** Da de alta las empresas de las pruebas (una con comillas y punto y coma en el nombre). */
+    private List<Long> empresas(GestorBD gestor) {
+        List<Long> ids = new ArrayList<>();
+        for (String nombre : List.of("Alfa SA", "Beta \"Norte\"; SL", "Gamma Energía")) {
+            ids.add(gestor.agregarEmpresa(new Empresa(nombre, "Industria")).getId());
+        }
+        return ids;
+    }
+
+    @Test
+    @DisplayName("IMP-01: Lo que escriben ExportadorCSV y ControlCSV se vuelve a importar sin cambios")
+    void testIdaYVuelta() throws Exception {
+        GestorBD origen = abrir("origen.db");
+        List<Long> ids = empresas(origen);
+        String[] tipos = {"Electricidad", "Gas Natural", "Transporte"};
+        for (int i = 0; i < 60; i++) {
+            assertNotNull(origen.nuevaEmision(new Emisiones(null, tipos[i % 3], 10 + i * 1.25, i * 0.75,
+                    LocalDate.of(2024, 1, 1).plusDays(i * 5L), ids.get(i % 3))));
+        }
+        List<String> esperadas = emisiones("origen.db");
+
+        File streaming = directorio.resolve("streaming.csv").toFile();
+        assertEquals(60, origen.exportarEmisionesCSV(new FiltroEmisiones(), streaming, null).filas());
+        File lista = directorio.resolve("lista.csv").toFile();
+        ControlCSV.exportarEmisiones(origen.getTodasEmisiones(""), lista);
+
+        for (File archivo : List.of(streaming, lista)) {
+            String destino = "destino-" + archivo.getName() + ".db";
+            GestorBD gestor = abrir(destino);
+            empresas(gestor);
+            ImportadorCSV.Resultado resultado = gestor.importarEmisionesCSV(archivo, 7, null, null);
+            assertEquals(0, resultado.totalErrores(), archivo.getName() + ": " + resultado.errores());
+            assertEquals(60, resultado.filasImportadas());
+            assertEquals(esperadas, emisiones(destino), archivo.getName());
+            assertAgregadosCoherentes(destino);
+        }
+    }
+
+    @Test
+    @DisplayName("IMP-02: Cada línea errónea se anota con su número y motivo, y el resto se importa")
+    void testErroresPorLinea() throws Exception {
+        GestorBD gestor = abrir("errores.db");
+        empresas(gestor);
+        File archivo = escribir("errores.csv", List.of(
+                "Empresa;Tipo;Cantidad;CO2e (kg);Fecha",
+                "\"Alfa SA\";\"Electricidad\";10,50;2,10;\"15/03/2024\"",
+                "\"Alfa SA\";\"Electricidad\";10,50;2,10;\"31/02/2024\"",
+                "\"Alfa SA\";\"Electricidad\";diez;2,10;\"15/03/2024\"",
+                "\"Omega SL\";\"Electricidad\";10,50;2,10;\"15/03/2024\"",
+                "\"Beta \"\"Norte\"\"; SL\";\"Gas Natural\";3;0,60;2024-04-01",
+                "\"Alfa SA\";\"Electricidad\";10,50;2,10;\"15/03/2024"));
+
+        ImportadorCSV.Resultado resultado = gestor.importarEmisionesCSV(archivo, 100, null, null);
+        assertEquals(6, resultado.lineas());
+        assertEquals(2, resultado.filasImportadas());
+        assertEquals(4, resultado.totalErrores());
+
+        List<ImportadorCSV.ErrorLinea> errores = new ArrayList<>(resultado.errores());
+        errores.sort((a, b) -> Long.compare(a.linea(), b.linea()));
+        assertEquals(List.of(3L, 4L, 5L, 7L), errores.stream().map(ImportadorCSV.ErrorLinea::linea).toList());
+        assertTrue(errores.get(0).mensaje().startsWith("Fecha no válida"), errores.get(0).mensaje());
+        assertTrue(errores.get(1).mensaje().startsWith("Cantidad no es un número"), errores.get(1).mensaje());
+        assertTrue(errores.get(2).mensaje().startsWith("Empresa no encontrada"), errores.get(2).mensaje());
+        assertEquals("Comillas sin cerrar", errores.get(3).mensaje());
+
+        assertEquals(2, filas("errores.db", "SELECT id FROM registro_emisiones").size());
+        assertAgregadosCoherentes("errores.db");
+    }
+
+    @Test
+    @DisplayName("IMP-03: Si falla la confirmación de un lote solo se pierde ese lote, y los agregados siguen cuadrando")
+    void testLoteFallidoAislado() throws Exception {
+        GestorBD gestor = abrir("lotes.db");
+        empresas(gestor);
+        // Una fila con cantidad 666 deja una clave ajena diferida rota: su lote falla al confirmar
+        ejecutar("lotes.db", "CREATE TABLE veto (id_empresa INTEGER REFERENCES empresa(id) DEFERRABLE INITIALLY DEFERRED)");
+        ejecutar("lotes.db", "CREATE TRIGGER trg_veto AFTER INSERT ON registro_emisiones WHEN NEW.cantidad = 666 "
+                + "BEGIN INSERT INTO veto VALUES (-1); END");
+
+        List<String> lineas = new ArrayList<>();
+        lineas.add("Empresa;Tipo;Cantidad;CO2e (kg);Fecha");
+        for (int i = 0; i < 30; i++) {
+            double cantidad = i == 15 ? 666 : i + 1;
+            lineas.add("\"Alfa SA\";\"Electricidad\";" + cantidad + ";" + (i * 0.5) + ";\"" + String.format("%02d", i % 28 + 1) + "/05/2024\"");
+        }
+        ImportadorCSV.Resultado resultado = gestor.importarEmisionesCSV(escribir("lotes.csv", lineas), 10, null, null);
+
+        assertEquals(30, resultado.lineas());
+        assertEquals(20, resultado.filasImportadas());
+        assertEquals(1, resultado.totalErrores());
+        assertTrue(resultado.errores().get(0).mensaje().startsWith("Lote de 10 líneas no guardado"), resultado.errores().toString());
+        assertEquals(20, filas("lotes.db", "SELECT id FROM registro_emisiones").size());
+        assertTrue(filas("lotes.db", "SELECT id FROM registro_emisiones WHERE cantidad BETWEEN 11 AND 20").isEmpty(),
+                "Las filas del lote fallido no deben quedar guardadas");
+        assertAgregadosCoherentes("lotes.db");
+    }
+
+    @Test
+    @DisplayName("IMP-04: Una carga masiva deja totales y resumen mensual iguales a la suma agrupada de las emisiones")
+    void testCargaMasivaCoherente() throws Exception {
+        GestorBD gestor = abrir("masiva.db");
+        List<Long> ids = empresas(gestor);
+        // Emisiones previas: la carga masiva debe sumarse a sus totales, no sustituirlos
+        for (int i = 0; i < 20; i++) {
+            assertNotNull(gestor.nuevaEmision(new Emisiones(null, "Electricidad", 5, 1.5, LocalDate.of(2023, 12, 1 + i), ids.get(i % 3))));
+        }
+        String esquema = "SELECT type, name, sql FROM sqlite_master WHERE tbl_name = 'registro_emisiones' ORDER BY name";
+        List<String> antes = filas("masiva.db", esquema);
+
+        String[] empresas = {"\"Alfa SA\"", "\"Beta \"\"Norte\"\"; SL\"", "\"Gamma Energía\""};
+        String[] tipos = {"\"Electricidad\"", "\"Gas Natural\"", "\"Residuos\""};
+        int filasArchivo = 60_000;
+        List<String> lineas = new ArrayList<>(filasArchivo + 1);
+        lineas.add("Empresa;Tipo;Cantidad;CO2e (kg);Fecha");
+        LocalDate inicio = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < filasArchivo; i++) {
+            LocalDate fecha = inicio.plusDays(i % 400);
+            lineas.add(empresas[i % 3] + ";" + tipos[(i / 3) % 3] + ";" + (i % 97) + ",25;" + (i % 13) + ",50;\""
+                    + String.format("%02d/%02d/%d", fecha.getDayOfMonth(), fecha.getMonthValue(), fecha.getYear()) + "\"");
+        }
+        ImportadorCSV.Resultado resultado = gestor.importarEmisionesCSV(escribir("masiva.csv", lineas),
+                ImportadorCSV.TAMANO_LOTE_POR_DEFECTO, null, null);
+
+        assertTrue(resultado.cargaMasiva());
+        assertEquals(0, resultado.totalErrores(), resultado.errores().toString());
+        assertEquals(filasArchivo, resultado.filasImportadas());
+        assertEquals(antes, filas("masiva.db", esquema), "Deben volver los mismos índices y triggers");
+        assertAgregadosCoherentes("masiva.db");
+    }
+}
@@ -0,0 +1,161 @@
+import ct.Principal.ListaReconciliable;
+import javafx.collections.ListChangeListener;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la actualización por diferencias de las listas de las tablas: cada recarga debe notificar
+ * un único cambio con solo las filas afectadas, y conservar las instancias de las que no cambian.
+ */
+public class ListaReconciliableTest {
+
+    /** Fila de prueba: clave y texto visible. */
+    private record Fila(long id, String texto) { }
+
+    /**
+     * Contador de notificaciones: cuántos cambios llegan y cuántas filas añaden, quitan o sustituyen.
+     */
+    private static class Contador implements ListChangeListener<Fila> {
+        int notificaciones;
+        int anadidas;
+        int quitadas;
+        int sustituidas;
+
+        @Override
+        public void onChanged(Change<? extends Fila> cambio) {
+            notificaciones++;
+            while (cambio.next()) {
+                if (cambio.wasReplaced()) {
+                    sustituidas += cambio.getAddedSize();
+                } else {
+                    anadidas += cambio.getAddedSize();
+                    quitadas += cambio.getRemovedSize();
+                }
+            }
+        }
+    }
+
+    private ListaReconciliable<Fila, Long> lista;
+    private Contador contador;
+
+    @BeforeEach
+    void setup() {
+        lista = new ListaReconciliable<>(Fila::id, (a, b) -> Objects.equals(a.texto(), b.texto()));
+        lista.reconciliar(filas(1, 100));
+        contador = new Contador();
+        lista.addListener(contador);
+    }
+
+    /** Filas con IDs consecutivos y texto "v1". */
+    private static List<Fila> filas(long desde, long hasta) {
+        List<Fila> filas = new ArrayList<>();
+        for (long id = desde; id <= hasta; id++) filas.add(new Fila(id, "v1"));
+        return filas;
+    }
+
+    private void assertMismoContenido(List<Fila> esperadas) {
+        assertEquals(esperadas, new ArrayList<>(lista));
+    }
+
+    @Test
+    @DisplayName("LR-01: Recargar el mismo resultado no notifica ningún cambio")
+    void testSinCambios() {
+        assertEquals(0, lista.reconciliar(filas(1, 100)));
+        assertEquals(0, contador.notificaciones);
+    }
+
+    @Test
+    @DisplayName("LR-02: Editar una fila sustituye solo esa fila y conserva las demás instancias")
+    void testEdicion() {
+        Fila conservada = lista.get(10);
+        List<Fila> nuevas = filas(1, 100);
+        nuevas.set(41, new Fila(42, "v2"));
+
+        assertEquals(1, lista.reconciliar(nuevas));
+        assertEquals(1, contador.notificaciones);
+        assertEquals(1, contador.sustituidas);
+        assertEquals(0, contador.anadidas + contador.quitadas);
+        assertSame(conservada, lista.get(10), "Las filas sin cambios no deben sustituirse");
+        assertMismoContenido(nuevas);
+    }
+
+    @Test
+    @DisplayName("LR-03: Altas y bajas se notifican juntas en un único cambio")
+    void testAltasYBajas() {
+        List<Fila> nuevas = filas(1, 100);
+        nuevas.remove(49);                      // baja del ID 50
+        nuevas.add(0, new Fila(500, "v1"));     // alta al principio
+        nuevas.add(new Fila(501, "v1"));        // alta al final
+
+        assertEquals(3, lista.reconciliar(nuevas));
+        assertEquals(1, contador.notificaciones);
+        assertEquals(2, contador.anadidas);
+        assertEquals(1, contador.quitadas);
+        assertEquals(0, contador.sustituidas);
+        assertMismoContenido(nuevas);
+    }
+
+    @Test
+    @DisplayName("LR-04: Mover una fila (p. ej. al cambiar su nombre en un listado ordenado) cuesta dos operaciones")
+    void testMovimiento() {
+        List<Fila> haciaAbajo = filas(1, 100);
+        Fila primera = haciaAbajo.remove(0);
+        haciaAbajo.add(60, primera);
+        assertEquals(2, lista.reconciliar(haciaAbajo));
+        assertMismoContenido(haciaAbajo);
+
+        List<Fila> haciaArriba = new ArrayList<>(haciaAbajo);
+        Fila ultima = haciaArriba.remove(99);
+        haciaArriba.add(5, ultima);
+        assertEquals(2, lista.reconciliar(haciaArriba));
+        assertMismoContenido(haciaArriba);
+        assertEquals(2, contador.notificaciones);
+    }
+
+    @Test
+    @DisplayName("LR-05: Cualquier combinación de cambios deja la lista igual que el resultado nuevo")
+    void testCambiosAleatorios() {
+        Random aleatorio = new Random(20);
+        List<Fila> actual = filas(1, 100);
+        long siguienteId = 101;
+        for (int ronda = 0; ronda < 200; ronda++) {
+            List<Fila> nuevas = new ArrayList<>(actual);
+            int cambios = 1 + aleatorio.nextInt(5);
+            for (int c = 0; c < cambios; c++) {
+                int tipo = aleatorio.nextInt(4);
+                if (tipo == 0 || nuevas.isEmpty()) {
+                    nuevas.add(aleatorio.nextInt(nuevas.size() + 1), new Fila(siguienteId++, "v1"));
+                } else if (tipo == 1) {
+                    nuevas.remove(aleatorio.nextInt(nuevas.size()));
+                } else if (tipo == 2) {
+                    int i = aleatorio.nextInt(nuevas.size());
+                    nuevas.set(i, new Fila(nuevas.get(i).id(), "r" + ronda));
+                } else {
+                    Collections.swap(nuevas, aleatorio.nextInt(nuevas.size()), aleatorio.nextInt(nuevas.size()));
+                }
+            }
+            int notificacionesAntes = contador.notificaciones;
+            lista.reconciliar(nuevas);
+            assertMismoContenido(nuevas);
+            assertTrue(contador.notificaciones - notificacionesAntes <= 1, "Como mucho un cambio por recarga");
+            actual = nuevas;
+        }
+    }
+
+    @Test
+    @DisplayName("LR-06: Las diferencias también se aplican sobre una lista normal")
+    void testListaNormal() {
+        List<Fila> actual = new ArrayList<>(filas(1, 10));
+        List<Fila> nuevas = new ArrayList<>(filas(3, 12));
+        Collections.reverse(nuevas);
+        ListaReconciliable.aplicarDiferencias(actual, nuevas, Fila::id, Objects::equals);
+        assertEquals(nuevas, actual);
+    }
+}
@@ -0,0 +1,192 @@
+import DAO.ConfiguracionBD;
+import DAO.GestorBD;
+import DAO.HistogramaLatencias;
+import DAO.MetricasBD;
+import Modelos.Empresa;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la instrumentación de la base de datos: histograma de latencias, atribución de cada
+ * préstamo de conexión al método del DAO, filas, errores y eventos JFR.
+ */
+public class MetricasBDTest {
+
+    @TempDir
+    Path directorio;
+
+    private GestorBD gestorBD;
+    private MetricasBD metricas;
+
+    @BeforeEach
+    void setup() {
+        ConfiguracionBD configuracion = new ConfiguracionBD("jdbc:sqlite:" + directorio.resolve("metricas.db"));
+        // Sin caché: cada lectura llega al pool
+        configuracion.setEntradasCacheConsultas(0);
+        configuracion.setAtribucionOperaciones(true);
+        gestorBD = new GestorBD(configuracion);
+        gestorBD.arrancarBD();
+        for (int i = 1; i <= 3; i++) assertNotNull(gestorBD.agregarEmpresa(new Empresa("Medida " + i + " SA", "Servicios")));
+        metricas = gestorBD.getMetricas();
+        assertNotNull(metricas);
+        metricas.reiniciar();
+    }
+
+    @AfterEach
+    void cerrar() {
+        gestorBD.cerrar();
+    }
+
+    private Optional<MetricasBD.Resumen> operacion(String nombre) {
+        return metricas.getOperaciones().stream().filter(r -> r.nombre().equals(nombre)).findFirst();
+    }
+
+    @Test
+    @DisplayName("MET-01: Los percentiles del histograma tienen un error relativo menor del 3,2 %")
+    void testPercentiles() {
+        HistogramaLatencias histograma = new HistogramaLatencias();
+        for (long micros = 1; micros <= 100_000; micros++) histograma.registrar(micros * 1000);
+
+        assertEquals(100_000, histograma.getTotal());
+        assertEquals(100_000_000, histograma.getMaximo());
+        assertEquals(50_000_000, histograma.getPercentil(0.5), 50_000_000 * 0.032);
+        assertEquals(99_000_000, histograma.getPercentil(0.99), 99_000_000 * 0.032);
+        assertEquals(100_000_000, histograma.getPercentil(1));
+        assertEquals(0, new HistogramaLatencias().getPercentil(0.5));
+    }
+
+    @Test
+    @DisplayName("MET-02: Varios hilos registran a la vez sin perder medidas")
+    void testConcurrencia() throws Exception {
+        HistogramaLatencias histograma = new HistogramaLatencias();
+        int hilos = 8;
+        int porHilo = 50_000;
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int h = 0; h < hilos; h++) {
+                long base = h;
+                tareas.add(ejecutor.submit(() -> {
+                    for (int i = 0; i < porHilo; i++) histograma.registrar(base * 1000 + i);
+                }));
+            }
+            for (Future<?> tarea : tareas) tarea.get();
+        } finally {
+            ejecutor.shutdown();
+        }
+        assertEquals((long) hilos * porHilo, histograma.getTotal());
+        assertEquals((hilos - 1) * 1000L + porHilo - 1, histograma.getMaximo());
+    }
+
+    @Test
+    @DisplayName("MET-03: Cada préstamo se atribuye al método del gestor, con sus filas y la consulta SQL")
+    void testAtribucion() {
+        assertEquals(3, gestorBD.getTodasEmpresas("").size());
+        assertEquals(3, gestorBD.getTodasEmpresas("").size());
+
+        MetricasBD.Resumen lectura = operacion("GestorBD.getTodasEmpresas").orElseThrow();
+        assertEquals(2, lectura.llamadas());
+        assertEquals(6, lectura.filas());
+        assertEquals(0, lectura.errores());
+        assertTrue(lectura.maximoMs() >= lectura.p50Ms());
+
+        assertTrue(metricas.getConsultas().stream()
+                        .anyMatch(c -> c.nombre().contains("FROM empresa") && c.llamadas() == 2 && c.filas() == 6),
+                "La sentencia de la lista de empresas debe contar sus dos ejecuciones y sus filas");
+    }
+
+    @Test
+    @DisplayName("MET-04: Los fallos de una sentencia cuentan como error de la operación y de la consulta")
+    void testErrores() {
+        // nombre NOT NULL
+        assertNull(gestorBD.agregarEmpresa(new Empresa(null, "Servicios")));
+
+        MetricasBD.Resumen alta = operacion("GestorBD.agregarEmpresa").orElseThrow();
+        assertEquals(1, alta.errores());
+        assertTrue(metricas.getConsultas().stream().anyMatch(c -> c.nombre().startsWith("INSERT INTO empresa") && c.errores() == 1));
+    }
+
+    @Test
+    @DisplayName("MET-05: Reiniciar pone los contadores a cero")
+    void testReiniciar() {
+        gestorBD.getTodasEmpresas("");
+        assertFalse(metricas.getOperaciones().isEmpty());
+
+        metricas.reiniciar();
+        assertTrue(metricas.getOperaciones().isEmpty());
+        assertTrue(metricas.getConsultas().isEmpty());
+    }
+
+    @Test
+    @DisplayName("MET-06: Operaciones y consultas se emiten como eventos JFR")
+    void testEventosJfr() throws Exception {
+        Path fichero = directorio.resolve("metricas.jfr");
+        try (Recording grabacion = new Recording()) {
+            grabacion.enable(MetricasBD.EVENTO_OPERACION);
+            grabacion.enable(MetricasBD.EVENTO_CONSULTA);
+            grabacion.start();
+            gestorBD.getTodasEmpresas("");
+            grabacion.stop();
+            grabacion.dump(fichero);
+        }
+
+        List<RecordedEvent> eventos = RecordingFile.readAllEvents(fichero);
+        assertTrue(eventos.stream().anyMatch(e -> e.getEventType().getName().equals(MetricasBD.EVENTO_OPERACION)
+                && "GestorBD.getTodasEmpresas".equals(e.getString("operacion")) && e.getLong("filas") == 3));
+        assertTrue(eventos.stream().anyMatch(e -> e.getEventType().getName().equals(MetricasBD.EVENTO_CONSULTA)
+                && "GestorBD.getTodasEmpresas".equals(e.getString("operacion")) && e.getString("sql").contains("FROM empresa")));
+    }
+
+    @Test
+    @DisplayName("MET-07: Sin instrumentación no hay métricas")
+    void testDesactivada() {
+        ConfiguracionBD configuracion = new ConfiguracionBD("jdbc:sqlite:" + directorio.resolve("sin.db"));
+        configuracion.setInstrumentacion(false);
+        GestorBD sinMetricas = new GestorBD(configuracion);
+        try {
+            sinMetricas.arrancarBD();
+            assertNotNull(sinMetricas.agregarEmpresa(new Empresa("Sin medir SL", "Servicios")));
+            assertEquals(1, sinMetricas.getTodasEmpresas("").size());
+            assertNull(sinMetricas.getMetricas());
+        } finally {
+            sinMetricas.cerrar();
+        }
+    }
+
+    @Test
+    @DisplayName("MET-08: Sin atribución de operaciones los préstamos se agrupan en lectura y escritura")
+    void testSinAtribucion() {
+        ConfiguracionBD configuracion = new ConfiguracionBD("jdbc:sqlite:" + directorio.resolve("agrupada.db"));
+        configuracion.setEntradasCacheConsultas(0);
+        GestorBD agrupado = new GestorBD(configuracion);
+        try {
+            agrupado.arrancarBD();
+            assertNotNull(agrupado.agregarEmpresa(new Empresa("Agrupada SL", "Servicios")));
+            MetricasBD medidas = agrupado.getMetricas();
+            medidas.reiniciar();
+            assertEquals(1, agrupado.getTodasEmpresas("").size());
+            assertNotNull(agrupado.agregarEmpresa(new Empresa("Otra SL", "Servicios")));
+
+            List<String> nombres = medidas.getOperaciones().stream().map(MetricasBD.Resumen::nombre).sorted().toList();
+            assertEquals(List.of("escritura", "lectura"), nombres);
+            MetricasBD.Resumen lectura = medidas.getOperaciones().stream()
+                    .filter(r -> r.nombre().equals("lectura")).findFirst().orElseThrow();
+            assertEquals(1, lectura.filas(), "Las filas anotadas por el gestor cuentan igual sin atribución");
+        } finally {
+            agrupado.cerrar();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import DAO.GestorBD;
+import DAO.migraciones.MigracionV1EsquemaInicial;
+import DAO.migraciones.MigracionV2Indices;
+import DAO.migraciones.MigracionV3TotalesEmpresa;
+import DAO.migraciones.MigracionV4BusquedaTexto;
+import DAO.migraciones.MigracionV5DiaEntero;
+import DAO.migraciones.MigracionV6ResumenMensual;
+import DAO.migraciones.MigracionV7FactoresEmision;
+import DAO.migraciones.MigradorEsquema;
+import Modelos.Emisiones;
+import Modelos.Usuario;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del motor de migraciones del esquema (PRAGMA user_version).
+ */
+public class MigracionesTest {
+
+    @TempDir
+    Path directorio;
+
+    private String url;
+
+    @BeforeEach
+    void setup() {
+        url = "jdbc:sqlite:" + directorio.resolve("migraciones.db");
+    }
+
+    @Test
+    @DisplayName("MIG-01: Migración desde una base de datos vacía")
+    void testMigrarDesdeVacia() throws Exception {
+        MigradorEsquema migrador = new MigradorEsquema();
+        try (Connection conexion = DriverManager.getConnection(url)) {
+            assertEquals(0, MigradorEsquema.leerVersion(conexion));
+            assertTrue(migrador.migrar(conexion) > 0);
+            assertEquals(migrador.getUltimaVersion(), MigradorEsquema.leerVersion(conexion));
+
+            // Segunda ejecución: no queda nada pendiente
+            assertEquals(0, migrador.migrar(conexion));
+            assertEquals(3, contar(conexion, "SELECT COUNT(*) FROM rol"));
+        }
+
+        GestorBD gestorBD = new GestorBD(url);
+        try {
+            Usuario admin = gestorBD.login("admin", "admin");
+            assertNotNull(admin, "El administrador por defecto debe poder entrar");
+            assertEquals("ADMINISTRADOR", admin.getRol().getNomRol());
+        } finally {
+            gestorBD.cerrar();
+        }
+    }
+
+    @Test
+    @DisplayName("MIG-02: Migración desde el esquema anterior (sin user_version ni columna 'activo'), con tipos escritos de varias formas")
+    void testMigrarDesdeEsquemaAnterior() throws Exception {
+        try (Connection conexion = DriverManager.getConnection(url);
+             Statement st = conexion.createStatement()) {
+            // Esquema tal y como lo dejaba arrancarBD en versiones antiguas
+            st.execute("CREATE TABLE empresa (id INTEGER PRIMARY KEY AUTOINCREMENT, nombre TEXT NOT NULL, sector TEXT NOT NULL);");
+            st.execute("CREATE TABLE registro_emisiones (id INTEGER PRIMARY KEY AUTOINCREMENT, tipo TEXT NOT NULL, "
+                    + "cantidad REAL NOT NULL, co2e REAL NOT NULL, fecha TEXT NOT NULL, id_empresa INTEGER NOT NULL, "
+                    + "FOREIGN KEY (id_empresa) REFERENCES empresa (id) ON DELETE CASCADE);");
+            st.execute("CREATE TABLE rol (id INTEGER PRIMARY KEY AUTOINCREMENT, nombre_rol TEXT NOT NULL UNIQUE);");
+            st.execute("CREATE TABLE usuario (id INTEGER PRIMARY KEY AUTOINCREMENT, nombre_usuario TEXT NOT NULL UNIQUE, "
+                    + "hash_contrasena TEXT NOT NULL, nombre_completo TEXT NOT NULL, id_rol INTEGER NOT NULL, "
+                    + "FOREIGN KEY (id_rol) REFERENCES rol (id));");
+            st.execute("INSERT INTO rol(id, nombre_rol) VALUES (1, 'ADMINISTRADOR');");
+            st.execute("INSERT INTO usuario(id, nombre_usuario, hash_contrasena, nombre_completo, id_rol) "
+                    + "VALUES (7, 'antiguo', 'x', 'Usuario Antiguo', 1);");
+            st.execute("INSERT INTO empresa(id, nombre, sector) VALUES (1, 'Heredada SA', 'Energía');");
+            st.execute("INSERT INTO registro_emisiones(tipo, cantidad, co2e, fecha, id_empresa) "
+                    + "VALUES ('Electricidad', 10, 5, '2024-01-01', 1);");
+            // El mismo tipo escrito de varias formas, un alias de otro tipo y un texto desconocido
+            st.execute("INSERT INTO registro_emisiones(tipo, cantidad, co2e, fecha, id_empresa) VALUES "
+                    + "('Consumo Eléctrico', 20, 8, '2024-01-15', 1), "
+                    + "('consumo electrico', 5, 2, '2024-02-03', 1), "
+                    + "('Gas Natural', 30, 6, '2024-02-10', 1), "
+                    + "('Reciclaje  Papel', 4, 1, '2024-03-01', 1), "
+                    + "('Electricidad', 1, 1, '2024-03-02', 1);");
+            // La última se borra: su ID no debe reutilizarse tras rehacer la tabla
+            st.execute("DELETE FROM registro_emisiones WHERE id = 6;");
+        }
+
+        // Hasta la versión 7 los factores también se guardan por texto
+        try (Connection conexion = DriverManager.getConnection(url);
+             Statement st = conexion.createStatement()) {
+            new MigradorEsquema(List.of(new MigracionV1EsquemaInicial(), new MigracionV2Indices(),
+                    new MigracionV3TotalesEmpresa(), new MigracionV4BusquedaTexto(), new MigracionV5DiaEntero(),
+                    new MigracionV6ResumenMensual(), new MigracionV7FactoresEmision())).migrar(conexion);
+            st.execute("INSERT INTO factor_emision(id, tipo, unidad, factor, desde, hasta) VALUES "
+                    + "(1, 'Consumo Eléctrico', 'kWh', 0.25, 19723, NULL), "
+                    + "(2, 'Gas Natural', 'm3', 2.0, 19358, 19722), "
+                    + "(3, 'Reciclaje Papel', 'kg', 0.1, 19358, NULL);");
+        }
+
+        GestorBD gestorBD = new GestorBD(url);
+        try {
+            gestorBD.arrancarBD();
+            // Los datos existentes se conservan
+            assertEquals(1, gestorBD.getTodasEmpresas("").size());
+            assertEquals(5, gestorBD.getTodasEmisiones("").size());
+            // El usuario antiguo recibe la nueva columna con su valor por defecto
+            Usuario antiguo = gestorBD.getTodosLosUsuarios().stream()
+                    .filter(u -> u.getId() == 7L).findFirst().orElseThrow();
+            assertTrue(antiguo.isActivo());
+            assertNotNull(gestorBD.login("admin", "admin"));
+        } finally {
+            gestorBD.cerrar();
+        }
+
+        try (Connection conexion = DriverManager.getConnection(url)) {
+            assertEquals(new MigradorEsquema().getUltimaVersion(), MigradorEsquema.leerVersion(conexion));
+
+            // Cada texto queda en su tipo: las variantes por su clave, los alias en su tipo y el resto en OTROS
+            assertEquals(List.of("1|Electricidad|ELECTRICIDAD", "2|Electricidad|ELECTRICIDAD", "3|Electricidad|ELECTRICIDAD",
+                            "4|Calefacción|COMBUSTION", "5|Reciclaje Papel|OTROS"),
+                    filas(conexion, "SELECT e.id, t.nombre, t.categoria FROM registro_emisiones e "
+                            + "JOIN emision_tipo t ON t.id = e.id_tipo ORDER BY e.id"));
+            assertEquals(List.of("1|Electricidad|kWh|0.25|19723|null", "2|Calefacción|m3|2.0|19358|19722",
+                            "3|Reciclaje Papel|kg|0.1|19358|null"),
+                    filas(conexion, "SELECT f.id, t.nombre, f.unidad, f.factor, f.desde, f.hasta FROM factor_emision f "
+                            + "JOIN emision_tipo t ON t.id = f.id_tipo ORDER BY f.id"));
+
+            // El resumen mensual y los totales se rehacen por ID de tipo sin perder nada
+            assertEquals(List.of("202401|Electricidad|13.0|30.0|2", "202402|Calefacción|6.0|30.0|1",
+                            "202402|Electricidad|2.0|5.0|1", "202403|Reciclaje Papel|1.0|4.0|1"),
+                    filas(conexion, "SELECT m.mes, t.nombre, m.total_co2e, m.total_cantidad, m.num_emisiones "
+                            + "FROM emision_mensual m JOIN emision_tipo t ON t.id = m.id_tipo ORDER BY m.mes, t.nombre"));
+            assertEquals(List.of("22.0|5|2024-03-01"),
+                    filas(conexion, "SELECT total_co2e, num_emisiones, ultima_fecha FROM empresa_totales WHERE id_empresa = 1"));
+
+            // id_tipo es obligatorio, la columna de texto ya no existe y el contador de IDs se conserva
+            assertEquals(List.of("1"), filas(conexion, "SELECT \"notnull\" FROM pragma_table_info('registro_emisiones') "
+                    + "WHERE name = 'id_tipo'"));
+            assertEquals(0, contar(conexion, "SELECT COUNT(*) FROM pragma_table_info('registro_emisiones') WHERE name = 'tipo'"));
+            assertEquals(6, contar(conexion, "SELECT seq FROM sqlite_sequence WHERE name = 'registro_emisiones'"));
+            assertEquals(0, contar(conexion, "SELECT COUNT(*) FROM pragma_foreign_key_check"));
+        }
+
+        // Los triggers recreados siguen manteniendo los agregados
+        gestorBD = new GestorBD(url);
+        try {
+            Emisiones nueva = gestorBD.nuevaEmision(new Emisiones(null, "consumo eléctrico", 2, 3,
+                    LocalDate.of(2024, 1, 20), 1L));
+            assertNotNull(nueva);
+            assertEquals(7L, nueva.getId());
+            assertTrue(gestorBD.comprobarTotalesEmpresa().isEmpty());
+            assertTrue(gestorBD.comprobarResumenMensual().isEmpty());
+        } finally {
+            gestorBD.cerrar();
+        }
+    }
+
+    private static List<String> filas(Connection conexion, String sql) throws Exception {
+        List<String> filas = new ArrayList<>();
+        try (Statement st = conexion.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            int columnas = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringJoiner fila = new StringJoiner("|");
+                for (int c = 1; c <= columnas; c++) fila.add(String.valueOf(rs.getObject(c)));
+                filas.add(fila.toString());
+            }
+        }
+        return filas;
+    }
+
+    private static long contar(Connection conexion, String sql) throws Exception {
+        try (Statement st = conexion.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+import DAO.ClaveEmision;
+import DAO.FiltroEmisiones;
+import DAO.GestorBD;
+import Modelos.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verificación de planes de ejecución: ninguna consulta de GestorBD debe recorrer una tabla completa
+ * cuando existe un índice que podría servirla.
+ * <p>
+ * Se ejecutan todas las operaciones del gestor para que sus sentencias queden en la caché del pool
+ * y, después, se pide a SQLite el {@code EXPLAIN QUERY PLAN} de cada una.
+ */
+public class PlanesConsultaTest {
+
+    /**
+     * Recorridos completos admitidos (también los de un índice entero): el fragmento del SQL y la tabla (o alias)
+     * que puede recorrer, con el motivo.
+     */
+    private static final Map<String, String> RECORRIDOS_PERMITIDOS = Map.ofEntries(
+            // Tablas de catálogo pequeñas que se listan enteras
+            Map.entry("FROM rol", "rol"),
+            Map.entry("FROM usuario u JOIN rol r", "u"),
+            Map.entry("FROM emision_tipo t LEFT JOIN emision_tipo_alias", "t"),
+            Map.entry("FROM factor_emision ORDER BY id_tipo, desde, id", "factor_emision"),
+            // Listados completos sin término de búsqueda: devuelven todas las filas por diseño
+            Map.entry("FROM empresa c LEFT JOIN empresa_totales t", "c"),
+            Map.entry("SELECT id, nombre, sector FROM empresa ORDER BY nombre", "empresa"),
+            Map.entry("FROM auditoria a JOIN usuario u ON a.id_usuario = u.id ORDER BY a.fecha_hora DESC", "a"),
+            // Diccionario de nombres de empresa que acompaña a las páginas y exportaciones
+            Map.entry("SELECT id, nombre FROM empresa", "empresa"),
+            // Recuento total de emisiones: suma una fila por empresa en lugar de contar registros
+            Map.entry("SUM(num_emisiones), 0) FROM empresa_totales", "empresa_totales"),
+            Map.entry("FROM registro_emisiones e JOIN empresa c ON e.id_empresa = c.id", "e"),
+            // Listado paginado: recorre el índice de días en orden y se detiene al completar la página (LIMIT)
+            Map.entry(" ORDER BY e.dia, e.id LIMIT", "e"),
+            Map.entry(" ORDER BY e.dia DESC, e.id DESC LIMIT", "e"),
+            // Historial de filtros: listado completo en orden de inserción (recorrido por rowid)
+            Map.entry("FROM filtro f", "f"),
+            // Resumen de consultas lentas: la tabla está limitada a sus últimas entradas
+            Map.entry("FROM consulta_lenta GROUP BY forma", "consulta_lenta"),
+            // Resúmenes de todas las empresas: suman el resumen mensual entero (unas filas por mes)
+            Map.entry("SUM(num_emisiones) FROM emision_mensual GROUP BY anio", "emision_mensual"),
+            Map.entry("SUM(total_co2e) FROM emision_mensual GROUP BY mes", "emision_mensual")
+    );
+
+    @TempDir
+    static Path directorio;
+
+    private static GestorBD gestorBD;
+    private static String url;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        url = "jdbc:sqlite:" + directorio.resolve("planes.db");
+        gestorBD = new GestorBD(url);
+        gestorBD.arrancarBD();
+        ejecutarTodasLasOperaciones();
+    }
+
+    @AfterAll
+    static void cerrar() {
+        gestorBD.cerrar();
+    }
+
+    /**
+     * Recorre todas las operaciones públicas del gestor para poblar la caché de sentencias.
+     */
+    private static void ejecutarTodasLasOperaciones() throws Exception {
+        gestorBD.cargarDatosDemo();
+        Usuario admin = gestorBD.login("admin", "admin");
+        assertNotNull(admin);
+
+        Rol rolUsuario = gestorBD.getRoles().get(0);
+        gestorBD.getTodosLosRoles();
+        gestorBD.crearUsuario("planes", "1234", "Usuario Planes", rolUsuario, admin);
+        Usuario nuevo = gestorBD.getTodosLosUsuarios().stream()
+                .filter(u -> "planes".equals(u.getNombreCompleto())).findFirst().orElseThrow();
+        gestorBD.actualizarUsuarioAdmin(nuevo, "5678", admin);
+        gestorBD.bloqueoUsuario(nuevo.getId(), false);
+        gestorBD.borrarUsuario(nuevo.getId(), admin);
+
+        Empresa empresa = gestorBD.agregarEmpresa(new Empresa("Planes SA", "Servicios"));
+        gestorBD.logActualizarEmpresa(empresa);
+        gestorBD.logActualizarEmpresa(empresa, admin);
+        gestorBD.getTodasEmpresas("");
+        gestorBD.getTodasEmpresas("plan serv");
+        gestorBD.getTodasEmpresas();
+
+        Emisiones emision = gestorBD.nuevaEmision(new Emisiones("Electricidad", 10, 5, empresa.getId()));
+        gestorBD.encolarEmision(new Emisiones("Transporte", 20, 8, empresa.getId())).get();
+        gestorBD.actualizarEmision(emision, admin);
+        gestorBD.getTodasEmisiones("");
+        gestorBD.getTodasEmisiones("elec");
+        gestorBD.getTodasEmisiones("2024-03");
+        gestorBD.getEmissionsByCompanyId(empresa.getId(), "");
+        gestorBD.getEmissionsByCompanyId(empresa.getId(), "trans");
+        for (FiltroEmisiones filtro : List.of(new FiltroEmisiones(), new FiltroEmisiones(null, "elec", false),
+                new FiltroEmisiones(empresa.getId(), "", true), new FiltroEmisiones(empresa.getId(), "2024-03", false),
+                new FiltroEmisiones(null, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 3, 31)),
+                new FiltroEmisiones(empresa.getId(), LocalDate.of(2024, 1, 1), null))) {
+            gestorBD.contarEmisiones(filtro);
+            gestorBD.getPaginaEmisiones(filtro, null, 100);
+            gestorBD.getPaginaEmisiones(filtro, new ClaveEmision(LocalDate.of(2024, 3, 1).toEpochDay(), 1), 100);
+            gestorBD.getClaveEnPosicion(filtro, 1);
+        }
+        gestorBD.getCo2eEmpresaEntre(empresa.getId(), LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31));
+        gestorBD.getCo2eEmpresaEntre(null, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31));
+        for (Long idEmpresa : new Long[]{empresa.getId(), null}) {
+            gestorBD.getTotalesPorMes(idEmpresa);
+            gestorBD.getUltimosMeses(idEmpresa, 24);
+            gestorBD.getResumenAnual(idEmpresa);
+            gestorBD.getTotalesPorTipoAnio(idEmpresa, 2024);
+        }
+        gestorBD.getReporteEmisionesPorEmpresa(empresa.getId());
+
+        Path factores = directorio.resolve("factores.csv");
+        Files.writeString(factores, "Tipo;Unidad;Factor;Desde;Hasta\nElectricidad;kWh;0.25;2020-01-01;\n");
+        gestorBD.importarFactoresCSV(factores.toFile(), admin, null);
+        gestorBD.getFactoresEmision();
+        gestorBD.getFactorEmision("Electricidad", LocalDate.of(2024, 3, 1));
+        gestorBD.recalcularCo2e(null, true, admin, null);
+        gestorBD.borrarEmision(emision.getId());
+
+        gestorBD.registrarSedeConAuditoria(new Sede("Sevilla", "C/ Sierpes 1", empresa.getId()), admin, "Planes SA");
+        Sede sede = gestorBD.getSedesPorEmpresa(empresa.getId()).get(0);
+        gestorBD.actualizarSede(new Sede(sede.getId(), "Sevilla", "C/ Tetuán 2", empresa.getId()), admin, "Planes SA");
+        gestorBD.borrarSede(sede.getId(), "Sevilla", admin, "Planes SA");
+        gestorBD.getLogsAuditoria();
+        gestorBD.getConsultasLentasPorForma();
+        gestorBD.getConsultasLentas("SELECT ?", 10);
+        gestorBD.borrarConsultasLentas();
+
+        gestorBD.registrarFiltro("planes", "Nombre Ascendente", "Empresas", admin);
+        gestorBD.getHistorialFiltros();
+
+        gestorBD.borrarEmpresa(empresa.getId());
+    }
+
+    @Test
+    @DisplayName("PLAN-01: Ninguna consulta recorre una tabla completa sin índice")
+    void testSinRecorridosCompletos() throws Exception {
+        Set<String> sentencias = gestorBD.getSentenciasPreparadas();
+        assertTrue(sentencias.size() > 20, "Se esperaban todas las sentencias del gestor en caché");
+
+        List<String> fallos = new ArrayList<>();
+        try (Connection conexion = DriverManager.getConnection(url)) {
+            for (String sql : sentencias) {
+                List<String> plan = planDe(conexion, sql);
+                List<String> intermedias = tablasIntermedias(plan);
+                for (String paso : plan) {
+                    String tabla = tablaRecorrida(paso);
+                    if (tabla != null && !intermedias.contains(tabla) && !permitido(sql, tabla)) {
+                        fallos.add(paso + "  <=  " + sql);
+                    }
+                }
+            }
+        }
+        assertTrue(fallos.isEmpty(), "Consultas con recorrido completo:\n" + String.join("\n", fallos));
+    }
+
+    @Test
+    @DisplayName("PLAN-03: El recuento de emisiones con término o intervalo busca en los índices y coincide con el listado")
+    void testRecuentoPorIndices() throws Exception {
+        Empresa empresa = gestorBD.getTodasEmpresas("").get(0);
+        String nombre = empresa.getNombreEmpresa().split(" ")[0];
+        List<FiltroEmisiones> filtros = List.of(new FiltroEmisiones(null, "elec", false),
+                new FiltroEmisiones(null, nombre, false), new FiltroEmisiones(null, "2024-03", false),
+                new FiltroEmisiones(empresa.getId(), "trans", false), new FiltroEmisiones(empresa.getId(), "2024", true),
+                new FiltroEmisiones(null, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 3, 31)),
+                new FiltroEmisiones(empresa.getId(), LocalDate.of(2024, 1, 1), null));
+        for (FiltroEmisiones filtro : filtros) {
+            int total = gestorBD.contarEmisiones(filtro);
+            assertEquals(gestorBD.getPaginaEmisiones(filtro, null, 1_000_000).size(), total, "Filtro " + filtro);
+        }
+
+        List<String> fallos = new ArrayList<>();
+        int recuentos = 0;
+        try (Connection conexion = DriverManager.getConnection(url)) {
+            for (String sql : gestorBD.getSentenciasPreparadas()) {
+                if (!sql.startsWith("SELECT COUNT(*) FROM") || !sql.contains("registro_emisiones e")) continue;
+                recuentos++;
+                for (String paso : planDe(conexion, sql)) {
+                    if (paso.startsWith("SCAN e ") || paso.equals("SCAN e")) fallos.add(paso + "  <=  " + sql);
+                }
+            }
+        }
+        assertTrue(recuentos >= 3, "Se esperaban los recuentos con término, fecha e intervalo en caché");
+        assertTrue(fallos.isEmpty(), "Recuentos que recorren registro_emisiones:\n" + String.join("\n", fallos));
+    }
+
+    @Test
+    @DisplayName("PLAN-02: Cada clave ajena tiene un índice (borrados en cascada y comprobaciones de integridad)")
+    void testClavesAjenasIndexadas() throws Exception {
+        List<String> fallos = new ArrayList<>();
+        try (Connection conexion = DriverManager.getConnection(url);
+             Statement st = conexion.createStatement()) {
+            List<String> tablas = new ArrayList<>();
+            try (ResultSet rs = st.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%'")) {
+                while (rs.next()) tablas.add(rs.getString(1));
+            }
+            for (String tabla : tablas) {
+                try (ResultSet rs = st.executeQuery("PRAGMA foreign_key_list(" + tabla + ")")) {
+                    while (rs.next()) {
+                        String columna = rs.getString("from");
+                        // La consulta que SQLite lanza internamente al borrar la fila padre
+                        String sql = "SELECT 1 FROM " + tabla + " WHERE " + columna + " = ?";
+                        for (String paso : planDe(conexion, sql)) {
+                            if (tablaRecorrida(paso) != null) fallos.add(tabla + "." + columna);
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(fallos.isEmpty(), "Claves ajenas sin índice: " + fallos);
+    }
+
+    /**
+     * Devuelve las líneas del EXPLAIN QUERY PLAN de una sentencia.
+     */
+    private static List<String> planDe(Connection conexion, String sql) throws Exception {
+        List<String> pasos = new ArrayList<>();
+        try (PreparedStatement ps = conexion.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) pasos.add(rs.getString("detail"));
+        }
+        return pasos;
+    }
+
+    /**
+     * Nombres de subconsultas y CTE que el plan materializa: recorrerlas no es recorrer una tabla.
+     */
+    private static List<String> tablasIntermedias(List<String> plan) {
+        List<String> nombres = new ArrayList<>();
+        for (String paso : plan) {
+            if (paso.startsWith("MATERIALIZE ") || paso.startsWith("CO-ROUTINE ")) {
+                nombres.add(paso.split(" ")[1]);
+            }
+        }
+        return nombres;
+    }
+
+    /**
+     * Si el paso del plan es un recorrido completo ("SCAN tabla"), devuelve la tabla o alias. Recorrer un índice
+     * entero ("SCAN tabla USING [COVERING] INDEX ...") también lo es: solo las búsquedas (SEARCH) acotan las filas.
+     * Las tablas virtuales FTS5 consultadas con MATCH usan su propio índice, y las filas de un VALUES
+     * ("SCAN 100 CONSTANT ROWS") no son ninguna tabla.
+     */
+    private static String tablaRecorrida(String paso) {
+        if (!paso.startsWith("SCAN ") || paso.matches("SCAN (\\d+ )?CONSTANT ROWS?")
+                || paso.matches(".* VIRTUAL TABLE INDEX \\d+:.*M.*")) return null;
+        String[] partes = paso.split(" ");
+        return partes.length > 1 ? partes[1] : null;
+    }
+
+    private static boolean permitido(String sql, String tabla) {
+        for (Map.Entry<String, String> permitido : RECORRIDOS_PERMITIDOS.entrySet()) {
+            if (sql.contains(permitido.getKey()) && tabla.equals(permitido.getValue())) return true;
+        }
+        return false;
+    }
+}
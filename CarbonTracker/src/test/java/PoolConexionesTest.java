@@ -0,0 +1,95 @@
+import DAO.ConfiguracionBD;
+import DAO.PoolConexiones;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del pool de conexiones: cada préstamo es independiente de los anteriores y los reintentos
+ * ante bloqueos respetan la interrupción del hilo.
+ */
+public class PoolConexionesTest {
+
+    @TempDir
+    Path directorio;
+
+    private PoolConexiones pool;
+    private String url;
+
+    @BeforeEach
+    void setup() {
+        url = "jdbc:sqlite:" + directorio.resolve("pool.db");
+        ConfiguracionBD configuracion = new ConfiguracionBD(url);
+        // Sin espera de SQLite: un bloqueo falla en el acto y pasa a los reintentos del pool
+        configuracion.setEsperaBloqueoMs(0);
+        configuracion.setPausaReintentoMs(1000);
+        pool = new PoolConexiones(configuracion);
+    }
+
+    @AfterEach
+    void cerrar() {
+        pool.cerrar();
+    }
+
+    @Test
+    @DisplayName("POOL-01: Una conexión ya devuelta no actúa sobre el préstamo siguiente ni lo devuelve al cerrarse otra vez")
+    void testPrestamoCerrado() throws Exception {
+        Connection primera = pool.obtenerEscritura();
+        primera.close();
+        Connection segunda = pool.obtenerEscritura();
+
+        assertTrue(primera.isClosed());
+        assertFalse(segunda.isClosed());
+        assertThrows(SQLException.class, () -> primera.setAutoCommit(false));
+        assertThrows(SQLException.class, () -> primera.prepareStatement("SELECT 1"));
+        assertTrue(segunda.getAutoCommit());
+
+        // Cerrar otra vez la referencia antigua no devuelve la conexión que tiene "segunda"
+        primera.close();
+        ExecutorService otroHilo = Executors.newSingleThreadExecutor();
+        try {
+            Future<Connection> tercera = otroHilo.submit(() -> pool.obtenerEscritura());
+            assertThrows(TimeoutException.class, () -> tercera.get(300, TimeUnit.MILLISECONDS));
+            segunda.close();
+            tercera.get(5, TimeUnit.SECONDS).close();
+        } finally {
+            otroHilo.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("POOL-02: Interrumpir un reintento por bloqueo lanza SQLException y conserva la interrupción")
+    void testReintentoInterrumpido() throws Exception {
+        try (Connection conexion = pool.obtenerEscritura(); Statement st = conexion.createStatement()) {
+            st.execute("CREATE TABLE t (x INTEGER)");
+        }
+        try (Connection otra = DriverManager.getConnection(url); Statement bloqueo = otra.createStatement();
+             Connection conexion = pool.obtenerEscritura();
+             PreparedStatement ps = conexion.prepareStatement("INSERT INTO t (x) VALUES (?)")) {
+            bloqueo.execute("BEGIN EXCLUSIVE");
+            ps.setInt(1, 1);
+            Thread.currentThread().interrupt();
+            try {
+                SQLException error = assertThrows(SQLException.class, ps::executeUpdate);
+                assertTrue(error.getMessage().startsWith("Interrumpido"), error.getMessage());
+                assertTrue(Thread.currentThread().isInterrupted());
+            } finally {
+                Thread.interrupted();
+                bloqueo.execute("ROLLBACK");
+            }
+        }
+    }
+}
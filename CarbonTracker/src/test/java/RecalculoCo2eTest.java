@@ -0,0 +1,189 @@
+import DAO.GestorBD;
+import DAO.RecalculoCo2e;
+import Modelos.Emisiones;
+import Modelos.Empresa;
+import Modelos.FactorEmision;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del recálculo de CO2e tras revisar factores: cada fila queda con cantidad × factor vigente,
+ * las manuales se respetan salvo que se incluyan, y los totales por empresa y el resumen mensual
+ * (mantenidos sin sus triggers durante el recálculo) siguen siendo la suma agrupada de las emisiones.
+ */
+public class RecalculoCo2eTest {
+
+    @TempDir
+    Path directorio;
+
+    private GestorBD gestorBD;
+    private String url;
+
+    /** Fila de registro_emisiones con el nombre de su tipo. */
+    private record Fila(long id, String tipo, double cantidad, double co2e, LocalDate fecha, boolean calculada) { }
+
+    @BeforeEach
+    void setup() throws Exception {
+        url = "jdbc:sqlite:" + directorio.resolve("recalculo.db");
+        gestorBD = new GestorBD(url);
+        gestorBD.arrancarBD();
+        assertEquals(0, gestorBD.importarFactoresCSV(escribir("factores.csv", List.of(
+                "Tipo;Unidad;Factor (kgCO2e/unidad);Desde;Hasta",
+                "Electricidad;kWh;0,25;01/01/2020;31/12/2023",
+                "Electricidad;kWh;0,30;01/01/2024;",
+                "Gas Natural;kWh;0,18;01/01/2020;")), null, null).totalErrores());
+
+        List<Long> empresas = new ArrayList<>();
+        for (String nombre : List.of("Alfa SA", "Beta SL", "Gamma SA")) {
+            empresas.add(gestorBD.agregarEmpresa(new Empresa(nombre, "Industria")).getId());
+        }
+        String[] tipos = {"Electricidad", "Gas Natural", "Residuos"};
+        for (int i = 0; i < 300; i++) {
+            String tipo = tipos[i % 3];
+            LocalDate fecha = LocalDate.of(2023, 1, 1).plusDays(i * 2L);
+            double cantidad = 10 + i % 37;
+            FactorEmision factor = gestorBD.getFactorEmision(tipo, fecha);
+            // Una de cada cinco con el CO2e escrito a mano
+            boolean calculada = factor != null && i % 5 != 0;
+            Emisiones emision = new Emisiones(null, tipo, cantidad, calculada ? cantidad * factor.getFactor() : 1 + i % 7,
+                    fecha, empresas.get(i % 3));
+            emision.setCo2eCalculado(calculada);
+            assertNotNull(gestorBD.nuevaEmision(emision));
+        }
+    }
+
+    @AfterEach
+    void cerrar() {
+        gestorBD.cerrar();
+    }
+
+    private File escribir(String nombre, List<String> lineas) throws Exception {
+        Path archivo = directorio.resolve(nombre);
+        Files.write(archivo, lineas, StandardCharsets.UTF_8);
+        return archivo.toFile();
+    }
+
+    private List<Fila> filas() throws SQLException {
+        List<Fila> filas = new ArrayList<>();
+        try (Connection conexion = DriverManager.getConnection(url);
+             Statement st = conexion.createStatement();
+             ResultSet rs = st.executeQuery("SELECT e.id, t.nombre, e.cantidad, e.co2e, e.fecha, e.co2e_calculado "
+                     + "FROM registro_emisiones e JOIN emision_tipo t ON t.id = e.id_tipo ORDER BY e.id")) {
+            while (rs.next()) {
+                filas.add(new Fila(rs.getLong(1), rs.getString(2), rs.getDouble(3), rs.getDouble(4),
+                        LocalDate.parse(rs.getString(5)), rs.getBoolean(6)));
+            }
+        }
+        return filas;
+    }
+
+    private List<String> consulta(String sql) throws SQLException {
+        List<String> filas = new ArrayList<>();
+        try (Connection conexion = DriverManager.getConnection(url);
+             Statement st = conexion.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            int columnas = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder fila = new StringBuilder();
+                for (int c = 1; c <= columnas; c++) fila.append(rs.getString(c)).append('|');
+                filas.add(fila.toString());
+            }
+        }
+        return filas;
+    }
+
+    /** Comprueba que los totales y el resumen mensual son exactamente la suma agrupada de las emisiones. */
+    private void assertAgregadosCoherentes() throws SQLException {
+        assertEquals(
+                consulta("SELECT id_empresa, ROUND(SUM(co2e), 6), COUNT(*), MAX(fecha) FROM registro_emisiones "
+                        + "GROUP BY id_empresa ORDER BY 1"),
+                consulta("SELECT id_empresa, ROUND(total_co2e, 6), num_emisiones, ultima_fecha FROM empresa_totales "
+                        + "WHERE num_emisiones > 0 ORDER BY 1"));
+        assertEquals(
+                consulta("SELECT id_empresa, CAST(strftime('%Y%m', fecha) AS INTEGER), id_tipo, ROUND(SUM(co2e), 6), "
+                        + "ROUND(SUM(cantidad), 6), COUNT(*) FROM registro_emisiones GROUP BY 1, 2, 3 ORDER BY 1, 2, 3"),
+                consulta("SELECT id_empresa, mes, id_tipo, ROUND(total_co2e, 6), ROUND(total_cantidad, 6), num_emisiones "
+                        + "FROM emision_mensual WHERE num_emisiones > 0 ORDER BY 1, 2, 3"));
+    }
+
+    /** Revisa un factor existente y abre un periodo nuevo en otro tipo. */
+    private void revisarFactores() throws Exception {
+        assertEquals(2, gestorBD.importarFactoresCSV(escribir("revision.csv", List.of(
+                "Tipo;Unidad;Factor (kgCO2e/unidad);Desde;Hasta",
+                "Electricidad;kWh;0,21;01/01/2024;",
+                "Gas Natural;kWh;0,20;01/07/2023;")), null, null).filasImportadas());
+    }
+
+    /** CO2e que debe tener una fila tras recalcularla (sin factor vigente se queda como está). */
+    private double esperado(Fila fila) {
+        FactorEmision factor = gestorBD.getFactorEmision(fila.tipo(), fila.fecha());
+        return factor != null ? fila.cantidad() * factor.getFactor() : fila.co2e();
+    }
+
+    @Test
+    @DisplayName("REC-01: Recalcular solo las calculadas aplica el factor revisado, respeta las manuales y cuadra los agregados")
+    void testSoloCalculadas() throws Exception {
+        List<Fila> antes = filas();
+        revisarFactores();
+        long cambian = antes.stream().filter(f -> f.calculada() && Math.abs(esperado(f) - f.co2e()) > 1e-9).count();
+        assertTrue(cambian > 0);
+
+        RecalculoCo2e.Resultado resultado = gestorBD.recalcularCo2e(null, false, null, null);
+        assertNotNull(resultado);
+        assertFalse(resultado.cancelado());
+        assertEquals(cambian, resultado.filasRecalculadas());
+
+        List<Fila> despues = filas();
+        assertEquals(antes.size(), despues.size());
+        for (int i = 0; i < antes.size(); i++) {
+            Fila previa = antes.get(i);
+            Fila actual = despues.get(i);
+            assertEquals(previa.calculada() ? esperado(previa) : previa.co2e(), actual.co2e(), 1e-9, "Emisión " + actual.id());
+            assertEquals(previa.calculada(), actual.calculada(), "Emisión " + actual.id());
+        }
+        assertAgregadosCoherentes();
+        assertTrue(gestorBD.comprobarTotalesEmpresa().isEmpty());
+        assertTrue(gestorBD.comprobarResumenMensual().isEmpty());
+    }
+
+    @Test
+    @DisplayName("REC-02: Incluir las manuales las recalcula y marca como calculadas, y los agregados siguen cuadrando")
+    void testIncluirManuales() throws Exception {
+        List<Fila> antes = filas();
+        assertTrue(antes.stream().anyMatch(f -> !f.calculada()));
+        revisarFactores();
+
+        RecalculoCo2e.Resultado resultado = gestorBD.recalcularCo2e(null, true, null, null);
+        assertNotNull(resultado);
+        assertTrue(resultado.filasRecalculadas() > 0);
+
+        List<Fila> despues = filas();
+        for (int i = 0; i < antes.size(); i++) {
+            Fila previa = antes.get(i);
+            Fila actual = despues.get(i);
+            boolean conFactor = gestorBD.getFactorEmision(previa.tipo(), previa.fecha()) != null;
+            assertEquals(esperado(previa), actual.co2e(), 1e-9, "Emisión " + actual.id());
+            if (conFactor) assertTrue(actual.calculada(), "Emisión " + actual.id());
+        }
+        assertAgregadosCoherentes();
+
+        // Repetirlo no cambia nada más
+        assertEquals(0, gestorBD.recalcularCo2e(null, true, null, null).filasRecalculadas());
+        assertAgregadosCoherentes();
+    }
+}
@@ -0,0 +1,151 @@
+import ct.Principal.VigilanteHiloFX;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del vigilante de bloqueos del hilo de la interfaz. En lugar de JavaFX se usa un hilo
+ * propio que hace de hilo de la interfaz: el vigilante solo necesita un {@code Executor}.
+ */
+public class VigilanteHiloFXTest {
+
+    @TempDir
+    Path directorio;
+
+    private ExecutorService hiloInterfaz;
+    private VigilanteHiloFX vigilante;
+
+    @BeforeEach
+    void setup() throws Exception {
+        hiloInterfaz = Executors.newSingleThreadExecutor(tarea -> new Thread(tarea, "interfaz-prueba"));
+        vigilante = new VigilanteHiloFX(hiloInterfaz, Duration.ofMillis(150));
+        vigilante.iniciar();
+        Thread.sleep(100);
+    }
+
+    @AfterEach
+    void cerrar() {
+        vigilante.detener();
+        hiloInterfaz.shutdownNow();
+    }
+
+    /** Ejecuta una tarea en el hilo de la interfaz, espera a que termine y deja tiempo al vigilante para cerrar el latido. */
+    private void enInterfaz(Runnable tarea) throws Exception {
+        hiloInterfaz.submit(tarea).get();
+        Thread.sleep(200);
+    }
+
+    private VigilanteHiloFX.Bloqueo unicoBloqueo() {
+        List<VigilanteHiloFX.Bloqueo> bloqueos = vigilante.getBloqueos();
+        assertEquals(1, bloqueos.size(), "Se esperaba un único bloqueo: " + bloqueos);
+        return bloqueos.get(0);
+    }
+
+    @Test
+    @DisplayName("VF-01: Las tareas cortas en la interfaz no cuentan como bloqueo")
+    void testSinBloqueos() throws Exception {
+        for (int i = 0; i < 10; i++) enInterfaz(() -> { });
+        assertTrue(vigilante.getBloqueos().isEmpty());
+    }
+
+    @Test
+    @DisplayName("VF-02: Una consulta JDBC larga en la interfaz se registra como bloqueo de base de datos con su origen")
+    void testBloqueoJdbc() throws Exception {
+        enInterfaz(VigilanteHiloFXTest::consultaLarga);
+
+        VigilanteHiloFX.Bloqueo bloqueo = unicoBloqueo();
+        assertEquals(VigilanteHiloFX.Causa.JDBC, bloqueo.causa());
+        assertTrue(bloqueo.duracionMs() >= 150);
+        assertTrue(bloqueo.muestras() > 0);
+        assertEquals("VigilanteHiloFXTest.consultaLarga", bloqueo.origen());
+        assertTrue(bloqueo.pila().contains("org.sqlite"));
+    }
+
+    @Test
+    @DisplayName("VF-03: Escribir ficheros en la interfaz se registra como E/S de fichero; esperar, como espera")
+    void testBloqueoFicheroYEspera() throws Exception {
+        Path fichero = directorio.resolve("lento.bin");
+        enInterfaz(() -> {
+            long fin = System.nanoTime() + 500_000_000L;
+            try (FileOutputStream salida = new FileOutputStream(fichero.toFile())) {
+                byte[] bloque = new byte[64 * 1024];
+                while (System.nanoTime() < fin) {
+                    salida.write(bloque);
+                    salida.getFD().sync();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertEquals(VigilanteHiloFX.Causa.FICHERO, unicoBloqueo().causa());
+
+        vigilante.limpiar();
+        enInterfaz(() -> {
+            try {
+                Thread.sleep(400);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertEquals(VigilanteHiloFX.Causa.ESPERA, unicoBloqueo().causa());
+    }
+
+    @Test
+    @DisplayName("VF-04: Cada bloqueo emite un evento JFR con la pila del hilo de la interfaz y se puede exportar como informe")
+    void testEventoEInforme() throws Exception {
+        Path grabado = directorio.resolve("bloqueos.jfr");
+        try (Recording grabacion = new Recording()) {
+            grabacion.enable(VigilanteHiloFX.EVENTO_BLOQUEO);
+            grabacion.start();
+            enInterfaz(VigilanteHiloFXTest::consultaLarga);
+            grabacion.stop();
+            grabacion.dump(grabado);
+        }
+        List<RecordedEvent> eventos = RecordingFile.readAllEvents(grabado);
+        RecordedEvent evento = eventos.stream()
+                .filter(e -> e.getEventType().getName().equals(VigilanteHiloFX.EVENTO_BLOQUEO))
+                .findFirst().orElseThrow();
+        assertEquals("JDBC", evento.getString("causa"));
+        assertTrue(evento.getString("pila").contains("VigilanteHiloFXTest.consultaLarga"));
+        assertTrue(evento.getDuration("duracion").toMillis() >= 150);
+
+        Path informe = directorio.resolve("informe.txt");
+        vigilante.exportarInforme(informe);
+        String texto = Files.readString(informe);
+        assertTrue(texto.contains("RESUMEN POR ORIGEN"));
+        assertTrue(texto.contains("VigilanteHiloFXTest.consultaLarga · Base de datos (JDBC)"));
+        assertTrue(texto.contains("org.sqlite"));
+    }
+
+    /** Consultas de SQLite durante al menos 400 ms. */
+    private static void consultaLarga() {
+        long fin = System.nanoTime() + 400_000_000L;
+        try (Connection conexion = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Statement st = conexion.createStatement()) {
+            while (System.nanoTime() < fin) {
+                try (ResultSet rs = st.executeQuery("WITH RECURSIVE c(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM c "
+                        + "WHERE x < 500000) SELECT SUM(x) FROM c")) {
+                    assertTrue(rs.next());
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}